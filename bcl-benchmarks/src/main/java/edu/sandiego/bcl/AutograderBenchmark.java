@@ -0,0 +1,107 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the {@link Autograder} (submissions times
+ * vectors graded per second) with different numbers of worker threads,
+ * including parsing every submission.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=AutograderBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutograderBenchmark {
+
+    private static final int SUBMISSIONS = 32;
+    private static final int VECTORS = 32;
+
+    /**
+     * long sum_to(long n): the sum of 1 to n, with a loop.
+     */
+    private static final String[] SUBMISSION = {
+        "sum_to:",
+        "    movq $0, %rax",
+        "    movq $1, %rcx",
+        ".loop:",
+        "    cmpq %rdi, %rcx",
+        "    jg .done",
+        "    addq %rcx, %rax",
+        "    incq %rcx",
+        "    jmp .loop",
+        ".done:",
+        "    retq"
+    };
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private ForkJoinPool pool;
+    private Autograder grader;
+    private List<File> submissions;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.pool = new ForkJoinPool(this.parallelism);
+
+        List<TestVector> vectors = new ArrayList<>();
+        for (int i = 0; i < VECTORS; i++) {
+            Map<String, Long> registers = new TreeMap<>();
+            registers.put("rdi", 100L + i);
+            Map<String, Long> expected = new TreeMap<>();
+            expected.put("rax", (100L + i) * (101L + i) / 2);
+            vectors.add(new TestVector("n=" + (100 + i), registers,
+                    Collections.emptyList(), expected));
+        }
+        this.grader = new Autograder(vectors, 1_000_000, Long.MAX_VALUE, this.pool);
+
+        File dir = Files.createTempDirectory("submissions").toFile();
+        dir.deleteOnExit();
+        this.submissions = new ArrayList<>();
+        for (int i = 0; i < SUBMISSIONS; i++) {
+            File file = new File(dir, "submission" + i + ".s");
+            Files.write(file.toPath(), Arrays.asList(SUBMISSION));
+            file.deleteOnExit();
+            this.submissions.add(file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBMISSIONS * VECTORS)
+    public List<Autograder.Report> grade() {
+        return this.grader.grade(this.submissions);
+    }
+}
@@ -0,0 +1,235 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the results of a benchmark run with a baseline (both in the CSV
+ * format JMH writes with "-rf csv"), printing how much each score changed
+ * and whether it got worse by more than a threshold. Scores of throughput
+ * benchmarks are better when higher, all others when lower.
+ *
+ * A score is only as exact as its error (half of JMH's 99.9% confidence
+ * interval), so a change only counts if it is larger than the threshold plus
+ * the errors of both scores: a noisy benchmark isn't called a regression
+ * when its confidence intervals overlap with the baseline's. Scores without
+ * an error (e.g. the percentiles of a sample time benchmark, which are single
+ * samples) are printed but never called a regression.
+ *
+ * Usage: BaselineComparison [--threshold PERCENT] BASELINE RESULTS
+ *
+ * The exit status is 1 if any benchmark regressed by more than the threshold
+ * (10% by default) plus its error, so this can be used to fail a build.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class BaselineComparison {
+
+    private static final double DEFAULT_THRESHOLD = 10;
+
+    private static final String USAGE
+            = "usage: BaselineComparison [--threshold PERCENT] BASELINE RESULTS";
+
+    private BaselineComparison() {
+    }
+
+    /**
+     * A single score from a results file.
+     */
+    static final class Score {
+        final String mode;
+        final double value;
+
+        /**
+         * Half the width of the score's confidence interval, or NaN if JMH
+         * didn't give one (e.g. for a single sample).
+         */
+        final double error;
+        final String unit;
+
+        Score(String mode, double value, double error, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        boolean isHigherBetter() {
+            return this.mode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        double threshold = DEFAULT_THRESHOLD;
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threshold")) {
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException("--threshold needs a value");
+                    }
+                    threshold = Double.parseDouble(args[i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.size() != 2) {
+                throw new IllegalArgumentException("expected 2 files, got "
+                        + files.size());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        Map<String, Score> baseline = read(new File(files.get(0)));
+        Map<String, Score> results = read(new File(files.get(1)));
+        System.exit(compare(baseline, results, threshold, System.out) ? 0 : 1);
+    }
+
+    /**
+     * Reads the scores in a JMH CSV file.
+     *
+     * @return The scores, by benchmark name followed by any parameters (e.g.
+     * "edu.sandiego.bcl.MemoryBenchmark.pushThenPop depth=100").
+     * @throws IOException if the file can't be read or isn't in the expected
+     * format.
+     */
+    static Map<String, Score> read(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(file + " is empty");
+        }
+        List<String> header = splitRow(lines.get(0));
+        int name = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        if (name < 0 || mode < 0 || score < 0 || unit < 0) {
+            throw new IOException(file + " isn't a JMH CSV file");
+        }
+
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> row = splitRow(line);
+            if (row.size() != header.size()) {
+                throw new IOException(file + ": malformed row: " + line);
+            }
+            StringBuilder key = new StringBuilder(row.get(name));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !row.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7))
+                            .append('=').append(row.get(i));
+                }
+            }
+            try {
+                scores.put(key.toString(), new Score(row.get(mode),
+                        parseNumber(row.get(score)),
+                        error < 0 ? Double.NaN : parseNumber(row.get(error)),
+                        row.get(unit)));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ": malformed row: " + line, e);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Splits a CSV row into its fields, removing the quotes around them.
+     */
+    static List<String> splitRow(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static double parseNumber(String s) {
+        // some locales use a decimal comma
+        return Double.parseDouble(s.replace(',', '.'));
+    }
+
+    /**
+     * Prints how each result compares to its baseline.
+     *
+     * @param threshold How much worse (in percent) a score may get, on top of
+     * the errors of it and its baseline, without being called a regression.
+     * @return True if no score with an error got worse by more than the
+     * threshold plus its error.
+     */
+    static boolean compare(Map<String, Score> baseline, Map<String, Score> results,
+            double threshold, PrintStream out) {
+        boolean ok = true;
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score after = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                out.printf("%s: %.3f %s (new)%n", entry.getKey(), after.value,
+                        after.unit);
+                continue;
+            }
+            if (!before.unit.equals(after.unit) || !before.mode.equals(after.mode)) {
+                out.printf("%s: not comparable (%s %s before, %s %s now)%n",
+                        entry.getKey(), before.mode, before.unit, after.mode,
+                        after.unit);
+                continue;
+            }
+
+            double change = 100 * (after.value - before.value) / before.value;
+            double worse = after.isHigherBetter() ? -change : change;
+            // the change could be off by as much as both errors together
+            double error = 100 * (before.error + after.error) / before.value;
+            if (Double.isNaN(error)) {
+                out.printf("%s: %.3f -> %.3f %s (%+.1f%%, no error given)%n",
+                        entry.getKey(), before.value, after.value, after.unit,
+                        change);
+                continue;
+            }
+            String verdict = "";
+            if (worse > threshold + error) {
+                verdict = "  REGRESSION";
+                ok = false;
+            } else if (-worse > threshold + error) {
+                verdict = "  improvement";
+            }
+            out.printf("%s: %.3f -> %.3f %s (%+.1f%% +/- %.1f%%)%s%n",
+                    entry.getKey(), before.value, after.value, after.unit,
+                    change, error, verdict);
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                out.printf("%s: missing%n", key);
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,155 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the average cost per instruction of interpreting loop-heavy
+ * programs with that of running their hot blocks compiled to bytecode by
+ * {@link BlockCompiler}, both on their own and through {@link Simulation#run}
+ * (without history).
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=BlockCompilerBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockCompilerBenchmark {
+
+    private static final int INSTRUCTIONS = 100_000;
+
+    /**
+     * Arithmetic on registers, with a single block for the loop body.
+     */
+    private static final String[] ARITHMETIC_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        "    movq $1, %rdx",
+        ".loop:",
+        "    addq %rax, %rcx",
+        "    imulq $3, %rdx",
+        "    xorq %rcx, %rdx",
+        "    subq $7, %rbx",
+        "    sarq $2, %rbx",
+        "    andl $255, %esi",
+        "    orq %rdx, %rsi",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    /**
+     * Nested loops with conditional moves and sets, and a memory access that
+     * has to be interpreted.
+     */
+    private static final String[] NESTED_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        ".outer:",
+        "    movq $0, %rcx",
+        "    pushq %rax",
+        "    popq %r8",
+        ".inner:",
+        "    cmpq %rcx, %rax",
+        "    cmovl %rcx, %rbx",
+        "    testq $1, %rcx",
+        "    sete %dl",
+        "    movzbl %dl, %edx",
+        "    leaq 1(%rcx, %rdx, 2), %rsi",
+        "    addq %rsi, %rdi",
+        "    incq %rcx",
+        "    cmpq $20, %rcx",
+        "    jl .inner",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .outer"
+    };
+
+    @Param({"arithmetic", "nested"})
+    private String program;
+
+    private DecodedProgram image;
+    private BlockCompiler compiler;
+    private MachineState initialState;
+    private Simulation interpreted;
+    private Simulation compiled;
+
+    @Setup
+    public void setUp() throws Exception {
+        String[] lines = program.equals("nested") ? NESTED_LOOP : ARITHMETIC_LOOP;
+        x86Program p = new x86Program();
+        interpreted = new Simulation();
+        compiled = new Simulation();
+        for (String line : lines) {
+            p.parseThenAddLine(line);
+            interpreted.appendToProgram(line);
+            compiled.appendToProgram(line);
+        }
+        image = DecodedProgram.compile(p);
+        compiler = new BlockCompiler(image);
+        initialState = new MachineState();
+        initialState.setRip(image.getEntryPoint());
+
+        interpreted.useNoHistory();
+        compiled.useNoHistory();
+        compiled.setCompileHotBlocks(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public MachineState interpret() throws x86RuntimeException {
+        MachineState state = initialState;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            state = image.step(state);
+        }
+        return state;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public MachineState compile() throws x86RuntimeException {
+        MachineState state = initialState;
+        int i = 0;
+        while (i < INSTRUCTIONS) {
+            CompiledBlock block = compiler.getHotBlock(state.getRipRegister());
+            if (block != null) {
+                state = block.execute(state);
+                i += block.getNumInstructions();
+            } else {
+                state = image.step(state);
+                i++;
+            }
+        }
+        return state;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public RunResult runInterpreted() {
+        interpreted.restart();
+        return interpreted.run(INSTRUCTIONS, Long.MAX_VALUE, new CancellationToken());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public RunResult runCompiled() {
+        compiled.restart();
+        return compiled.run(INSTRUCTIONS, Long.MAX_VALUE, new CancellationToken());
+    }
+}
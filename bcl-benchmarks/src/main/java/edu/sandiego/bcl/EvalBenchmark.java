@@ -0,0 +1,116 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of evaluating a single instruction of each
+ * {@link InstructionType} (every one of them unless the type parameter is
+ * given). Each type is represented by one typical instruction, evaluated on
+ * a state with small values in its registers and the top of the stack
+ * initialized.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args="EvalBenchmark -p type=ADD,MOV"
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+
+    /**
+     * Sets up the registers and stack that the instructions use: %rax is 100,
+     * %rcx is 3, %rdx is 0, (%rsp) is 0 (so that ret goes back to the
+     * target label) and 8(%rsp) is 7.
+     */
+    private static final String[] PROLOGUE = {
+        "movq $100, %rax",
+        "movq $3, %rcx",
+        "movq $0, %rdx",
+        "pushq $7",
+        "pushq $0"
+    };
+
+    @Param
+    private InstructionType type;
+
+    private x86ProgramLine line;
+    private MachineState initialState;
+
+    /**
+     * @return A typical instruction of the given type, which may jump or call
+     * to a label named "target".
+     */
+    static String instructionOf(InstructionType type) {
+        switch (type) {
+            case ADD: return "addq %rcx, %rax";
+            case SUB: return "subl %ecx, %eax";
+            case IMUL: return "imulq %rcx, %rax";
+            case CMP: return "cmpq %rcx, %rax";
+            case OR: return "orw %cx, %ax";
+            case AND: return "andq $0xFF, %rax";
+            case TEST: return "testb %cl, %al";
+            case XOR: return "xorq %rcx, %rax";
+            case SHL: return "shlq $2, %rax";
+            case SAL: return "sall $3, %eax";
+            case SHR: return "shrq $1, %rax";
+            case SAR: return "sarl $1, %eax";
+            case MOV: return "movq 8(%rsp), %rax";
+            case MOVZ: return "movzbl %cl, %eax";
+            case MOVS: return "movslq %ecx, %rax";
+            case LEA: return "leaq 8(%rsp,%rcx,2), %rsi";
+            case IDIV: return "idivq %rcx";
+            case INC: return "incq 8(%rsp)";
+            case DEC: return "decl %eax";
+            case NEG: return "negq %rax";
+            case NOT: return "notq %rax";
+            case PUSH: return "pushq %rax";
+            case POP: return "popq %rbx";
+            case CALL: return "callq target";
+            case RET: return "retq";
+            case CLT: return "cltq";
+            default:
+                break;
+        }
+        String name = type.name().toLowerCase();
+        if (name.startsWith("cmov")) {
+            return name + " %rcx, %rax";
+        } else if (name.startsWith("set")) {
+            return name + " %al";
+        } else if (name.startsWith("j")) {
+            return name + " target";
+        }
+        throw new IllegalArgumentException("No instruction for " + type);
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        X86Parser parser = new X86Parser();
+        parser.parseLine("target:");
+        MachineState state = new MachineState();
+        for (String prologueLine : PROLOGUE) {
+            state = parser.parseLine(prologueLine).eval(state);
+        }
+        initialState = state;
+        line = parser.parseLine(instructionOf(type));
+    }
+
+    @Benchmark
+    public MachineState eval() throws x86RuntimeException {
+        return line.eval(initialState);
+    }
+}
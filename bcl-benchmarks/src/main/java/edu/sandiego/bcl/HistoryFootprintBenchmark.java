@@ -0,0 +1,123 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how much memory the simulation history retains per executed
+ * instruction. A looping program is run for a million steps, after which the
+ * retained heap is measured and reported (as bytes per step) on standard
+ * output, along with the slowest of a thousand steps back from the end of the
+ * run. The time reported by JMH is for the whole run.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=HistoryFootprintBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HistoryFootprintBenchmark {
+
+    private static final int STEPS = 1_000_000;
+
+    private static final String[] REGISTER_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        "    movq $0, %rcx",
+        ".loop:",
+        "    addq %rax, %rcx",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    private static final String[] STACK_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        ".loop:",
+        "    pushq %rax",
+        "    movl $1, 4(%rsp)",
+        "    incq %rax",
+        "    popq %rbx",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    @Param({"registers", "stack"})
+    private String program;
+
+    @Param({"undo", "checkpoint"})
+    private String history;
+
+    private File programFile;
+    private Simulation simulation;
+    private long baselineHeap;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        programFile = File.createTempFile("loop", ".s");
+        String[] lines = program.equals("stack") ? STACK_LOOP : REGISTER_LOOP;
+        Files.write(programFile.toPath(), Arrays.asList(lines),
+                StandardCharsets.UTF_8);
+
+        simulation = null;
+        baselineHeap = usedHeapAfterGC();
+        simulation = new Simulation(programFile);
+        if (history.equals("checkpoint")) {
+            simulation.useCheckpointHistory(16 * 1024 * 1024, 5_000_000);
+        }
+    }
+
+    @Benchmark
+    public Simulation run() throws x86RuntimeException {
+        for (int i = 0; i < STEPS; i++) {
+            simulation.stepForward();
+        }
+        return simulation;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        long retained = usedHeapAfterGC() - baselineHeap;
+        long slowestStepBack = 0;
+        for (int i = 0; i < 1000; i++) {
+            long start = System.nanoTime();
+            simulation.stepBackward();
+            slowestStepBack = Math.max(slowestStepBack, System.nanoTime() - start);
+        }
+        System.out.printf("%n%s/%s: %.1f bytes retained per step, "
+                + "slowest step back %.3f ms%n", program, history,
+                (double) retained / STEPS, slowestStepBack / 1e6);
+        simulation = null;
+        Files.delete(programFile.toPath());
+    }
+
+    private static long usedHeapAfterGC() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
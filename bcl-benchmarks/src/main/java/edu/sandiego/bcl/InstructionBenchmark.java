@@ -0,0 +1,65 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the average cost of evaluating a single instruction, using a mix
+ * of register and memory operands of different sizes.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=InstructionBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBenchmark {
+
+    private static final String[] INSTRUCTIONS = {
+        "addq %rax, %rbx",
+        "movl %ecx, %edx",
+        "movq %rax, (%rsp)",
+        "movq (%rsp), %rcx",
+        "incw %r9w",
+        "subb %al, %ah",
+        "leaq 8(%rsp,%rbx,2), %rsi",
+        "cmpl %esi, %edi"
+    };
+
+    private x86ProgramLine[] lines;
+    private MachineState initialState;
+
+    @Setup
+    public void setUp() throws Exception {
+        X86Parser parser = new X86Parser();
+        lines = new x86ProgramLine[INSTRUCTIONS.length];
+        for (int i = 0; i < INSTRUCTIONS.length; i++) {
+            lines[i] = parser.parseLine(INSTRUCTIONS[i]);
+        }
+        initialState = new MachineState();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public MachineState evalInstructions() throws x86RuntimeException {
+        MachineState state = initialState;
+        for (x86ProgramLine line : lines) {
+            state = line.eval(state);
+        }
+        return state;
+    }
+}
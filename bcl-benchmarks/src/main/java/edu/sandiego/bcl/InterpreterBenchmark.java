@@ -0,0 +1,123 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the average cost per instruction of executing arithmetic-heavy
+ * loops on a {@link DecodedProgram}, without recording any history: one
+ * instruction at a time, with fused pairs of instructions, and in place on a
+ * {@link MutableMachineState}.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=InterpreterBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    private static final int INSTRUCTIONS = 100_000;
+
+    /**
+     * Mostly arithmetic, with the flags only read by the loop's branch.
+     */
+    private static final String[] ARITHMETIC_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        "    movq $1, %rdx",
+        ".loop:",
+        "    addq %rax, %rcx",
+        "    imulq $3, %rdx",
+        "    xorq %rcx, %rdx",
+        "    subq $7, %rbx",
+        "    sarq $2, %rbx",
+        "    andl $255, %esi",
+        "    orq %rdx, %rsi",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    /**
+     * Mostly compares and conditional instructions that read the flags.
+     */
+    private static final String[] COMPARE_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        ".loop:",
+        "    cmpq %rax, %rbx",
+        "    cmovl %rax, %rbx",
+        "    testq $1, %rax",
+        "    sete %cl",
+        "    addq %rcx, %rdx",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    @Param({"arithmetic", "compare"})
+    private String program;
+
+    private DecodedProgram image;
+    private MachineState initialState;
+
+    @Setup
+    public void setUp() throws Exception {
+        x86Program p = new x86Program();
+        for (String line : program.equals("compare") ? COMPARE_LOOP : ARITHMETIC_LOOP) {
+            p.parseThenAddLine(line);
+        }
+        image = DecodedProgram.compile(p);
+        initialState = new MachineState();
+        initialState.setRip(image.getEntryPoint());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public MachineState run() throws x86RuntimeException {
+        MachineState state = initialState;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            state = image.step(state);
+        }
+        return state;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public MachineState runFused() throws x86RuntimeException {
+        MachineState state = initialState;
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            if (image.startsFusedPair(state.getRipRegister())) {
+                i++;
+            }
+            state = image.stepFused(state);
+        }
+        return state;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public MutableMachineState runInPlace() throws x86RuntimeException {
+        MutableMachineState state = new MutableMachineState(initialState);
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            image.step(state);
+        }
+        return state;
+    }
+}
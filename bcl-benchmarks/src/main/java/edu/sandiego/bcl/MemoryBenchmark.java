@@ -0,0 +1,83 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of memory accesses as the stack grows, the way it does
+ * in deeply recursive student code: pushes depth values, then pops them all
+ * (with the reported time per push/pop pair), and reads values from all over
+ * a stack that is depth values deep (with the reported time per read).
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=MemoryBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int depth;
+
+    private x86ProgramLine push, pop;
+    private MachineState initialState;
+
+    /**
+     * The state after pushing depth values, and its stack pointer.
+     */
+    private MachineState deepState;
+    private long stackTop;
+    private int nextSlot;
+
+    @Setup
+    public void setUp() throws Exception {
+        X86Parser parser = new X86Parser();
+        push = parser.parseLine("pushq %rax");
+        pop = parser.parseLine("popq %rbx");
+        initialState = new MachineState();
+
+        x86ProgramLine pushCounter = parser.parseLine("pushq %rcx");
+        x86ProgramLine incCounter = parser.parseLine("incq %rcx");
+        deepState = initialState;
+        for (int i = 0; i < depth; i++) {
+            deepState = incCounter.eval(pushCounter.eval(deepState));
+        }
+        stackTop = deepState.getRegisterValue(SubRegister.fromName("rsp"));
+        nextSlot = 0;
+    }
+
+    @Benchmark
+    public MachineState pushThenPop() throws x86RuntimeException {
+        MachineState state = initialState;
+        for (int i = 0; i < depth; i++) {
+            state = push.eval(state);
+        }
+        for (int i = 0; i < depth; i++) {
+            state = pop.eval(state);
+        }
+        return state;
+    }
+
+    @Benchmark
+    public long readDeepStack() throws x86RuntimeException {
+        // visits the slots in a scattered order (depth is never a multiple
+        // of 7919)
+        nextSlot = (nextSlot + 7919) % depth;
+        return deepState.getMemoryValue(stackTop + 8L * nextSlot, 8);
+    }
+}
@@ -0,0 +1,83 @@
+package edu.sandiego.bcl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the average cost of {@link X86Parser#parseLine} on the programs
+ * the parser tests use (copied into the corpus directory of this module's
+ * resources). Lines are parsed one per invocation, in order, and the parser
+ * is cleared whenever the end of the file is reached so that labels aren't
+ * defined twice. Lines that don't parse (all of them in
+ * invalid-instructions.s) are timed up to the exception.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=ParserBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"all-instructions.s", "comments.s", "labels.s", "invalid-instructions.s"})
+    private String file;
+
+    private String[] lines;
+    private int next;
+    private X86Parser parser;
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = readCorpus(file).toArray(new String[0]);
+        parser = new X86Parser();
+        next = 0;
+    }
+
+    /**
+     * @return The lines of the given file in the corpus.
+     */
+    static List<String> readCorpus(String name) throws IOException {
+        InputStream in = ParserBenchmark.class.getResourceAsStream("/corpus/" + name);
+        if (in == null) {
+            throw new IOException("no such file in the corpus: " + name);
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    @Benchmark
+    public Object parseLine() {
+        if (next == lines.length) {
+            next = 0;
+            parser.clear();
+        }
+        try {
+            return parser.parseLine(lines[next++]);
+        } catch (X86ParsingException e) {
+            return e;
+        }
+    }
+}
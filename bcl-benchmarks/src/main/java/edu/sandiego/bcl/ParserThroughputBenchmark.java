@@ -0,0 +1,52 @@
+package edu.sandiego.bcl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many lines of all-instructions.s {@link X86Parser} parses per
+ * second, the way a large program is loaded: one parser for the whole file,
+ * which is cleared whenever the end of the file is reached.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=ParserThroughputBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserThroughputBenchmark {
+
+    private String[] lines;
+    private int next;
+    private X86Parser parser;
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = ParserBenchmark.readCorpus("all-instructions.s").toArray(new String[0]);
+        parser = new X86Parser();
+        next = 0;
+    }
+
+    @Benchmark
+    public x86ProgramLine parseLine() throws X86ParsingException {
+        if (next == lines.length) {
+            next = 0;
+            parser.clear();
+        }
+        return parser.parseLine(lines[next++]);
+    }
+}
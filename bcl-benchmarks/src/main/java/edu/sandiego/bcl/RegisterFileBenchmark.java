@@ -0,0 +1,111 @@
+package edu.sandiego.bcl;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the primitive register file with the map based layout it replaced
+ * (a HashMap from register name to an 8 byte array plus origin) for the
+ * operations the simulator does on every instruction: reading a register and
+ * cloning the register file with one register updated.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=RegisterFile
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterFileBenchmark {
+
+    /**
+     * The register representation used before the register file: one of
+     * these per register, stored in a map keyed by register name.
+     */
+    private static final class MapRegisterState {
+        final byte[] value;
+        final int origin;
+
+        MapRegisterState(byte[] value, int origin) {
+            this.value = value;
+            this.origin = origin;
+        }
+    }
+
+    private Map<String, MapRegisterState> mapRegisters;
+    private RegisterFile registerFile;
+    private MachineState state;
+
+    /**
+     * Register selected by each benchmark invocation. This rotates through
+     * all the registers so the JIT can't specialize on a single one.
+     */
+    private int next;
+
+    @Setup
+    public void setUp() {
+        mapRegisters = new HashMap<>();
+        for (QuadRegister reg : QuadRegister.values()) {
+            mapRegisters.put(reg.getName(), new MapRegisterState(new byte[8], -1));
+        }
+        registerFile = new RegisterFile();
+        state = new MachineState();
+    }
+
+    private QuadRegister nextRegister() {
+        next = (next + 1) & 15;
+        return QuadRegister.values()[next];
+    }
+
+    @Benchmark
+    public Map<String, MapRegisterState> mapUpdate() {
+        String name = nextRegister().getName();
+        Map<String, MapRegisterState> updated = new HashMap<>(mapRegisters);
+        byte[] newVal = Arrays.copyOf(mapRegisters.get(name).value, 8);
+        newVal[7] = (byte) next;
+        updated.put(name, new MapRegisterState(newVal, next));
+        return updated;
+    }
+
+    @Benchmark
+    public RegisterFile registerFileUpdate() {
+        return registerFile.withValue(nextRegister(), next, next);
+    }
+
+    @Benchmark
+    public BigInteger mapRead() {
+        return new BigInteger(mapRegisters.get(nextRegister().getName()).value);
+    }
+
+    @Benchmark
+    public long registerFileRead() {
+        return registerFile.getValue(nextRegister());
+    }
+
+    @Benchmark
+    public MachineState cloneWithUpdatedRegister() throws x86RuntimeException {
+        // rsp only allows multiples of 8, so write to rax instead of it
+        QuadRegister reg = nextRegister();
+        SubRegister subReg = SubRegister.fromName(
+                reg == QuadRegister.RSP ? "rax" : reg.getName());
+        return state.cloneWithUpdatedRegister(subReg,
+                OptionalLong.of(next), StatusFlags.NONE, true);
+    }
+}
@@ -0,0 +1,136 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the average cost per instruction of running a program with
+ * {@link Simulation#run}, which includes recording the history (or not, in
+ * which case fused pairs of instructions are executed together). The
+ * programs are a loop of arithmetic, a loop that calls a function, and
+ * recursive Fibonacci.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=RunBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RunBenchmark {
+
+    private static final int INSTRUCTIONS = 100_000;
+
+    private static final String[] ARITHMETIC_LOOP = {
+        "main:",
+        "    movq $0, %rax",
+        "    movq $0, %rcx",
+        "    movq $1, %rdx",
+        ".loop:",
+        "    addq %rax, %rcx",
+        "    imulq $3, %rdx",
+        "    xorq %rcx, %rdx",
+        "    incq %rax",
+        "    cmpq $2000000000, %rax",
+        "    jl .loop"
+    };
+
+    private static final String[] CALL_LOOP = {
+        "# adds its argument to %rax",
+        "add_to_sum:",
+        "    pushq %rbp",
+        "    movq %rsp, %rbp",
+        "    addq %rdi, %rax",
+        "    popq %rbp",
+        "    retq",
+        "",
+        "main:",
+        "    movq $0, %rax",
+        "    movq $0, %rdi",
+        ".loop:",
+        "    incq %rdi",
+        "    callq add_to_sum",
+        "    cmpq $2000000000, %rdi",
+        "    jl .loop"
+    };
+
+    /**
+     * Computes fib(15) with naive recursion, over and over.
+     */
+    private static final String[] RECURSIVE_FIB = {
+        "fib:",
+        "    cmpq $1, %rdi",
+        "    jg .recurse",
+        "    movq %rdi, %rax",
+        "    retq",
+        ".recurse:",
+        "    pushq %rbx",
+        "    pushq %rdi",
+        "    decq %rdi",
+        "    callq fib",
+        "    movq %rax, %rbx",
+        "    popq %rdi",
+        "    subq $2, %rdi",
+        "    callq fib",
+        "    addq %rbx, %rax",
+        "    popq %rbx",
+        "    retq",
+        "",
+        "main:",
+        ".loop:",
+        "    movq $15, %rdi",
+        "    callq fib",
+        "    jmp .loop"
+    };
+
+    @Param({"arithmetic", "calls", "recursive"})
+    private String program;
+
+    @Param({"undo", "none"})
+    private String history;
+
+    private Simulation simulation;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulation = new Simulation();
+        String[] lines;
+        switch (program) {
+            case "calls":
+                lines = CALL_LOOP;
+                break;
+            case "recursive":
+                lines = RECURSIVE_FIB;
+                break;
+            default:
+                lines = ARITHMETIC_LOOP;
+        }
+        for (String line : lines) {
+            simulation.appendToProgram(line);
+        }
+        if (history.equals("none")) {
+            simulation.useNoHistory();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public RunResult run() {
+        simulation.restart();
+        return simulation.run(INSTRUCTIONS, Long.MAX_VALUE, new CancellationToken());
+    }
+}
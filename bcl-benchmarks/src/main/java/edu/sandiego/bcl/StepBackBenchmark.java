@@ -0,0 +1,88 @@
+package edu.sandiego.bcl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of {@link Simulation#stepBackward} (what a user waits
+ * for after pressing the step back button) with each kind of history. Every
+ * call is sampled, so the percentiles JMH reports show how long the slowest
+ * steps back take, not just the average. Whenever the simulation gets back
+ * to the beginning it is run forward again (which isn't timed).
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=StepBackBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBackBenchmark {
+
+    /**
+     * How far the simulation is run forward before stepping back.
+     */
+    private static final int STEPS = 100_000;
+
+    /**
+     * Pushes a counter over and over, summing the pushed values (with their
+     * upper half set to 1), so that every iteration writes both registers and
+     * memory.
+     */
+    private static final String[] STACK_LOOP = {
+        "main:",
+        "    movq $0, %rcx",
+        ".loop:",
+        "    pushq %rcx",
+        "    movl $1, 4(%rsp)",
+        "    addq (%rsp), %rax",
+        "    incq %rcx",
+        "    cmpq $2000000000, %rcx",
+        "    jl .loop"
+    };
+
+    @Param({"undo", "checkpoint"})
+    private String history;
+
+    private Simulation simulation;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulation = new Simulation();
+        for (String line : STACK_LOOP) {
+            simulation.appendToProgram(line);
+        }
+        if (history.equals("checkpoint")) {
+            simulation.useCheckpointHistory(16 * 1024 * 1024, 5_000_000);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void runForwardIfAtBeginning() throws x86RuntimeException {
+        if (simulation.isAtBeginning()) {
+            for (int i = 0; i < STEPS; i++) {
+                simulation.stepForward();
+            }
+        }
+    }
+
+    @Benchmark
+    public Simulation stepBackward() {
+        simulation.stepBackward();
+        return simulation;
+    }
+}
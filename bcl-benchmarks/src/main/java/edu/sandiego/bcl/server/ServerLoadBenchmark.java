@@ -0,0 +1,127 @@
+package edu.sandiego.bcl.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A load generator for {@link SimulationServer}: opens thousands of sessions
+ * on localhost, then has many client threads step random sessions forward
+ * (and occasionally back) as fast as they can. The score is the number of
+ * requests the server handles per second.
+ *
+ * Run with: mvn -Pbenchmark -DskipTests verify -Djmh.args=ServerLoadBenchmark
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class ServerLoadBenchmark {
+
+    /**
+     * Sums 1 to 100 over and over, so that sessions never finish.
+     */
+    private static final String PROGRAM = String.join("\n",
+            "start:",
+            "    movq $0, %rax",
+            "    movq $1, %rcx",
+            ".loop:",
+            "    addq %rcx, %rax",
+            "    incq %rcx",
+            "    cmpq $100, %rcx",
+            "    jle .loop",
+            "    jmp start",
+            "");
+
+    /**
+     * How long to wait for a response. The JDK's HttpServer now and then
+     * loses a request that arrives on a connection it is closing for being
+     * idle, which would otherwise hang the benchmark.
+     */
+    private static final int RESPONSE_TIMEOUT_MILLIS = 10_000;
+
+    @Param({"1000", "5000"})
+    private int sessions;
+
+    private SimulationServer server;
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.server = new SimulationServer(new InetSocketAddress("localhost", 0),
+                Long.MAX_VALUE, TimeUnit.HOURS.toNanos(1), this.sessions);
+        this.server.start();
+        this.ids = new String[this.sessions];
+        for (int i = 0; i < this.sessions; i++) {
+            String response;
+            try {
+                response = request("POST", "/sessions", PROGRAM);
+            } catch (SocketTimeoutException e) {
+                // the request was lost (see RESPONSE_TIMEOUT_MILLIS)
+                response = request("POST", "/sessions", PROGRAM);
+            }
+            // {"id":"...", ...
+            this.ids[i] = response.substring(7, response.indexOf('"', 7));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.server.stop();
+    }
+
+    private String request(String method, String path, String body)
+            throws IOException {
+        URL url = new URL("http://localhost:" + this.server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(RESPONSE_TIMEOUT_MILLIS);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (connection.getResponseCode() >= 400) {
+            throw new IOException(method + " " + path + ": "
+                    + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public String step() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = this.ids[random.nextInt(this.ids.length)];
+        String action = random.nextInt(8) == 0 ? "/back?count=2" : "/forward?count=10";
+        return request("POST", "/sessions/" + id + action, null);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.sandiego.bcl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for BaselineComparison.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class BaselineComparisonTest {
+
+    private static final String HEADER = "\"Benchmark\",\"Mode\",\"Threads\","
+            + "\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Param: depth\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String... lines) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        System.out.println("read");
+        Map<String, BaselineComparison.Score> scores = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,12.5,0.25,\"ns/op\",100",
+                "\"a.B.push\",\"avgt\",1,5,130.0,NaN,\"ns/op\",1000",
+                "\"a.C.run\",\"thrpt\",1,5,\"1449,5\",3.0,\"ops/s\",\"\""));
+        assertEquals(Arrays.asList("a.B.push depth=100", "a.B.push depth=1000",
+                "a.C.run"), Arrays.asList(scores.keySet().toArray()));
+        assertEquals(12.5, scores.get("a.B.push depth=100").value, 0);
+        assertEquals(0.25, scores.get("a.B.push depth=100").error, 0);
+        assertTrue(Double.isNaN(scores.get("a.B.push depth=1000").error));
+        assertEquals("avgt", scores.get("a.B.push depth=1000").mode);
+        assertEquals(1449.5, scores.get("a.C.run").value, 0);
+        assertEquals("ops/s", scores.get("a.C.run").unit);
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        System.out.println("compare");
+        Map<String, BaselineComparison.Score> baseline = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,100,1,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,1000,1,\"ops/s\",\"\"",
+                "\"a.D.gone\",\"avgt\",1,5,1,1,\"ns/op\",\"\""));
+        Map<String, BaselineComparison.Score> faster = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,50,1,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,1050,1,\"ops/s\",\"\"",
+                "\"a.E.new\",\"avgt\",1,5,1,1,\"ns/op\",\"\""));
+        Map<String, BaselineComparison.Score> slower = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,105,1,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,800,1,\"ops/s\",\"\""));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        assertTrue(BaselineComparison.compare(baseline, faster, 10, out));
+        String report = bytes.toString("UTF-8");
+        assertTrue(report, report.contains("a.B.push depth=100: 100.000 -> 50.000 ns/op (-50.0% +/- 2.0%)  improvement"));
+        assertTrue(report, report.contains("a.C.run: 1000.000 -> 1050.000 ops/s (+5.0% +/- 0.2%)\n"));
+        assertTrue(report, report.contains("a.E.new: 1.000 ns/op (new)"));
+        assertTrue(report, report.contains("a.D.gone: missing"));
+
+        bytes.reset();
+        assertFalse(BaselineComparison.compare(baseline, slower, 10, out));
+        report = bytes.toString("UTF-8");
+        assertTrue(report, report.contains("(+5.0% +/- 2.0%)\n"));
+        assertTrue(report, report.contains("a.C.run: 1000.000 -> 800.000 ops/s (-20.0% +/- 0.2%)  REGRESSION"));
+    }
+
+    @Test
+    public void testCompareWithErrors() throws Exception {
+        System.out.println("compareWithErrors");
+        Map<String, BaselineComparison.Score> baseline = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,100,10,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,1000,50,\"ops/s\",\"\"",
+                "\"a.D.max\",\"sample\",1,1,100,NaN,\"ns/op\",\"\""));
+        Map<String, BaselineComparison.Score> noisy = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,130,15,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,700,50,\"ops/s\",\"\""));
+        Map<String, BaselineComparison.Score> slower = BaselineComparison.read(write(
+                HEADER,
+                "\"a.B.push\",\"avgt\",1,5,150,15,\"ns/op\",100",
+                "\"a.C.run\",\"thrpt\",1,5,850,50,\"ops/s\",\"\"",
+                "\"a.D.max\",\"sample\",1,1,400,NaN,\"ns/op\",\"\""));
+
+        // 30% worse, but no more than the threshold plus the errors (35%)
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        assertFalse(BaselineComparison.compare(baseline, noisy, 10, out));
+        String report = bytes.toString("UTF-8");
+        assertTrue(report, report.contains("a.B.push depth=100: 100.000 -> 130.000 ns/op (+30.0% +/- 25.0%)\n"));
+        assertTrue(report, report.contains("a.C.run: 1000.000 -> 700.000 ops/s (-30.0% +/- 10.0%)  REGRESSION"));
+
+        bytes.reset();
+        assertFalse(BaselineComparison.compare(baseline, slower, 10, out));
+        report = bytes.toString("UTF-8");
+        assertTrue(report, report.contains("(+50.0% +/- 25.0%)  REGRESSION"));
+        assertTrue(report, report.contains("a.C.run: 1000.000 -> 850.000 ops/s (-15.0% +/- 10.0%)\n"));
+        assertTrue(report, report.contains("a.D.max: 100.000 -> 400.000 ns/op (+300.0%, no error given)\n"));
+    }
+}
@@ -0,0 +1,242 @@
+package edu.sandiego.bcl;
+
+/**
+ * The arithmetic logic unit: computes the results and status flags of the
+ * arithmetic and logical operations using primitive long math.
+ *
+ * Operand values are longs holding the sign extended value of an operand of
+ * the given size (e.g. a byte operand with value 0xFF is -1), which is how
+ * operands report their values. Results are returned in the same form.
+ *
+ * Results and flags are calculated by separate methods so callers that
+ * don't need the flags (or that want to compute them later) don't pay for
+ * them. Both are pure functions of the operation and its inputs.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class ALU {
+
+    /**
+     * The operations supported by the ALU. For the shift operations, the
+     * second operand is the shift count.
+     */
+    public enum Operation {
+        ADD, SUB, IMUL, AND, OR, XOR, INC, DEC, NEG, SAL, SAR, SHR
+    }
+
+    private ALU() {
+    }
+
+    /**
+     * @param size The size of a value.
+     * @return A mask with the lowest {@code size} bytes set.
+     */
+    public static long mask(OpSize size) {
+        return size == OpSize.QUAD ? -1L : (1L << size.numBits()) - 1;
+    }
+
+    /**
+     * @param size The size of a value.
+     * @return The most negative value of the given size.
+     */
+    public static long minValue(OpSize size) {
+        return Long.MIN_VALUE >> (64 - size.numBits());
+    }
+
+    /**
+     * Truncates a value to the given size, sign extending the result.
+     *
+     * @param val The value to truncate.
+     * @param size The size to truncate to.
+     * @return The sign extended value of the lowest {@code size} bytes of
+     * {@code val}.
+     */
+    public static long truncate(long val, OpSize size) {
+        int unusedBits = 64 - size.numBits();
+        return (val << unusedBits) >> unusedBits;
+    }
+
+    /**
+     * Zero extends a value of the given size.
+     *
+     * @param val The value to extend.
+     * @param size The size of the value.
+     * @return The lowest {@code size} bytes of {@code val}, zero extended.
+     */
+    public static long zeroExtend(long val, OpSize size) {
+        return val & mask(size);
+    }
+
+    /**
+     * Masks a shift count the same way the hardware does: 6 bits for quad
+     * operands, 5 bits for all other sizes.
+     *
+     * @param count The requested shift count.
+     * @param size The size of the value being shifted.
+     * @return The shift count that is actually used.
+     */
+    public static int shiftCount(long count, OpSize size) {
+        return (int) (count & (size == OpSize.QUAD ? 0x3F : 0x1F));
+    }
+
+    /**
+     * Computes the result of an operation.
+     *
+     * @param op The operation to perform.
+     * @param a The first operand (i.e. the destination operand).
+     * @param b The second operand (i.e. the source operand or shift count).
+     * Ignored by operations that only have one operand.
+     * @param size The size of the operation.
+     * @return The result of the operation, truncated to {@code size}.
+     */
+    public static long result(Operation op, long a, long b, OpSize size) {
+        switch (op) {
+            case ADD:
+                return truncate(a + b, size);
+            case SUB:
+                return truncate(a - b, size);
+            case IMUL:
+                return truncate(a * b, size);
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            case INC:
+                return truncate(a + 1, size);
+            case DEC:
+                return truncate(a - 1, size);
+            case NEG:
+                return truncate(-a, size);
+            case SAL:
+                return truncate(a << shiftCount(b, size), size);
+            case SAR:
+                return a >> shiftCount(b, size);
+            case SHR:
+                return truncate(zeroExtend(a, size) >>> shiftCount(b, size), size);
+            default:
+                throw new RuntimeException("unsupported ALU operation: " + op);
+        }
+    }
+
+    /**
+     * Computes the status flags written by an operation.
+     *
+     * @param op The operation that was performed.
+     * @param a The first operand (i.e. the destination operand).
+     * @param b The second operand (i.e. the source operand or shift count).
+     * Ignored by operations that only have one operand.
+     * @param size The size of the operation.
+     * @return The flags written by the operation (see {@link StatusFlags}).
+     */
+    public static int flags(Operation op, long a, long b, OpSize size) {
+        long r = result(op, a, b, size);
+        switch (op) {
+            case ADD:
+                return signAndZero(r, carryAndOverflow(
+                        Long.compareUnsigned(zeroExtend(r, size), zeroExtend(a, size)) < 0,
+                        ((a ^ r) & (b ^ r)) < 0));
+            case SUB:
+                return signAndZero(r, carryAndOverflow(
+                        Long.compareUnsigned(zeroExtend(a, size), zeroExtend(b, size)) < 0,
+                        ((a ^ b) & (a ^ r)) < 0));
+            case IMUL:
+            {
+                boolean overflow;
+                if (size == OpSize.QUAD) {
+                    overflow = Math.multiplyHigh(a, b) != (r >> 63);
+                } else {
+                    // The full product of two (at most) 32-bit values always
+                    // fits in a long.
+                    overflow = a * b != r;
+                }
+                // CF is always the same as OF for imul
+                return signAndZero(r, carryAndOverflow(overflow, overflow));
+            }
+            case AND:
+            case OR:
+            case XOR:
+                return signAndZero(r, carryAndOverflow(false, false));
+            case INC:
+                // inc leaves CF unchanged
+                return signAndZero(r, StatusFlags.set(StatusFlags.NONE,
+                        StatusFlags.OF, r == minValue(size)));
+            case DEC:
+                // dec leaves CF unchanged
+                return signAndZero(r, StatusFlags.set(StatusFlags.NONE,
+                        StatusFlags.OF, a == minValue(size)));
+            case NEG:
+                return signAndZero(r, carryAndOverflow(a != 0,
+                        a == minValue(size)));
+            case SAL:
+            case SAR:
+            case SHR:
+                return shiftFlags(op, a, shiftCount(b, size), r, size);
+            default:
+                throw new RuntimeException("unsupported ALU operation: " + op);
+        }
+    }
+
+    /**
+     * Computes the status flags written by a shift.
+     *
+     * @param op The shift operation that was performed.
+     * @param a The value that was shifted.
+     * @param count The (masked) shift count.
+     * @param r The result of the shift.
+     * @param size The size of the operation.
+     * @return The flags written by the shift.
+     */
+    private static int shiftFlags(Operation op, long a, int count, long r, OpSize size) {
+        // Shifting by zero leaves all of the flags unchanged.
+        if (count == 0) {
+            return StatusFlags.NONE;
+        }
+
+        // CF is the last bit shifted out of the value.
+        boolean carry;
+        if (op == Operation.SAL) {
+            carry = ((zeroExtend(a, size) << (count - 1)) & (1L << (size.numBits() - 1))) != 0;
+        } else if (op == Operation.SAR) {
+            carry = ((a >> (count - 1)) & 1) != 0;
+        } else {
+            carry = ((zeroExtend(a, size) >>> (count - 1)) & 1) != 0;
+        }
+
+        // OF is only defined when shifting by 1. In all other cases we
+        // clear it.
+        boolean overflow = false;
+        if (count == 1) {
+            if (op == Operation.SAL) {
+                overflow = (r < 0) != carry;
+            } else if (op == Operation.SHR) {
+                overflow = a < 0;
+            }
+        }
+
+        return signAndZero(r, carryAndOverflow(carry, overflow));
+    }
+
+    /**
+     * @param carry The value of CF.
+     * @param overflow The value of OF.
+     * @return Flags with CF and OF written.
+     */
+    private static int carryAndOverflow(boolean carry, boolean overflow) {
+        int flags = StatusFlags.set(StatusFlags.NONE, StatusFlags.CF, carry);
+        return StatusFlags.set(flags, StatusFlags.OF, overflow);
+    }
+
+    /**
+     * Sets the SF and ZF flags based on the given (sign extended) result.
+     *
+     * @param r The result used to determine SF and ZF.
+     * @param flags The flags to update.
+     * @return The updated flags.
+     */
+    public static int signAndZero(long r, int flags) {
+        flags = StatusFlags.set(flags, StatusFlags.ZF, r == 0);
+        return StatusFlags.set(flags, StatusFlags.SF, r < 0);
+    }
+}
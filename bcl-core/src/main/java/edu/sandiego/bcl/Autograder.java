@@ -0,0 +1,341 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Grades submitted programs by running each of them on a set of
+ * {@link TestVector test vectors} and comparing the registers they end with
+ * to the expected values.
+ *
+ * Grading is spread over a work-stealing {@link ForkJoinPool}: every
+ * submission is a task that parses and decodes its program once, then forks
+ * a task per vector, all of which share the decoded program (each run has its
+ * own {@link MutableMachineState}). Idle workers steal vectors from
+ * submissions that are still running, so throughput keeps up with the number
+ * of cores even when submissions take very different amounts of time.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class Autograder {
+
+    /**
+     * The outcome of running a submission on one test vector.
+     */
+    public static final class Outcome {
+        private final TestVector vector;
+        private final boolean passed;
+        private final String detail;
+
+        Outcome(TestVector vector, boolean passed, String detail) {
+            this.vector = vector;
+            this.passed = passed;
+            this.detail = detail;
+        }
+
+        public TestVector getVector() {
+            return this.vector;
+        }
+
+        public boolean hasPassed() {
+            return this.passed;
+        }
+
+        /**
+         * @return Why the vector failed (e.g. which register had the wrong
+         * value), or an empty string if it passed.
+         */
+        public String getDetail() {
+            return this.detail;
+        }
+    }
+
+    /**
+     * The grades of a single submission.
+     */
+    public static final class Report {
+        private final String submission;
+        private final Optional<String> loadError;
+        private final List<Outcome> outcomes;
+
+        Report(String submission, Optional<String> loadError, List<Outcome> outcomes) {
+            this.submission = submission;
+            this.loadError = loadError;
+            this.outcomes = Collections.unmodifiableList(outcomes);
+        }
+
+        public String getSubmission() {
+            return this.submission;
+        }
+
+        /**
+         * @return Why the submission couldn't be read or parsed, if it
+         * couldn't (in which case it fails every vector).
+         */
+        public Optional<String> getLoadError() {
+            return this.loadError;
+        }
+
+        /**
+         * @return The outcome of each vector, in the grader's order (empty if
+         * the submission couldn't be loaded).
+         */
+        public List<Outcome> getOutcomes() {
+            return this.outcomes;
+        }
+
+        /**
+         * @return The number of vectors the submission passed.
+         */
+        public int getScore() {
+            return (int) this.outcomes.stream().filter(Outcome::hasPassed).count();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            if (this.loadError.isPresent()) {
+                return s.append(this.submission).append(": 0 (")
+                        .append(this.loadError.get()).append(')').toString();
+            }
+            s.append(this.submission).append(": ").append(getScore())
+                    .append('/').append(this.outcomes.size());
+            for (Outcome outcome : this.outcomes) {
+                if (!outcome.hasPassed()) {
+                    s.append("\n\t").append(outcome.getVector().getName())
+                            .append(": ").append(outcome.getDetail());
+                }
+            }
+            return s.toString();
+        }
+    }
+
+    private final List<TestVector> vectors;
+    private final long maxInstructions;
+    private final long maxNanos;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param vectors The vectors to grade with, each with its expected
+     * values.
+     * @param maxInstructions The maximum number of instructions a submission
+     * may execute on each vector.
+     * @param maxNanos The maximum amount of time a submission may run for on
+     * each vector.
+     * @param pool The pool to grade in.
+     */
+    public Autograder(List<TestVector> vectors, long maxInstructions,
+            long maxNanos, ForkJoinPool pool) {
+        this.vectors = Collections.unmodifiableList(new ArrayList<>(vectors));
+        this.maxInstructions = maxInstructions;
+        this.maxNanos = maxNanos;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a grader whose expected values come from running a reference
+     * solution on each vector.
+     *
+     * @param reference The reference solution.
+     * @param checkedRegisters The registers whose final values are checked
+     * (e.g. "eax").
+     * @param vectors The vectors to grade with (any expected values they
+     * have are replaced).
+     * @param maxInstructions The maximum number of instructions a program may
+     * execute on each vector.
+     * @param maxNanos The maximum amount of time a program may run for on
+     * each vector.
+     * @param pool The pool to run the reference solution and grade in.
+     * @return The new grader.
+     * @throws IllegalArgumentException if one of the checked registers doesn't
+     * exist or the reference solution doesn't finish on one of the vectors.
+     */
+    public static Autograder withReference(x86Program reference,
+            List<String> checkedRegisters, List<TestVector> vectors,
+            long maxInstructions, long maxNanos, ForkJoinPool pool) {
+        List<SubRegister> checked = new ArrayList<>();
+        for (String name : checkedRegisters) {
+            SubRegister reg = SubRegister.fromName(name);
+            if (reg == null) {
+                throw new IllegalArgumentException("Invalid register name: " + name);
+            }
+            checked.add(reg);
+        }
+
+        DecodedProgram image = DecodedProgram.compile(reference, true);
+        List<RecursiveTask<TestVector>> tasks = new ArrayList<>();
+        for (TestVector vector : vectors) {
+            tasks.add(new RecursiveTask<TestVector>() {
+                @Override
+                protected TestVector compute() {
+                    MutableMachineState state = run(image, vector,
+                            maxInstructions, maxNanos);
+                    if (state == null) {
+                        throw new IllegalArgumentException("Reference solution"
+                                + " doesn't finish on vector " + vector.getName());
+                    }
+                    Map<String, Long> expected = new LinkedHashMap<>();
+                    for (SubRegister reg : checked) {
+                        expected.put(reg.getName(), state.getRegisterValue(reg));
+                    }
+                    return vector.withExpected(expected);
+                }
+            });
+        }
+
+        List<TestVector> withExpected = pool.invoke(new RecursiveTask<List<TestVector>>() {
+            @Override
+            protected List<TestVector> compute() {
+                List<TestVector> results = new ArrayList<>();
+                for (RecursiveTask<TestVector> task : ForkJoinTask.invokeAll(tasks)) {
+                    results.add(task.join());
+                }
+                return results;
+            }
+        });
+        return new Autograder(withExpected, maxInstructions, maxNanos, pool);
+    }
+
+    public List<TestVector> getVectors() {
+        return this.vectors;
+    }
+
+    /**
+     * Grades the programs in the given files.
+     *
+     * @param submissions The files to grade.
+     * @return The report of each submission, in the same order.
+     */
+    public List<Report> grade(List<File> submissions) {
+        List<SubmissionTask> tasks = new ArrayList<>();
+        for (File file : submissions) {
+            tasks.add(new SubmissionTask(file));
+        }
+        return this.pool.invoke(new RecursiveTask<List<Report>>() {
+            @Override
+            protected List<Report> compute() {
+                List<Report> reports = new ArrayList<>();
+                for (SubmissionTask task : ForkJoinTask.invokeAll(tasks)) {
+                    reports.add(task.join());
+                }
+                return reports;
+            }
+        });
+    }
+
+    /**
+     * Grades a single, already parsed program (in the calling thread and
+     * whatever pool it belongs to).
+     *
+     * @param name The name to give the submission in its report.
+     * @param program The program to grade.
+     * @return The submission's report.
+     */
+    public Report grade(String name, x86Program program) {
+        DecodedProgram image = DecodedProgram.compile(program, true);
+        List<Outcome> outcomes = new ArrayList<>();
+        for (TestVector vector : this.vectors) {
+            outcomes.add(check(image, vector));
+        }
+        return new Report(name, Optional.empty(), outcomes);
+    }
+
+    /**
+     * Parses a submission once, then checks it on every vector in parallel.
+     */
+    private final class SubmissionTask extends RecursiveTask<Report> {
+        private final File file;
+
+        SubmissionTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected Report compute() {
+            String name = this.file.getPath();
+            x86Program program;
+            try {
+                program = new x86Program(this.file);
+            } catch (X86ParsingException e) {
+                return new Report(name, Optional.of(e.getMessage()
+                        + e.getLine().map(l -> ": " + l).orElse("")),
+                        Collections.emptyList());
+            } catch (IOException e) {
+                return new Report(name, Optional.of(e.toString()),
+                        Collections.emptyList());
+            }
+
+            DecodedProgram image = DecodedProgram.compile(program, true);
+            List<RecursiveTask<Outcome>> checks = new ArrayList<>();
+            for (TestVector vector : vectors) {
+                checks.add(new RecursiveTask<Outcome>() {
+                    @Override
+                    protected Outcome compute() {
+                        return check(image, vector);
+                    }
+                });
+            }
+            List<Outcome> outcomes = new ArrayList<>();
+            for (RecursiveTask<Outcome> check : ForkJoinTask.invokeAll(checks)) {
+                outcomes.add(check.join());
+            }
+            return new Report(name, Optional.empty(), outcomes);
+        }
+    }
+
+    /**
+     * Runs the given program on the given vector and compares the result
+     * with the vector's expected values.
+     */
+    private Outcome check(DecodedProgram image, TestVector vector) {
+        MutableMachineState state = new MutableMachineState(vector.getInitialState());
+        state.setRip(image.getEntryPoint());
+        RunResult result = image.run(state, this.maxInstructions, this.maxNanos,
+                new CancellationToken());
+        if (result.getStatus() == RunResult.Status.ERROR) {
+            return new Outcome(vector, false, "error on line "
+                    + state.getRipRegister() + ": "
+                    + result.getError().get().getMessage());
+        }
+        if (result.getStatus() != RunResult.Status.FINISHED) {
+            return new Outcome(vector, false, "didn't finish within "
+                    + result.getInstructionsExecuted() + " instructions");
+        }
+
+        StringBuilder mismatches = new StringBuilder();
+        for (Map.Entry<String, Long> expected : vector.getExpected().entrySet()) {
+            long actual = state.getRegisterValue(SubRegister.fromName(expected.getKey()));
+            if (actual != expected.getValue()) {
+                if (mismatches.length() > 0) {
+                    mismatches.append(", ");
+                }
+                mismatches.append(expected.getKey()).append(" is ").append(actual)
+                        .append(" (expected ").append(expected.getValue()).append(')');
+            }
+        }
+        return new Outcome(vector, mismatches.length() == 0, mismatches.toString());
+    }
+
+    /**
+     * Runs the given program on the given vector.
+     *
+     * @return The final state, or null if the program didn't finish.
+     */
+    private static MutableMachineState run(DecodedProgram image,
+            TestVector vector, long maxInstructions, long maxNanos) {
+        MutableMachineState state = new MutableMachineState(vector.getInitialState());
+        state.setRip(image.getEntryPoint());
+        RunResult result = image.run(state, maxInstructions, maxNanos,
+                new CancellationToken());
+        return result.getStatus() == RunResult.Status.FINISHED ? state : null;
+    }
+}
@@ -0,0 +1,326 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command-line entry point that runs assembly files to completion without the
+ * user interface, printing the final registers, flags and stack of each one.
+ *
+ * Usage: {@code BatchRunner [options] file-or-directory...}, where a directory
+ * stands for all of the .s files in it. The options are:
+ * <ul>
+ * <li>{@code --max-instructions N}: stop each program after N instructions
+ * (default 10,000,000).</li>
+ * <li>{@code --time-limit MS}: stop each program after MS milliseconds
+ * (default 10,000).</li>
+ * <li>{@code --json}: print one JSON object per line instead of readable
+ * text.</li>
+ * <li>{@code --threads N}: run up to N files at once (default: the number of
+ * processors).</li>
+ * </ul>
+ *
+ * Files run in parallel and each result is printed as soon as its file
+ * finishes, so results don't necessarily come out in the order of the files.
+ * The exit status is 0 if every program ran to completion, 1 if any of them
+ * couldn't be loaded, failed or ran out of budget, and 2 if the arguments were
+ * invalid.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class BatchRunner {
+
+    static final long DEFAULT_MAX_INSTRUCTIONS = 10_000_000;
+    static final long DEFAULT_TIME_LIMIT_MILLIS = 10_000;
+
+    private static final String USAGE = "usage: BatchRunner [--max-instructions N]"
+            + " [--time-limit MS] [--json] [--threads N] file-or-directory...";
+
+    /**
+     * The status of a file that couldn't be read or parsed.
+     */
+    static final String LOAD_ERROR = "LOAD_ERROR";
+
+    /**
+     * The outcome of running a single file.
+     */
+    static final class Result {
+        final String fileName;
+
+        /**
+         * The name of the run's {@link RunResult.Status}, or LOAD_ERROR.
+         */
+        final String status;
+        final long instructionsExecuted;
+        final long elapsedNanos;
+
+        /**
+         * The message of the error that stopped the file from loading or
+         * running, or null if there was none.
+         */
+        final String error;
+
+        /**
+         * The state at the end of the run, or null if the file couldn't be
+         * loaded.
+         */
+        final MachineState finalState;
+
+        Result(String fileName, String status, long instructionsExecuted,
+                long elapsedNanos, String error, MachineState finalState) {
+            this.fileName = fileName;
+            this.status = status;
+            this.instructionsExecuted = instructionsExecuted;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+            this.finalState = finalState;
+        }
+
+        boolean isFinished() {
+            return this.status.equals(RunResult.Status.FINISHED.name());
+        }
+    }
+
+    private final long maxInstructions;
+    private final long maxNanos;
+    private final boolean json;
+    private final int numThreads;
+
+    BatchRunner(long maxInstructions, long maxNanos, boolean json, int numThreads) {
+        this.maxInstructions = maxInstructions;
+        this.maxNanos = maxNanos;
+        this.json = json;
+        this.numThreads = numThreads;
+    }
+
+    public static void main(String[] args) {
+        long maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+        long timeLimit = DEFAULT_TIME_LIMIT_MILLIS;
+        boolean json = false;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        List<File> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--max-instructions":
+                        maxInstructions = Long.parseLong(valueOf(args, ++i));
+                        break;
+                    case "--time-limit":
+                        timeLimit = Long.parseLong(valueOf(args, ++i));
+                        break;
+                    case "--json":
+                        json = true;
+                        break;
+                    case "--threads":
+                        numThreads = Integer.parseInt(valueOf(args, ++i));
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("unknown option " + args[i]);
+                        }
+                        files.addAll(filesIn(new File(args[i])));
+                        break;
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("no .s files given");
+            }
+            if (maxInstructions <= 0 || timeLimit <= 0 || numThreads < 1) {
+                throw new IllegalArgumentException("limits must be positive");
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        BatchRunner runner = new BatchRunner(maxInstructions,
+                TimeUnit.MILLISECONDS.toNanos(timeLimit), json, numThreads);
+        System.exit(runner.runAll(files, System.out) ? 0 : 1);
+    }
+
+    private static String valueOf(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * @return The given file, or the .s files in it (sorted by name) if it is
+     * a directory.
+     * @throws IOException if the file doesn't exist or the directory can't
+     * be read.
+     */
+    static List<File> filesIn(File file) throws IOException {
+        if (!file.exists()) {
+            throw new IOException(file + " does not exist");
+        }
+        if (!file.isDirectory()) {
+            return Collections.singletonList(file);
+        }
+        File[] contents = file.listFiles((dir, name) -> name.endsWith(".s"));
+        if (contents == null) {
+            throw new IOException("unable to read " + file);
+        }
+        Arrays.sort(contents);
+        return Arrays.asList(contents);
+    }
+
+    /**
+     * Runs all of the given files, printing each result as soon as it is
+     * ready.
+     *
+     * @param files The files to run.
+     * @param out Where to print the results.
+     * @return True if every program ran to completion.
+     */
+    boolean runAll(List<File> files, PrintStream out) {
+        boolean allFinished = true;
+        if (files.size() == 1 || this.numThreads == 1) {
+            for (File file : files) {
+                allFinished &= print(run(file), out);
+            }
+            return allFinished;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(this.numThreads, files.size()));
+        try {
+            CompletionService<Result> results = new ExecutorCompletionService<>(pool);
+            for (File file : files) {
+                results.submit(() -> run(file));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                allFinished &= print(results.take().get(), out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // run catches everything a program can throw
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return allFinished;
+    }
+
+    private boolean print(Result result, PrintStream out) {
+        out.println(this.json ? toJson(result) : toText(result));
+        out.flush();
+        return result.isFinished();
+    }
+
+    /**
+     * Loads the given file and runs it until it finishes, fails or runs out
+     * of budget.
+     */
+    Result run(File file) {
+        String name = file.getPath();
+        x86Program program;
+        try {
+            program = new x86Program(file);
+        } catch (X86ParsingException e) {
+            return new Result(name, LOAD_ERROR, 0, 0,
+                    e.getMessage() + e.getLine().map(l -> ": " + l).orElse(""), null);
+        } catch (IOException e) {
+            return new Result(name, LOAD_ERROR, 0, 0, e.toString(), null);
+        }
+
+        DecodedProgram image = DecodedProgram.compile(program, true);
+        MachineState initial = new MachineState();
+        initial.setRip(image.getEntryPoint());
+        MutableMachineState state = new MutableMachineState(initial);
+
+        RunResult result = image.run(state, this.maxInstructions,
+                this.maxNanos, new CancellationToken());
+        return new Result(name, result.getStatus().name(),
+                result.getInstructionsExecuted(), result.getElapsedNanos(),
+                result.getError().map(Exception::getMessage).orElse(null),
+                state.toMachineState());
+    }
+
+    /**
+     * @return The given result as readable text (over multiple lines).
+     */
+    static String toText(Result result) {
+        StringBuilder s = new StringBuilder();
+        s.append("== ").append(result.fileName).append(": ").append(result.status);
+        if (result.finalState != null) {
+            s.append(" after ").append(result.instructionsExecuted)
+                    .append(" instructions (")
+                    .append(TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos))
+                    .append(" ms)");
+        }
+        if (result.error != null) {
+            s.append("\nError: ").append(result.error);
+        }
+        if (result.finalState == null) {
+            return s.toString();
+        }
+
+        MachineState state = result.finalState;
+        s.append("\nRegisters:");
+        for (QuadRegister reg : QuadRegister.values()) {
+            long value = state.getRegisterFile().getValue(reg);
+            s.append(String.format("%n\t%-5s0x%016X (%d)", reg.getName() + ":",
+                    value, value));
+        }
+        s.append(String.format("%nFlags: ZF=%d SF=%d OF=%d CF=%d",
+                state.getZeroFlag() ? 1 : 0, state.getSignFlag() ? 1 : 0,
+                state.getOverflowFlag() ? 1 : 0, state.getCarryFlag() ? 1 : 0));
+        s.append("\nStack:");
+        List<StackEntry> stack = state.getStackEntries();
+        if (stack.isEmpty()) {
+            s.append(" empty");
+        }
+        for (StackEntry entry : stack) {
+            s.append(String.format("%n\t0x%X-0x%X: %s (line %d)",
+                    entry.getStartAddress(), entry.getEndAddress(),
+                    entry.getValue(), entry.getOrigin()));
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return The given result as a single line of JSON.
+     */
+    static String toJson(Result result) {
+        StringBuilder s = new StringBuilder();
+        s.append("{\"file\":").append(Json.quote(result.fileName));
+        s.append(",\"status\":").append(Json.quote(result.status));
+        s.append(",\"instructions\":").append(result.instructionsExecuted);
+        s.append(",\"elapsedNanos\":").append(result.elapsedNanos);
+        if (result.error != null) {
+            s.append(",\"error\":").append(Json.quote(result.error));
+        }
+        if (result.finalState != null) {
+            MachineState state = result.finalState;
+            s.append(",\"registers\":{");
+            for (QuadRegister reg : QuadRegister.values()) {
+                if (reg.ordinal() > 0) {
+                    s.append(',');
+                }
+                s.append(Json.quote(reg.getName())).append(':').append(Json.quote(
+                        String.format("0x%016X", state.getRegisterFile().getValue(reg))));
+            }
+            s.append("},\"flags\":").append(Json.flags(state.getZeroFlag(),
+                    state.getSignFlag(), state.getOverflowFlag(), state.getCarryFlag()));
+            s.append(",\"stack\":").append(Json.stack(state.getStackEntries()));
+        }
+        return s.append('}').toString();
+    }
+}
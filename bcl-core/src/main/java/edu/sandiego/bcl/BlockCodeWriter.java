@@ -0,0 +1,741 @@
+package edu.sandiego.bcl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Writes the class file of a {@link CompiledBlock.Code} that executes a block
+ * of lines of a {@link DecodedProgram}.
+ *
+ * The generated run method loads the registers that the block uses into
+ * locals, executes the block's instructions on those locals, then stores the
+ * registers it wrote back before returning the line where execution
+ * continues. Status flags are handled the same way as in
+ * {@link MachineState}: the operands of the last flag-writing instruction are
+ * kept in locals, and flags are only computed (with {@link ALU#flags}) when an
+ * instruction tests a condition. Conditional moves and jumps pick their
+ * results with {@link CompiledBlock#select}, so the generated code never
+ * branches and doesn't need stack map frames.
+ *
+ * Only instructions that can't fail are compiled: ones that read and write
+ * registers (other than %rsp) and constants, along with jumps to labels that
+ * exist.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class BlockCodeWriter {
+
+    /*
+     * Internal names and descriptors of the classes and methods the generated
+     * code uses.
+     */
+    private static final String PACKAGE = "edu/sandiego/bcl/";
+    private static final String OPERATION = PACKAGE + "ALU$Operation";
+    private static final String OP_SIZE = PACKAGE + "OpSize";
+    private static final String ALU_DESC = "(L" + OPERATION + ";JJL" + OP_SIZE + ";)";
+    private static final String CODE = PACKAGE + "CompiledBlock$Code";
+    private static final String PREDICATE = "java/util/function/IntPredicate";
+    private static final String RUN_DESC = "([J[I[J[L" + PREDICATE + ";I)I";
+
+    /*
+     * Local variables of the run method. The longs take two slots each.
+     */
+    private static final int REGISTERS = 1;
+    private static final int ORIGINS = 2;
+    private static final int FLAGS = 3;
+    private static final int CONDITIONS = 4;
+    private static final int ENTRY_FLAGS = 5;
+    private static final int EAGER_FLAGS = 6;
+    private static final int FLAG_A = 7;
+    private static final int FLAG_B = 9;
+    private static final int A = 11;
+    private static final int B = 13;
+    private static final int VALUE = 15;
+    private static final int CONDITION = 17;
+    private static final int EXIT = 18;
+    private static final int FIRST_REGISTER = 19;
+    private static final int MAX_LOCALS = FIRST_REGISTER
+            + 2 * QuadRegister.values().length;
+    private static final int MAX_STACK = 12;
+
+    /*
+     * The JVM opcodes we use.
+     */
+    private static final int ICONST_0 = 0x03;
+    private static final int LCONST_0 = 0x09;
+    private static final int LCONST_1 = 0x0a;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int ALOAD = 0x19;
+    private static final int IALOAD = 0x2e;
+    private static final int LALOAD = 0x2f;
+    private static final int AALOAD = 0x32;
+    private static final int ISTORE = 0x36;
+    private static final int LSTORE = 0x37;
+    private static final int IASTORE = 0x4f;
+    private static final int LASTORE = 0x50;
+    private static final int LADD = 0x61;
+    private static final int LMUL = 0x69;
+    private static final int LSHL = 0x79;
+    private static final int LSHR = 0x7b;
+    private static final int LAND = 0x7f;
+    private static final int LOR = 0x81;
+    private static final int LXOR = 0x83;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    /*
+     * Constant pool tags.
+     */
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final DecodedProgram image;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndices = new HashMap<>();
+    private int numConstants = 1;
+
+    /**
+     * The body of the run method, between loading and storing the registers.
+     */
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    /**
+     * The ordinals of the registers that the block uses and writes.
+     */
+    private final TreeSet<Integer> usedRegisters = new TreeSet<>();
+    private final TreeSet<Integer> writtenRegisters = new TreeSet<>();
+
+    private final List<IntPredicate> conditions = new ArrayList<>();
+
+    /**
+     * The line of the last flag-writing instruction seen so far, or -1 if
+     * there hasn't been one.
+     */
+    private int flagWriter = -1;
+    private boolean needsEntryFlags = false;
+
+    BlockCodeWriter(DecodedProgram image) {
+        this.image = image;
+    }
+
+    /**
+     * Checks whether a line can be part of a compiled block without ending
+     * it (i.e. everything other than jumps).
+     *
+     * @param image The program the line is part of.
+     * @param line The index of the line.
+     * @return True if the line can be compiled.
+     */
+    static boolean isCompilable(DecodedProgram image, int line) {
+        Operand src = image.getSource(line);
+        Operand dest = image.getDestination(line);
+        switch (image.getOpcode(line)) {
+            case DecodedProgram.NOP:
+            case DecodedProgram.CLT:
+                return true;
+            case DecodedProgram.ALU_OP:
+                switch (image.getAluOperation(line)) {
+                    case SAL:
+                    case SAR:
+                    case SHR:
+                        // The shift count must be known to know whether the
+                        // flags are written.
+                        return isWritableRegister(dest)
+                                && src instanceof ConstantOperand;
+                    default:
+                        return isWritableRegister(dest)
+                                && (src == null || isRegisterOrConstant(src));
+                }
+            case DecodedProgram.ALU_COMPARE:
+                return isRegisterOrConstant(dest) && isRegisterOrConstant(src);
+            case DecodedProgram.NOT:
+            case DecodedProgram.SET:
+                return isWritableRegister(dest);
+            case DecodedProgram.MOV:
+            case DecodedProgram.MOVZ:
+            case DecodedProgram.CMOV:
+                return isWritableRegister(dest) && isRegisterOrConstant(src);
+            case DecodedProgram.LEA:
+                return isWritableRegister(dest);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isRegisterOrConstant(Operand operand) {
+        return operand instanceof RegOperand || operand instanceof ConstantOperand;
+    }
+
+    /**
+     * @return True if the operand is a register that isn't part of %rsp
+     * (writes to which need extra checks).
+     */
+    private static boolean isWritableRegister(Operand operand) {
+        return operand instanceof RegOperand
+                && ((RegOperand) operand).getRegister().getQuadRegister()
+                    != QuadRegister.RSP;
+    }
+
+    /**
+     * Writes the class file for a block.
+     *
+     * @param className The internal name of the class (e.g.
+     * "edu/sandiego/bcl/Block1").
+     * @param lines The lines of the block, in the order they are executed.
+     * All but the last must be compilable (see {@link #isCompilable}) and the
+     * last must either be compilable or be a jump to a label that exists.
+     * @param fallThrough The line where execution continues after the block
+     * if it doesn't end with a jump.
+     * @return The class file.
+     */
+    byte[] write(String className, int[] lines, int fallThrough) {
+        boolean endsWithJump = false;
+        for (int line : lines) {
+            endsWithJump = writeLine(line);
+        }
+
+        ByteArrayOutputStream run = new ByteArrayOutputStream();
+        for (int reg : this.usedRegisters) {
+            emit(run, ALOAD, REGISTERS);
+            emitInt(run, reg);
+            emit(run, LALOAD);
+            emit(run, LSTORE, registerSlot(reg));
+        }
+        if (this.flagWriter != -1) {
+            emit(run, ALOAD, FLAGS);
+            emit(run, ICONST_0);
+            emit(run, LALOAD);
+            emit(run, L2I);
+            emit(run, ISTORE, EAGER_FLAGS);
+        }
+        run.writeBytes(this.body.toByteArray());
+        for (int reg : this.writtenRegisters) {
+            emit(run, ALOAD, REGISTERS);
+            emitInt(run, reg);
+            emit(run, LLOAD, registerSlot(reg));
+            emit(run, LASTORE);
+        }
+        if (this.flagWriter != -1) {
+            emit(run, ALOAD, FLAGS);
+            emit(run, ICONST_0);
+            emit(run, ILOAD, EAGER_FLAGS);
+            emit(run, I2L);
+            emit(run, LASTORE);
+            emit(run, ALOAD, FLAGS);
+            emitInt(run, 1);
+            emit(run, LLOAD, FLAG_A);
+            emit(run, LASTORE);
+            emit(run, ALOAD, FLAGS);
+            emitInt(run, 2);
+            emit(run, LLOAD, FLAG_B);
+            emit(run, LASTORE);
+        }
+        if (endsWithJump) {
+            emit(run, ILOAD, EXIT);
+        } else {
+            emitInt(run, fallThrough);
+        }
+        emit(run, IRETURN);
+
+        ByteArrayOutputStream init = new ByteArrayOutputStream();
+        emit(init, ALOAD, 0);
+        emit(init, INVOKESPECIAL);
+        emitShort(init, methodRef("java/lang/Object", "<init>", "()V", false));
+        emit(init, RETURN);
+
+        return classFile(className, init.toByteArray(), run.toByteArray());
+    }
+
+    /**
+     * @return The conditions tested by the block, in the order the generated
+     * code expects them.
+     */
+    IntPredicate[] getConditions() {
+        return this.conditions.toArray(new IntPredicate[0]);
+    }
+
+    /**
+     * @return True if the block tests the flags of the state before it.
+     */
+    boolean needsEntryFlags() {
+        return this.needsEntryFlags;
+    }
+
+    /**
+     * @return The line of the block's last flag-writing instruction, or -1 if
+     * it doesn't write any flags.
+     */
+    int getFlagWriter() {
+        return this.flagWriter;
+    }
+
+    /**
+     * Emits the code for a single line.
+     *
+     * @return True if the line is a jump, which ends the block.
+     */
+    private boolean writeLine(int line) {
+        Operand src = this.image.getSource(line);
+        Operand dest = this.image.getDestination(line);
+        switch (this.image.getOpcode(line)) {
+            case DecodedProgram.NOP:
+                break;
+            case DecodedProgram.ALU_OP:
+                writeAluOperation(line, true);
+                break;
+            case DecodedProgram.ALU_COMPARE:
+                writeAluOperation(line, false);
+                break;
+            case DecodedProgram.NOT:
+                readOperand(dest);
+                emitLong(this.body, -1);
+                emit(this.body, LXOR);
+                writeRegister(dest, line);
+                break;
+            case DecodedProgram.MOV:
+                readOperand(src);
+                writeRegister(dest, line);
+                break;
+            case DecodedProgram.MOVZ:
+                readOperand(src);
+                emitLong(this.body, ALU.mask(src.getOpSize()));
+                emit(this.body, LAND);
+                writeRegister(dest, line);
+                break;
+            case DecodedProgram.LEA: {
+                MemoryOperand address = (MemoryOperand) src;
+                emitLong(this.body, address.getOffset());
+                Optional<SubRegister> base = address.getBaseRegister();
+                if (base.isPresent()) {
+                    readRegister(base.get());
+                    emit(this.body, LADD);
+                }
+                Optional<SubRegister> index = address.getIndexRegister();
+                if (index.isPresent()) {
+                    readRegister(index.get());
+                    emitLong(this.body, address.getScale());
+                    emit(this.body, LMUL);
+                    emit(this.body, LADD);
+                }
+                writeRegister(dest, line);
+                break;
+            }
+            case DecodedProgram.CMOV: {
+                SubRegister reg = ((RegOperand) dest).getRegister();
+                int ordinal = reg.getQuadRegister().ordinal();
+                testCondition(line);
+                emit(this.body, ISTORE, CONDITION);
+
+                emit(this.body, ILOAD, CONDITION);
+                readOperand(src);
+                insertIntoQuad(reg);
+                emit(this.body, LLOAD, registerSlot(ordinal));
+                emitSelect("(ZJJ)J");
+                emit(this.body, LSTORE, registerSlot(ordinal));
+
+                emit(this.body, ALOAD, ORIGINS);
+                emitInt(this.body, ordinal);
+                emit(this.body, ILOAD, CONDITION);
+                emitInt(this.body, line);
+                emit(this.body, ALOAD, ORIGINS);
+                emitInt(this.body, ordinal);
+                emit(this.body, IALOAD);
+                emitSelect("(ZII)I");
+                emit(this.body, IASTORE);
+                this.writtenRegisters.add(ordinal);
+                break;
+            }
+            case DecodedProgram.SET:
+                testCondition(line);
+                emit(this.body, I2L);
+                writeRegister(dest, line);
+                break;
+            case DecodedProgram.CLT:
+                readRegister(SubRegister.fromName("eax"));
+                writeRegister(SubRegister.fromName("rax"), line);
+                break;
+            case DecodedProgram.JCC:
+                testCondition(line);
+                emitInt(this.body, this.image.getTarget(line));
+                emitInt(this.body, this.image.getExecutedLine(line + 1));
+                emitSelect("(ZII)I");
+                emit(this.body, ISTORE, EXIT);
+                return true;
+            case DecodedProgram.JMP:
+                emitInt(this.body, this.image.getTarget(line));
+                emit(this.body, ISTORE, EXIT);
+                return true;
+            default:
+                throw new IllegalArgumentException("line " + line
+                        + " can't be compiled");
+        }
+        return false;
+    }
+
+    /**
+     * Emits the code for an arithmetic instruction (or a compare, if the
+     * result isn't stored) and records the flags it writes the same way as
+     * {@link MachineState#setFlagsLazily}.
+     */
+    private void writeAluOperation(int line, boolean storeResult) {
+        ALU.Operation op = this.image.getAluOperation(line);
+        OpSize size = this.image.getOpSize(line);
+        Operand src = this.image.getSource(line);
+        Operand dest = this.image.getDestination(line);
+
+        readOperand(dest);
+        emit(this.body, LSTORE, A);
+        if (src == null) {
+            emit(this.body, LCONST_0);
+        } else {
+            readOperand(src);
+        }
+        emit(this.body, LSTORE, B);
+
+        if (storeResult) {
+            emitGetStatic(OPERATION, op.name());
+            emit(this.body, LLOAD, A);
+            emit(this.body, LLOAD, B);
+            emitGetStatic(OP_SIZE, size.name());
+            emitInvokeStatic(PACKAGE + "ALU", "result", ALU_DESC + "J");
+            writeRegister(dest, line);
+        }
+
+        switch (op) {
+            case SAL:
+            case SAR:
+            case SHR:
+                long count = ((ConstantOperand) src).getConstant();
+                if (ALU.shiftCount(count, size) == 0) {
+                    return;
+                }
+                break;
+            case INC:
+            case DEC:
+                emitCurrentFlags();
+                emit(this.body, ISTORE, EAGER_FLAGS);
+                break;
+            default:
+                break;
+        }
+        emit(this.body, LLOAD, A);
+        emit(this.body, LSTORE, FLAG_A);
+        emit(this.body, LLOAD, B);
+        emit(this.body, LSTORE, FLAG_B);
+        this.flagWriter = line;
+    }
+
+    /**
+     * Emits code that pushes whether the condition of the given line holds.
+     */
+    private void testCondition(int line) {
+        emit(this.body, ALOAD, CONDITIONS);
+        emitInt(this.body, this.conditions.size());
+        emit(this.body, AALOAD);
+        this.conditions.add(this.image.getCondition(line));
+        emitCurrentFlags();
+        emit(this.body, INVOKEINTERFACE);
+        emitShort(this.body, methodRef(PREDICATE, "test", "(I)Z", true));
+        emit(this.body, 2);
+        emit(this.body, 0);
+    }
+
+    /**
+     * Emits code that pushes the current status flags.
+     */
+    private void emitCurrentFlags() {
+        if (this.flagWriter == -1) {
+            this.needsEntryFlags = true;
+            emit(this.body, ILOAD, ENTRY_FLAGS);
+            return;
+        }
+        emitGetStatic(OPERATION, this.image.getAluOperation(this.flagWriter).name());
+        emit(this.body, LLOAD, FLAG_A);
+        emit(this.body, LLOAD, FLAG_B);
+        emitGetStatic(OP_SIZE, this.image.getOpSize(this.flagWriter).name());
+        emitInvokeStatic(PACKAGE + "ALU", "flags", ALU_DESC + "I");
+        emit(this.body, ILOAD, EAGER_FLAGS);
+        emitInvokeStatic(PACKAGE + "StatusFlags", "merge", "(II)I");
+    }
+
+    /**
+     * Emits code that pushes the value of a register or constant operand.
+     */
+    private void readOperand(Operand operand) {
+        if (operand instanceof ConstantOperand) {
+            emitLong(this.body, ((ConstantOperand) operand).getConstant());
+        } else {
+            readRegister(((RegOperand) operand).getRegister());
+        }
+    }
+
+    /**
+     * Emits code that pushes the (sign extended) value of a register, the
+     * same as {@link SubRegister#getValue}.
+     */
+    private void readRegister(SubRegister reg) {
+        int ordinal = reg.getQuadRegister().ordinal();
+        this.usedRegisters.add(ordinal);
+        emit(this.body, LLOAD, registerSlot(ordinal));
+        if (reg.getSize() != OpSize.QUAD) {
+            int unusedBits = 64 - reg.getSize().numBits();
+            emitInt(this.body, unusedBits - reg.getShift());
+            emit(this.body, LSHL);
+            emitInt(this.body, unusedBits);
+            emit(this.body, LSHR);
+        }
+    }
+
+    /**
+     * Emits code that pops a value and writes it to the given register
+     * operand, attributing the write to the given line.
+     */
+    private void writeRegister(Operand operand, int line) {
+        writeRegister(((RegOperand) operand).getRegister(), line);
+    }
+
+    private void writeRegister(SubRegister reg, int line) {
+        int ordinal = reg.getQuadRegister().ordinal();
+        insertIntoQuad(reg);
+        emit(this.body, LSTORE, registerSlot(ordinal));
+        emit(this.body, ALOAD, ORIGINS);
+        emitInt(this.body, ordinal);
+        emitInt(this.body, line);
+        emit(this.body, IASTORE);
+        this.writtenRegisters.add(ordinal);
+    }
+
+    /**
+     * Emits code that pops a value for a register and pushes the new value of
+     * its quad register, the same as {@link SubRegister#setValue}.
+     */
+    private void insertIntoQuad(SubRegister reg) {
+        int ordinal = reg.getQuadRegister().ordinal();
+        this.usedRegisters.add(ordinal);
+        switch (reg.getSize()) {
+            case QUAD:
+                break;
+            case LONG:
+                emitLong(this.body, reg.getMask());
+                emit(this.body, LAND);
+                break;
+            default:
+                emit(this.body, LSTORE, VALUE);
+                emit(this.body, LLOAD, registerSlot(ordinal));
+                emitLong(this.body, ~reg.getMask());
+                emit(this.body, LAND);
+                emit(this.body, LLOAD, VALUE);
+                emitInt(this.body, reg.getShift());
+                emit(this.body, LSHL);
+                emitLong(this.body, reg.getMask());
+                emit(this.body, LAND);
+                emit(this.body, LOR);
+                break;
+        }
+    }
+
+    private static int registerSlot(int ordinal) {
+        return FIRST_REGISTER + 2 * ordinal;
+    }
+
+    private void emitGetStatic(String owner, String name) {
+        emit(this.body, GETSTATIC);
+        emitShort(this.body, fieldRef(owner, name, "L" + owner + ";"));
+    }
+
+    private void emitInvokeStatic(String owner, String name, String desc) {
+        emit(this.body, INVOKESTATIC);
+        emitShort(this.body, methodRef(owner, name, desc, false));
+    }
+
+    private void emitSelect(String desc) {
+        emitInvokeStatic(PACKAGE + "CompiledBlock", "select", desc);
+    }
+
+    private static void emit(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    private static void emitShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private void emitInt(ByteArrayOutputStream out, int value) {
+        if (value >= -1 && value <= 5) {
+            out.write(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            emit(out, BIPUSH, value & 0xff);
+        } else if (value == (short) value) {
+            out.write(SIPUSH);
+            emitShort(out, value);
+        } else {
+            out.write(LDC_W);
+            emitShort(out, constant("I" + value, CONSTANT_INTEGER, 1,
+                    data -> data.writeInt(value)));
+        }
+    }
+
+    private void emitLong(ByteArrayOutputStream out, long value) {
+        if (value == 0) {
+            out.write(LCONST_0);
+        } else if (value == 1) {
+            out.write(LCONST_1);
+        } else {
+            out.write(LDC2_W);
+            emitShort(out, constant("J" + value, CONSTANT_LONG, 2,
+                    data -> data.writeLong(value)));
+        }
+    }
+
+    /*
+     * Constant pool entries, which are only added the first time they are
+     * used.
+     */
+    private interface ConstantWriter {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    private int constant(String key, int tag, int numSlots, ConstantWriter writer) {
+        Integer index = this.constantIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            this.constantPool.writeByte(tag);
+            writer.write(this.constantPool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = this.numConstants;
+        this.numConstants += numSlots;
+        this.constantIndices.put(key, index);
+        return index;
+    }
+
+    private int utf8(String value) {
+        return constant("U" + value, CONSTANT_UTF8, 1, data -> data.writeUTF(value));
+    }
+
+    private int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, CONSTANT_CLASS, 1,
+                data -> data.writeShort(nameIndex));
+    }
+
+    private int nameAndType(String name, String desc) {
+        int nameIndex = utf8(name);
+        int descIndex = utf8(desc);
+        return constant("N" + name + ":" + desc, CONSTANT_NAME_AND_TYPE, 1, data -> {
+            data.writeShort(nameIndex);
+            data.writeShort(descIndex);
+        });
+    }
+
+    private int fieldRef(String owner, String name, String desc) {
+        return memberRef("F", CONSTANT_FIELDREF, owner, name, desc);
+    }
+
+    private int methodRef(String owner, String name, String desc, boolean isInterface) {
+        return isInterface
+                ? memberRef("I", CONSTANT_INTERFACE_METHODREF, owner, name, desc)
+                : memberRef("M", CONSTANT_METHODREF, owner, name, desc);
+    }
+
+    private int memberRef(String kind, int tag, String owner, String name, String desc) {
+        int classIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, desc);
+        return constant(kind + owner + "." + name + ":" + desc, tag, 1, data -> {
+            data.writeShort(classIndex);
+            data.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    /**
+     * Assembles the class file, with a no-argument constructor and the run
+     * method.
+     */
+    private byte[] classFile(String className, byte[] initCode, byte[] runCode) {
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        int codeInterface = classRef(CODE);
+        int codeAttribute = utf8("Code");
+        int initName = utf8("<init>");
+        int initDesc = utf8("()V");
+        int runName = utf8("run");
+        int runDesc = utf8(RUN_DESC);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(55); // Java 11
+            out.writeShort(this.numConstants);
+            this.constantPool.flush();
+            out.write(this.constantPoolBytes.toByteArray());
+
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(codeInterface);
+            out.writeShort(0); // fields
+
+            out.writeShort(2);
+            writeMethod(out, initName, initDesc, codeAttribute, 1, 1, initCode);
+            writeMethod(out, runName, runDesc, codeAttribute, MAX_STACK, MAX_LOCALS,
+                    runCode);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int desc,
+            int codeAttribute, int maxStack, int maxLocals, byte[] code)
+            throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+}
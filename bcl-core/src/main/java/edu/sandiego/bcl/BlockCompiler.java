@@ -0,0 +1,220 @@
+package edu.sandiego.bcl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An optional execution tier for runs that don't need to see every state:
+ * it counts how often each basic block of a {@link DecodedProgram} starts
+ * executing and compiles the hot ones to JVM bytecode (see
+ * {@link BlockCodeWriter}), which the JVM then compiles to native code.
+ *
+ * Blocks start at the entry point, at jump and call targets, and after jumps,
+ * calls and returns. A compiled block runs from its start until it reaches a
+ * jump (which it includes), an instruction it can't compile (e.g. one that
+ * uses memory) or the start of another block. The interpreter executes
+ * whatever isn't compiled, and always does so when single-stepping.
+ *
+ * Compiled blocks are defined as hidden classes when the JVM supports them
+ * (Java 15 and up), so they can be unloaded once this compiler is no longer
+ * used, and as ordinary classes in this package otherwise.
+ *
+ * A compiler belongs to a single simulation (its counts aren't thread-safe)
+ * and to a single image of the program.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class BlockCompiler {
+
+    /**
+     * The number of times a block has to start executing before it is
+     * compiled.
+     */
+    static final int HOT_THRESHOLD = 50;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Lookup.defineHiddenClass and an empty array of options for it, or null
+     * if the JVM doesn't support hidden classes.
+     */
+    private static final Method DEFINE_HIDDEN_CLASS;
+    private static final Object NO_CLASS_OPTIONS;
+
+    static {
+        Method define = null;
+        Object options = null;
+        try {
+            Class<?> optionClass = Class.forName(
+                    "java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(optionClass, 0);
+            define = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, options.getClass());
+        } catch (ReflectiveOperationException e) {
+            define = null;
+        }
+        DEFINE_HIDDEN_CLASS = define;
+        NO_CLASS_OPTIONS = options;
+    }
+
+    /**
+     * Used to give each generated class a unique name.
+     */
+    private static final AtomicInteger numClasses = new AtomicInteger();
+
+    private final DecodedProgram image;
+    private final int threshold;
+
+    /**
+     * Whether a block starts at each line.
+     */
+    private final boolean[] blockStarts;
+
+    /**
+     * The number of times the block at each line has started executing, up
+     * to the threshold.
+     */
+    private final int[] executions;
+
+    /**
+     * The compiled block at each line (null if it hasn't been compiled or
+     * couldn't be).
+     */
+    private final CompiledBlock[] blocks;
+
+    BlockCompiler(DecodedProgram image) {
+        this(image, HOT_THRESHOLD);
+    }
+
+    /**
+     * @param image The program to compile blocks of.
+     * @param threshold The number of times a block has to start executing
+     * before it is compiled.
+     */
+    BlockCompiler(DecodedProgram image, int threshold) {
+        this.image = image;
+        this.threshold = threshold;
+        int numLines = image.getNumLines();
+        this.blockStarts = new boolean[numLines];
+        this.executions = new int[numLines];
+        this.blocks = new CompiledBlock[numLines];
+
+        markBlockStart(image.getEntryPoint());
+        for (int i = 0; i < numLines; i++) {
+            switch (image.getOpcode(i)) {
+                case DecodedProgram.JCC:
+                case DecodedProgram.JMP:
+                case DecodedProgram.CALL:
+                    markBlockStart(image.getTarget(i));
+                    markBlockStart(image.getExecutedLine(i + 1));
+                    break;
+                case DecodedProgram.RET:
+                    markBlockStart(image.getExecutedLine(i + 1));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void markBlockStart(int line) {
+        if (line >= 0 && line < this.blockStarts.length) {
+            this.blockStarts[line] = true;
+        }
+    }
+
+    /**
+     * @return The program this compiler compiles blocks of.
+     */
+    DecodedProgram getProgram() {
+        return this.image;
+    }
+
+    /**
+     * Counts an execution of the block starting at the given line (if there is
+     * one), compiling it once it is hot.
+     *
+     * @param line The index of the line where execution is about to continue.
+     * @return The compiled block that starts at that line, or null if there is
+     * no such block, it isn't hot yet or it couldn't be compiled.
+     */
+    CompiledBlock getHotBlock(int line) {
+        if (!this.blockStarts[line]) {
+            return null;
+        }
+        if (this.executions[line] < this.threshold
+                && ++this.executions[line] == this.threshold) {
+            this.blocks[line] = compile(line);
+        }
+        return this.blocks[line];
+    }
+
+    /**
+     * Compiles the block starting at the given line.
+     *
+     * @return The compiled block, or null if it is too short to be worth
+     * compiling or couldn't be compiled.
+     */
+    private CompiledBlock compile(int start) {
+        List<Integer> lines = new ArrayList<>();
+        int line = start;
+        while (line < this.image.getNumLines()
+                && (line == start || !this.blockStarts[line])) {
+            int opcode = this.image.getOpcode(line);
+            if (opcode == DecodedProgram.JCC || opcode == DecodedProgram.JMP) {
+                if (this.image.getTarget(line) != DecodedProgram.NO_TARGET) {
+                    lines.add(line);
+                }
+                break;
+            }
+            if (!BlockCodeWriter.isCompilable(this.image, line)) {
+                break;
+            }
+            lines.add(line);
+            line = this.image.getExecutedLine(line + 1);
+        }
+        if (lines.size() < 2) {
+            return null;
+        }
+
+        int[] blockLines = lines.stream().mapToInt(Integer::intValue).toArray();
+        BlockCodeWriter writer = new BlockCodeWriter(this.image);
+        byte[] classFile = writer.write(
+                "edu/sandiego/bcl/CompiledBlock$" + numClasses.incrementAndGet(),
+                blockLines, line);
+
+        CompiledBlock.Code code;
+        try {
+            code = define(classFile);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Leave the block to the interpreter.
+            return null;
+        }
+
+        int flagWriter = writer.getFlagWriter();
+        return new CompiledBlock(blockLines, code, writer.getConditions(),
+                writer.needsEntryFlags(),
+                flagWriter == -1 ? null : this.image.getAluOperation(flagWriter),
+                flagWriter == -1 ? null : this.image.getOpSize(flagWriter));
+    }
+
+    /**
+     * Defines the class in the given class file and creates an instance of it.
+     */
+    private static CompiledBlock.Code define(byte[] classFile)
+            throws ReflectiveOperationException {
+        Class<?> codeClass;
+        if (DEFINE_HIDDEN_CLASS != null) {
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup)
+                    DEFINE_HIDDEN_CLASS.invoke(LOOKUP, classFile, true, NO_CLASS_OPTIONS);
+            codeClass = lookup.lookupClass();
+        } else {
+            codeClass = LOOKUP.defineClass(classFile);
+        }
+        return (CompiledBlock.Code) codeClass.getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,23 @@
+package edu.sandiego.bcl;
+
+/**
+ * A flag used to ask a running simulation to stop. The simulation checks it
+ * periodically, so cancelling from another thread is safe.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Asks whatever is using this token to stop as soon as possible.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
@@ -0,0 +1,316 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A history that uses a bounded amount of memory by only keeping a snapshot
+ * (i.e. checkpoint) of the machine state every so often. Stepping back
+ * re-executes the program from the closest checkpoint before the target
+ * step.
+ *
+ * The number of instructions between checkpoints adapts to how fast the
+ * program re-executes, so that stepping back normally takes no longer than
+ * a target time. If the checkpoints grow past the memory budget, every other
+ * one of the older checkpoints is dropped. Every step can still be reached,
+ * but stepping back into the distant past may then take longer than the
+ * target time.
+ *
+ * The states produced while re-executing up to a step are kept until the
+ * next time we step back past all of them, so stepping back repeatedly only
+ * re-executes once per checkpoint interval. They count toward the memory
+ * budget too: at most half of it is spent on them, keeping only the states
+ * closest to the target step, and the checkpoints are thinned to fit in
+ * what is left.
+ *
+ * Since re-executing uses whatever program the stepper runs, the history
+ * must be told when the program changes (see {@link #programChanged}).
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class CheckpointHistory implements SimulationHistory {
+
+    /**
+     * Executes a single instruction. Used to re-execute the program from a
+     * checkpoint, so it must be deterministic.
+     */
+    public interface Stepper {
+
+        MachineState step(MachineState state) throws x86RuntimeException;
+    }
+
+    /**
+     * Estimated sizes (in bytes) of a state that shares all of its memory
+     * with the previous checkpoint (including its registers and their uses,
+     * see {@link RegisterUse}), and of each memory page it doesn't share.
+     */
+    private static final long STATE_SIZE_ESTIMATE = 480;
+    private static final long PAGE_SIZE_ESTIMATE = 1500;
+
+    private static final int MIN_INTERVAL = 16;
+    private static final int MAX_INTERVAL = 1 << 20;
+
+    /**
+     * A snapshot of the state after a given number of steps.
+     */
+    private static class Checkpoint {
+
+        final long step;
+        final MachineState state;
+        long sizeEstimate;
+
+        Checkpoint(long step, MachineState state) {
+            this.step = step;
+            this.state = state;
+        }
+    }
+
+    private final Stepper stepper;
+    private final long memoryBudget;
+    private final long targetStepBackNanos;
+
+    /**
+     * The checkpoints, in order of their steps. When not empty, the first is
+     * always the initial state (i.e. step 0).
+     */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * Total estimated size of all the checkpoints.
+     */
+    private long checkpointsSize;
+
+    /**
+     * States produced by the last re-execution, starting with step
+     * replayStart, and the estimated size of each. This never holds more
+     * than one interval's worth of states, or more than half of the memory
+     * budget.
+     */
+    private final List<MachineState> replayed = new ArrayList<>();
+    private final List<Long> replayedSizes = new ArrayList<>();
+    private long replayStart;
+
+    /**
+     * Total estimated size of the replayed states.
+     */
+    private long replayedSize;
+
+    /**
+     * The number of steps since the initial state.
+     */
+    private long numSteps;
+
+    /**
+     * Number of steps between checkpoints, and the measured average time it
+     * takes to re-execute a step.
+     */
+    private int interval;
+    private double nanosPerStep;
+
+    /**
+     * @param stepper Executes an instruction during re-execution.
+     * @param memoryBudget The (approximate) maximum number of bytes to spend
+     * on checkpoints and replayed states.
+     * @param targetStepBackNanos How long stepping back should take.
+     */
+    public CheckpointHistory(Stepper stepper, long memoryBudget,
+            long targetStepBackNanos) {
+        this.stepper = stepper;
+        this.memoryBudget = memoryBudget;
+        this.targetStepBackNanos = targetStepBackNanos;
+        this.interval = 1024;
+    }
+
+    /**
+     * @return The current number of steps between checkpoints.
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return The number of checkpoints being kept.
+     */
+    public int getNumCheckpoints() {
+        return this.checkpoints.size();
+    }
+
+    /**
+     * @return The estimated number of bytes used by the checkpoints and the
+     * replayed states.
+     */
+    public long getEstimatedSize() {
+        return this.checkpointsSize + this.replayedSize;
+    }
+
+    @Override
+    public void record(MachineState before, MachineState after) {
+        if (checkpoints.isEmpty()) {
+            addCheckpoint(new Checkpoint(0, before));
+        }
+        numSteps++;
+
+        Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+        if (numSteps - last.step >= interval) {
+            addCheckpoint(new Checkpoint(numSteps, after));
+            thinCheckpoints();
+        }
+    }
+
+    @Override
+    public MachineState stepBack(MachineState current) {
+        long target = --numSteps;
+
+        // Forget about checkpoints and replayed states from the future.
+        while (checkpoints.get(checkpoints.size() - 1).step > target) {
+            Checkpoint removed = checkpoints.remove(checkpoints.size() - 1);
+            checkpointsSize -= removed.sizeEstimate;
+        }
+        while (!replayed.isEmpty() && replayStart + replayed.size() > target + 1) {
+            replayed.remove(replayed.size() - 1);
+            replayedSize -= replayedSizes.remove(replayedSizes.size() - 1);
+        }
+
+        if (replayed.isEmpty() || replayStart + replayed.size() <= target) {
+            clearReplayed();
+            replayFrom(checkpoints.get(checkpoints.size() - 1), target);
+            thinCheckpoints();
+        }
+        return replayed.get((int) (target - replayStart));
+    }
+
+    /**
+     * Re-executes the program from the given checkpoint up to (and
+     * including) the target step, remembering the last of the states it goes
+     * through (as many as fit in half of the memory budget).
+     */
+    private void replayFrom(Checkpoint checkpoint, long target) {
+        long startTime = System.nanoTime();
+
+        // The checkpoint could be far back if checkpoints were dropped, so
+        // only keep the states from the last interval before the target.
+        long firstKept = Math.max(checkpoint.step, target - interval + 1);
+        ArrayDeque<MachineState> states = new ArrayDeque<>();
+        ArrayDeque<Long> sizes = new ArrayDeque<>();
+        MachineState previous = null;
+        MachineState state = checkpoint.state;
+        try {
+            for (long step = checkpoint.step; step <= target; step++) {
+                if (step > checkpoint.step) {
+                    previous = state;
+                    state = stepper.step(state);
+                }
+                if (step >= firstKept) {
+                    long size = estimateSize(state, previous);
+                    states.addLast(state);
+                    sizes.addLast(size);
+                    replayedSize += size;
+                    while (replayedSize > memoryBudget / 2 && states.size() > 1) {
+                        states.removeFirst();
+                        replayedSize -= sizes.removeFirst();
+                    }
+                }
+            }
+        } catch (x86RuntimeException e) {
+            throw new IllegalStateException(
+                    "Re-executing the program failed: " + e.getMessage(), e);
+        }
+        replayStart = target - states.size() + 1;
+        replayed.addAll(states);
+        replayedSizes.addAll(sizes);
+
+        long numReplayed = target - checkpoint.step;
+        if (numReplayed > 0) {
+            adaptInterval((double) (System.nanoTime() - startTime) / numReplayed);
+        }
+    }
+
+    /**
+     * Updates the checkpoint interval so that re-executing a full interval
+     * takes about as long as our target time.
+     *
+     * @param measuredNanosPerStep How long it took to re-execute each step.
+     */
+    private void adaptInterval(double measuredNanosPerStep) {
+        if (nanosPerStep == 0) {
+            nanosPerStep = measuredNanosPerStep;
+        } else {
+            nanosPerStep = (nanosPerStep + measuredNanosPerStep) / 2;
+        }
+        double steps = targetStepBackNanos / Math.max(nanosPerStep, 1);
+        interval = (int) Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, steps));
+    }
+
+    private void addCheckpoint(Checkpoint checkpoint) {
+        Checkpoint previous = checkpoints.isEmpty() ? null
+                : checkpoints.get(checkpoints.size() - 1);
+        checkpoint.sizeEstimate = estimateSize(checkpoint.state,
+                previous == null ? null : previous.state);
+        checkpointsSize += checkpoint.sizeEstimate;
+        checkpoints.add(checkpoint);
+    }
+
+    /**
+     * Estimates how much memory a state takes up beyond what it shares with
+     * the previous one (if any).
+     */
+    private static long estimateSize(MachineState state, MachineState previous) {
+        PagedMemory memory = state.getMemory();
+        PagedMemory previousMemory = previous == null ? PagedMemory.empty()
+                : previous.getMemory();
+        return STATE_SIZE_ESTIMATE
+                + PAGE_SIZE_ESTIMATE * memory.countPagesNotIn(previousMemory);
+    }
+
+    /**
+     * Drops every other checkpoint (other than the first and the last) until
+     * the checkpoints and replayed states fit in our memory budget, or there
+     * is nothing left to drop.
+     */
+    private void thinCheckpoints() {
+        while (getEstimatedSize() > memoryBudget && checkpoints.size() > 2) {
+            List<Checkpoint> kept = new ArrayList<>();
+            for (int i = 0; i < checkpoints.size(); i++) {
+                if (i % 2 == 0 || i == checkpoints.size() - 1) {
+                    kept.add(checkpoints.get(i));
+                }
+            }
+
+            checkpoints.clear();
+            checkpointsSize = 0;
+            for (Checkpoint c : kept) {
+                addCheckpoint(c);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return numSteps == 0;
+    }
+
+    @Override
+    public void clear() {
+        checkpoints.clear();
+        checkpointsSize = 0;
+        clearReplayed();
+        numSteps = 0;
+    }
+
+    /**
+     * Forgets everything: the checkpoints (and replayed states) were made
+     * with the old program, so re-executing from them would now give
+     * different states. The history starts over from the current state.
+     */
+    @Override
+    public void programChanged() {
+        clear();
+    }
+
+    private void clearReplayed() {
+        replayed.clear();
+        replayedSizes.clear();
+        replayedSize = 0;
+    }
+}
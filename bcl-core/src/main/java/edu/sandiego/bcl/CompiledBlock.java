@@ -0,0 +1,134 @@
+package edu.sandiego.bcl;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A block of lines of a {@link DecodedProgram} that {@link BlockCompiler} has
+ * compiled to JVM bytecode.
+ *
+ * Executing a compiled block gives exactly the same state as stepping through
+ * its lines one at a time (including the origin of each register and the
+ * pending lazy flag operation), but without creating the states in between,
+ * so it is only for runs that don't need to see every state.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class CompiledBlock {
+
+    /**
+     * The interface implemented by the generated code.
+     */
+    interface Code {
+
+        /**
+         * Executes the block.
+         *
+         * @param registers The value of each register, indexed by ordinal.
+         * The registers written by the block are updated.
+         * @param origins The origin of each register, indexed by ordinal.
+         * The origins of the registers written by the block are updated.
+         * @param flags The eager status flags of the state before the block
+         * (see {@link MachineState#getEagerStatusFlags}). If the block writes
+         * flags, this is updated to the eager flags and the two operands of
+         * the block's last flag-writing instruction.
+         * @param conditions The conditions tested by the block, in order.
+         * @param entryFlags The status flags of the state before the block,
+         * if the block needs them.
+         * @return The line where execution continues after the block.
+         */
+        int run(long[] registers, int[] origins, long[] flags,
+                IntPredicate[] conditions, int entryFlags);
+    }
+
+    private static final int NUM_REGISTERS = QuadRegister.values().length;
+
+    /**
+     * The lines of the block, in the order they are executed.
+     */
+    private final int[] lines;
+
+    private final Code code;
+    private final IntPredicate[] conditions;
+
+    /**
+     * Whether the block reads the flags of the state before it.
+     */
+    private final boolean needsEntryFlags;
+
+    /**
+     * The operation and size of the block's last flag-writing instruction,
+     * or null if the block doesn't write any flags.
+     */
+    private final ALU.Operation flagOperation;
+    private final OpSize flagSize;
+
+    CompiledBlock(int[] lines, Code code, IntPredicate[] conditions,
+            boolean needsEntryFlags, ALU.Operation flagOperation, OpSize flagSize) {
+        this.lines = lines;
+        this.code = code;
+        this.conditions = conditions;
+        this.needsEntryFlags = needsEntryFlags;
+        this.flagOperation = flagOperation;
+        this.flagSize = flagSize;
+    }
+
+    /**
+     * @return The number of instructions executed by the block.
+     */
+    int getNumInstructions() {
+        return this.lines.length;
+    }
+
+    /**
+     * @param index The position of an instruction in the block.
+     * @return The line of that instruction.
+     */
+    int getLine(int index) {
+        return this.lines[index];
+    }
+
+    /**
+     * @param breakpoints Whether execution should stop before each line.
+     * @return True if execution should stop before one of the block's lines
+     * other than its first one (i.e. in the middle of the block).
+     */
+    boolean hasBreakpoint(boolean[] breakpoints) {
+        for (int i = 1; i < this.lines.length; i++) {
+            if (breakpoints[this.lines[i]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes the block, which must start at the line the rip register of
+     * the given state points to.
+     *
+     * @param state The state in which to execute.
+     * @return The state after executing the whole block.
+     */
+    MachineState execute(MachineState state) {
+        assert state.getRipRegister() == this.lines[0];
+        long[] registers = new long[NUM_REGISTERS];
+        int[] origins = new int[NUM_REGISTERS];
+        state.getRegisterFile().copyTo(registers, origins);
+        long[] flags = {state.getEagerStatusFlags(), 0, 0};
+        int entryFlags = this.needsEntryFlags ? state.getStatusFlags() : 0;
+
+        int rip = this.code.run(registers, origins, flags, this.conditions, entryFlags);
+        return state.cloneWithRegisters(RegisterFile.of(registers, origins), rip,
+                this.flagOperation, (int) flags[0], flags[1], flags[2], this.flagSize);
+    }
+
+    /*
+     * Called by the generated code, which has no branches of its own.
+     */
+    static long select(boolean condition, long ifTrue, long ifFalse) {
+        return condition ? ifTrue : ifFalse;
+    }
+
+    static int select(boolean condition, int ifTrue, int ifFalse) {
+        return condition ? ifTrue : ifFalse;
+    }
+}
@@ -1,8 +1,7 @@
 package edu.sandiego.bcl;
 
 import java.math.BigInteger;
-import java.util.Map;
-import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -39,16 +38,30 @@ public class ConstantOperand extends Operand {
         this.stringRep = stringRep;
     }
 
+    long getConstant() {
+        return this.constant;
+    }
+
     @Override
-    public BigInteger getValue(MachineState state) {
-        return BigInteger.valueOf(constant);
+    public long getValue(MachineState state) {
+        return constant;
     }
 
     @Override
-    public MachineState updateState(MachineState currState, Optional<BigInteger> val, Map<String, Boolean> flags, boolean updateRIP) {
+    public MachineState updateState(MachineState currState, OptionalLong val, int flags, boolean updateRIP) {
         throw new RuntimeException("Update of constant operand.");
     }
     
+    @Override
+    long getValue(MutableMachineState state) {
+        return constant;
+    }
+
+    @Override
+    void setValue(MutableMachineState state, long val) {
+        throw new RuntimeException("Update of constant operand.");
+    }
+
     @Override
     public Set<String> getUsedRegisters() {
         HashSet<String> s = new HashSet<>();
@@ -0,0 +1,1136 @@
+package edu.sandiego.bcl;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable, pre-decoded image of an {@link x86Program}, along with an
+ * interpreter that executes it.
+ *
+ * Each line of the program is decoded into an opcode (one per distinct
+ * behavior, rather than one per instruction type), its operands, its operand
+ * size and, for conditional instructions, the condition to check. Jump and
+ * call targets are resolved to absolute line indices when the image is
+ * compiled, so executing an instruction never looks at the program's lines or
+ * labels.
+ *
+ * An image can optionally skip the lines that aren't instructions (i.e.
+ * labels, comments and blank lines) so that they are never executed: the
+ * entry point and jump targets are resolved to the next instruction, and
+ * whenever execution would continue on a non-instruction line (e.g. after
+ * falling through or returning from a call) the rip register is moved on to
+ * the next instruction. The rip register still holds line numbers, so states
+ * are the same as without skipping, apart from never being at those lines.
+ *
+ * Some common pairs of adjacent instructions are also decoded as fused
+ * superinstructions that {@link #stepFused} executes in one go: a compare or
+ * test followed by a conditional jump, set or move, and a move into a
+ * register followed by arithmetic on that register. A pair is only fused when
+ * its second instruction can't fail, so a pair either completes or fails on
+ * its first instruction without changing anything, just like when the two
+ * are executed one at a time. Fusing leaves out the state between the two
+ * instructions, so it is only for callers that don't need to see (or stop
+ * at) every state; the state after a pair is identical to the one after
+ * stepping twice, including which line each register was last written by.
+ *
+ * An image is a snapshot: it doesn't see later changes to the program it was
+ * compiled from, so it needs to be recompiled after the program is edited.
+ * Since nothing in it changes after it is compiled, an image can be shared by
+ * simulations running on different threads.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class DecodedProgram {
+
+    /**
+     * The opcodes for the decoded lines (see {@link #getOpcode}).
+     */
+    static final int NOP = 0;
+    static final int ALU_OP = 1;
+    static final int ALU_COMPARE = 2;
+    static final int NOT = 3;
+    static final int MOV = 4;
+    static final int MOVZ = 5;
+    static final int LEA = 6;
+    static final int CMOV = 7;
+    static final int SET = 8;
+    static final int JCC = 9;
+    static final int JMP = 10;
+    static final int CALL = 11;
+    static final int RET = 12;
+    static final int PUSH = 13;
+    static final int POP = 14;
+    static final int IDIV = 15;
+    static final int CLT = 16;
+
+    /**
+     * The opcodes for fused pairs of instructions.
+     */
+    private static final int NOT_FUSED = 0;
+    private static final int COMPARE_JCC = 1;
+    private static final int COMPARE_SET = 2;
+    private static final int COMPARE_CMOV = 3;
+    private static final int MOV_ALU = 4;
+
+    /**
+     * Target of a jump or call whose label doesn't exist.
+     */
+    static final int NO_TARGET = -1;
+
+    /**
+     * Operands used implicitly by the stack instructions.
+     */
+    private static final RegOperand RSP = new RegOperand("rsp", OpSize.QUAD);
+    private static final MemoryOperand STACK_TOP
+            = new MemoryOperand("rsp", null, null, null, OpSize.QUAD, "");
+
+    /**
+     * Operands used implicitly by idiv and clt.
+     */
+    private static final OperandGetter IMPLICIT_OPERANDS = new x86OperandGetter();
+    private static final RegOperand EAX = IMPLICIT_OPERANDS.getRegisterOperand("eax");
+    private static final RegOperand RAX = IMPLICIT_OPERANDS.getRegisterOperand("rax");
+    private static final RegOperand RDX = IMPLICIT_OPERANDS.getRegisterOperand("rdx");
+    private static final RegOperand EDX = IMPLICIT_OPERANDS.getRegisterOperand("edx");
+    private static final RegOperand AX = IMPLICIT_OPERANDS.getRegisterOperand("ax");
+    private static final RegOperand DX = IMPLICIT_OPERANDS.getRegisterOperand("dx");
+    private static final RegOperand AH = IMPLICIT_OPERANDS.getRegisterOperand("ah");
+    private static final RegOperand AL = IMPLICIT_OPERANDS.getRegisterOperand("al");
+
+    /**
+     * Registers combined into the dividend of idiv by the in-place
+     * interpreter.
+     */
+    private static final SubRegister RAX_REG = SubRegister.fromName("rax");
+    private static final SubRegister RDX_REG = SubRegister.fromName("rdx");
+    private static final SubRegister EDX_REG = SubRegister.fromName("edx");
+    private static final SubRegister EAX_REG = SubRegister.fromName("eax");
+    private static final SubRegister DX_REG = SubRegister.fromName("dx");
+    private static final SubRegister AX_REG = SubRegister.fromName("ax");
+
+    private final int[] opcodes;
+    private final OpSize[] sizes;
+    private final ALU.Operation[] aluOperations;
+    private final IntPredicate[] conditions;
+    private final Operand[] sources;
+    private final Operand[] destinations;
+    private final int[] targets;
+
+    /**
+     * For each line, the opcode of the fused pair that starts on it (or
+     * NOT_FUSED) and the line of the pair's second instruction.
+     */
+    private final int[] fusedOpcodes;
+    private final int[] pairedLines;
+
+    /**
+     * For each line, the first instruction at or after it (or the number of
+     * lines if there is no such instruction). Only used when skipping
+     * non-instruction lines.
+     */
+    private final int[] nextInstruction;
+
+    /**
+     * Whether lines that aren't instructions are skipped over.
+     */
+    private final boolean skipsNonInstructions;
+
+    /**
+     * The registers used by each line, as reported by
+     * {@link x86ProgramLine#getUsedRegisters()}.
+     */
+    private final List<Set<String>> usedRegisters;
+
+    /**
+     * The quad registers used by each line, as masks (see
+     * {@link RegisterUse#maskOf}).
+     */
+    private final int[] usedRegisterMasks;
+
+    /**
+     * Index of the line where execution starts.
+     */
+    private final int entryPoint;
+
+    /**
+     * Decodes the given program. Everything is filled in here, so that the
+     * final fields make it all visible to any thread the image is handed to.
+     */
+    private DecodedProgram(x86Program program, boolean skipsNonInstructions) {
+        int numLines = program.getNumLines();
+        this.opcodes = new int[numLines];
+        this.sizes = new OpSize[numLines];
+        this.aluOperations = new ALU.Operation[numLines];
+        this.conditions = new IntPredicate[numLines];
+        this.sources = new Operand[numLines];
+        this.destinations = new Operand[numLines];
+        this.targets = new int[numLines];
+        this.fusedOpcodes = new int[numLines];
+        this.pairedLines = new int[numLines];
+        this.usedRegisters = new ArrayList<>(numLines);
+        this.usedRegisterMasks = new int[numLines];
+        this.nextInstruction = new int[numLines];
+        this.skipsNonInstructions = skipsNonInstructions;
+
+        for (int i = 0; i < numLines; i++) {
+            x86ProgramLine line = program.getLine(i);
+            decode(i, line);
+            this.usedRegisters.add(Collections.unmodifiableSet(
+                    new HashSet<>(line.getUsedRegisters())));
+            this.usedRegisterMasks[i] = RegisterUse.maskOf(this.usedRegisters.get(i));
+        }
+
+        int next = numLines;
+        for (int i = numLines - 1; i >= 0; i--) {
+            if (this.opcodes[i] != NOP) {
+                next = i;
+            }
+            this.nextInstruction[i] = next;
+        }
+
+        this.entryPoint = program.isEmpty() ? 0
+                : resolve(program.getBeginningOfProgram().getLineNum());
+        for (int i = 0; i < numLines; i++) {
+            if (this.targets[i] != NO_TARGET) {
+                this.targets[i] = resolve(this.targets[i]);
+            }
+        }
+        for (int i = 0; i < numLines; i++) {
+            fuse(i);
+        }
+    }
+
+    /**
+     * Decodes the current lines of the given program, executing every line.
+     *
+     * @param program The program to decode.
+     * @return The decoded image of the program.
+     */
+    public static DecodedProgram compile(x86Program program) {
+        return compile(program, false);
+    }
+
+    /**
+     * Decodes the current lines of the given program.
+     *
+     * @param program The program to decode.
+     * @param skipNonInstructions Whether labels, comments and blank lines
+     * should be skipped over rather than executed.
+     * @return The decoded image of the program.
+     */
+    public static DecodedProgram compile(x86Program program,
+            boolean skipNonInstructions) {
+        return new DecodedProgram(program, skipNonInstructions);
+    }
+
+    /**
+     * @return The line where execution continues when it reaches the given
+     * line.
+     */
+    private int resolve(int line) {
+        if (skipsNonInstructions && line >= 0 && line < nextInstruction.length) {
+            return nextInstruction[line];
+        }
+        return line;
+    }
+
+    /**
+     * Fills in the decoded form of a single line.
+     */
+    private void decode(int i, x86ProgramLine line) {
+        targets[i] = NO_TARGET;
+        if (!(line instanceof x86Instruction)) {
+            opcodes[i] = NOP;
+            return;
+        }
+
+        x86Instruction inst = (x86Instruction) line;
+        InstructionType type = inst.getType();
+        sizes[i] = inst.getOpSize();
+        if (inst instanceof x86BinaryInstruction) {
+            sources[i] = ((x86BinaryInstruction) inst).getSource();
+            destinations[i] = ((x86BinaryInstruction) inst).getDestination();
+        } else if (inst instanceof x86UnaryInstruction) {
+            destinations[i] = ((x86UnaryInstruction) inst).getDestination();
+        }
+
+        String name = type.name().toLowerCase();
+        switch (type) {
+            case ADD:
+            case SUB:
+            case IMUL:
+            case AND:
+            case OR:
+            case XOR:
+            case SAL:
+            case SAR:
+            case SHR:
+            case INC:
+            case DEC:
+            case NEG:
+                opcodes[i] = ALU_OP;
+                aluOperations[i] = ALU.Operation.valueOf(type.name());
+                break;
+            case SHL:
+                opcodes[i] = ALU_OP;
+                aluOperations[i] = ALU.Operation.SAL;
+                break;
+            case CMP:
+                opcodes[i] = ALU_COMPARE;
+                aluOperations[i] = ALU.Operation.SUB;
+                break;
+            case TEST:
+                opcodes[i] = ALU_COMPARE;
+                aluOperations[i] = ALU.Operation.AND;
+                break;
+            case NOT:
+                opcodes[i] = NOT;
+                break;
+            case MOV:
+            case MOVS:
+                opcodes[i] = MOV;
+                break;
+            case MOVZ:
+                opcodes[i] = MOVZ;
+                break;
+            case LEA:
+                opcodes[i] = LEA;
+                break;
+            case CMOVE:
+            case CMOVNE:
+            case CMOVS:
+            case CMOVNS:
+            case CMOVG:
+            case CMOVGE:
+            case CMOVL:
+            case CMOVLE:
+            case CMOVA:
+            case CMOVAE:
+            case CMOVB:
+            case CMOVBE:
+                opcodes[i] = CMOV;
+                conditions[i] = x86Instruction.conditions.get(name.substring(4));
+                break;
+            case SETE:
+            case SETNE:
+            case SETS:
+            case SETNS:
+            case SETG:
+            case SETGE:
+            case SETL:
+            case SETLE:
+            case SETA:
+            case SETAE:
+            case SETB:
+            case SETBE:
+                opcodes[i] = SET;
+                conditions[i] = x86Instruction.conditions.get(name.substring(3));
+                break;
+            case JE:
+            case JNE:
+            case JS:
+            case JNS:
+            case JG:
+            case JGE:
+            case JL:
+            case JLE:
+            case JA:
+            case JAE:
+            case JB:
+            case JBE:
+                opcodes[i] = JCC;
+                conditions[i] = x86Instruction.conditions.get(name.substring(1));
+                targets[i] = resolveTarget(destinations[i]);
+                break;
+            case JMP:
+                opcodes[i] = JMP;
+                targets[i] = resolveTarget(destinations[i]);
+                break;
+            case CALL:
+                opcodes[i] = CALL;
+                targets[i] = resolveTarget(destinations[i]);
+                break;
+            case RET:
+                opcodes[i] = RET;
+                break;
+            case PUSH:
+                opcodes[i] = PUSH;
+                break;
+            case POP:
+                opcodes[i] = POP;
+                break;
+            case IDIV:
+                opcodes[i] = IDIV;
+                break;
+            case CLT:
+                opcodes[i] = CLT;
+                break;
+            default:
+                throw new RuntimeException("unsupported instr type: " + type);
+        }
+    }
+
+    /**
+     * Decodes the line at the given index and the instruction after it as a
+     * fused pair, if they are a pair that can be fused.
+     */
+    private void fuse(int i) {
+        int j = i + 1 < opcodes.length ? resolve(i + 1) : opcodes.length;
+        if (j >= opcodes.length) {
+            return;
+        }
+
+        if (opcodes[i] == ALU_COMPARE) {
+            if (opcodes[j] == JCC && targets[j] != NO_TARGET) {
+                fusedOpcodes[i] = COMPARE_JCC;
+            } else if (opcodes[j] == SET && isRegisterOtherThanRsp(destinations[j])) {
+                fusedOpcodes[i] = COMPARE_SET;
+            } else if (opcodes[j] == CMOV && !(sources[j] instanceof MemoryOperand)
+                    && isRegisterOtherThanRsp(destinations[j])) {
+                fusedOpcodes[i] = COMPARE_CMOV;
+            }
+        } else if (opcodes[i] == MOV && opcodes[j] == ALU_OP
+                && isRegisterOtherThanRsp(destinations[i])
+                && sizes[i] == sizes[j]
+                && isFusableWithMove(aluOperations[j])
+                && destinations[j] instanceof RegOperand
+                && ((RegOperand) destinations[j]).getRegister()
+                        == ((RegOperand) destinations[i]).getRegister()) {
+            // The arithmetic's source must not be affected by the move.
+            Operand src = sources[j];
+            if (src instanceof ConstantOperand
+                    || (src instanceof RegOperand
+                        && ((RegOperand) src).getRegister().getQuadRegister()
+                            != ((RegOperand) destinations[i]).getRegister().getQuadRegister())) {
+                fusedOpcodes[i] = MOV_ALU;
+            }
+        }
+
+        if (fusedOpcodes[i] != NOT_FUSED) {
+            pairedLines[i] = j;
+        }
+    }
+
+    /**
+     * @return True if the operand is a register that isn't part of %rsp
+     * (writes to which need extra checks).
+     */
+    private static boolean isRegisterOtherThanRsp(Operand operand) {
+        return operand instanceof RegOperand
+                && ((RegOperand) operand).getRegister().getQuadRegister()
+                    != QuadRegister.RSP;
+    }
+
+    /**
+     * @return True if the operation can be fused with a move into its
+     * destination.
+     */
+    private static boolean isFusableWithMove(ALU.Operation op) {
+        switch (op) {
+            case ADD:
+            case SUB:
+            case IMUL:
+            case AND:
+            case OR:
+            case XOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The line number of the label referred to by the given jump or
+     * call operand, or NO_TARGET if there is no such label.
+     */
+    private static int resolveTarget(Operand operand) {
+        Optional<x86Label> label = ((LabelOperand) operand).getLabel();
+        return label.isPresent() ? label.get().getLineNum() : NO_TARGET;
+    }
+
+    /**
+     * @return The number of lines in the program.
+     */
+    public int getNumLines() {
+        return this.opcodes.length;
+    }
+
+    /**
+     * @return The index of the line where execution starts (i.e. the line
+     * with the "main" label, or the first line if there is no such label). When
+     * skipping non-instruction lines, this is the first instruction at or
+     * after that line.
+     */
+    public int getEntryPoint() {
+        return this.entryPoint;
+    }
+
+    /**
+     * @return Whether labels, comments and blank lines are skipped over
+     * rather than executed.
+     */
+    public boolean skipsNonInstructions() {
+        return this.skipsNonInstructions;
+    }
+
+    /**
+     * @param line The index of a line in the program.
+     * @return The line where execution continues when it reaches the given
+     * line: the given line itself or, when skipping non-instruction lines, the
+     * first instruction at or after it.
+     */
+    public int getExecutedLine(int line) {
+        return resolve(line);
+    }
+
+    /**
+     * @param index The index of a line in the program.
+     * @return The names of the registers used by that line.
+     */
+    public Set<String> getUsedRegisters(int index) {
+        return this.usedRegisters.get(index);
+    }
+
+    /**
+     * @param index The index of a line in the program.
+     * @return The quad registers used by that line, as a mask (see
+     * {@link RegisterUse#maskOf}).
+     */
+    int getUsedRegisterMask(int index) {
+        return this.usedRegisterMasks[index];
+    }
+
+    /*
+     * Accessors for the decoded form of a line, used by BlockCompiler to
+     * compile blocks of lines.
+     */
+    int getOpcode(int line) {
+        return this.opcodes[line];
+    }
+
+    OpSize getOpSize(int line) {
+        return this.sizes[line];
+    }
+
+    ALU.Operation getAluOperation(int line) {
+        return this.aluOperations[line];
+    }
+
+    IntPredicate getCondition(int line) {
+        return this.conditions[line];
+    }
+
+    Operand getSource(int line) {
+        return this.sources[line];
+    }
+
+    Operand getDestination(int line) {
+        return this.destinations[line];
+    }
+
+    /**
+     * @return The (resolved) line that the jump or call at the given index
+     * goes to, or NO_TARGET if its label doesn't exist.
+     */
+    int getTarget(int line) {
+        return this.targets[line];
+    }
+
+    /**
+     * @param line The index of a line in the program.
+     * @return True if the line starts a fused pair of instructions.
+     */
+    public boolean startsFusedPair(int line) {
+        return this.fusedOpcodes[line] != NOT_FUSED;
+    }
+
+    /**
+     * @param line The index of a line that starts a fused pair.
+     * @return The index of the line with the pair's second instruction.
+     */
+    public int getPairedLine(int line) {
+        return this.pairedLines[line];
+    }
+
+    /**
+     * Checks whether execution has reached the end of the program in the
+     * given state.
+     *
+     * @param state The state to check.
+     * @return True if there are no more instructions to execute.
+     */
+    public boolean isFinished(MachineState state) {
+        return state.getRipRegister() >= this.opcodes.length
+                || state.getCallStackSize() < 0;
+    }
+
+    /**
+     * Executes the line the rip register of the given state points to. When
+     * skipping non-instruction lines, the rip register of the resulting state
+     * is moved on to the next instruction.
+     *
+     * @param state The state in which to execute.
+     * @return The state after executing the line.
+     * @throws x86RuntimeException if there is a runtime error while executing
+     * the line.
+     */
+    public MachineState step(MachineState state) throws x86RuntimeException {
+        MachineState next = execute(state, state.getRipRegister());
+        if (skipsNonInstructions) {
+            int rip = next.getRipRegister();
+            int resolved = resolve(rip);
+            if (resolved != rip) {
+                // The state was created by this step so no one else has
+                // seen it yet.
+                next.setRip(resolved);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Executes the fused pair of instructions that starts on the line the rip
+     * register of the given state points to, or just that line if it doesn't
+     * start a pair (see {@link #startsFusedPair}). The resulting state is the
+     * same as after calling {@link #step} twice (or once), apart from being
+     * produced without the state in between.
+     *
+     * @param state The state in which to execute.
+     * @return The state after executing the pair.
+     * @throws x86RuntimeException if there is a runtime error while executing
+     * the pair's first instruction (its second one can't fail).
+     */
+    public MachineState stepFused(MachineState state) throws x86RuntimeException {
+        int i = state.getRipRegister();
+        if (fusedOpcodes[i] == NOT_FUSED) {
+            return step(state);
+        }
+
+        int j = pairedLines[i];
+        int after = resolve(j + 1);
+        if (fusedOpcodes[i] == MOV_ALU) {
+            // The arithmetic reads back the moved value at its own size.
+            long a = ALU.truncate(sources[i].getValue(state), sizes[j]);
+            long b = sources[j].getValue(state);
+            MachineState next = state.cloneWithRegisterWrittenBy(j,
+                    ((RegOperand) destinations[j]).getRegister(),
+                    ALU.result(aluOperations[j], a, b, sizes[j]), after);
+            next.setFlagsLazily(aluOperations[j], a, b, sizes[j]);
+            return next;
+        }
+
+        // Otherwise it's a compare followed by an instruction that reads the
+        // compare's flags.
+        long a = destinations[i].getValue(state);
+        long b = sources[i].getValue(state);
+        boolean condition = conditions[j].test(ALU.flags(aluOperations[i], a, b, sizes[i]));
+        MachineState next;
+        switch (fusedOpcodes[i]) {
+            case COMPARE_JCC:
+                next = state.cloneWithNewRIP(condition ? targets[j] : after);
+                break;
+            case COMPARE_SET:
+                next = state.cloneWithRegisterWrittenBy(j,
+                        ((RegOperand) destinations[j]).getRegister(),
+                        condition ? 1 : 0, after);
+                break;
+            case COMPARE_CMOV:
+                next = condition
+                        ? state.cloneWithRegisterWrittenBy(j,
+                                ((RegOperand) destinations[j]).getRegister(),
+                                sources[j].getValue(state), after)
+                        : state.cloneWithNewRIP(after);
+                break;
+            default:
+                throw new RuntimeException("unsupported fused opcode: "
+                        + fusedOpcodes[i]);
+        }
+        next.setFlagsLazily(aluOperations[i], a, b, sizes[i]);
+        return next;
+    }
+
+    /**
+     * Executes the line at the given index.
+     */
+    private MachineState execute(MachineState state, int i)
+            throws x86RuntimeException {
+        Operand src = sources[i];
+        Operand dest = destinations[i];
+
+        switch (opcodes[i]) {
+            case NOP:
+                return state.cloneWithIncrementedRIP();
+            case ALU_OP: {
+                long a = dest.getValue(state);
+                long b = src == null ? 0 : src.getValue(state);
+                long result = ALU.result(aluOperations[i], a, b, sizes[i]);
+                MachineState next = dest.updateState(state,
+                        OptionalLong.of(result), StatusFlags.NONE, true);
+                next.setFlagsLazily(aluOperations[i], a, b, sizes[i]);
+                return next;
+            }
+            case ALU_COMPARE: {
+                long a = dest.getValue(state);
+                long b = src.getValue(state);
+                MachineState next = dest.updateState(state,
+                        OptionalLong.empty(), StatusFlags.NONE, true);
+                next.setFlagsLazily(aluOperations[i], a, b, sizes[i]);
+                return next;
+            }
+            case NOT:
+                return dest.updateState(state, OptionalLong.of(~dest.getValue(state)),
+                        StatusFlags.NONE, true);
+            case MOV:
+                return dest.updateState(state, OptionalLong.of(src.getValue(state)),
+                        StatusFlags.NONE, true);
+            case MOVZ: {
+                long extended = ALU.zeroExtend(src.getValue(state), src.getOpSize());
+                return dest.updateState(state, OptionalLong.of(extended),
+                        StatusFlags.NONE, true);
+            }
+            case LEA: {
+                long address = ((MemoryOperand) src).calculateAddress(state);
+                return dest.updateState(state, OptionalLong.of(address),
+                        StatusFlags.NONE, true);
+            }
+            case CMOV: {
+                OptionalLong value = OptionalLong.empty();
+                if (conditions[i].test(state.getStatusFlags())) {
+                    value = OptionalLong.of(src.getValue(state));
+                }
+                return dest.updateState(state, value, StatusFlags.NONE, true);
+            }
+            case SET: {
+                long result = conditions[i].test(state.getStatusFlags()) ? 1 : 0;
+                return dest.updateState(state, OptionalLong.of(result),
+                        StatusFlags.NONE, true);
+            }
+            case JCC:
+                if (!conditions[i].test(state.getStatusFlags())) {
+                    return state.cloneWithIncrementedRIP();
+                }
+                return state.cloneWithNewRIP(target(i));
+            case JMP:
+                return state.cloneWithNewRIP(target(i));
+            case CALL:
+                return call(state, i);
+            case RET:
+                return ret(state);
+            case PUSH: {
+                MachineState tmp = RSP.updateState(state,
+                        OptionalLong.of(RSP.getValue(state) - 8), StatusFlags.NONE, false);
+                return STACK_TOP.updateState(tmp, OptionalLong.of(dest.getValue(tmp)),
+                        StatusFlags.NONE, true);
+            }
+            case POP: {
+                MachineState tmp = dest.updateState(state,
+                        OptionalLong.of(STACK_TOP.getValue(state)), StatusFlags.NONE, true);
+                return RSP.updateState(tmp, OptionalLong.of(RSP.getValue(tmp) + 8),
+                        StatusFlags.NONE, false);
+            }
+            case IDIV:
+                return idiv(state, dest, sizes[i]);
+            case CLT:
+                return RAX.updateState(state, OptionalLong.of(EAX.getValue(state)),
+                        StatusFlags.NONE, true);
+            default:
+                throw new RuntimeException("unsupported opcode: " + opcodes[i]);
+        }
+    }
+
+    /**
+     * @return The line that the jump or call at the given index goes to.
+     * @throws x86RuntimeException if the jump or call's label doesn't exist.
+     */
+    private int target(int i) throws x86RuntimeException {
+        if (targets[i] == NO_TARGET) {
+            throw new x86RuntimeException("Nonexistent label: "
+                    + ((LabelOperand) destinations[i]).getName());
+        }
+        return targets[i];
+    }
+
+    /**
+     * Pushes the return address onto the stack and jumps to the target of
+     * the call at the given index.
+     */
+    private MachineState call(MachineState state, int i) throws x86RuntimeException {
+        MachineState tmp = RSP.updateState(state,
+                OptionalLong.of(RSP.getValue(state) - 8), StatusFlags.NONE, false);
+        long returnAddr = tmp.getRipRegister() + 1;
+        tmp = STACK_TOP.updateState(tmp, OptionalLong.of(returnAddr),
+                StatusFlags.NONE, false);
+
+        MachineState mS = tmp.cloneWithNewRIP(target(i));
+        mS.pushToCallStack();
+        return mS;
+    }
+
+    /**
+     * Pops the return address off the stack and jumps to it. Returning from
+     * the outermost function (when its return address was never pushed) ends
+     * the program.
+     */
+    private static MachineState ret(MachineState state) throws x86RuntimeException {
+        MachineState mS;
+        try {
+            MachineState tmp = state.cloneWithNewRIP((int) STACK_TOP.getValue(state));
+            mS = RSP.updateState(tmp, OptionalLong.of(RSP.getValue(tmp) + 8),
+                    StatusFlags.NONE, false);
+        } catch (x86RuntimeException ex) {
+            if (state.getCallStackSize() != 0) {
+                throw ex;
+            }
+            mS = STACK_TOP.updateState(state, OptionalLong.empty(),
+                    StatusFlags.NONE, false);
+        }
+        mS.popFromCallStack();
+        return mS;
+    }
+
+    /**
+     * Divides the combined rdx:rax (or its sub-registers, for smaller sizes)
+     * by the given divisor, storing the quotient and remainder. Like the
+     * real instruction, the quotient is rounded toward zero and the
+     * remainder has the sign of the dividend.
+     */
+    private static MachineState idiv(MachineState state, Operand divisor,
+            OpSize size) throws x86RuntimeException {
+        BigInteger dividend = state.getCombinedRegisterValue(size);
+        long divisorValue = divisor.getValue(state);
+        if (divisorValue == 0) {
+            throw new x86RuntimeException("Division by zero");
+        }
+        BigInteger src = BigInteger.valueOf(divisorValue);
+        BigInteger quotient = dividend.divide(src);
+        BigInteger remainder = dividend.remainder(src);
+
+        RegOperand modDest = remainderDestination(size);
+        RegOperand divDest = quotientDestination(size);
+
+        MachineState tmp = divDest.updateState(state,
+                OptionalLong.of(quotient.longValue()), StatusFlags.NONE, false);
+        return modDest.updateState(tmp, OptionalLong.of(remainder.longValue()),
+                StatusFlags.NONE, true);
+    }
+
+    /**
+     * @return The register where idiv of the given size stores its quotient
+     * (null for the byte size, which isn't supported).
+     */
+    private static RegOperand quotientDestination(OpSize size) {
+        switch (size) {
+            case QUAD:
+                return RAX;
+            case LONG:
+                return EAX;
+            case WORD:
+                return AX;
+            case BYTE:
+                return AL;
+            default:
+                throw new RuntimeException("Unsupported op size");
+        }
+    }
+
+    /**
+     * @return The register where idiv of the given size stores its remainder.
+     */
+    private static RegOperand remainderDestination(OpSize size) {
+        switch (size) {
+            case QUAD:
+                return RDX;
+            case LONG:
+                return EDX;
+            case WORD:
+                return DX;
+            case BYTE:
+                return AH;
+            default:
+                throw new RuntimeException("Unsupported op size");
+        }
+    }
+
+    /*
+     * The in-place interpreter, which executes on a MutableMachineState
+     * instead of creating a new state for every instruction. Each opcode does
+     * exactly what execute does for it, in the same order, so it ends up with
+     * the same state. An instruction that fails leaves the state as it was
+     * before that instruction, like the immutable states do: every operand
+     * write checks everything before changing anything, and the stack
+     * instructions that write twice put back %rsp if their second write
+     * fails.
+     */
+
+    /**
+     * Checks whether execution has reached the end of the program in the
+     * given state.
+     *
+     * @param state The state to check.
+     * @return True if there are no more instructions to execute.
+     */
+    public boolean isFinished(MutableMachineState state) {
+        return state.getRipRegister() >= this.opcodes.length
+                || state.getCallStackSize() < 0;
+    }
+
+    /**
+     * Executes the line the rip register of the given state points to,
+     * updating the state in place (see {@link #step(MachineState)}).
+     *
+     * @param state The state in which to execute.
+     * @throws x86RuntimeException if there is a runtime error while executing
+     * the line, in which case the state is unchanged.
+     */
+    public void step(MutableMachineState state) throws x86RuntimeException {
+        executeInPlace(state, state.getRipRegister());
+        if (skipsNonInstructions) {
+            int rip = state.getRipRegister();
+            int resolved = resolve(rip);
+            if (resolved != rip) {
+                state.setRip(resolved);
+            }
+        }
+    }
+
+    /**
+     * Runs the program from the given state, updating the state in place,
+     * until it reaches the end of the program, an instruction causes an
+     * error, a budget runs out, or the run is cancelled. Nothing is
+     * allocated while the program runs apart from the memory pages it
+     * writes for the first time.
+     *
+     * @param state The state to run from, which ends up as the final state
+     * (or the state before the instruction that caused an error).
+     * @param maxInstructions The maximum number of instructions to execute.
+     * @param maxNanos The maximum amount of (wall clock) time to run for.
+     * @param cancellation Token that can be used to stop the run from another
+     * thread.
+     * @return The outcome of the run.
+     */
+    public RunResult run(MutableMachineState state, long maxInstructions,
+            long maxNanos, CancellationToken cancellation) {
+        long startTime = System.nanoTime();
+        long numExecuted = 0;
+        RunResult.Status status = null;
+        try {
+            while (status == null) {
+                if (isFinished(state)) {
+                    status = RunResult.Status.FINISHED;
+                } else if (numExecuted >= maxInstructions) {
+                    status = RunResult.Status.BUDGET_EXHAUSTED;
+                } else if (numExecuted % 256 == 0 && cancellation.isCancelled()) {
+                    status = RunResult.Status.CANCELLED;
+                } else if (numExecuted % 256 == 0
+                        && System.nanoTime() - startTime >= maxNanos) {
+                    status = RunResult.Status.BUDGET_EXHAUSTED;
+                } else {
+                    step(state);
+                    numExecuted++;
+                }
+            }
+        } catch (x86RuntimeException e) {
+            return new RunResult(RunResult.Status.ERROR, numExecuted,
+                    System.nanoTime() - startTime, Optional.of(e));
+        }
+        return new RunResult(status, numExecuted, System.nanoTime() - startTime,
+                Optional.empty());
+    }
+
+    /**
+     * Executes the line at the given index in place.
+     */
+    private void executeInPlace(MutableMachineState state, int i)
+            throws x86RuntimeException {
+        Operand src = sources[i];
+        Operand dest = destinations[i];
+        int rip = state.getRipRegister();
+
+        switch (opcodes[i]) {
+            case NOP:
+                break;
+            case ALU_OP: {
+                long a = dest.getValue(state);
+                long b = src == null ? 0 : src.getValue(state);
+                dest.setValue(state, ALU.result(aluOperations[i], a, b, sizes[i]));
+                state.setFlagsLazily(aluOperations[i], a, b, sizes[i]);
+                break;
+            }
+            case ALU_COMPARE: {
+                long a = dest.getValue(state);
+                long b = src.getValue(state);
+                state.setFlagsLazily(aluOperations[i], a, b, sizes[i]);
+                break;
+            }
+            case NOT:
+                dest.setValue(state, ~dest.getValue(state));
+                break;
+            case MOV:
+                dest.setValue(state, src.getValue(state));
+                break;
+            case MOVZ:
+                dest.setValue(state, ALU.zeroExtend(src.getValue(state), src.getOpSize()));
+                break;
+            case LEA:
+                dest.setValue(state, ((MemoryOperand) src).calculateAddress(state));
+                break;
+            case CMOV:
+                if (conditions[i].test(state.getStatusFlags())) {
+                    dest.setValue(state, src.getValue(state));
+                }
+                break;
+            case SET:
+                dest.setValue(state, conditions[i].test(state.getStatusFlags()) ? 1 : 0);
+                break;
+            case JCC:
+                if (conditions[i].test(state.getStatusFlags())) {
+                    state.setRip(target(i));
+                    return;
+                }
+                break;
+            case JMP:
+                state.setRip(target(i));
+                return;
+            case CALL:
+                callInPlace(state, i);
+                return;
+            case RET:
+                retInPlace(state);
+                return;
+            case PUSH: {
+                long oldRSP = RSP.getValue(state);
+                int oldOrigin = state.getOrigin(QuadRegister.RSP);
+                RSP.setValue(state, oldRSP - 8);
+                try {
+                    STACK_TOP.setValue(state, dest.getValue(state));
+                } catch (x86RuntimeException e) {
+                    state.restoreRegister(QuadRegister.RSP, oldRSP, oldOrigin);
+                    throw e;
+                }
+                break;
+            }
+            case POP:
+                dest.setValue(state, STACK_TOP.getValue(state));
+                state.setRip(rip + 1);
+                // Reading the top of the stack means %rsp is a multiple of 8,
+                // and so is whatever a (quad) pop into %rsp wrote, so this
+                // can't fail.
+                RSP.setValue(state, RSP.getValue(state) + 8);
+                return;
+            case IDIV:
+                idivInPlace(state, dest, sizes[i]);
+                break;
+            case CLT:
+                RAX.setValue(state, EAX.getValue(state));
+                break;
+            default:
+                throw new RuntimeException("unsupported opcode: " + opcodes[i]);
+        }
+        state.setRip(rip + 1);
+    }
+
+    /**
+     * @see #call
+     */
+    private void callInPlace(MutableMachineState state, int i)
+            throws x86RuntimeException {
+        long oldRSP = RSP.getValue(state);
+        int oldOrigin = state.getOrigin(QuadRegister.RSP);
+        RSP.setValue(state, oldRSP - 8);
+        try {
+            // Check the write before the label, which is checked last when
+            // not in place.
+            state.checkMemoryWrite(STACK_TOP.calculateAddress(state), 8);
+            int target = target(i);
+            STACK_TOP.setValue(state, state.getRipRegister() + 1);
+            state.setRip(target);
+        } catch (x86RuntimeException e) {
+            state.restoreRegister(QuadRegister.RSP, oldRSP, oldOrigin);
+            throw e;
+        }
+        state.pushToCallStack();
+    }
+
+    /**
+     * @see #ret
+     */
+    private static void retInPlace(MutableMachineState state)
+            throws x86RuntimeException {
+        long returnAddr;
+        try {
+            returnAddr = STACK_TOP.getValue(state);
+        } catch (x86RuntimeException ex) {
+            if (state.getCallStackSize() != 0) {
+                throw ex;
+            }
+            state.popFromCallStack();
+            return;
+        }
+        state.setRip((int) returnAddr);
+        RSP.setValue(state, RSP.getValue(state) + 8);
+        state.popFromCallStack();
+    }
+
+    /**
+     * Divides in place (see {@link #idiv}), with plain long arithmetic
+     * whenever the dividend fits in a long. Anything else goes through
+     * BigInteger.
+     */
+    private static void idivInPlace(MutableMachineState state, Operand divisor,
+            OpSize size) throws x86RuntimeException {
+        long upper;
+        long lower;
+        long dividend;
+        boolean fits = true;
+        switch (size) {
+            case QUAD:
+                upper = state.getRegisterValue(RDX_REG);
+                lower = state.getRegisterValue(RAX_REG);
+                dividend = lower;
+                fits = upper == lower >> 63;
+                break;
+            case LONG:
+                upper = state.getRegisterValue(EDX_REG);
+                lower = state.getRegisterValue(EAX_REG);
+                dividend = (upper << 32) | (lower & 0xFFFFFFFFL);
+                break;
+            case WORD:
+                upper = state.getRegisterValue(DX_REG);
+                lower = state.getRegisterValue(AX_REG);
+                dividend = (upper << 16) | (lower & 0xFFFFL);
+                break;
+            case BYTE:
+                upper = 0;
+                lower = 0;
+                dividend = state.getRegisterValue(AX_REG);
+                break;
+            default:
+                throw new RuntimeException("Unsupported op size");
+        }
+        long src = divisor.getValue(state);
+        if (src == 0) {
+            throw new x86RuntimeException("Division by zero");
+        }
+
+        long quotient;
+        long remainder;
+        if (fits) {
+            quotient = dividend / src;
+            remainder = dividend % src;
+        } else {
+            BigInteger big = MachineState.combine(upper, lower, size);
+            quotient = big.divide(BigInteger.valueOf(src)).longValue();
+            remainder = big.remainder(BigInteger.valueOf(src)).longValue();
+        }
+
+        quotientDestination(size).setValue(state, quotient);
+        remainderDestination(size).setValue(state, remainder);
+    }
+}
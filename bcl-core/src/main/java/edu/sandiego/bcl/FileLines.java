@@ -0,0 +1,217 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * The lines of a (UTF-8) file, each with the spaces around it trimmed, as
+ * {@link java.io.BufferedReader#readLine} and {@link String#trim} would
+ * give them.
+ *
+ * Large files are mapped into memory rather than read, so they don't take up
+ * any room on the heap. The file is scanned once, for where its lines are,
+ * and each line is a view of its bytes. Only lines with characters outside
+ * of ASCII (e.g. in a comment) are decoded into strings.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class FileLines extends AbstractList<CharSequence> implements RandomAccess {
+
+    /**
+     * The size from which files are mapped. Smaller files, like those edited
+     * in the user interface, are read: mapping costs more to set up, and on
+     * some systems a mapped file can't be written to until the mapping is
+     * garbage collected.
+     */
+    static final long MAP_THRESHOLD = 16 * 1024 * 1024;
+
+    private final ByteBuffer bytes;
+
+    /**
+     * Where each line starts and ends (both trimmed) in the bytes.
+     */
+    private int[] starts;
+    private int[] ends;
+    private int numLines;
+
+    /**
+     * The lines that aren't all ASCII.
+     */
+    private final BitSet nonAsciiLines;
+
+    /**
+     * Reads the lines of the given file.
+     *
+     * @param file The file to read.
+     * @return The lines of the file.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException if there was a problem reading from the file (or it
+     * is 2GB or more).
+     */
+    static FileLines read(File file) throws FileNotFoundException, IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + file);
+            }
+
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                // The mapping stays valid once the file is closed.
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // keep reading
+                }
+                bytes.flip();
+            }
+            return new FileLines(bytes);
+        }
+    }
+
+    /**
+     * @param bytes The contents of the file, from its position to its limit.
+     */
+    FileLines(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.starts = new int[16];
+        this.ends = new int[16];
+        this.numLines = 0;
+        this.nonAsciiLines = new BitSet();
+
+        int limit = bytes.limit();
+        int pos = bytes.position();
+        while (pos < limit) {
+            int start = pos;
+            boolean ascii = true;
+            byte b = 0;
+            while (pos < limit) {
+                b = bytes.get(pos);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+                pos++;
+            }
+            int end = pos;
+
+            // Lines end with "\n", "\r" or "\r\n" (or the end of the file).
+            if (pos < limit) {
+                pos++;
+                if (b == '\r' && pos < limit && bytes.get(pos) == '\n') {
+                    pos++;
+                }
+            }
+
+            // Trim it: UTF-8 encodes the characters trim removes (those up to
+            // ' ') as single bytes, and never uses those bytes otherwise.
+            while (start < end && (bytes.get(start) & 0xff) <= ' ') {
+                start++;
+            }
+            while (end > start && (bytes.get(end - 1) & 0xff) <= ' ') {
+                end--;
+            }
+            addLine(start, end, ascii);
+        }
+    }
+
+    private void addLine(int start, int end, boolean ascii) {
+        if (this.numLines == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, 2 * this.numLines);
+            this.ends = Arrays.copyOf(this.ends, 2 * this.numLines);
+        }
+        if (!ascii) {
+            this.nonAsciiLines.set(this.numLines);
+        }
+        this.starts[this.numLines] = start;
+        this.ends[this.numLines] = end;
+        this.numLines++;
+    }
+
+    @Override
+    public CharSequence get(int index) {
+        if (index < 0 || index >= this.numLines) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + this.numLines);
+        }
+        int start = this.starts[index];
+        int end = this.ends[index];
+        if (this.nonAsciiLines.get(index)) {
+            return new String(getBytes(this.bytes, start, end), StandardCharsets.UTF_8);
+        }
+        return new AsciiSequence(this.bytes, start, end);
+    }
+
+    @Override
+    public int size() {
+        return this.numLines;
+    }
+
+    /**
+     * @return A copy of the given range of bytes.
+     */
+    private static byte[] getBytes(ByteBuffer bytes, int start, int end) {
+        // A duplicate has a position of its own, so other threads can keep
+        // using the buffer.
+        ByteBuffer range = bytes.duplicate();
+        range.position(start);
+        byte[] copy = new byte[end - start];
+        range.get(copy);
+        return copy;
+    }
+
+    /**
+     * Some ASCII characters, viewed directly in the bytes that hold them.
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int end;
+
+        AsciiSequence(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + length());
+            }
+            return (char) this.bytes.get(this.start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || start > end || end > length()) {
+                throw new IndexOutOfBoundsException("Range " + start + " to " + end
+                        + " of " + length());
+            }
+            return new AsciiSequence(this.bytes, this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(getBytes(this.bytes, this.start, this.end),
+                    StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.sandiego.bcl;
+
+import java.util.List;
+
+/**
+ * Helpers for writing JSON output (e.g. {@link BatchRunner}'s results), which
+ * is simple enough not to need a library.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * @return The given string as a JSON string literal.
+     */
+    public static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                    break;
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * @return The given condition flags as a JSON object, e.g.
+     * {"ZF":true,"SF":false,"OF":false,"CF":false}.
+     */
+    public static String flags(boolean zero, boolean sign, boolean overflow,
+            boolean carry) {
+        return "{\"ZF\":" + zero + ",\"SF\":" + sign + ",\"OF\":" + overflow
+                + ",\"CF\":" + carry + "}";
+    }
+
+    /**
+     * @return The given stack entries as a JSON array of objects with the
+     * entry's start and end addresses, value and origin (line number).
+     */
+    public static String stack(List<StackEntry> entries) {
+        StringBuilder s = new StringBuilder("[");
+        for (StackEntry entry : entries) {
+            if (s.length() > 1) {
+                s.append(',');
+            }
+            s.append("{\"start\":")
+                    .append(quote(String.format("0x%X", entry.getStartAddress())))
+                    .append(",\"end\":")
+                    .append(quote(String.format("0x%X", entry.getEndAddress())))
+                    .append(",\"value\":").append(quote(entry.getValue()))
+                    .append(",\"origin\":").append(entry.getOrigin())
+                    .append('}');
+        }
+        return s.append(']').toString();
+    }
+}
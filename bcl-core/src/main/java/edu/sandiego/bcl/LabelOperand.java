@@ -5,10 +5,9 @@
  */
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 
 /**
@@ -38,24 +37,44 @@ public class LabelOperand extends Operand {
         return name;
     }
 
+    /**
+     * @return The label this operand refers to, or empty if there is no label
+     * with this operand's name.
+     */
+    Optional<x86Label> getLabel() {
+        return Optional.ofNullable(label);
+    }
+
     @Override
-    public BigInteger getValue(MachineState state) throws x86RuntimeException {
+    public long getValue(MachineState state) throws x86RuntimeException {
         if (label == null) {
             throw new x86RuntimeException("Nonexistent label: " + this.name);
         }
-        String num = "" + label.getLineNum();
-        return new BigInteger(num);
+        return label.getLineNum();
     }
 
     @Override
-    public MachineState updateState(MachineState currState, Optional<BigInteger> val, Map<String, Boolean> flags, boolean updateRIP) {
+    public MachineState updateState(MachineState currState, OptionalLong val, int flags, boolean updateRIP) {
         if (val.isPresent()) {
-            return currState.cloneWithNewRIP(val.get().intValue());
+            return currState.cloneWithNewRIP((int) val.getAsLong());
         } else {
             return currState.cloneWithIncrementedRIP();
         }
     }
 
+    @Override
+    long getValue(MutableMachineState state) throws x86RuntimeException {
+        if (label == null) {
+            throw new x86RuntimeException("Nonexistent label: " + this.name);
+        }
+        return label.getLineNum();
+    }
+
+    @Override
+    void setValue(MutableMachineState state, long val) {
+        state.setRip((int) val);
+    }
+
     @Override
     public Set<String> getUsedRegisters() {
         return new HashSet<String>();
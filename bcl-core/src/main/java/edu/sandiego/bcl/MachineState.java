@@ -0,0 +1,613 @@
+package edu.sandiego.bcl;
+
+import java.util.OptionalLong;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * A class representing the state of the machine, namely its register file and
+ * memory.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class MachineState {
+
+    /**
+     * Registers used implicitly by some instructions.
+     */
+    private static final SubRegister RAX = SubRegister.fromName("rax");
+    private static final SubRegister RDX = SubRegister.fromName("rdx");
+    private static final SubRegister EAX = SubRegister.fromName("eax");
+    private static final SubRegister EDX = SubRegister.fromName("edx");
+    private static final SubRegister AX = SubRegister.fromName("ax");
+    private static final SubRegister DX = SubRegister.fromName("dx");
+
+    /**
+     * The register file.
+     */
+    private RegisterFile registers;
+
+    /**
+     * The machine's memory.
+     */
+    private PagedMemory memory;
+
+    /**
+     * The status flags (i.e. condition codes), packed as described in
+     * {@link StatusFlags}. When there is a pending flag operation, these are
+     * instead the flags from before that operation.
+     */
+    private int statusFlags;
+
+    /**
+     * The last ALU operation that wrote the status flags, along with its
+     * operands and size, or null if the flags are all in statusFlags. Most
+     * flags are overwritten before anything reads them, so they are only
+     * computed from these when they are asked for.
+     */
+    private ALU.Operation flagOperation;
+    private long flagOperandA;
+    private long flagOperandB;
+    private OpSize flagSize;
+
+    /**
+     * The rip register.
+     */
+    private int rip;
+    
+    /**
+     * Number of functions on call stack
+     */
+    private int callStackSize;
+
+    /**
+     * When each register was last used. This is only kept up to date by
+     * {@link Simulation}: states created by executing an instruction start
+     * out with no registers used.
+     */
+    private RegisterUse registerUse = RegisterUse.NONE;
+
+    /**
+     * Create a new state with all registers (except %rsp) initialized to 0 but
+     * no memory initialization. %rsp is initialized to 0x7FFFFFFF.
+     */
+    public MachineState() {
+        this.memory = PagedMemory.empty();
+        this.statusFlags = StatusFlags.NONE;
+        this.rip = 0;
+        this.callStackSize = 0;
+
+        // initialize RSP to 0x7FFFFFFFFFFFFFF8
+        long initRSP = 1 << 30;
+        initRSP <<= 30;
+        initRSP <<= 3;
+        initRSP = ~initRSP;
+        initRSP -= 7;
+        this.registers = new RegisterFile().withValue(QuadRegister.RSP, initRSP, -1);
+    }
+
+    public MachineState(RegisterFile reg, PagedMemory mem, int flags, int RIP, int cStack) {
+        this.registers = reg;
+        this.memory = mem;
+        this.statusFlags = flags;
+        this.rip = RIP;
+        this.callStackSize = cStack;
+    }
+
+    /**
+     * Creates a state whose status flags are set lazily from the given
+     * operation on top of the given eager flags (as if by
+     * {@link #setFlagsLazily}), or are just the eager flags if the operation
+     * is null.
+     */
+    MachineState(RegisterFile reg, PagedMemory mem,
+            int eagerFlags, ALU.Operation op, long a, long b, OpSize size,
+            int RIP, int cStack) {
+        this(reg, mem, eagerFlags, RIP, cStack);
+        this.flagOperation = op;
+        this.flagOperandA = a;
+        this.flagOperandB = b;
+        this.flagSize = size;
+    }
+
+    /**
+     * @return The status flags, packed as described in {@link StatusFlags}.
+     */
+    public int getStatusFlags() {
+        if (this.flagOperation == null) {
+            return this.statusFlags;
+        }
+        return StatusFlags.merge(ALU.flags(this.flagOperation,
+                this.flagOperandA, this.flagOperandB, this.flagSize),
+                this.statusFlags);
+    }
+
+    // Getters for the status flags
+    public boolean getCarryFlag() {
+        return StatusFlags.isSet(getStatusFlags(), StatusFlags.CF);
+    }
+
+    public boolean getOverflowFlag() {
+        return StatusFlags.isSet(getStatusFlags(), StatusFlags.OF);
+    }
+
+    public boolean getZeroFlag() {
+        return StatusFlags.isSet(getStatusFlags(), StatusFlags.ZF);
+    }
+
+    public boolean getSignFlag() {
+        return StatusFlags.isSet(getStatusFlags(), StatusFlags.SF);
+    }
+
+    /**
+     * Sets the status flags of this state to the ones written by the given
+     * ALU operation, without computing them until they are asked for. This
+     * must only be called on a state that was just created with no flags
+     * written, before anyone else sees it.
+     *
+     * @param op The operation that was performed.
+     * @param a The first operand (i.e. the destination operand).
+     * @param b The second operand (i.e. the source operand or shift count).
+     * @param size The size of the operation.
+     */
+    void setFlagsLazily(ALU.Operation op, long a, long b, OpSize size) {
+        switch (op) {
+            case SAL:
+            case SAR:
+            case SHR:
+                // Shifting by zero doesn't write any flags.
+                if (ALU.shiftCount(b, size) == 0) {
+                    return;
+                }
+                break;
+            case INC:
+            case DEC:
+                // These leave CF unchanged so we need the current flags.
+                this.statusFlags = getStatusFlags();
+                break;
+            default:
+                break;
+        }
+        this.flagOperation = op;
+        this.flagOperandA = a;
+        this.flagOperandB = b;
+        this.flagSize = size;
+    }
+
+    /**
+     * @return The status flags that aren't being computed lazily (i.e. all of
+     * them when there is no pending flag operation, otherwise the ones that
+     * the pending operation's flags are merged into).
+     */
+    int getEagerStatusFlags() {
+        return this.statusFlags;
+    }
+
+    /**
+     * Copies this state's status flags, including any pending flag operation,
+     * into the given mutable state.
+     */
+    void copyFlagsTo(MutableMachineState state) {
+        state.setFlags(this.statusFlags, this.flagOperation, this.flagOperandA,
+                this.flagOperandB, this.flagSize);
+    }
+
+    /**
+     * Creates a new state with the given registers and rip. If an operation
+     * is given, the status flags are set lazily from it on top of the given
+     * eager flags (as if by {@link #setFlagsLazily}); otherwise they are the
+     * same as this state's.
+     */
+    MachineState cloneWithRegisters(RegisterFile regs, int newRIPVal,
+            ALU.Operation op, int eagerFlags, long a, long b, OpSize size) {
+        if (op == null) {
+            return cloneWithSameFlags(regs, this.memory, newRIPVal, this.callStackSize);
+        }
+        MachineState clone = new MachineState(regs, this.memory,
+                eagerFlags, newRIPVal, this.callStackSize);
+        clone.flagOperation = op;
+        clone.flagOperandA = a;
+        clone.flagOperandB = b;
+        clone.flagSize = size;
+        return clone;
+    }
+
+    /**
+     * @param other Another state.
+     * @return True if this state's status flags are known to be the same as
+     * the other state's without computing them.
+     */
+    boolean hasSameFlagsAs(MachineState other) {
+        return this.statusFlags == other.statusFlags
+                && this.flagOperation == other.flagOperation
+                && this.flagOperandA == other.flagOperandA
+                && this.flagOperandB == other.flagOperandB
+                && this.flagSize == other.flagSize;
+    }
+
+    /**
+     * Creates a new state with the given registers, memory, rip and call
+     * stack size but with the same status flags as this one.
+     */
+    MachineState cloneWithSameFlags(RegisterFile regs, PagedMemory mem,
+            int newRIPVal, int cStack) {
+        MachineState clone = new MachineState(regs, mem,
+                this.statusFlags, newRIPVal, cStack);
+        clone.flagOperation = this.flagOperation;
+        clone.flagOperandA = this.flagOperandA;
+        clone.flagOperandB = this.flagOperandB;
+        clone.flagSize = this.flagSize;
+        return clone;
+    }
+
+    /**
+     * Creates a new state with the given registers, memory and rip, and with
+     * the given flags written on top of this state's flags.
+     */
+    private MachineState cloneWithWrittenFlags(RegisterFile regs, PagedMemory mem,
+            int writtenFlags, int newRIPVal) {
+        if (StatusFlags.writesNone(writtenFlags)) {
+            return cloneWithSameFlags(regs, mem, newRIPVal, this.callStackSize);
+        }
+        return new MachineState(regs, mem,
+                StatusFlags.merge(writtenFlags, getStatusFlags()), newRIPVal,
+                this.callStackSize);
+    }
+
+    /**
+     * Create a new MachineState based on the current state but with an updated
+     * value for a memory address.
+     *
+     * @param newValueForStack The new value of the given memory address.
+     * @param newValueStartingAddress The starting (i.e. lowest) address that will be changed.
+     * @param newValueSize The number of bytes to write to memory.
+     * @param flagsForClone The status flags written by the instruction (see
+     * {@link StatusFlags}).
+     * @param incrementRIP Whether to increment RIP or not.
+     * @return A new state that is the same as the current but with new binding
+     * from given address to given val.
+     * @throws edu.sandiego.bcl.x86RuntimeException
+     */
+    public MachineState cloneWithUpdatedMemory(OptionalLong newValueForStack, 
+            long newValueStartingAddress, int newValueSize,
+            int flagsForClone,
+            boolean incrementRIP) throws x86RuntimeException {
+        
+        PagedMemory memoryForClone = this.memory;
+        RegisterFile registersForClone = this.registers;
+
+        if (newValueForStack.isPresent()) {
+            // Limit writes to only valid memory locations (i.e. the stack).
+            if (!isValidMemoryAccess(newValueStartingAddress, newValueSize)) {
+                throw new x86RuntimeException("Invalid write to 0x" 
+                        + Long.toHexString(newValueStartingAddress).toUpperCase());
+            }
+            
+            // Enforce Intel-recommended alignments.
+            if (newValueStartingAddress % newValueSize != 0) {
+                throw new x86RuntimeException("Unaligned memory access");
+            }
+            
+            memoryForClone = this.memory.write(newValueStartingAddress,
+                    newValueSize, newValueForStack.getAsLong(), rip);
+        }
+        
+        int newRipVal = this.rip;
+        if (incrementRIP) newRipVal++;
+
+        return cloneWithWrittenFlags(registersForClone, memoryForClone,
+                flagsForClone, newRipVal);
+    }
+
+    /**
+     * Check if access to a given address is valid.
+     * An invalid access includes anything outside of the range of valid stack 
+     * addresses (i.e. 0x7F..FF down to %rsp).
+     * 
+     * @param startAddress The starting (i.e. lowest) address of the access.
+     * @param size The size (number of bytes) of the memory access.
+     * @return True if access is valid, false otherwise.
+     */
+    public boolean isValidMemoryAccess(long startAddress, int size) {
+        long endAddress = (startAddress + size) - 1;
+        long topOfStackAddress = this.registers.getValue(QuadRegister.RSP);
+        
+        /*
+         * @note Since addresses are of long type, any address larger than
+         * 0x7F..FF will be a negative number so we can simple check if the
+         * address is a negative number.
+         */
+        return (startAddress >= topOfStackAddress && endAddress >= 0);
+    }
+
+    /**
+     * Creates a new MachineState that is the same as the calling object but
+     * with the rip register incremented by 1.
+     *
+     * @return A new MachineState that is identical to the calling object except
+     * for the incremented rip register.
+     */
+    public MachineState cloneWithIncrementedRIP() {
+        return cloneWithSameFlags(this.registers, this.memory, rip + 1, this.callStackSize);
+    }
+
+    /**
+     * Creates a new MachineState that is the same as the calling object but
+     * with the rip register set to the given value.
+     *
+     * @param newRIPVal The value used by the rip register in the new state.
+     * @return A new MachineState that is identical to the calling object except
+     * for updated rip register.
+     */
+    public MachineState cloneWithNewRIP(int newRIPVal) {
+        return cloneWithSameFlags(this.registers, this.memory, newRIPVal, this.callStackSize);
+    }
+
+    /**
+     * Creates a new state with a register written by the instruction on the
+     * given line, rather than by the current instruction, and with the rip
+     * register set to the given value. This skips the checks for writes to
+     * %rsp so it must not be used for any part of %rsp.
+     *
+     * @param line The line the write is attributed to.
+     * @param reg The register that will be updated.
+     * @param val The new value of the register.
+     * @param newRIPVal The value of the rip register in the new state.
+     * @return The updated state, with the same status flags as this one.
+     */
+    MachineState cloneWithRegisterWrittenBy(int line, SubRegister reg, long val,
+            int newRIPVal) {
+        QuadRegister quadReg = reg.getQuadRegister();
+        assert quadReg != QuadRegister.RSP;
+        long newValQuad = reg.setValue(this.registers.getValue(quadReg), val);
+        return cloneWithSameFlags(this.registers.withValue(quadReg, newValQuad, line),
+                this.memory, newRIPVal, this.callStackSize);
+    }
+
+    /**
+     * Create a new MachineState based on the current state but with an updated
+     * value for a register.
+     *
+     * @param reg The register that will be updated.
+     * @param val The new value of the given register.
+     * @param flags The status flags written by the instruction (see
+     * {@link StatusFlags}).
+     * @param incrementRIP Whether to increment the RIP or not.
+     * @return A new state that is the same as the current but with new binding
+     * from given register to given val
+     */
+    public MachineState cloneWithUpdatedRegister(SubRegister reg,
+            OptionalLong val,
+            int flags,
+            boolean incrementRIP) throws x86RuntimeException {
+        RegisterFile regFile = this.registers;
+        PagedMemory mem = this.memory;
+        if (val.isPresent()) {
+            QuadRegister quadReg = reg.getQuadRegister();
+            boolean isRSP = quadReg == QuadRegister.RSP 
+                    && reg.getSize() == OpSize.QUAD;
+
+            // Enforce proper alignment of rsp (i.e. multiple of 8)
+            if (isRSP && val.getAsLong() % 8 != 0) {
+                throw new x86RuntimeException("rsp should be multiple of 8");
+            }
+            
+            /* 
+             * If we are incrementing rsp, that means we are reducing the size
+             * of the stack. As a result, we may need to remove some entries
+             * from the stack.
+             */
+            long oldRSP = this.registers.getValue(QuadRegister.RSP);
+            if (isRSP && val.getAsLong() > oldRSP) {
+                /* 
+                 * Any entry with a starting address less than the new value
+                 * for rsp (i.e. above the updated stack) will be removed.
+                 * Writes never go below rsp so those entries all start
+                 * between the old and new values of rsp.
+                 */
+                mem = this.memory.withEntriesRemoved(oldRSP, val.getAsLong());
+            }
+
+            // The register file contains only the quad sized registers, so
+            // we insert the new value into the appropriate part of the quad
+            // register.
+            long newValQuad = reg.setValue(this.registers.getValue(quadReg), 
+                    val.getAsLong());
+            regFile = this.registers.withValue(quadReg, newValQuad, rip);
+        }
+        int newRipVal = rip;
+
+        if (incrementRIP) {
+            newRipVal++;
+        }
+
+        return cloneWithWrittenFlags(regFile, mem, flags, newRipVal);
+    }
+
+    /**
+     * @return The BigInteger representation of the value in the rip register.
+     */
+    public int getRipRegister() {
+        return rip;
+    }
+
+    /**
+     * Gets the (sign extended) value stored in the given register.
+     */
+    public long getRegisterValue(SubRegister reg) {
+        return reg.getValue(registers.getValue(reg.getQuadRegister()));
+    }
+
+    /**
+     * Gets the value stored in the combination of rdx and rax (e.g. edx:eax
+     * for the LONG size), as used by the division instructions.
+     */
+    public BigInteger getCombinedRegisterValue(OpSize size) {
+        SubRegister upperReg = null;
+        SubRegister lowerReg = null;
+
+        switch (size) {
+            case QUAD:
+                upperReg = RDX;
+                lowerReg = RAX;
+                break;
+            case LONG:
+                upperReg = EDX;
+                lowerReg = EAX;
+                break;
+            case WORD:
+                upperReg = DX;
+                lowerReg = AX;
+                break;
+            case BYTE:
+                return BigInteger.valueOf(getRegisterValue(AX));
+            default:
+                throw new RuntimeException("Unsupported op size");
+        }
+
+        return combine(getRegisterValue(upperReg), getRegisterValue(lowerReg), size);
+    }
+
+    /**
+     * Combines the (sign extended) values of an upper and a lower register of
+     * the given size into one value, with the lower half unsigned.
+     */
+    static BigInteger combine(long upperValue, long lowerValue, OpSize size) {
+        BigInteger upper = BigInteger.valueOf(upperValue);
+        BigInteger lower = BigInteger.valueOf(lowerValue);
+        if (lower.signum() == -1) {
+            // The lower half is unsigned in the combined value.
+            lower = lower.add(BigInteger.ONE.shiftLeft(size.numBits()));
+        }
+
+        return upper.shiftLeft(size.numBits()).or(lower);
+    }
+
+    /**
+     * Gets the value stored at the given memory address.
+     *
+     * @param address The starting address where the value is stored.
+     * @param size The number of bytes of memory to read.
+     * @return The value at the given address with the given size
+     * @throws edu.sandiego.bcl.x86RuntimeException
+     */
+    public long getMemoryValue(long address, int size) throws x86RuntimeException {
+        if (!this.isValidMemoryAccess(address, size)) {
+            throw new x86RuntimeException("Illegal read from 0x" 
+                + String.format("%X", address));
+        }
+        
+        // Enforce Intel-recommended alignments.
+        if (address % size != 0) {
+            throw new x86RuntimeException("Unaligned memory access");
+        }
+        
+        int initialized = this.memory.countInitialized(address, size);
+        if (initialized < size) {
+            throw new x86RuntimeException("Read from uninitialized memory: 0x" 
+                    + String.format("%X", address + initialized).replaceFirst("F{4,}","F..F"));
+        }
+        
+        return this.memory.read(address, size);
+    }
+
+    /**
+     * Returns a list of all registers, whose prominence is how recently they
+     * were used (see {@link RegisterUse}).
+     *
+     * @return List of Register objects for all of the registers in this state.
+     */
+    public List<Register> getRegisters() {
+        ArrayList<Register> arr = new ArrayList<>();
+        for (QuadRegister reg : QuadRegister.values()) {
+            String fullS = String.format("%016X", registers.getValue(reg));
+            arr.add(new Register(reg.getName(), registerUse.getProminence(reg),
+                    registers.getOrigin(reg), fullS));
+        }
+        return arr;
+    }
+
+    /**
+     * @return When each register was last used.
+     */
+    RegisterUse getRegisterUse() {
+        return this.registerUse;
+    }
+
+    /**
+     * @param use When each register was last used.
+     * @return A copy of this state with the given register use.
+     */
+    MachineState withRegisterUse(RegisterUse use) {
+        MachineState clone = cloneWithSameFlags(this.registers, this.memory,
+                this.rip, this.callStackSize);
+        clone.registerUse = use;
+        return clone;
+    }
+
+    /**
+     * @return The register file.
+     */
+    public RegisterFile getRegisterFile() {
+        return registers;
+    }
+
+    /**
+     * @return The machine's memory.
+     */
+    public PagedMemory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns a list of stack entries.
+     */
+    public List<StackEntry> getStackEntries() {
+        return memory.getStackEntries();
+    }
+
+    public String toString() {
+        String s = "Registers:\n";
+        for (QuadRegister reg : QuadRegister.values()) {
+            long val = registers.getValue(reg);
+            s += "\t" + reg.getName() + ": " + val + " (0x" 
+                    + String.format("%016X", val) + ")\n";
+        }
+
+        s += "Status Flags:\n";
+        s += "\tzf: " + (getZeroFlag() ? "1" : "0") + "\n";
+        s += "\tsf: " + (getSignFlag() ? "1" : "0") + "\n";
+        s += "\tof: " + (getOverflowFlag() ? "1" : "0") + "\n";
+        s += "\tcf: " + (getCarryFlag() ? "1" : "0") + "\n";
+
+        s += "Memory:\n";
+        for (StackEntry e : this.memory.getStackEntries()) {
+            byte[] ba = e.getValueArr();
+            s += "\t" + Long.toHexString(e.getStartAddress()) + ": ";
+            for (byte b : ba) {
+                s += String.format("%02X", b);
+            }
+            s += "\n";
+        }
+        return s;
+    }
+    
+    public void setRip(int i){
+        if(i >= 0){
+            this.rip = i;
+        }
+    }
+    
+    public void pushToCallStack(){
+        callStackSize++;
+    }
+    
+    public void popFromCallStack(){
+        callStackSize--;
+    }
+    
+    public int getCallStackSize(){
+        return this.callStackSize;
+    }
+}
@@ -1,8 +1,7 @@
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -14,14 +13,14 @@ import java.util.HashSet;
 public class MemoryOperand extends Operand {
 
     /**
-     * Name of the base register.
+     * The base register.
      */
-    private final Optional<String> baseReg;
+    private final Optional<SubRegister> baseReg;
 
     /**
-     * Name of the index register.
+     * The index register.
      */
-    private final Optional<String> indexReg;
+    private final Optional<SubRegister> indexReg;
 
     /**
      * The scaling factor for the index register.
@@ -40,13 +39,43 @@ public class MemoryOperand extends Operand {
 
     public MemoryOperand(String baseReg, String indexReg, Integer scale, Integer offset, OpSize opSize, String offsetStr) {
         super(opSize);
-        this.baseReg = Optional.ofNullable(baseReg);
-        this.indexReg = Optional.ofNullable(indexReg);
+        this.baseReg = Optional.ofNullable(baseReg).map(MemoryOperand::decodeRegister);
+        this.indexReg = Optional.ofNullable(indexReg).map(MemoryOperand::decodeRegister);
         this.scale = Optional.ofNullable(scale);
         this.offset = Optional.ofNullable(offset);
         this.offsetStr = offsetStr;
     }
 
+    private static SubRegister decodeRegister(String regName) {
+        SubRegister reg = SubRegister.fromName(regName);
+        if (reg == null) {
+            throw new RuntimeException("Unknown register name: " + regName);
+        }
+        return reg;
+    }
+
+    Optional<SubRegister> getBaseRegister() {
+        return this.baseReg;
+    }
+
+    Optional<SubRegister> getIndexRegister() {
+        return this.indexReg;
+    }
+
+    /**
+     * @return The scaling factor for the index register (1 if none was given).
+     */
+    long getScale() {
+        return scale.isPresent() ? scale.get() : 1;
+    }
+
+    /**
+     * @return The offset amount (0 if none was given).
+     */
+    long getOffset() {
+        return offset.isPresent() ? offset.get() : 0;
+    }
+
     /**
      * Calculate the effective address of the operand, given the specified
      * machine state.
@@ -58,33 +87,55 @@ public class MemoryOperand extends Operand {
         long address = offset.isPresent() ? offset.get() : 0;
         long scaleFactor = scale.isPresent() ? scale.get() : 1;
         if (baseReg.isPresent()) 
-            address = state.getRegisterValue(baseReg.get()).add(BigInteger.valueOf(address)).longValue();
-        if (indexReg.isPresent()) {
-            BigInteger indexRegVal = state.getRegisterValue(indexReg.get());
-            address += indexRegVal.multiply(BigInteger.valueOf(scaleFactor)).longValue();
-        }
+            address += state.getRegisterValue(baseReg.get());
+        if (indexReg.isPresent())
+            address += state.getRegisterValue(indexReg.get()) * scaleFactor;
+
+        return address;
+    }
+
+    /**
+     * @see #calculateAddress(MachineState)
+     */
+    long calculateAddress(MutableMachineState state) {
+        long address = offset.isPresent() ? offset.get() : 0;
+        long scaleFactor = scale.isPresent() ? scale.get() : 1;
+        if (baseReg.isPresent()) 
+            address += state.getRegisterValue(baseReg.get());
+        if (indexReg.isPresent())
+            address += state.getRegisterValue(indexReg.get()) * scaleFactor;
 
         return address;
     }
 
     @Override
-    public BigInteger getValue(MachineState state) throws x86RuntimeException {
+    public long getValue(MachineState state) throws x86RuntimeException {
         return state.getMemoryValue(calculateAddress(state), opSize.numBytes());
     }
 
     @Override
-    public MachineState updateState(MachineState currState, Optional<BigInteger> val, 
-            Map<String, Boolean> flags, boolean updateRIP) throws x86RuntimeException {
+    public MachineState updateState(MachineState currState, OptionalLong val, 
+            int flags, boolean updateRIP) throws x86RuntimeException {
         return currState.cloneWithUpdatedMemory(val, calculateAddress(currState), opSize.numBytes(), flags, updateRIP);
     }
     
+    @Override
+    long getValue(MutableMachineState state) throws x86RuntimeException {
+        return state.getMemoryValue(calculateAddress(state), opSize.numBytes());
+    }
+
+    @Override
+    void setValue(MutableMachineState state, long val) throws x86RuntimeException {
+        state.setMemoryValue(calculateAddress(state), opSize.numBytes(), val);
+    }
+
     @Override
     public Set<String> getUsedRegisters() {
         HashSet<String> s = new HashSet<>();
         if (baseReg.isPresent())
-            s.add(baseReg.get());
+            s.add(baseReg.get().getName());
         if (indexReg.isPresent())
-            s.add(indexReg.get());
+            s.add(indexReg.get().getName());
         return s;
     }
 
@@ -95,9 +146,9 @@ public class MemoryOperand extends Operand {
             res += "(";
             
             if (baseReg.isPresent())
-                res += "%" + baseReg.get();
+                res += "%" + baseReg.get().getName();
             if (indexReg.isPresent()) {
-                res += ", %" + indexReg.get();
+                res += ", %" + indexReg.get().getName();
                 if (scale.isPresent())
                     res += ", " + scale.get();
             }
@@ -111,10 +162,10 @@ public class MemoryOperand extends Operand {
     public String getDescriptionString() {
         String s = "memory at address (";
         if (baseReg.isPresent()){
-            s += "%" + baseReg.get();
+            s += "%" + baseReg.get().getName();
         } 
         if (indexReg.isPresent()){
-            s += " + %" + indexReg.get();
+            s += " + %" + indexReg.get().getName();
             if(scale.isPresent()){
                 s += " * " + scale.get();
             }
@@ -0,0 +1,252 @@
+package edu.sandiego.bcl;
+
+/**
+ * A mutable counterpart of {@link MachineState}, for runs where only the final
+ * state matters (e.g. running a program to the end to check its result).
+ *
+ * The in-place interpreter ({@link DecodedProgram#step(MutableMachineState)}
+ * and {@link DecodedProgram#run(MutableMachineState, long, long,
+ * CancellationToken)}) changes this state directly rather than creating a new
+ * state, register file and memory page for every instruction. Once a program
+ * has touched the memory pages it uses, executing it doesn't allocate
+ * anything.
+ *
+ * Every update follows the same rules as the corresponding MachineState
+ * method (alignment and validity checks, register and memory origins,
+ * removal of stack entries when the stack shrinks, lazily computed status
+ * flags), so {@link #toMachineState} gives exactly the state that stepping
+ * through the same instructions would have reached.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class MutableMachineState {
+
+    private static final int RSP = QuadRegister.RSP.ordinal();
+
+    /**
+     * The value and origin of each register, indexed by ordinal.
+     */
+    private final long[] registers;
+    private final int[] origins;
+
+    private final PagedMemory.Mutable memory;
+
+    /**
+     * The status flags, stored the same way as in {@link MachineState}.
+     */
+    private int statusFlags;
+    private ALU.Operation flagOperation;
+    private long flagOperandA;
+    private long flagOperandB;
+    private OpSize flagSize;
+
+    private int rip;
+    private int callStackSize;
+
+    /**
+     * Creates a mutable copy of the given state. The given state isn't
+     * affected by any later changes to the copy.
+     *
+     * @param state The state to copy.
+     */
+    public MutableMachineState(MachineState state) {
+        int numRegisters = QuadRegister.values().length;
+        this.registers = new long[numRegisters];
+        this.origins = new int[numRegisters];
+        state.getRegisterFile().copyTo(this.registers, this.origins);
+        this.memory = state.getMemory().toMutable();
+        state.copyFlagsTo(this);
+        this.rip = state.getRipRegister();
+        this.callStackSize = state.getCallStackSize();
+    }
+
+    /**
+     * @return An immutable snapshot of this state.
+     */
+    public MachineState toMachineState() {
+        return new MachineState(RegisterFile.of(this.registers.clone(),
+                this.origins.clone()), this.memory.toPagedMemory(),
+                this.statusFlags, this.flagOperation, this.flagOperandA,
+                this.flagOperandB, this.flagSize, this.rip, this.callStackSize);
+    }
+
+    void setFlags(int eagerFlags, ALU.Operation op, long a, long b, OpSize size) {
+        this.statusFlags = eagerFlags;
+        this.flagOperation = op;
+        this.flagOperandA = a;
+        this.flagOperandB = b;
+        this.flagSize = size;
+    }
+
+    /**
+     * @return The status flags, packed as described in {@link StatusFlags}.
+     */
+    public int getStatusFlags() {
+        if (this.flagOperation == null) {
+            return this.statusFlags;
+        }
+        return StatusFlags.merge(ALU.flags(this.flagOperation,
+                this.flagOperandA, this.flagOperandB, this.flagSize),
+                this.statusFlags);
+    }
+
+    /**
+     * Sets the status flags to the ones written by the given ALU operation,
+     * without computing them until they are asked for.
+     *
+     * @see MachineState#setFlagsLazily
+     */
+    void setFlagsLazily(ALU.Operation op, long a, long b, OpSize size) {
+        switch (op) {
+            case SAL:
+            case SAR:
+            case SHR:
+                // Shifting by zero doesn't write any flags.
+                if (ALU.shiftCount(b, size) == 0) {
+                    return;
+                }
+                break;
+            case INC:
+            case DEC:
+                // These leave CF unchanged so we need the current flags.
+                this.statusFlags = getStatusFlags();
+                break;
+            default:
+                break;
+        }
+        this.flagOperation = op;
+        this.flagOperandA = a;
+        this.flagOperandB = b;
+        this.flagSize = size;
+    }
+
+    /**
+     * @return The line number of the instruction being executed.
+     */
+    public int getRipRegister() {
+        return this.rip;
+    }
+
+    void setRip(int newRIPVal) {
+        this.rip = newRIPVal;
+    }
+
+    public int getCallStackSize() {
+        return this.callStackSize;
+    }
+
+    void pushToCallStack() {
+        this.callStackSize++;
+    }
+
+    void popFromCallStack() {
+        this.callStackSize--;
+    }
+
+    /**
+     * Gets the (sign extended) value stored in the given register.
+     */
+    public long getRegisterValue(SubRegister reg) {
+        return reg.getValue(this.registers[reg.getQuadRegister().ordinal()]);
+    }
+
+    /**
+     * @return The line number that last updated the given register.
+     */
+    int getOrigin(QuadRegister reg) {
+        return this.origins[reg.ordinal()];
+    }
+
+    /**
+     * Writes a register on behalf of the current instruction.
+     *
+     * @param reg The register to write.
+     * @param val The new value of the register.
+     * @throws x86RuntimeException if the write would leave %rsp misaligned.
+     * @see MachineState#cloneWithUpdatedRegister
+     */
+    void setRegister(SubRegister reg, long val) throws x86RuntimeException {
+        int quad = reg.getQuadRegister().ordinal();
+        boolean isRSP = quad == RSP && reg.getSize() == OpSize.QUAD;
+        if (isRSP && val % 8 != 0) {
+            throw new x86RuntimeException("rsp should be multiple of 8");
+        }
+        if (isRSP && val > this.registers[RSP]) {
+            // The stack shrank, so the entries above its new top go.
+            this.memory.removeEntries(this.registers[RSP], val);
+        }
+        this.registers[quad] = reg.setValue(this.registers[quad], val);
+        this.origins[quad] = this.rip;
+    }
+
+    /**
+     * Puts back the value and origin a register had before an instruction
+     * that failed part way through, without any of the checks of
+     * {@link #setRegister}.
+     */
+    void restoreRegister(QuadRegister reg, long value, int origin) {
+        this.registers[reg.ordinal()] = value;
+        this.origins[reg.ordinal()] = origin;
+    }
+
+    /**
+     * @see MachineState#isValidMemoryAccess
+     */
+    public boolean isValidMemoryAccess(long startAddress, int size) {
+        long endAddress = (startAddress + size) - 1;
+        return startAddress >= this.registers[RSP] && endAddress >= 0;
+    }
+
+    /**
+     * @see MachineState#getMemoryValue
+     */
+    public long getMemoryValue(long address, int size) throws x86RuntimeException {
+        if (!isValidMemoryAccess(address, size)) {
+            throw new x86RuntimeException("Illegal read from 0x"
+                + String.format("%X", address));
+        }
+        if (address % size != 0) {
+            throw new x86RuntimeException("Unaligned memory access");
+        }
+
+        int initialized = this.memory.countInitialized(address, size);
+        if (initialized < size) {
+            throw new x86RuntimeException("Read from uninitialized memory: 0x"
+                    + String.format("%X", address + initialized).replaceFirst("F{4,}","F..F"));
+        }
+        return this.memory.read(address, size);
+    }
+
+    /**
+     * Checks that memory can be written at the given address, without
+     * writing it.
+     *
+     * @throws x86RuntimeException if the write would be outside of the stack
+     * or unaligned.
+     */
+    void checkMemoryWrite(long address, int size) throws x86RuntimeException {
+        if (!isValidMemoryAccess(address, size)) {
+            throw new x86RuntimeException("Invalid write to 0x"
+                    + Long.toHexString(address).toUpperCase());
+        }
+        if (address % size != 0) {
+            throw new x86RuntimeException("Unaligned memory access");
+        }
+    }
+
+    /**
+     * Writes memory on behalf of the current instruction.
+     *
+     * @param address The starting (i.e. lowest) address to write to.
+     * @param size The number of bytes to write.
+     * @param value The value to write.
+     * @throws x86RuntimeException if the write would be outside of the stack
+     * or unaligned.
+     * @see MachineState#cloneWithUpdatedMemory
+     */
+    void setMemoryValue(long address, int size, long value)
+            throws x86RuntimeException {
+        checkMemoryWrite(address, size);
+        this.memory.write(address, size, value, this.rip);
+    }
+}
@@ -0,0 +1,51 @@
+package edu.sandiego.bcl;
+
+/**
+ * A history that doesn't keep anything, for simulations that only care about
+ * where the program ends up (e.g. when running programs without the UI). It
+ * is not possible to step back with this history.
+ *
+ * Since it doesn't need to see every state, simulations may execute several
+ * instructions at a time (see {@link DecodedProgram#stepFused}) when using
+ * it.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class NoHistory implements SimulationHistory {
+
+    /**
+     * Whether anything has been executed since we were last cleared.
+     */
+    private boolean recorded;
+
+    @Override
+    public void record(MachineState before, MachineState after) {
+        recorded = true;
+    }
+
+    @Override
+    public MachineState stepBack(MachineState current) {
+        throw new UnsupportedOperationException(
+                "Can't step back without a history.");
+    }
+
+    @Override
+    public boolean canStepBack() {
+        return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !recorded;
+    }
+
+    @Override
+    public void clear() {
+        recorded = false;
+    }
+
+    @Override
+    public boolean needsEveryState() {
+        return false;
+    }
+}
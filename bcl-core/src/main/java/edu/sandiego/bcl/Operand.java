@@ -1,8 +1,6 @@
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.Map;
-import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 
 /**
@@ -26,9 +24,10 @@ public abstract class Operand {
 
     /**
      * @param state The state of the machine.
-     * @return The value of the operand in a machine with the given state.
+     * @return The value of the operand in a machine with the given state,
+     * sign extended to fill a long.
      */
-    public abstract BigInteger getValue(MachineState state) throws x86RuntimeException;
+    public abstract long getValue(MachineState state) throws x86RuntimeException;
 
     /**
      * @param currState The current state of the machine.
@@ -39,9 +38,27 @@ public abstract class Operand {
      * the operand.
      */
     public abstract MachineState updateState(MachineState currState, 
-            Optional<BigInteger> val, Map<String, Boolean> flags, 
+            OptionalLong val, int flags, 
             boolean updateRIP) throws x86RuntimeException;
 
+    /**
+     * @param state The state of the machine.
+     * @return The value of the operand in a machine with the given (mutable)
+     * state, sign extended to fill a long.
+     */
+    abstract long getValue(MutableMachineState state) throws x86RuntimeException;
+
+    /**
+     * Writes a value to the operand in the given mutable state, on behalf of
+     * the current instruction. Unlike {@link #updateState}, this never
+     * changes the rip register or the status flags.
+     *
+     * @param state The state to update in place.
+     * @param val The value to update the operand with.
+     */
+    abstract void setValue(MutableMachineState state, long val)
+            throws x86RuntimeException;
+
     /**
      * Returns the names of the registers used by this operand.
      *
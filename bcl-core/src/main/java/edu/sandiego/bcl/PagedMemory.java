@@ -0,0 +1,1045 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The machine's memory: an immutable, sparse, byte addressable memory.
+ *
+ * Memory is divided into 256 byte pages which are stored in a persistent
+ * (i.e. copy-on-write) hash array mapped trie keyed by page number. Every
+ * write copies only the page it touches (and the short path to it in the
+ * trie) so a new state shares all of its untouched pages with the state it
+ * came from. Reads and writes take constant time, regardless of how much of
+ * the stack is in use.
+ *
+ * For each byte, a page keeps track of whether it has been initialized and
+ * the line number of the instruction that last wrote it (i.e. its origin).
+ * It also marks the bytes where a write started so that the stack entries
+ * shown in the UI (one per write, split or shrunk by later overlapping
+ * writes) can be derived from the pages on demand.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class PagedMemory {
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Number of bits of the page number used by each level of the trie.
+     */
+    private static final int TRIE_BITS = 5;
+    private static final int TRIE_MASK = (1 << TRIE_BITS) - 1;
+
+    /**
+     * Bits used when packing the state of a byte into a long: the value of
+     * the byte is in the lowest 8 bits and its origin in the upper 32 bits.
+     */
+    private static final long BYTE_INITIALIZED = 1L << 8;
+    private static final long BYTE_ENTRY_START = 1L << 9;
+
+    private static final PagedMemory EMPTY = new PagedMemory(null);
+
+    /**
+     * Root of the page trie, or null if no memory has been initialized.
+     */
+    private final Node root;
+
+    /**
+     * The stack entries derived from this memory, computed the first time
+     * they are requested.
+     */
+    private List<StackEntry> stackEntries;
+
+    private PagedMemory(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return A memory with no initialized bytes.
+     */
+    public static PagedMemory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of consecutive initialized bytes starting at the
+     * given address, up to the given size.
+     *
+     * @param address The starting address.
+     * @param size The maximum number of bytes to check.
+     * @return The number of initialized bytes before the first uninitialized
+     * one (or size if they are all initialized).
+     */
+    public int countInitialized(long address, int size) {
+        Page page = null;
+        for (int i = 0; i < size; i++) {
+            long a = address + i;
+            if (page == null || (a & OFFSET_MASK) == 0) {
+                page = findPage(a >> PAGE_BITS);
+            }
+            if (page == null || !page.isInitialized((int) (a & OFFSET_MASK))) {
+                return i;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Reads a little endian value from memory. All of the bytes being read
+     * must be initialized (see {@link #countInitialized}).
+     *
+     * @param address The starting (i.e. lowest) address of the value.
+     * @param size The number of bytes to read (at most 8).
+     * @return The value read, sign extended to a long.
+     */
+    public long read(long address, int size) {
+        int offset = (int) (address & OFFSET_MASK);
+        Page page = findPage(address >> PAGE_BITS);
+        if (offset + size <= PAGE_SIZE) {
+            // Common case: the value is all on one page.
+            long val = page.data[offset + size - 1];
+            for (int i = size - 2; i >= 0; i--) {
+                val = (val << 8) | (page.data[offset + i] & 0xFF);
+            }
+            return val;
+        }
+
+        long val = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            long a = address + i;
+            byte b = findPage(a >> PAGE_BITS).data[(int) (a & OFFSET_MASK)];
+            val = (i == size - 1) ? b : (val << 8) | (b & 0xFF);
+        }
+        return val;
+    }
+
+    /**
+     * Creates a new memory with a little endian value written to it. The
+     * written bytes form a new stack entry, replacing (or splitting) any
+     * entries they overlap.
+     *
+     * @param address The starting (i.e. lowest) address to write to.
+     * @param size The number of bytes to write (at most 8).
+     * @param value The value to write. Only the lowest size bytes are used.
+     * @param origin The line number of the instruction doing the write.
+     * @return The updated memory.
+     */
+    public PagedMemory write(long address, int size, long value, int origin) {
+        Node newRoot = this.root;
+        Page page = null;
+        for (int i = 0; i < size; i++) {
+            long a = address + i;
+            int offset = (int) (a & OFFSET_MASK);
+            if (page == null || offset == 0) {
+                if (page != null) {
+                    newRoot = Node.put(newRoot, page, 0);
+                }
+                page = copyOfPage(newRoot, a >> PAGE_BITS);
+            }
+            page.data[offset] = (byte) (value >>> (i * 8));
+            page.origins[offset] = origin;
+            page.setInitialized(offset, true);
+            page.setEntryStart(offset, i == 0);
+        }
+
+        // If the write landed on top of an existing entry, whatever is left
+        // of that entry above the write becomes an entry of its own.
+        long after = address + size;
+        if ((after & OFFSET_MASK) == 0) {
+            newRoot = Node.put(newRoot, page, 0);
+            page = findPage(newRoot, after >> PAGE_BITS);
+            if (page != null && page.isInitialized(0) && !page.isEntryStart(0)) {
+                page = page.copy();
+                page.setEntryStart(0, true);
+                newRoot = Node.put(newRoot, page, 0);
+            }
+        } else {
+            int offset = (int) (after & OFFSET_MASK);
+            if (page.isInitialized(offset)) {
+                page.setEntryStart(offset, true);
+            }
+            newRoot = Node.put(newRoot, page, 0);
+        }
+
+        return new PagedMemory(newRoot);
+    }
+
+    /**
+     * Creates a new memory with every stack entry that starts in the given
+     * range of addresses removed, including the part of any such entry that
+     * extends past the end of the range. This is used when the stack shrinks,
+     * with the range going from the old top of the stack to the new one.
+     *
+     * @param from The lowest address in the range.
+     * @param to The address just past the end of the range.
+     * @return The updated memory, or this memory if nothing was removed.
+     */
+    public PagedMemory withEntriesRemoved(long from, long to) {
+        if (this.root == null || from >= to) {
+            return this;
+        }
+
+        long firstPage = from >> PAGE_BITS;
+        long lastPage = (to - 1) >> PAGE_BITS;
+
+        // Find the pages that overlap the range. Usually the range is small
+        // so we just look up each page in it, but if it's huge we'll look
+        // through the pages we have instead.
+        List<Page> pages = new ArrayList<>();
+        if (lastPage - firstPage < 64) {
+            for (long n = firstPage; n <= lastPage; n++) {
+                Page p = findPage(n);
+                if (p != null) {
+                    pages.add(p);
+                }
+            }
+        } else {
+            this.root.collect(pages);
+        }
+
+        Node newRoot = this.root;
+        for (Page p : pages) {
+            if (p.number < firstPage || p.number > lastPage) {
+                continue;
+            }
+            long pageStart = p.number << PAGE_BITS;
+            int clearFrom = (int) Math.max(0, from - pageStart);
+            int clearTo = (int) Math.min(PAGE_SIZE, to - pageStart);
+            if (clearFrom == 0 && clearTo == PAGE_SIZE) {
+                newRoot = Node.remove(newRoot, p.number, 0);
+            } else {
+                Page copy = p.copy();
+                for (int i = clearFrom; i < clearTo; i++) {
+                    copy.setInitialized(i, false);
+                }
+                newRoot = putOrRemove(newRoot, copy);
+            }
+        }
+
+        // Unless an entry starts right at the end of the range, the entry
+        // there (if any) started inside the range, so it goes too.
+        Page page = findPage(newRoot, to >> PAGE_BITS);
+        if (page == null || !page.isInitialized((int) (to & OFFSET_MASK))
+                || page.isEntryStart((int) (to & OFFSET_MASK))) {
+            return newRoot == this.root ? this : new PagedMemory(newRoot);
+        }
+
+        page = page.copy();
+        for (long a = to; ; a++) {
+            int offset = (int) (a & OFFSET_MASK);
+            if (offset == 0 && a != to) {
+                newRoot = putOrRemove(newRoot, page);
+                page = findPage(newRoot, a >> PAGE_BITS);
+                if (page == null) {
+                    break;
+                }
+                page = page.copy();
+            }
+            if (!page.isInitialized(offset)
+                    || (a != to && page.isEntryStart(offset))) {
+                newRoot = putOrRemove(newRoot, page);
+                break;
+            }
+            page.setInitialized(offset, false);
+        }
+
+        return new PagedMemory(newRoot);
+    }
+
+    /**
+     * Returns the stack entries stored in this memory, sorted by their
+     * starting addresses. Each entry is a run of initialized bytes that
+     * begins where a write began and ends where the run is interrupted (by
+     * an uninitialized byte or by the start of another entry).
+     *
+     * @return An unmodifiable list of the stack entries.
+     */
+    public List<StackEntry> getStackEntries() {
+        if (this.stackEntries == null) {
+            this.stackEntries = Collections.unmodifiableList(buildStackEntries());
+        }
+        return this.stackEntries;
+    }
+
+    private List<StackEntry> buildStackEntries() {
+        List<StackEntry> entries = new ArrayList<>();
+        if (this.root == null) {
+            return entries;
+        }
+
+        List<Page> pages = new ArrayList<>();
+        this.root.collect(pages);
+        pages.sort((p1, p2) -> Long.compare(p1.number, p2.number));
+
+        long entryStart = 0;
+        int entryOrigin = -1;
+        byte[] entryBytes = new byte[PAGE_SIZE];
+        int entryLength = 0;
+        long prevAddress = 0;
+
+        for (Page p : pages) {
+            for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                long a = (p.number << PAGE_BITS) + offset;
+                boolean initialized = p.isInitialized(offset);
+                boolean continuesEntry = initialized && entryLength > 0
+                        && a == prevAddress + 1 && !p.isEntryStart(offset);
+
+                if (entryLength > 0 && !continuesEntry) {
+                    entries.add(new StackEntry(entryStart, prevAddress,
+                            Arrays.copyOf(entryBytes, entryLength), entryOrigin));
+                    entryLength = 0;
+                }
+
+                if (initialized) {
+                    if (entryLength == 0) {
+                        entryStart = a;
+                        entryOrigin = p.origins[offset];
+                    }
+                    if (entryLength == entryBytes.length) {
+                        entryBytes = Arrays.copyOf(entryBytes, entryLength * 2);
+                    }
+                    entryBytes[entryLength++] = p.data[offset];
+                    prevAddress = a;
+                }
+            }
+        }
+
+        if (entryLength > 0) {
+            entries.add(new StackEntry(entryStart, prevAddress,
+                    Arrays.copyOf(entryBytes, entryLength), entryOrigin));
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the bytes that differ between two memories, recording the state
+     * each of those bytes had in the first memory so that it can be restored
+     * later with {@link #withByteStates}. Pages that the two memories share
+     * are skipped without being looked at, so this is fast when the second
+     * memory was created from the first by a few writes.
+     *
+     * @param before The original memory.
+     * @param after The changed memory.
+     * @return Pairs of (address, packed state) for each byte that changed, or
+     * null if nothing changed.
+     */
+    public static long[] changedBytes(PagedMemory before, PagedMemory after) {
+        if (before.root == after.root) {
+            return null;
+        }
+        ByteStateList changes = new ByteStateList();
+        diff(before.root, after.root, changes);
+        return changes.size == 0 ? null : Arrays.copyOf(changes.data, changes.size);
+    }
+
+    /**
+     * Creates a new memory with the given bytes set back to the states
+     * recorded by {@link #changedBytes}.
+     *
+     * @param byteStates Pairs of (address, packed state).
+     * @return The updated memory.
+     */
+    public PagedMemory withByteStates(long[] byteStates) {
+        Node newRoot = this.root;
+        Page page = null;
+        for (int i = 0; i < byteStates.length; i += 2) {
+            long address = byteStates[i];
+            long state = byteStates[i + 1];
+            if (page == null || page.number != address >> PAGE_BITS) {
+                if (page != null) {
+                    newRoot = putOrRemove(newRoot, page);
+                }
+                page = copyOfPage(newRoot, address >> PAGE_BITS);
+            }
+            int offset = (int) (address & OFFSET_MASK);
+            page.data[offset] = (byte) state;
+            page.origins[offset] = (int) (state >> 32);
+            page.setInitialized(offset, (state & BYTE_INITIALIZED) != 0);
+            page.setEntryStart(offset, (state & BYTE_ENTRY_START) != 0);
+        }
+        if (page != null) {
+            newRoot = putOrRemove(newRoot, page);
+        }
+        return new PagedMemory(newRoot);
+    }
+
+    /**
+     * Counts the pages of this memory that aren't shared with another memory
+     * (i.e. the pages that were written since that memory was created from
+     * it, or vice versa). This is an estimate of how much additional space
+     * it takes to keep both memories around rather than just one of them.
+     *
+     * @param other The memory to compare to.
+     * @return The number of pages in this memory that other doesn't have.
+     */
+    public int countPagesNotIn(PagedMemory other) {
+        return countPagesNotIn(this.root, other.root);
+    }
+
+    private static int countPagesNotIn(Object mine, Object theirs) {
+        if (mine == theirs || mine == null) {
+            return 0;
+        }
+        if (mine instanceof Node && theirs instanceof Node) {
+            Node m = (Node) mine;
+            Node t = (Node) theirs;
+            int count = 0;
+            for (int i = 0; i <= TRIE_MASK; i++) {
+                int bit = 1 << i;
+                if ((m.bitmap & bit) != 0) {
+                    count += countPagesNotIn(m.children[m.index(bit)],
+                            (t.bitmap & bit) == 0 ? null : t.children[t.index(bit)]);
+                }
+            }
+            return count;
+        }
+
+        List<Page> myPages = new ArrayList<>();
+        List<Page> theirPages = new ArrayList<>();
+        collect(mine, myPages);
+        collect(theirs, theirPages);
+        int count = 0;
+        for (Page p : myPages) {
+            if (!theirPages.contains(p)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the differences between two (sub)tries to the given list.
+     */
+    private static void diff(Object before, Object after, ByteStateList changes) {
+        if (before == after) {
+            return;
+        }
+        if (before instanceof Node && after instanceof Node) {
+            Node b = (Node) before;
+            Node a = (Node) after;
+            for (int i = 0; i <= TRIE_MASK; i++) {
+                int bit = 1 << i;
+                diff((b.bitmap & bit) == 0 ? null : b.children[b.index(bit)],
+                        (a.bitmap & bit) == 0 ? null : a.children[a.index(bit)],
+                        changes);
+            }
+            return;
+        }
+
+        // At least one side is a single page (or nothing), so the other side
+        // holds at most a few pages: match them up by page number.
+        List<Page> beforePages = new ArrayList<>();
+        List<Page> afterPages = new ArrayList<>();
+        collect(before, beforePages);
+        collect(after, afterPages);
+        for (Page b : beforePages) {
+            Page match = null;
+            for (Page a : afterPages) {
+                if (a.number == b.number) {
+                    match = a;
+                }
+            }
+            diffPages(b.number, b, match, changes);
+        }
+        for (Page a : afterPages) {
+            boolean matched = false;
+            for (Page b : beforePages) {
+                matched |= a.number == b.number;
+            }
+            if (!matched) {
+                diffPages(a.number, null, a, changes);
+            }
+        }
+    }
+
+    private static void collect(Object child, List<Page> pages) {
+        if (child instanceof Page) {
+            pages.add((Page) child);
+        } else if (child != null) {
+            ((Node) child).collect(pages);
+        }
+    }
+
+    private static void diffPages(long number, Page before, Page after,
+            ByteStateList changes) {
+        if (before == after) {
+            return;
+        }
+        for (int offset = 0; offset < PAGE_SIZE; offset++) {
+            long b = before == null ? 0 : before.byteState(offset);
+            long a = after == null ? 0 : after.byteState(offset);
+            if (a != b) {
+                changes.add((number << PAGE_BITS) + offset, b);
+            }
+        }
+    }
+
+    /**
+     * A growable list of (address, packed state) pairs.
+     */
+    private static final class ByteStateList {
+
+        long[] data = new long[32];
+        int size;
+
+        void add(long address, long state) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = address;
+            data[size++] = state;
+        }
+    }
+
+    /**
+     * @return A mutable copy of this memory (see {@link Mutable}).
+     */
+    Mutable toMutable() {
+        return new Mutable(this);
+    }
+
+    /**
+     * A mutable copy of a memory, for running a program without keeping the
+     * states along the way (see {@link MutableMachineState}). Reads, writes
+     * and removals behave exactly as they do on the immutable memory, but
+     * change the copy in place.
+     *
+     * Pages are shared with the original memory until they are first
+     * changed, at which point they are copied into a table of changed pages
+     * (open addressing, keyed by page number). Once a program has touched
+     * the pages it uses, reads and writes don't allocate anything. A changed
+     * page that no longer has any initialized bytes is cleared rather than
+     * removed, which is the same as not having it.
+     */
+    static final class Mutable {
+
+        private final PagedMemory original;
+
+        /**
+         * The changed pages, in a hash table with linear probing whose length
+         * is a power of two.
+         */
+        private Page[] changed = new Page[16];
+        private int numChanged;
+
+        /**
+         * The page found by the last lookup (usually the one needed next) and
+         * whether it is one of the changed pages.
+         */
+        private Page lastPage;
+        private boolean lastPageChanged;
+
+        private Mutable(PagedMemory original) {
+            this.original = original;
+        }
+
+        /**
+         * @see PagedMemory#countInitialized
+         */
+        int countInitialized(long address, int size) {
+            Page page = null;
+            for (int i = 0; i < size; i++) {
+                long a = address + i;
+                if (page == null || (a & OFFSET_MASK) == 0) {
+                    page = find(a >> PAGE_BITS);
+                }
+                if (page == null || !page.isInitialized((int) (a & OFFSET_MASK))) {
+                    return i;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @see PagedMemory#read
+         */
+        long read(long address, int size) {
+            int offset = (int) (address & OFFSET_MASK);
+            if (offset + size <= PAGE_SIZE) {
+                Page page = find(address >> PAGE_BITS);
+                long val = page.data[offset + size - 1];
+                for (int i = size - 2; i >= 0; i--) {
+                    val = (val << 8) | (page.data[offset + i] & 0xFF);
+                }
+                return val;
+            }
+
+            long val = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                long a = address + i;
+                byte b = find(a >> PAGE_BITS).data[(int) (a & OFFSET_MASK)];
+                val = (i == size - 1) ? b : (val << 8) | (b & 0xFF);
+            }
+            return val;
+        }
+
+        /**
+         * @see PagedMemory#write
+         */
+        void write(long address, int size, long value, int origin) {
+            Page page = null;
+            for (int i = 0; i < size; i++) {
+                long a = address + i;
+                int offset = (int) (a & OFFSET_MASK);
+                if (page == null || offset == 0) {
+                    page = findChanged(a >> PAGE_BITS);
+                }
+                page.data[offset] = (byte) (value >>> (i * 8));
+                page.origins[offset] = origin;
+                page.setInitialized(offset, true);
+                page.setEntryStart(offset, i == 0);
+            }
+
+            long after = address + size;
+            int offset = (int) (after & OFFSET_MASK);
+            if (offset != 0) {
+                if (page.isInitialized(offset)) {
+                    page.setEntryStart(offset, true);
+                }
+                return;
+            }
+            Page next = find(after >> PAGE_BITS);
+            if (next != null && next.isInitialized(0) && !next.isEntryStart(0)) {
+                findChanged(next.number).setEntryStart(0, true);
+            }
+        }
+
+        /**
+         * @see PagedMemory#withEntriesRemoved
+         */
+        void removeEntries(long from, long to) {
+            if (from >= to) {
+                return;
+            }
+
+            long firstPage = from >> PAGE_BITS;
+            long lastPage = (to - 1) >> PAGE_BITS;
+            if (lastPage - firstPage < 64) {
+                for (long n = firstPage; n <= lastPage; n++) {
+                    clear(n, from, to);
+                }
+            } else {
+                List<Page> pages = new ArrayList<>();
+                if (this.original.root != null) {
+                    this.original.root.collect(pages);
+                }
+                for (Page p : this.changed) {
+                    if (p != null) {
+                        pages.add(p);
+                    }
+                }
+                for (Page p : pages) {
+                    if (p.number >= firstPage && p.number <= lastPage) {
+                        clear(p.number, from, to);
+                    }
+                }
+            }
+
+            // Unless an entry starts right at the end of the range, the entry
+            // there (if any) started inside the range, so it goes too.
+            Page page = find(to >> PAGE_BITS);
+            if (page == null || !page.isInitialized((int) (to & OFFSET_MASK))
+                    || page.isEntryStart((int) (to & OFFSET_MASK))) {
+                return;
+            }
+
+            for (long a = to; ; a++) {
+                int offset = (int) (a & OFFSET_MASK);
+                if (offset == 0 && a != to) {
+                    clearIfEmpty(page);
+                    page = find(a >> PAGE_BITS);
+                    if (page == null) {
+                        return;
+                    }
+                }
+                if (!page.isInitialized(offset)
+                        || (a != to && page.isEntryStart(offset))) {
+                    clearIfEmpty(page);
+                    return;
+                }
+                page = findChanged(page.number);
+                page.setInitialized(offset, false);
+            }
+        }
+
+        /**
+         * Uninitializes the part of the given page that is in the given range
+         * of addresses.
+         */
+        private void clear(long pageNumber, long from, long to) {
+            if (find(pageNumber) == null) {
+                return;
+            }
+            Page page = findChanged(pageNumber);
+            long pageStart = pageNumber << PAGE_BITS;
+            int clearFrom = (int) Math.max(0, from - pageStart);
+            int clearTo = (int) Math.min(PAGE_SIZE, to - pageStart);
+            for (int i = clearFrom; i < clearTo; i++) {
+                page.setInitialized(i, false);
+            }
+            clearIfEmpty(page);
+        }
+
+        /**
+         * Resets a changed page with no initialized bytes to the state of a
+         * new page, so that it is the same as the page not being there.
+         * (Pages of the original memory are never empty.)
+         */
+        private static void clearIfEmpty(Page page) {
+            if (page.isEmpty()) {
+                Arrays.fill(page.data, (byte) 0);
+                Arrays.fill(page.origins, 0);
+                Arrays.fill(page.entryStarts, 0);
+            }
+        }
+
+        /**
+         * @return The current version of the page with the given number, or
+         * null if it doesn't exist.
+         */
+        private Page find(long pageNumber) {
+            Page page = this.lastPage;
+            if (page != null && page.number == pageNumber) {
+                return page;
+            }
+            page = lookUpChanged(pageNumber);
+            boolean isChanged = page != null;
+            if (page == null) {
+                page = this.original.findPage(pageNumber);
+            }
+            if (page != null) {
+                this.lastPage = page;
+                this.lastPageChanged = isChanged;
+            }
+            return page;
+        }
+
+        /**
+         * @return The changed page with the given number, copying it from the
+         * original memory (or creating it) first if it hasn't been changed yet.
+         */
+        private Page findChanged(long pageNumber) {
+            Page page = this.lastPage;
+            if (page != null && page.number == pageNumber && this.lastPageChanged) {
+                return page;
+            }
+            page = lookUpChanged(pageNumber);
+            if (page == null) {
+                page = copyOfPage(this.original.root, pageNumber);
+                insert(page);
+            }
+            this.lastPage = page;
+            this.lastPageChanged = true;
+            return page;
+        }
+
+        private Page lookUpChanged(long pageNumber) {
+            int mask = this.changed.length - 1;
+            for (int i = hash(pageNumber) & mask; ; i = (i + 1) & mask) {
+                Page page = this.changed[i];
+                if (page == null || page.number == pageNumber) {
+                    return page;
+                }
+            }
+        }
+
+        private void insert(Page page) {
+            if (2 * (this.numChanged + 1) > this.changed.length) {
+                Page[] old = this.changed;
+                this.changed = new Page[old.length * 2];
+                for (Page p : old) {
+                    if (p != null) {
+                        insertInto(this.changed, p);
+                    }
+                }
+            }
+            insertInto(this.changed, page);
+            this.numChanged++;
+        }
+
+        private static void insertInto(Page[] table, Page page) {
+            int mask = table.length - 1;
+            int i = hash(page.number) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = page;
+        }
+
+        private static int hash(long pageNumber) {
+            return Long.hashCode(pageNumber) * 0x9E3779B9;
+        }
+
+        /**
+         * @return An immutable memory with the current contents of this one.
+         * This one can still be changed afterwards without affecting it.
+         */
+        PagedMemory toPagedMemory() {
+            if (this.numChanged == 0) {
+                return this.original;
+            }
+            Node newRoot = this.original.root;
+            for (Page p : this.changed) {
+                if (p != null) {
+                    newRoot = putOrRemove(newRoot, p.copy());
+                }
+            }
+            return new PagedMemory(newRoot);
+        }
+    }
+
+    private Page findPage(long pageNumber) {
+        return findPage(this.root, pageNumber);
+    }
+
+    private static Page findPage(Node root, long pageNumber) {
+        return root == null ? null : root.find(pageNumber, 0);
+    }
+
+    /**
+     * @return A private copy of the given page (or a new, empty page if it
+     * doesn't exist yet) that can be modified before being put in a trie.
+     */
+    private static Page copyOfPage(Node root, long pageNumber) {
+        Page page = findPage(root, pageNumber);
+        return page == null ? new Page(pageNumber) : page.copy();
+    }
+
+    /**
+     * Puts the page in the trie, or removes it if it no longer has any
+     * initialized bytes.
+     */
+    private static Node putOrRemove(Node root, Page page) {
+        if (page.isEmpty()) {
+            return Node.remove(root, page.number, 0);
+        }
+        return Node.put(root, page, 0);
+    }
+
+    /**
+     * A single page of memory. Pages are only modified while they are being
+     * built by a write (or while they belong to a {@link Mutable} memory);
+     * once they are in a trie they are never changed.
+     */
+    private static final class Page {
+
+        final long number;
+        final byte[] data;
+        final int[] origins;
+
+        /**
+         * Bitmaps of the initialized bytes and of the bytes where a stack
+         * entry starts.
+         */
+        final long[] initialized;
+        final long[] entryStarts;
+
+        Page(long number) {
+            this.number = number;
+            this.data = new byte[PAGE_SIZE];
+            this.origins = new int[PAGE_SIZE];
+            this.initialized = new long[PAGE_SIZE / 64];
+            this.entryStarts = new long[PAGE_SIZE / 64];
+        }
+
+        private Page(Page other) {
+            this.number = other.number;
+            this.data = other.data.clone();
+            this.origins = other.origins.clone();
+            this.initialized = other.initialized.clone();
+            this.entryStarts = other.entryStarts.clone();
+        }
+
+        Page copy() {
+            return new Page(this);
+        }
+
+        boolean isInitialized(int offset) {
+            return (initialized[offset >> 6] & (1L << offset)) != 0;
+        }
+
+        boolean isEntryStart(int offset) {
+            return (entryStarts[offset >> 6] & (1L << offset)) != 0;
+        }
+
+        void setInitialized(int offset, boolean value) {
+            if (value) {
+                initialized[offset >> 6] |= 1L << offset;
+            } else {
+                initialized[offset >> 6] &= ~(1L << offset);
+                entryStarts[offset >> 6] &= ~(1L << offset);
+            }
+        }
+
+        void setEntryStart(int offset, boolean value) {
+            if (value) {
+                entryStarts[offset >> 6] |= 1L << offset;
+            } else {
+                entryStarts[offset >> 6] &= ~(1L << offset);
+            }
+        }
+
+        /**
+         * @return The state of a byte (i.e. its value, origin, and whether
+         * it is initialized and starts an entry), packed into a long.
+         */
+        long byteState(int offset) {
+            if (!isInitialized(offset)) {
+                return 0;
+            }
+            long state = (data[offset] & 0xFF) | BYTE_INITIALIZED
+                    | ((long) origins[offset] << 32);
+            return isEntryStart(offset) ? state | BYTE_ENTRY_START : state;
+        }
+
+        boolean isEmpty() {
+            for (long bits : initialized) {
+                if (bits != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A node in the page trie. Each level of the trie uses the next 5 bits of
+     * the page number (starting with the least significant bits, so
+     * neighboring pages spread out at the root) to pick one of 32 children.
+     * Only the children that exist are stored, in an array indexed using a
+     * bitmap of which children exist.
+     *
+     * A child is either a Page, when it is the only page under that child, or
+     * another Node.
+     */
+    private static final class Node {
+
+        final int bitmap;
+        final Object[] children;
+
+        Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private static int bit(long pageNumber, int shift) {
+            return 1 << ((pageNumber >>> shift) & TRIE_MASK);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        Page find(long pageNumber, int shift) {
+            Node node = this;
+            while (true) {
+                int bit = bit(pageNumber, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                Object child = node.children[node.index(bit)];
+                if (child instanceof Page) {
+                    Page page = (Page) child;
+                    return page.number == pageNumber ? page : null;
+                }
+                node = (Node) child;
+                shift += TRIE_BITS;
+            }
+        }
+
+        /**
+         * @return A trie with the given page added to (or replaced in) the
+         * given trie.
+         */
+        static Node put(Node node, Page page, int shift) {
+            int bit = bit(page.number, shift);
+            if (node == null) {
+                return new Node(bit, new Object[]{page});
+            }
+
+            int idx = node.index(bit);
+            if ((node.bitmap & bit) == 0) {
+                Object[] children = new Object[node.children.length + 1];
+                System.arraycopy(node.children, 0, children, 0, idx);
+                children[idx] = page;
+                System.arraycopy(node.children, idx, children, idx + 1,
+                        node.children.length - idx);
+                return new Node(node.bitmap | bit, children);
+            }
+
+            Object child = node.children[idx];
+            Object newChild;
+            if (child instanceof Node) {
+                newChild = put((Node) child, page, shift + TRIE_BITS);
+            } else if (((Page) child).number == page.number) {
+                newChild = page;
+            } else {
+                // Two different pages share this slot, so push both of them
+                // down a level.
+                Node pushedDown = put(null, (Page) child, shift + TRIE_BITS);
+                newChild = put(pushedDown, page, shift + TRIE_BITS);
+            }
+
+            Object[] children = node.children.clone();
+            children[idx] = newChild;
+            return new Node(node.bitmap, children);
+        }
+
+        /**
+         * @return A trie with the given page removed from the given trie, or
+         * null if the trie ends up empty.
+         */
+        static Node remove(Node node, long pageNumber, int shift) {
+            int bit = bit(pageNumber, shift);
+            if (node == null || (node.bitmap & bit) == 0) {
+                return node;
+            }
+
+            int idx = node.index(bit);
+            Object child = node.children[idx];
+            Object newChild;
+            if (child instanceof Node) {
+                newChild = remove((Node) child, pageNumber, shift + TRIE_BITS);
+                if (newChild == child) {
+                    return node;
+                }
+            } else if (((Page) child).number == pageNumber) {
+                newChild = null;
+            } else {
+                return node;
+            }
+
+            if (newChild != null) {
+                Object[] children = node.children.clone();
+                children[idx] = newChild;
+                return new Node(node.bitmap, children);
+            }
+            if (node.children.length == 1) {
+                return null;
+            }
+            Object[] children = new Object[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, idx);
+            System.arraycopy(node.children, idx + 1, children, idx,
+                    children.length - idx);
+            return new Node(node.bitmap & ~bit, children);
+        }
+
+        /**
+         * Adds all of the pages in this trie to the given list.
+         */
+        void collect(List<Page> pages) {
+            for (Object child : this.children) {
+                if (child instanceof Page) {
+                    pages.add((Page) child);
+                } else {
+                    ((Node) child).collect(pages);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.sandiego.bcl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The 16 general purpose (i.e. quad sized) registers of an x86-64 machine.
+ * A register's ordinal is its index in the {@link RegisterFile}.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public enum QuadRegister {
+    RAX, RBX, RCX, RDX, RSI, RDI, RBP, RSP,
+    R8, R9, R10, R11, R12, R13, R14, R15;
+
+    private static final Map<String, QuadRegister> registerFromName;
+
+    static {
+        registerFromName = new HashMap<>();
+        for (QuadRegister r : values()) {
+            registerFromName.put(r.getName(), r);
+        }
+    }
+
+    /**
+     * The register's name, sans % (e.g. "rax")
+     */
+    private final String name;
+
+    private QuadRegister() {
+        this.name = name().toLowerCase();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the register with the given quad register name.
+     *
+     * @param quadName The name of a quad register (e.g. "rax")
+     * @return The register with that name, or null if there is no quad
+     * register with that name.
+     */
+    public static QuadRegister fromName(String quadName) {
+        return registerFromName.get(quadName);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.sandiego.bcl;
+
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.HashSet;
+
+/**
+ * A class representing an x86-64 register operand (e.g. %eax).
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class RegOperand extends Operand {
+
+    /**
+     * The register, decoded from its name (e.g. "eax")
+     */
+    private final SubRegister reg;
+
+
+    public RegOperand(String regName, OpSize opSize) {
+        super(opSize);
+        assert opSize != OpSize.INFERRED;
+        this.reg = SubRegister.fromName(regName);
+        if (this.reg == null) {
+            throw new RuntimeException("Unknown register name: " + regName);
+        }
+    }
+
+    SubRegister getRegister() {
+        return this.reg;
+    }
+
+    @Override
+    public long getValue(MachineState state) {
+        return state.getRegisterValue(reg);
+    }
+
+    @Override
+    public MachineState updateState(MachineState currState, 
+            OptionalLong val, int flags,
+            boolean updateRIP) throws x86RuntimeException {
+        return currState.cloneWithUpdatedRegister(this.reg, val, flags, updateRIP);
+    }
+
+    @Override
+    long getValue(MutableMachineState state) {
+        return state.getRegisterValue(reg);
+    }
+
+    @Override
+    void setValue(MutableMachineState state, long val) throws x86RuntimeException {
+        state.setRegister(this.reg, val);
+    }
+
+    @Override
+    public Set<String> getUsedRegisters(){ 
+        HashSet<String> s = new HashSet<>();
+        s.add(reg.getQuadRegister().getName());
+        return s;
+    }
+    
+    @Override
+    public String toString() {
+        return "%" + reg.getName();
+    }
+
+    @Override
+    public String getDescriptionString() {
+        return "%" + reg.getName();
+    }
+}
\ No newline at end of file
@@ -6,8 +6,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
 
 /**
  * Class representing a register in our processor.
@@ -40,7 +38,7 @@ public class Register {
     /**
      * The name of the register (e.g. "rax")
      */
-    private final SimpleStringProperty name;
+    private String name;
 
     /**
      * The prominence of this register.
@@ -51,7 +49,7 @@ public class Register {
     /**
      * The line number from which the register last was updated.
      */
-    private final SimpleIntegerProperty origin;
+    private int origin;
     
     /**
      * The full, quad length (8 bytes) value of the register.
@@ -69,18 +67,18 @@ public class Register {
     public Register (String quadName, int prom, int origin, String quadVal) {
         assert subRegistersFromFullRegister.keySet().contains(quadName);
         
-        this.name = new SimpleStringProperty(quadName);
+        this.name = quadName;
         this.longRegName = subRegistersFromFullRegister.get(quadName).get(1);
         this.wordRegName = subRegistersFromFullRegister.get(quadName).get(2);
         this.byteLowRegName = subRegistersFromFullRegister.get(quadName).get(3);
         this.prominence = prom;
-        this.origin = new SimpleIntegerProperty(origin);
+        this.origin = origin;
         this.quadValue = quadVal;
     }
     
     // Getters and setters
     public String getName(){
-        return name.get();
+        return name;
     }
     
     public String getLongRegName(){
@@ -96,7 +94,7 @@ public class Register {
     }
     
     public void setName(String s){
-        name.set(s);
+        name = s;
     }
     
     public int getProminence(){
@@ -104,11 +102,11 @@ public class Register {
     }
     
     public int getOrigin(){
-        return origin.get();
+        return origin;
     }
     
     public void setOrigin(int ori){
-        origin.set(ori);
+        origin = ori;
     }
     
 
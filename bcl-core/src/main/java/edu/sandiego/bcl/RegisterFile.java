@@ -0,0 +1,96 @@
+package edu.sandiego.bcl;
+
+import java.util.Arrays;
+
+/**
+ * The register file of the machine: the full (8 byte) value of each of the
+ * 16 general purpose registers, along with the line number that last updated
+ * each one.
+ *
+ * Register files are immutable. Updating a register creates a new register
+ * file, leaving the original untouched, so states in the simulation history
+ * can safely share them.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class RegisterFile {
+
+    /**
+     * The value of each register, indexed by the register's ordinal.
+     */
+    private final long[] values;
+
+    /**
+     * The line number that last updated each register (-1 if it has never
+     * been updated), indexed by the register's ordinal.
+     */
+    private final int[] origins;
+
+    /**
+     * Creates a register file with all registers set to 0 and no origin.
+     */
+    public RegisterFile() {
+        this.values = new long[QuadRegister.values().length];
+        this.origins = new int[QuadRegister.values().length];
+        Arrays.fill(this.origins, -1);
+    }
+
+    private RegisterFile(long[] values, int[] origins) {
+        this.values = values;
+        this.origins = origins;
+    }
+
+    /**
+     * Creates a register file from the given values and origins, indexed by
+     * register ordinal. The register file takes ownership of the arrays, so
+     * they must not be changed afterwards.
+     */
+    static RegisterFile of(long[] values, int[] origins) {
+        assert values.length == QuadRegister.values().length;
+        assert origins.length == values.length;
+        return new RegisterFile(values, origins);
+    }
+
+    /**
+     * Copies the value and origin of every register into the given arrays,
+     * indexed by register ordinal.
+     */
+    void copyTo(long[] values, int[] origins) {
+        System.arraycopy(this.values, 0, values, 0, this.values.length);
+        System.arraycopy(this.origins, 0, origins, 0, this.origins.length);
+    }
+
+    /**
+     * @param reg The register to read.
+     * @return The full, 8 byte value of the register.
+     */
+    public long getValue(QuadRegister reg) {
+        return this.values[reg.ordinal()];
+    }
+
+    /**
+     * @param reg The register whose origin we want.
+     * @return The line number that last updated the register, or -1 if it
+     * has never been updated.
+     */
+    public int getOrigin(QuadRegister reg) {
+        return this.origins[reg.ordinal()];
+    }
+
+    /**
+     * Creates a copy of this register file with one register updated.
+     *
+     * @param reg The register to update.
+     * @param value The new, full 8 byte value of the register.
+     * @param origin The line number responsible for the update.
+     * @return A register file identical to this one except for the given
+     * register.
+     */
+    public RegisterFile withValue(QuadRegister reg, long value, int origin) {
+        long[] newValues = Arrays.copyOf(this.values, this.values.length);
+        int[] newOrigins = Arrays.copyOf(this.origins, this.origins.length);
+        newValues[reg.ordinal()] = value;
+        newOrigins[reg.ordinal()] = origin;
+        return new RegisterFile(newValues, newOrigins);
+    }
+}
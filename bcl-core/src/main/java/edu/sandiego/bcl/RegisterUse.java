@@ -0,0 +1,123 @@
+package edu.sandiego.bcl;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * When each register was last used by the line the simulation was about to
+ * execute, used to show the most recently used registers first (see
+ * {@link Register#getProminence()}).
+ *
+ * A use is a stamp that is larger than every stamp before it, so the table
+ * is a fixed size no matter how long the simulation runs. Tables are
+ * immutable, and each state of the simulation has its own (see
+ * {@link MachineState#getRegisterUse()}), so going back to an earlier state
+ * also goes back to the registers it had used.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class RegisterUse {
+
+    /**
+     * The table of a simulation that hasn't used any registers.
+     */
+    static final RegisterUse NONE = new RegisterUse(
+            new long[QuadRegister.values().length], 0);
+
+    /**
+     * The stamp of the last use of each register (0 if it was never used),
+     * indexed by the register's ordinal.
+     */
+    private final long[] lastUsed;
+
+    /**
+     * The largest stamp in the table.
+     */
+    private final long latest;
+
+    private RegisterUse(long[] lastUsed, long latest) {
+        this.lastUsed = lastUsed;
+        this.latest = latest;
+    }
+
+    /**
+     * @param registers The names of some registers.
+     * @return A mask with the bit of each of the quad registers (by ordinal)
+     * among the given names set. Names that aren't quad registers are left
+     * out.
+     */
+    static int maskOf(Set<String> registers) {
+        int mask = 0;
+        for (String name : registers) {
+            QuadRegister reg = QuadRegister.fromName(name);
+            if (reg != null) {
+                mask |= 1 << reg.ordinal();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param mask The registers that were used (see {@link #maskOf}).
+     * @return A table where the given registers were used after all of the
+     * ones in this table.
+     */
+    RegisterUse withUsed(int mask) {
+        if (mask == 0) {
+            return this;
+        }
+        long stamp = this.latest + 1;
+        long[] newLastUsed = Arrays.copyOf(this.lastUsed, this.lastUsed.length);
+        for (int i = 0; i < newLastUsed.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                newLastUsed[i] = stamp;
+            }
+        }
+        return new RegisterUse(newLastUsed, stamp);
+    }
+
+    /**
+     * @param reg A register.
+     * @return The stamp of the register's last use, or 0 if it was never
+     * used.
+     */
+    long getLastUsed(QuadRegister reg) {
+        return this.lastUsed[reg.ordinal()];
+    }
+
+    /**
+     * @param changes Pairs of (register ordinal, stamp).
+     * @return A table with the given registers' stamps replaced.
+     */
+    RegisterUse withLastUsed(long[] changes) {
+        long[] newLastUsed = Arrays.copyOf(this.lastUsed, this.lastUsed.length);
+        for (int i = 0; i < changes.length; i += 2) {
+            newLastUsed[(int) changes[i]] = changes[i + 1];
+        }
+        long newLatest = 0;
+        for (long stamp : newLastUsed) {
+            newLatest = Math.max(newLatest, stamp);
+        }
+        return new RegisterUse(newLastUsed, newLatest);
+    }
+
+    /**
+     * @param reg A register.
+     * @return How recently the register was used compared to the others:
+     * larger values for more recent uses, the same value for registers used
+     * at the same time, and -1 if it was never used.
+     */
+    int getProminence(QuadRegister reg) {
+        long stamp = this.lastUsed[reg.ordinal()];
+        if (stamp == 0) {
+            return -1;
+        }
+        int prominence = 0;
+        for (long other : this.lastUsed) {
+            if (other != 0 && other < stamp) {
+                prominence++;
+            }
+        }
+        return prominence;
+    }
+}
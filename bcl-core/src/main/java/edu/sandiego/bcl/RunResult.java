@@ -0,0 +1,79 @@
+package edu.sandiego.bcl;
+
+import java.util.Optional;
+
+/**
+ * The outcome of running a simulation (see {@link Simulation#run}).
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class RunResult {
+
+    /**
+     * Why the run stopped.
+     */
+    public enum Status {
+        /**
+         * The end of the program was reached.
+         */
+        FINISHED,
+        /**
+         * A line with a breakpoint is next to be executed.
+         */
+        BREAKPOINT,
+        /**
+         * The instruction or time budget ran out.
+         */
+        BUDGET_EXHAUSTED,
+        /**
+         * The run was cancelled through its cancellation token.
+         */
+        CANCELLED,
+        /**
+         * An instruction caused a runtime error.
+         */
+        ERROR
+    }
+
+    private final Status status;
+    private final long instructionsExecuted;
+    private final long elapsedNanos;
+    private final Optional<x86RuntimeException> error;
+
+    public RunResult(Status status, long instructionsExecuted,
+            long elapsedNanos, Optional<x86RuntimeException> error) {
+        this.status = status;
+        this.instructionsExecuted = instructionsExecuted;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return The number of instructions that were successfully executed.
+     */
+    public long getInstructionsExecuted() {
+        return this.instructionsExecuted;
+    }
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * @return The runtime error that stopped the run, if the status is
+     * ERROR.
+     */
+    public Optional<x86RuntimeException> getError() {
+        return this.error;
+    }
+
+    @Override
+    public String toString() {
+        return this.status + " after " + this.instructionsExecuted
+                + " instructions (" + (this.elapsedNanos / 1000000) + " ms)";
+    }
+}
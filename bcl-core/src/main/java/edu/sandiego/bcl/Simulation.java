@@ -0,0 +1,564 @@
+/**
+ * Class that represents the simulation of an assembly program.
+ */
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ *
+ * @author sat
+ */
+public class Simulation {    
+    /**
+     * The current state of the machine.
+     */
+    private MachineState currentState;
+    
+    /**
+     * The history of our simulation, used to step backwards.
+     */
+    private SimulationHistory history;
+    
+    /**
+     * The program being simulated.
+     */
+    private final x86Program program;
+    
+    /**
+     * The decoded image of the program that is actually executed. This is
+     * null when the program has been edited since it was last compiled.
+     */
+    private DecodedProgram decodedProgram;
+    
+    /**
+     * Whether labels, comments and blank lines are skipped over rather than
+     * executed as steps of the simulation.
+     */
+    private boolean skipNonInstructions;
+    
+    /**
+     * Whether runs that don't need every state compile hot blocks of the
+     * program to bytecode (see {@link BlockCompiler}).
+     */
+    private boolean compileHotBlocks;
+    
+    /**
+     * The compiler for the current image of the program, or null if it hasn't
+     * been needed since the image was last compiled.
+     */
+    private BlockCompiler blockCompiler;
+    
+    /**
+     * The evaluation is stopped because of a RunTime Error.
+     */
+    private boolean stuckOnError;
+    
+    public Simulation() {
+        this(new ArrayList<>());
+    }
+    
+    /**
+     * Creates a simulation of a blank program whose lines are kept in the
+     * given list (e.g. one that a user interface observes).
+     * 
+     * @param programLines An empty list to keep the program's lines in.
+     */
+    public Simulation(List<x86ProgramLine> programLines) {
+        this.program = new x86Program(programLines);
+        this.currentState = new MachineState();
+        this.history = new UndoLogHistory();
+        this.stuckOnError = false;
+    }
+    
+    public Simulation(File assemblyFile) throws FileNotFoundException,
+                                                IOException,
+                                                X86ParsingException {
+        this(assemblyFile, new ArrayList<>());
+    }
+    
+    /**
+     * Creates a simulation of the program stored in the given file, keeping
+     * its lines in the given list (e.g. one that a user interface observes).
+     * 
+     * @param assemblyFile File containing assembly code to be parsed.
+     * @param programLines An empty list to keep the program's lines in.
+     */
+    public Simulation(File assemblyFile, List<x86ProgramLine> programLines)
+            throws FileNotFoundException, IOException, X86ParsingException {
+        this.program = new x86Program(assemblyFile, programLines);
+        history = new UndoLogHistory();
+        restart();
+    }
+    
+    public String getProgramFileName() { return this.program.getFileName(); }
+    
+    public boolean isProgramUnsaved() { return this.program.isUnsaved(); }
+    
+    /**
+     * @return The line in the program where simulation is currently at, or
+     * null when the simulation is complete or the program is empty.
+     */
+    public x86ProgramLine getCurrentLine() {
+        if (this.program.isEmpty() || isFinished()) {
+            return null;
+        }
+        return this.program.getLine(currentState.getRipRegister());
+    }
+    
+    /**
+     * @return The decoded image of the program, compiling it first if the
+     * program has changed since it was last compiled.
+     */
+    public DecodedProgram getDecodedProgram() {
+        if (this.decodedProgram == null) {
+            this.decodedProgram = DecodedProgram.compile(this.program,
+                    this.skipNonInstructions);
+        }
+        return this.decodedProgram;
+    }
+    
+    /**
+     * @return The block compiler for the current image of the program.
+     */
+    private BlockCompiler getBlockCompiler() {
+        DecodedProgram image = getDecodedProgram();
+        if (this.blockCompiler == null || this.blockCompiler.getProgram() != image) {
+            this.blockCompiler = new BlockCompiler(image);
+        }
+        return this.blockCompiler;
+    }
+    
+    public List<x86ProgramLine> getProgramLines() {
+        return this.program.getProgramLines();
+    }
+    
+    public List<Register> getRegisters() {
+        return currentState.getRegisters();
+    }
+    
+    public List<StackEntry> getStackEntries() {
+        return currentState.getStackEntries();
+    }
+    
+    public boolean getStuckOnError() {
+        return this.stuckOnError;
+    }
+    
+    public boolean hasSignFlagSet() {
+        return currentState.getSignFlag();
+    }
+    
+    public boolean hasZeroFlagSet() {
+        return currentState.getZeroFlag();
+    }
+    
+    public boolean hasOverflowFlagSet() {
+        return currentState.getOverflowFlag();
+    }
+    
+    public boolean hasCarryFlagSet() {
+        return currentState.getCarryFlag();
+    }
+    
+    public boolean hasProgramFile() {
+        return this.program.hasFile();
+    }
+    
+    /**
+     * Switches to a history that keeps memory use within the given budget by
+     * only keeping occasional checkpoints and re-executing from them to step
+     * back (see {@link CheckpointHistory}). This restarts the simulation.
+     * Since stepping back re-executes the program, changing the program
+     * forgets the history up to that point.
+     * 
+     * @param memoryBudget The (approximate) maximum number of bytes to use for
+     * the history.
+     * @param targetStepBackNanos How long stepping back should take.
+     */
+    public void useCheckpointHistory(long memoryBudget, long targetStepBackNanos) {
+        this.history = new CheckpointHistory(
+                this::step,
+                memoryBudget, targetStepBackNanos);
+        restart();
+    }
+    
+    /**
+     * Switches to keeping no history at all (see {@link NoHistory}), for when
+     * only the final result of running the program matters. This can't step
+     * back but lets {@link #run} execute fused pairs of instructions. This
+     * restarts the simulation.
+     */
+    public void useNoHistory() {
+        this.history = new NoHistory();
+        restart();
+    }
+    
+    /**
+     * Sets whether runs compile the hot blocks of the program to bytecode
+     * (see {@link BlockCompiler}). This only affects runs with a history
+     * that doesn't need every state (e.g. {@link #useNoHistory}); stepping
+     * and runs with other histories are always interpreted.
+     * 
+     * @param compile True if hot blocks should be compiled.
+     */
+    public void setCompileHotBlocks(boolean compile) {
+        this.compileHotBlocks = compile;
+    }
+    
+    /**
+     * Sets whether labels, comments and blank lines should be skipped over
+     * (so that only instructions are executed, and recorded in the history)
+     * or executed as steps of their own. This restarts the simulation.
+     * 
+     * @param skip True if only instructions should be executed.
+     */
+    public void setSkipNonInstructions(boolean skip) {
+        this.skipNonInstructions = skip;
+        this.decodedProgram = null;
+        restart();
+    }
+    
+    /**
+     * Switches to a history that records the changes made by each
+     * instruction (see {@link UndoLogHistory}). This is the default. This
+     * restarts the simulation.
+     */
+    public void useUndoLogHistory() {
+        this.history = new UndoLogHistory();
+        restart();
+    }
+    
+    /**
+     * Restarts simulation back to its beginning state.
+     */
+    public void restart() {
+        this.history.clear();
+        this.currentState = new MachineState();
+
+        if (!this.program.isEmpty()) {
+            currentState.setRip(getDecodedProgram().getEntryPoint());
+            currentState = withNextLineUsed(currentState, RegisterUse.NONE);
+        }
+        
+        this.stuckOnError = false;
+    }
+    
+    /**
+     * Checks if end of simulation has been reached.
+     * 
+     * @return True if simulation is at the end, false otherwise.
+     */
+    public boolean isFinished(){
+        return isFinished(currentState);
+    }
+
+    private boolean isFinished(MachineState state) {
+        return (state.getRipRegister() >= this.program.getNumLines()) 
+                || (state.getCallStackSize() < 0);
+    }
+    
+    /**
+     * Checks if simulation is at the beginning (i.e. hasn't executed any instructions).
+     * 
+     * @return True if simulation is at the beginning, false otherwise.
+     */
+    public boolean isAtBeginning(){
+        return history.isEmpty();
+    }
+    
+    /**
+     * Executes the next instruction in our simulation.
+     */
+    public void stepForward() throws x86RuntimeException {
+        evalCurrentInstruction();
+    }
+    
+    /**
+     * Executes instructions until it reaches the end of the program, stopping
+     * early after 100 instructions.
+     * 
+     * @return True if simulation completed or we reached a breakpoint. False otherwise.
+     * @throws edu.sandiego.bcl.x86RuntimeException if simulation had to halt
+     * because of a runtime exception.
+     */
+    public boolean finish() throws x86RuntimeException {
+        RunResult result = run(100, Long.MAX_VALUE, new CancellationToken());
+        if (result.getError().isPresent()) {
+            throw result.getError().get();
+        }
+        
+        return result.getStatus() != RunResult.Status.BUDGET_EXHAUSTED;
+    }
+    
+    /**
+     * Executes instructions until the end of the program or a breakpoint is
+     * reached, an instruction causes an error, a budget runs out, or the run
+     * is cancelled. A breakpoint on the current line doesn't stop the run
+     * before it has executed its first instruction.
+     * 
+     * @param maxInstructions The maximum number of instructions to execute.
+     * @param maxNanos The maximum amount of (wall clock) time to run for.
+     * @param cancellation Token that can be used to stop the run from another
+     * thread.
+     * @return The outcome of the run.
+     */
+    public RunResult run(long maxInstructions, long maxNanos,
+            CancellationToken cancellation) {
+        long startTime = System.nanoTime();
+        long numExecuted = 0; // number of instructions we have executed so far
+        RunResult.Status status = null;
+        boolean[] breakpoints = getBreakpoints();
+        // the number of instructions after which to check for cancellation
+        // and the time budget again (fused pairs may step over a multiple
+        // of 256)
+        long nextCheck = 0;
+        // only histories that don't need every state let us run fused pairs
+        // and compiled blocks
+        boolean batch = !history.needsEveryState();
+        
+        try {
+            while (status == null) {
+                if (isFinished()) {
+                    status = RunResult.Status.FINISHED;
+                } else if (breakpoints[currentState.getRipRegister()] 
+                        && numExecuted > 0) {
+                    status = RunResult.Status.BREAKPOINT;
+                } else if (numExecuted >= maxInstructions) {
+                    status = RunResult.Status.BUDGET_EXHAUSTED;
+                } else if (numExecuted >= nextCheck && cancellation.isCancelled()) {
+                    status = RunResult.Status.CANCELLED;
+                } else if (numExecuted >= nextCheck
+                        && System.nanoTime() - startTime >= maxNanos) {
+                    status = RunResult.Status.BUDGET_EXHAUSTED;
+                } else {
+                    if (numExecuted >= nextCheck) {
+                        nextCheck = numExecuted + 256;
+                    }
+                    numExecuted += batch
+                            ? evalCurrentInstructions(breakpoints,
+                                    maxInstructions - numExecuted)
+                            : evalCurrentInstruction();
+                }
+            }
+        } catch (x86RuntimeException e) {
+            return new RunResult(RunResult.Status.ERROR, numExecuted,
+                    System.nanoTime() - startTime, Optional.of(e));
+        }
+        
+        return new RunResult(status, numExecuted, System.nanoTime() - startTime,
+                Optional.empty());
+    }
+    
+    /**
+     * @return Whether execution should stop before each line of the program.
+     * When skipping non-instruction lines, a breakpoint on one of those lines
+     * stops at the next instruction.
+     */
+    private boolean[] getBreakpoints() {
+        DecodedProgram image = getDecodedProgram();
+        boolean[] breakpoints = new boolean[this.program.getNumLines() + 1];
+        for (int i = 0; i < this.program.getNumLines(); i++) {
+            if (this.program.getLine(i).getBreakpoint()) {
+                breakpoints[image.getExecutedLine(i)] = true;
+            }
+        }
+        return breakpoints;
+    }
+    
+    /**
+     * Evaluates as many instructions as we can in one go, without stopping
+     * at a breakpoint or going over the given budget, and adds the newly
+     * produced state to our history. This runs a compiled block if one starts
+     * at the current instruction (see {@link CompiledBlock}), or otherwise the
+     * current instruction along with the next one if they are a fused pair
+     * (see {@link DecodedProgram#stepFused}), or otherwise just the current
+     * instruction.
+     * 
+     * @param breakpoints Whether execution should stop before each line.
+     * @param budget The maximum number of instructions to evaluate.
+     * @return The number of instructions evaluated.
+     */
+    private int evalCurrentInstructions(boolean[] breakpoints, long budget)
+            throws x86RuntimeException {
+        DecodedProgram image = getDecodedProgram();
+        int rip = currentState.getRipRegister();
+        if (compileHotBlocks) {
+            CompiledBlock block = getBlockCompiler().getHotBlock(rip);
+            if (block != null && block.getNumInstructions() <= budget
+                    && !block.hasBreakpoint(breakpoints)) {
+                evalCompiledBlock(block);
+                return block.getNumInstructions();
+            }
+        }
+        if (budget < 2 || !image.startsFusedPair(rip) 
+                || breakpoints[image.getPairedLine(rip)]) {
+            return evalCurrentInstruction();
+        }
+
+        try {
+            MachineState nextState = withNextLineUsed(image.stepFused(currentState),
+                    currentState.getRegisterUse().withUsed(
+                            image.getUsedRegisterMask(image.getPairedLine(rip))));
+            history.record(currentState, nextState);
+            currentState = nextState;
+            return 2;
+        } catch (x86RuntimeException e) {
+            this.stuckOnError = true;
+            throw e;
+        }
+    }
+    
+    /**
+     * Evaluates a compiled block that starts at the current instruction,
+     * adding the newly produced state to our history. Compiled blocks can't
+     * fail.
+     */
+    private void evalCompiledBlock(CompiledBlock block) {
+        DecodedProgram image = getDecodedProgram();
+        RegisterUse use = currentState.getRegisterUse();
+        for (int i = 1; i < block.getNumInstructions(); i++) {
+            use = use.withUsed(image.getUsedRegisterMask(block.getLine(i)));
+        }
+        MachineState nextState = withNextLineUsed(block.execute(currentState), use);
+        history.record(currentState, nextState);
+        currentState = nextState;
+    }
+    
+    /**
+     * Evaluates the current instruction, adding the newly produced state to our
+     * history.
+     * 
+     * @return The number of instructions evaluated (i.e. 1).
+     */
+    private int evalCurrentInstruction() throws x86RuntimeException {
+        try {
+            // evaluate the current instruction, recording what it changed in
+            // our history
+            MachineState nextState = step(currentState);
+            history.record(currentState, nextState);
+            currentState = nextState;
+            return 1;
+        } catch (x86RuntimeException e) {
+            this.stuckOnError = true;
+            throw e;
+        }
+    }
+    
+    /**
+     * Executes the instruction the given state is on, keeping track of the
+     * registers used. This is also how a {@link CheckpointHistory}
+     * re-executes the program, so it gives the same states as stepping
+     * forward did.
+     *
+     * @param state The state to execute from.
+     * @return The state after the instruction.
+     */
+    private MachineState step(MachineState state) throws x86RuntimeException {
+        return withNextLineUsed(getDecodedProgram().step(state),
+                state.getRegisterUse());
+    }
+
+    /**
+     * @param state A state that was just reached.
+     * @param use The registers used before reaching it.
+     * @return The state, with the given register use, to which the
+     * registers of the line it is about to execute (if any) are added.
+     */
+    private MachineState withNextLineUsed(MachineState state, RegisterUse use) {
+        if (!isFinished(state)) {
+            use = use.withUsed(getDecodedProgram().getUsedRegisterMask(
+                    state.getRipRegister()));
+        }
+        return state.withRegisterUse(use);
+    }
+    
+    /**
+     * Undoes the previous instruction in our simulation.
+     * If you are at the beginning of simulation, or the history doesn't
+     * allow stepping back (see {@link #useNoHistory}), this has method has no
+     * effect.
+     */
+    public void stepBackward() {
+        // Our history will be empty when we are at the beginning of
+        // simulation. In this case, going backwards shouldn't do anything.
+        if (!history.canStepBack()) {
+            this.stuckOnError = false;
+            return;
+        }
+        
+        currentState = history.stepBack(currentState);
+        
+        this.stuckOnError = false;
+    }
+    
+    /**
+     * Add line to end of the program associated with this simulation.
+     * 
+     * @param lineText The line to be added to the program.
+     * @throws X86ParsingException if the given line cannot be parsed.
+     */
+    public void appendToProgram(String lineText) throws X86ParsingException {
+        x86ProgramLine newLine = this.program.parseThenAddLine(lineText);
+        this.decodedProgram = null;
+        this.history.programChanged();
+
+        // If this is the first instruction entered, make sure its registers
+        // are shown as used.
+        if (this.program.getNumLines() == 1) {
+            currentState = currentState.withRegisterUse(
+                    currentState.getRegisterUse().withUsed(
+                            RegisterUse.maskOf(newLine.getUsedRegisters())));
+        }
+    }
+    
+    /**
+     * Removes the given program line from the program associated with this simulation.
+     * 
+     * @param line The line to remove.
+     */
+    public void removeFromProgram(x86ProgramLine line) {
+        this.program.removeLine(line);
+        this.decodedProgram = null;
+        this.history.programChanged();
+    }
+    
+    /**
+     * Replaces an existing line with a new one in the program associated with
+     * this simulation.
+     * @param existingLine The line that will be replaced.
+     * @param newLine What the existing line will be replaced with.
+     * @throws X86ParsingException if the new line cannot be parsed.
+     */
+    public void replaceInProgram(x86ProgramLine existingLine, String newLine) throws X86ParsingException {
+        this.program.replaceLine(existingLine, newLine);
+        this.decodedProgram = null;
+        this.history.programChanged();
+    }
+    
+    /**
+     * Writes the program out to a file. The location of the file is based on where
+     * it was last saved.
+     * 
+     * @return True if the program was successfully written, False otherwise. 
+     */
+    public boolean saveProgram() {
+        return this.program.writeToFile();
+    }
+    
+    /**
+     * Writes the program out to the given file.
+     * 
+     * @param f The file to write the program out to.
+     * @return True if the program was successfully written, False otherwise.
+     */
+    public boolean saveProgramAs(File f) {
+        this.program.setFile(f);
+        return this.program.writeToFile();
+    }
+}
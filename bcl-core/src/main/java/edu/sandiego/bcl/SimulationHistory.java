@@ -0,0 +1,63 @@
+package edu.sandiego.bcl;
+
+/**
+ * The execution history of a simulation, used to step backwards through the
+ * states it has been in.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public interface SimulationHistory {
+
+    /**
+     * Records that an instruction was executed.
+     *
+     * @param before The state before the instruction was executed.
+     * @param after The state after the instruction was executed.
+     */
+    void record(MachineState before, MachineState after);
+
+    /**
+     * Goes back one instruction in the history.
+     *
+     * @param current The current state (i.e. the state after the last
+     * instruction that was recorded).
+     * @return The state from before the last recorded instruction.
+     */
+    MachineState stepBack(MachineState current);
+
+    /**
+     * @return True if no instructions have been recorded (or they have all
+     * been stepped back over).
+     */
+    boolean isEmpty();
+
+    /**
+     * @return True if {@link #stepBack} can be called, i.e. there is a
+     * recorded instruction and this history can undo it.
+     */
+    default boolean canStepBack() {
+        return !isEmpty();
+    }
+
+    /**
+     * Forgets all recorded instructions.
+     */
+    void clear();
+
+    /**
+     * Called when the program being simulated has been changed. Histories
+     * that re-execute the program to step back must forget whatever they
+     * can't get back to with the new program.
+     */
+    default void programChanged() {
+    }
+
+    /**
+     * @return True if {@link #record} must be given the state after every
+     * instruction, false if it can be given states that are several
+     * instructions apart.
+     */
+    default boolean needsEveryState() {
+        return true;
+    }
+}
@@ -7,9 +7,6 @@ package edu.sandiego.bcl;
 
 import java.math.BigInteger;
 import java.util.Comparator;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleLongProperty;
-import javafx.beans.property.SimpleStringProperty;
 
 /**
  * Class representing an entry in the program's stack.
@@ -17,15 +14,15 @@ import javafx.beans.property.SimpleStringProperty;
  * @author Caitlin
  */
 public class StackEntry {
-    private final SimpleLongProperty startAddress;
-    private final SimpleLongProperty endAddress;
-    private final SimpleStringProperty value;
-    private final SimpleIntegerProperty origin;
+    private long startAddress;
+    private long endAddress;
+    private String value;
+    private int origin;
     private final byte[] valueArr; // This is stored in little endian array
     
     public StackEntry (long startAddress, long endAddress, byte[] val, int orig) {
-        this.startAddress = new SimpleLongProperty(startAddress);
-        this.endAddress = new SimpleLongProperty(endAddress);
+        this.startAddress = startAddress;
+        this.endAddress = endAddress;
         this.valueArr = val;
         
         // Convert the value to a hex string, stripping off any leading 0's
@@ -40,8 +37,8 @@ public class StackEntry {
         s = s.replaceFirst("F{4,}","F..F");
         s = "0x" + s;
         
-        this.value = new SimpleStringProperty(s);
-        this.origin = new SimpleIntegerProperty(orig);
+        this.value = s;
+        this.origin = orig;
     }
     
     public BigInteger getValAsBigInt() {
@@ -52,19 +49,19 @@ public class StackEntry {
     }
     
     public long getStartAddress(){
-        return startAddress.get();
+        return startAddress;
     }
     
     public void setStartAddress(long l){
-        startAddress.set(l);
+        startAddress = l;
     }
     
        public long getEndAddress(){
-        return endAddress.get();
+        return endAddress;
     }
     
     public void setEndAddress(long l){
-        endAddress.set(l);
+        endAddress = l;
     }
     
     public byte[] getValueArr(){
@@ -72,19 +69,19 @@ public class StackEntry {
     }
     
     public String getValue(){
-        return value.get();
+        return value;
     }
     
     public void setValue(String s){
-        value.set(s);
+        value = s;
     }
     
     public int getOrigin(){
-        return origin.get();
+        return origin;
     }
     
     public void setOrigin(int or){
-        origin.set(or);
+        origin = or;
     }
     
     /**
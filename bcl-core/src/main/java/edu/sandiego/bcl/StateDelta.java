@@ -0,0 +1,164 @@
+package edu.sandiego.bcl;
+
+/**
+ * The changes made to the machine state by executing a single instruction,
+ * recorded so that they can be undone.
+ *
+ * Only the old values of what changed are kept (the registers, memory bytes,
+ * flags, rip, call stack size and register uses) so the simulation history only grows by a
+ * few dozen bytes per executed instruction rather than by a full state.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class StateDelta {
+
+    /**
+     * The old status flags, or null if the instruction didn't change them.
+     * Flags that didn't change are never computed (see
+     * {@link MachineState#setFlagsLazily}).
+     */
+    private final Integer oldStatusFlags;
+    private final int oldRip;
+    private final int oldCallStackSize;
+
+    /**
+     * Pairs of (register ordinal and origin, old value) for each register that
+     * changed, or null if no register changed. The ordinal is stored in the
+     * upper 32 bits of the first long and the origin in the lower 32 bits.
+     */
+    private final long[] registerChanges;
+
+    /**
+     * Pairs of (address, packed old state) for each memory byte that
+     * changed, or null if memory didn't change (see
+     * {@link PagedMemory#changedBytes}).
+     */
+    private final long[] memoryChanges;
+
+    /**
+     * Pairs of (register ordinal, old stamp) for each register whose last use
+     * changed (see {@link RegisterUse}), or null if none changed.
+     */
+    private final long[] registerUseChanges;
+
+    private StateDelta(Integer flags, int rip, int callStackSize,
+            long[] registerChanges, long[] memoryChanges,
+            long[] registerUseChanges) {
+        this.oldStatusFlags = flags;
+        this.oldRip = rip;
+        this.oldCallStackSize = callStackSize;
+        this.registerChanges = registerChanges;
+        this.memoryChanges = memoryChanges;
+        this.registerUseChanges = registerUseChanges;
+    }
+
+    /**
+     * Records the changes needed to go back from one state to an earlier one.
+     *
+     * @param before The state before an instruction was executed.
+     * @param after The state after that instruction was executed.
+     * @return The changes made by the instruction.
+     */
+    public static StateDelta between(MachineState before, MachineState after) {
+        RegisterFile oldRegs = before.getRegisterFile();
+        RegisterFile newRegs = after.getRegisterFile();
+
+        long[] regChanges = null;
+        if (oldRegs != newRegs) {
+            int numChanged = 0;
+            for (QuadRegister reg : QuadRegister.values()) {
+                if (changed(reg, oldRegs, newRegs)) {
+                    numChanged++;
+                }
+            }
+
+            if (numChanged > 0) {
+                regChanges = new long[numChanged * 2];
+                int i = 0;
+                for (QuadRegister reg : QuadRegister.values()) {
+                    if (changed(reg, oldRegs, newRegs)) {
+                        regChanges[i++] = ((long) reg.ordinal() << 32)
+                                | (oldRegs.getOrigin(reg) & 0xFFFFFFFFL);
+                        regChanges[i++] = oldRegs.getValue(reg);
+                    }
+                }
+            }
+        }
+
+        Integer flags = after.hasSameFlagsAs(before) ? null
+                : before.getStatusFlags();
+        return new StateDelta(flags, before.getRipRegister(),
+                before.getCallStackSize(), regChanges,
+                PagedMemory.changedBytes(before.getMemory(), after.getMemory()),
+                registerUseChanges(before.getRegisterUse(), after.getRegisterUse()));
+    }
+
+    private static long[] registerUseChanges(RegisterUse oldUse, RegisterUse newUse) {
+        if (oldUse == newUse) {
+            return null;
+        }
+        int numChanged = 0;
+        for (QuadRegister reg : QuadRegister.values()) {
+            if (oldUse.getLastUsed(reg) != newUse.getLastUsed(reg)) {
+                numChanged++;
+            }
+        }
+        if (numChanged == 0) {
+            return null;
+        }
+
+        long[] changes = new long[numChanged * 2];
+        int i = 0;
+        for (QuadRegister reg : QuadRegister.values()) {
+            if (oldUse.getLastUsed(reg) != newUse.getLastUsed(reg)) {
+                changes[i++] = reg.ordinal();
+                changes[i++] = oldUse.getLastUsed(reg);
+            }
+        }
+        return changes;
+    }
+
+    private static boolean changed(QuadRegister reg, RegisterFile oldRegs,
+            RegisterFile newRegs) {
+        return oldRegs.getValue(reg) != newRegs.getValue(reg)
+                || oldRegs.getOrigin(reg) != newRegs.getOrigin(reg);
+    }
+
+    /**
+     * Undoes these changes.
+     *
+     * @param after The state these changes produced.
+     * @return The state from before the changes were made.
+     */
+    public MachineState undo(MachineState after) {
+        RegisterFile regs = after.getRegisterFile();
+        if (this.registerChanges != null) {
+            QuadRegister[] allRegs = QuadRegister.values();
+            for (int i = 0; i < this.registerChanges.length; i += 2) {
+                long ordinalAndOrigin = this.registerChanges[i];
+                regs = regs.withValue(allRegs[(int) (ordinalAndOrigin >>> 32)],
+                        this.registerChanges[i + 1], (int) ordinalAndOrigin);
+            }
+        }
+
+        PagedMemory memory = after.getMemory();
+        if (this.memoryChanges != null) {
+            memory = memory.withByteStates(this.memoryChanges);
+        }
+
+        RegisterUse use = after.getRegisterUse();
+        if (this.registerUseChanges != null) {
+            use = use.withLastUsed(this.registerUseChanges);
+        }
+
+        MachineState before;
+        if (this.oldStatusFlags == null) {
+            before = after.cloneWithSameFlags(regs, memory, this.oldRip,
+                    this.oldCallStackSize);
+        } else {
+            before = new MachineState(regs, memory,
+                    this.oldStatusFlags, this.oldRip, this.oldCallStackSize);
+        }
+        return before.withRegisterUse(use);
+    }
+}
@@ -0,0 +1,84 @@
+package edu.sandiego.bcl;
+
+/**
+ * Helpers for working with status flags (i.e. condition codes) packed into a
+ * single int.
+ *
+ * The low four bits hold the values of the ZF, SF, OF, and CF flags. The
+ * next four bits are a mask of which of those flags an instruction wrote: a
+ * flag whose written bit is clear keeps its value from the previous state
+ * when the flags are merged into it. A machine state's own flags never have
+ * any written bits set.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class StatusFlags {
+
+    public static final int ZF = 1;
+    public static final int SF = 1 << 1;
+    public static final int OF = 1 << 2;
+    public static final int CF = 1 << 3;
+
+    /**
+     * Flags value for an instruction that doesn't write any flags.
+     */
+    public static final int NONE = 0;
+
+    private static final int VALUE_MASK = ZF | SF | OF | CF;
+    private static final int WRITTEN_SHIFT = 4;
+
+    private StatusFlags() {
+    }
+
+    /**
+     * Sets (or clears) a flag, marking it as written.
+     *
+     * @param flags The flags to modify.
+     * @param flag The flag to set (e.g. {@link #ZF}).
+     * @param value The new value of the flag.
+     * @return The updated flags.
+     */
+    public static int set(int flags, int flag, boolean value) {
+        flags |= flag << WRITTEN_SHIFT;
+        return value ? (flags | flag) : (flags & ~flag);
+    }
+
+    /**
+     * @param flags The flags to check.
+     * @param flag The flag to check for (e.g. {@link #ZF}).
+     * @return True if the flag is set, false otherwise.
+     */
+    public static boolean isSet(int flags, int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * @param flags The flags to check.
+     * @param flag The flag to check for (e.g. {@link #ZF}).
+     * @return True if the flag was written, false otherwise.
+     */
+    public static boolean isWritten(int flags, int flag) {
+        return (flags & (flag << WRITTEN_SHIFT)) != 0;
+    }
+
+    /**
+     * @param flags The flags written by an instruction.
+     * @return True if no flags were written.
+     */
+    public static boolean writesNone(int flags) {
+        return ((flags >>> WRITTEN_SHIFT) & VALUE_MASK) == 0;
+    }
+
+    /**
+     * Merges newly written flags with the flags of the previous state: written
+     * flags take their new value while all other flags keep their old value.
+     *
+     * @param written The flags written by an instruction.
+     * @param previous The flags of the previous state.
+     * @return The merged flags, with no written bits set.
+     */
+    public static int merge(int written, int previous) {
+        int writtenMask = (written >>> WRITTEN_SHIFT) & VALUE_MASK;
+        return (written & writtenMask) | (previous & ~writtenMask & VALUE_MASK);
+    }
+}
@@ -0,0 +1,156 @@
+package edu.sandiego.bcl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A decoded register name (e.g. "eax"): the quad register it is part of along
+ * with where in that register it lives.
+ *
+ * Decoding is done through a table built once when the class is loaded, so
+ * operands can resolve their registers when they are parsed and the
+ * simulator never has to look at register names while executing.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class SubRegister {
+
+    private static final Map<String, SubRegister> registerFromName;
+
+    static {
+        registerFromName = new HashMap<>();
+
+        String[] legacyBases = {"ax", "bx", "cx", "dx", "si", "di", "bp", "sp"};
+        for (int i = 0; i < legacyBases.length; i++) {
+            QuadRegister quad = QuadRegister.values()[i];
+            String base = legacyBases[i];
+            add(quad.getName(), quad, OpSize.QUAD, 0);
+            add("e" + base, quad, OpSize.LONG, 0);
+            add(base, quad, OpSize.WORD, 0);
+            if (base.endsWith("x")) {
+                add(base.charAt(0) + "l", quad, OpSize.BYTE, 0);
+                add(base.charAt(0) + "h", quad, OpSize.BYTE, 8);
+            } else {
+                add(base + "l", quad, OpSize.BYTE, 0);
+            }
+        }
+
+        for (int i = 8; i < 16; i++) {
+            QuadRegister quad = QuadRegister.valueOf("R" + i);
+            add(quad.getName(), quad, OpSize.QUAD, 0);
+            add(quad.getName() + "d", quad, OpSize.LONG, 0);
+            add(quad.getName() + "w", quad, OpSize.WORD, 0);
+            add(quad.getName() + "b", quad, OpSize.BYTE, 0);
+        }
+    }
+
+    private static void add(String name, QuadRegister quad, OpSize size, int shift) {
+        registerFromName.put(name, new SubRegister(name, quad, size, shift));
+    }
+
+    /**
+     * The name of the register, sans % (e.g. "eax")
+     */
+    private final String name;
+
+    /**
+     * The quad register this register is part of (e.g. RAX for "eax").
+     */
+    private final QuadRegister quadRegister;
+
+    /**
+     * The size of this register.
+     */
+    private final OpSize size;
+
+    /**
+     * The number of bits this register is from the least significant bit of
+     * its quad register (e.g. 8 for "ah", 0 for all others).
+     */
+    private final int shift;
+
+    /**
+     * Mask of the bits of the quad register that belong to this register.
+     */
+    private final long mask;
+
+    private SubRegister(String name, QuadRegister quad, OpSize size, int shift) {
+        this.name = name;
+        this.quadRegister = quad;
+        this.size = size;
+        this.shift = shift;
+        this.mask = (size == OpSize.QUAD ? -1L : (1L << size.numBits()) - 1) << shift;
+    }
+
+    /**
+     * Returns the register with the given name.
+     *
+     * @param regName The name of a register, sans % (e.g. "eax")
+     * @return The decoded register, or null if there is no register with that
+     * name.
+     */
+    public static SubRegister fromName(String regName) {
+        return registerFromName.get(regName);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public QuadRegister getQuadRegister() {
+        return this.quadRegister;
+    }
+
+    public OpSize getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return The number of bits this register is from the least significant
+     * bit of its quad register.
+     */
+    int getShift() {
+        return this.shift;
+    }
+
+    /**
+     * @return Mask of the bits of the quad register that belong to this
+     * register.
+     */
+    long getMask() {
+        return this.mask;
+    }
+
+    /**
+     * Extracts the (sign extended) value of this register.
+     *
+     * @param quadValue The value of this register's quad register.
+     * @return The value of this register.
+     */
+    public long getValue(long quadValue) {
+        int unusedBits = 64 - size.numBits();
+        return (quadValue << (unusedBits - shift)) >> unusedBits;
+    }
+
+    /**
+     * Inserts a new value for this register into its quad register.
+     * Long registers (e.g. eax) zero extend to fill the whole quad register
+     * while the other sizes leave the rest of the quad register untouched.
+     *
+     * @param quadValue The current value of this register's quad register.
+     * @param val The new value of this register. Only the low bits that fit
+     * in this register are used.
+     * @return The new value of the quad register.
+     */
+    public long setValue(long quadValue, long val) {
+        if (size == OpSize.LONG) {
+            return val & this.mask;
+        }
+        return (quadValue & ~this.mask) | ((val << shift) & this.mask);
+    }
+
+    @Override
+    public String toString() {
+        return "%" + this.name;
+    }
+}
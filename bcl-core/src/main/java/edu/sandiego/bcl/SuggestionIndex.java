@@ -0,0 +1,126 @@
+package edu.sandiego.bcl;
+
+import info.debatty.java.stringsimilarity.JaroWinkler;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * A fixed set of names (e.g. those of all the registers) that can be asked
+ * for the name most similar to a misspelled one, by Jaro-Winkler similarity,
+ * to suggest in "Did you mean ...?" errors.
+ *
+ * The names are grouped by length. The Jaro-Winkler similarity of two
+ * strings can't be more than a bound that depends only on their lengths, so
+ * the groups of names whose bound is below the best similarity found so far
+ * are skipped without looking at their names. Groups are looked at starting
+ * with the length of the misspelled name, as they are the most likely to
+ * have the most similar name.
+ *
+ * When several names are equally similar, the first one in alphabetical
+ * order is the one suggested.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class SuggestionIndex {
+
+    /**
+     * Added to the bound on the similarity of a group, so that rounding in
+     * JaroWinkler (which uses floats) can't make it skip a group it
+     * shouldn't.
+     */
+    private static final double BOUND_SLACK = 1e-6;
+
+    private static final JaroWinkler JARO_WINKLER = new JaroWinkler();
+
+    /**
+     * The names, by length, each group in alphabetical order.
+     */
+    private final String[][] namesByLength;
+
+    /**
+     * The similarity a name must be above to be suggested.
+     */
+    private final double minSimilarity;
+
+    /**
+     * Creates an index of the given names.
+     *
+     * @param names The names that can be suggested.
+     * @param minSimilarity The similarity a name must be above to be suggested.
+     */
+    SuggestionIndex(Collection<String> names, double minSimilarity) {
+        List<List<String>> groups = new ArrayList<>();
+        for (String name : new TreeSet<>(names)) {
+            while (groups.size() <= name.length()) {
+                groups.add(new ArrayList<>());
+            }
+            groups.get(name.length()).add(name);
+        }
+
+        this.namesByLength = new String[groups.size()][];
+        for (int length = 0; length < groups.size(); length++) {
+            this.namesByLength[length] = groups.get(length).toArray(new String[0]);
+        }
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * @param name The (misspelled) name.
+     * @return The name that is most similar to the given one, if any is
+     * similar enough.
+     */
+    Optional<String> getMostSimilar(String name) {
+        int length = name.length();
+        if (length == 0) {
+            // Nothing is at all similar to the empty string.
+            return Optional.empty();
+        }
+
+        String mostSimilar = null;
+        double maxSimilarity = minSimilarity;
+
+        int numLengths = 2 * Math.max(length, namesByLength.length);
+        for (int i = 0; i < numLengths; i++) {
+            // length, length + 1, length - 1, length + 2, length - 2, ...
+            int otherLength = (i % 2 == 0) ? length - i / 2 : length + (i + 1) / 2;
+            if (otherLength < 1 || otherLength >= namesByLength.length
+                    || getMaxSimilarity(length, otherLength) + BOUND_SLACK < maxSimilarity) {
+                continue;
+            }
+
+            for (String candidate : namesByLength[otherLength]) {
+                double similarity = JARO_WINKLER.similarity(candidate, name);
+                if (similarity <= minSimilarity) {
+                    continue;
+                }
+                if (mostSimilar == null || similarity > maxSimilarity
+                        || (similarity == maxSimilarity && candidate.compareTo(mostSimilar) < 0)) {
+                    mostSimilar = candidate;
+                    maxSimilarity = similarity;
+                }
+            }
+        }
+
+        return Optional.ofNullable(mostSimilar);
+    }
+
+    /**
+     * @return The most the Jaro-Winkler similarity of two (different,
+     * non-empty) strings of the given lengths can be.
+     */
+    static double getMaxSimilarity(int length1, int length2) {
+        int shorter = Math.min(length1, length2);
+        int longer = Math.max(length1, length2);
+
+        // At most every character of the shorter string matches, with no
+        // transpositions.
+        double jaro = (1.0 + (double) shorter / longer + 1.0) / 3.0;
+
+        // The bonus for a common prefix, which is at most the shorter string.
+        double prefixScale = Math.min(0.1, 1.0 / longer) * shorter;
+        return jaro + prefixScale * (1.0 - jaro);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single test case for the {@link Autograder}: the registers and stack a
+ * program starts with, and the register values it is expected to end with.
+ *
+ * The stack values are what a function finds in its stack arguments, i.e. at
+ * 8(%rsp), 16(%rsp) and so on when it starts. The return address slot at
+ * (%rsp) is left uninitialized so that returning from the function ends the
+ * program.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class TestVector {
+
+    private final String name;
+
+    /**
+     * The initial value of each register that isn't 0, by register name
+     * (e.g. "rdi" or "esi").
+     */
+    private final Map<String, Long> registers;
+
+    private final List<Long> stack;
+
+    /**
+     * The expected final value of each checked register, by register name
+     * (e.g. "eax" if only the lower 32 bits matter).
+     */
+    private final Map<String, Long> expected;
+
+    /**
+     * The initial state, created the first time it is needed.
+     */
+    private volatile MachineState initialState;
+
+    /**
+     * @param name A name for this vector, used in reports.
+     * @param registers The initial value of registers, by name (others start
+     * at 0).
+     * @param stack The values of the stack arguments, starting at 8(%rsp).
+     * @param expected The expected final value of registers, by name. This
+     * may be empty if the expected values come from a reference program.
+     * @throws IllegalArgumentException if one of the names isn't a register,
+     * or an initial value is given for the stack pointer (which the stack
+     * values decide).
+     */
+    public TestVector(String name, Map<String, Long> registers, List<Long> stack,
+            Map<String, Long> expected) {
+        checkRegisterNames(registers);
+        checkRegisterNames(expected);
+        for (String reg : registers.keySet()) {
+            if (SubRegister.fromName(reg).getQuadRegister() == QuadRegister.RSP) {
+                throw new IllegalArgumentException("Initial value given for " + reg);
+            }
+        }
+        this.name = name;
+        this.registers = Collections.unmodifiableMap(new LinkedHashMap<>(registers));
+        this.stack = Collections.unmodifiableList(new ArrayList<>(stack));
+        this.expected = Collections.unmodifiableMap(new LinkedHashMap<>(expected));
+    }
+
+    private static void checkRegisterNames(Map<String, Long> values) {
+        for (String reg : values.keySet()) {
+            if (SubRegister.fromName(reg) == null) {
+                throw new IllegalArgumentException("Invalid register name: " + reg);
+            }
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Map<String, Long> getRegisters() {
+        return this.registers;
+    }
+
+    public List<Long> getStack() {
+        return this.stack;
+    }
+
+    public Map<String, Long> getExpected() {
+        return this.expected;
+    }
+
+    /**
+     * @return A copy of this vector with the given expected values instead.
+     */
+    public TestVector withExpected(Map<String, Long> newExpected) {
+        return new TestVector(this.name, this.registers, this.stack, newExpected);
+    }
+
+    /**
+     * @return The state a program starts this vector in (before its rip is
+     * set to its entry point).
+     */
+    MachineState getInitialState() {
+        if (this.initialState == null) {
+            MutableMachineState state = new MutableMachineState(new MachineState());
+            // marks the initial values as not coming from any line
+            state.setRip(-1);
+            try {
+                for (Map.Entry<String, Long> reg : this.registers.entrySet()) {
+                    state.setRegister(SubRegister.fromName(reg.getKey()),
+                            reg.getValue());
+                }
+                SubRegister rsp = SubRegister.fromName("rsp");
+                long top = state.getRegisterValue(rsp) - 8 * (this.stack.size() + 1);
+                state.setRegister(rsp, top);
+                for (int i = 0; i < this.stack.size(); i++) {
+                    state.setMemoryValue(top + 8 * (i + 1), 8, this.stack.get(i));
+                }
+            } catch (x86RuntimeException e) {
+                // the stack is always aligned and within bounds
+                throw new IllegalStateException(e);
+            }
+            state.setRip(0);
+            this.initialState = state.toMachineState();
+        }
+        return this.initialState;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + " " + this.registers + " stack " + this.stack;
+    }
+}
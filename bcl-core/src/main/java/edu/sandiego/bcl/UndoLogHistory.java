@@ -0,0 +1,40 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A history that records the changes made by each instruction (see
+ * {@link StateDelta}). Stepping back is always fast, but the history grows
+ * with every instruction that is executed.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class UndoLogHistory implements SimulationHistory {
+
+    /**
+     * The changes made by each instruction that has been executed, in the
+     * order they were executed.
+     */
+    private final List<StateDelta> undoLog = new ArrayList<>();
+
+    @Override
+    public void record(MachineState before, MachineState after) {
+        undoLog.add(StateDelta.between(before, after));
+    }
+
+    @Override
+    public MachineState stepBack(MachineState current) {
+        return undoLog.remove(undoLog.size() - 1).undo(current);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return undoLog.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        undoLog.clear();
+    }
+}
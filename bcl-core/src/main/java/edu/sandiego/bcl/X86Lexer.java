@@ -0,0 +1,445 @@
+package edu.sandiego.bcl;
+
+/**
+ * Hand-written scanner that splits a line of AT&T syntax assembly into its
+ * parts (comment, instruction name, operands, label) and each operand into
+ * its parts (e.g. the base register of a memory operand), for
+ * {@link X86Parser} to check and build the line from.
+ *
+ * It accepts exactly what the regular expressions the parser used to use
+ * accepted, quirks included (e.g. junk between operands is skipped if it is
+ * followed by a comma), so that errors are reported at the same places.
+ * RegexX86Parser, in the tests, keeps those regular expressions around to
+ * check that. Unlike them it never backtracks: an operand is recognized by
+ * looking at its first character, and a valid line is scanned in a single
+ * pass.
+ *
+ * Like a {@link java.util.regex.Matcher}, a lexer remembers where the parts
+ * of the last line and operand it scanned are (see {@link #start},
+ * {@link #end} and {@link #group}), so a parser only needs one of them.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class X86Lexer {
+
+    /**
+     * The kinds of lines.
+     */
+    enum LineKind { BLANK, INSTRUCTION, LABEL, INVALID }
+
+    /**
+     * The kinds of operands.
+     */
+    enum OperandKind { MEMORY, REGISTER, LABEL, CONSTANT }
+
+    /*
+     * The parts of a line found by scanLine.
+     */
+    /** The line without its comment. */
+    static final int CODE = 0;
+    /** The comment, starting with the "#". */
+    static final int COMMENT = 1;
+    /** The name of the instruction (e.g. "addq"). */
+    static final int INSTRUCTION = 2;
+    /** Everything after the name of the instruction and the space after it. */
+    static final int OPERANDS = 3;
+    /** The name of the label defined by the line. */
+    static final int LABEL = 4;
+
+    /*
+     * The parts of an operand found by findFirstOperand or findNextOperand.
+     */
+    /** The whole operand (which is also the name of a label operand). */
+    static final int OPERAND = 5;
+    /** The immediate of a memory operand, which may start with a "$". */
+    static final int IMMEDIATE = 6;
+    /** The name of the base register of a memory operand, sans %. */
+    static final int BASE = 7;
+    /** The name of the index register of a memory operand, sans %. */
+    static final int INDEX = 8;
+    /** The scaling factor of a memory operand, which may start with a "$". */
+    static final int SCALE = 9;
+    /** The name of a register operand, sans %. */
+    static final int REGISTER = 10;
+    /** The value of a constant operand, sans $. */
+    static final int CONSTANT = 11;
+
+    private static final int NUM_GROUPS = 12;
+
+    private CharSequence text;
+    private final int[] starts = new int[NUM_GROUPS];
+    private final int[] ends = new int[NUM_GROUPS];
+    private OperandKind operandKind;
+
+    /**
+     * Scans a line, finding its comment and whether it is blank, an
+     * instruction or a label.
+     *
+     * @param line The line to scan.
+     * @return The kind of line it is.
+     */
+    LineKind scanLine(CharSequence line) {
+        this.text = line;
+        clearGroups(CODE, NUM_GROUPS);
+
+        int length = line.length();
+        int codeEnd = length;
+        int hash = indexOf(line, '#', 0, length);
+        if (hash >= 0 && !containsLineTerminator(line, hash + 1, length)) {
+            set(COMMENT, hash, length);
+            codeEnd = hash;
+        }
+        set(CODE, 0, codeEnd);
+
+        int nameStart = skipSpaces(line, 0, codeEnd);
+        if (nameStart == codeEnd) {
+            return LineKind.BLANK;
+        }
+
+        int nameEnd = nameStart;
+        while (nameEnd < codeEnd && isAlpha(line.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd > nameStart) {
+            if (nameEnd == codeEnd) {
+                set(INSTRUCTION, nameStart, nameEnd);
+                return LineKind.INSTRUCTION;
+            } else if (isSpace(line.charAt(nameEnd))) {
+                int operandsStart = skipSpaces(line, nameEnd, codeEnd);
+                if (!containsLineTerminator(line, operandsStart, codeEnd)) {
+                    set(INSTRUCTION, nameStart, nameEnd);
+                    set(OPERANDS, operandsStart, codeEnd);
+                    return LineKind.INSTRUCTION;
+                }
+            }
+        }
+
+        int labelEnd = labelEnd(line, nameStart, codeEnd);
+        if (labelEnd > nameStart && labelEnd < codeEnd
+                && line.charAt(labelEnd) == ':'
+                && skipSpaces(line, labelEnd + 1, codeEnd) == codeEnd) {
+            set(LABEL, nameStart, labelEnd);
+            return LineKind.LABEL;
+        }
+        return LineKind.INVALID;
+    }
+
+    /**
+     * Looks for the first operand in the operands of the last scanned line
+     * that starts at or after the given index, skipping anything that isn't
+     * an operand.
+     *
+     * @param from The index to start looking at.
+     * @return True if an operand was found.
+     */
+    boolean findFirstOperand(int from) {
+        int limit = end(OPERANDS);
+        for (int i = from; i < limit; i++) {
+            if (!isSpace(text.charAt(i)) && scanOperand(i, limit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks for the first comma at or after the given index in the operands
+     * of the last scanned line that is followed by an operand (possibly after
+     * some spaces), skipping anything else.
+     *
+     * @param from The index to start looking at.
+     * @return True if an operand was found.
+     */
+    boolean findNextOperand(int from) {
+        int limit = end(OPERANDS);
+        for (int i = indexOf(text, ',', from, limit); i >= 0;
+                i = indexOf(text, ',', i + 1, limit)) {
+            int operandStart = skipSpaces(text, i + 1, limit);
+            if (operandStart < limit && scanOperand(operandStart, limit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The kind of the last operand that was found.
+     */
+    OperandKind operandKind() {
+        return this.operandKind;
+    }
+
+    /**
+     * @return The index the given part starts at, or -1 if the last scanned
+     * line or operand doesn't have it.
+     */
+    int start(int group) {
+        return this.starts[group];
+    }
+
+    /**
+     * @return The index the given part ends at (exclusive), or -1 if the
+     * last scanned line or operand doesn't have it.
+     */
+    int end(int group) {
+        return this.ends[group];
+    }
+
+    /**
+     * @return The character at the given index of the last scanned line.
+     */
+    char charAt(int index) {
+        return this.text.charAt(index);
+    }
+
+    /**
+     * @return The text of the given part, or null if the last scanned line
+     * or operand doesn't have it.
+     */
+    String group(int group) {
+        if (this.starts[group] < 0) {
+            return null;
+        }
+        return this.text.subSequence(this.starts[group], this.ends[group]).toString();
+    }
+
+    /**
+     * Checks whether there is an operand at the given index (which doesn't
+     * have a space there), recording its parts if so. Operands must be
+     * followed by a space, a comma or the end of the operands.
+     *
+     * @param limit The end of the operands.
+     * @return True if there was an operand.
+     */
+    private boolean scanOperand(int start, int limit) {
+        clearGroups(OPERAND, NUM_GROUPS);
+        int end;
+        char c = text.charAt(start);
+        if (c == '%') {
+            this.operandKind = OperandKind.REGISTER;
+            end = alnumEnd(start + 1, limit);
+            if (end == start + 1) {
+                return false;
+            }
+            set(REGISTER, start + 1, end);
+        } else if (c == '.' || isAlpha(c)) {
+            this.operandKind = OperandKind.LABEL;
+            end = labelEnd(text, start, limit);
+        } else {
+            // A memory operand may start with an immediate that looks just
+            // like a constant, so if it turns out not to be one it may still
+            // be a constant.
+            this.operandKind = OperandKind.MEMORY;
+            end = memoryEnd(start, limit);
+            if (end == start || !isOperandEnd(end, limit)) {
+                clearGroups(OPERAND, NUM_GROUPS);
+                this.operandKind = OperandKind.CONSTANT;
+                end = numberEnd(start, limit, true);
+                if (end == start) {
+                    return false;
+                }
+                set(CONSTANT, c == '$' ? start + 1 : start, end);
+            }
+        }
+
+        if (!isOperandEnd(end, limit)) {
+            return false;
+        }
+        set(OPERAND, start, end);
+        return true;
+    }
+
+    private boolean isOperandEnd(int i, int limit) {
+        return i == limit || isSpace(text.charAt(i)) || text.charAt(i) == ',';
+    }
+
+    /**
+     * Scans a number (e.g. "$-12" or "0x1f") starting at the given index.
+     *
+     * @param hexDollar Whether a hexadecimal number may start with a "$"
+     * (decimal ones always may).
+     * @return The index after the number, or start if there isn't one.
+     */
+    private int numberEnd(int start, int limit, boolean hexDollar) {
+        int i = start;
+        boolean dollar = i < limit && text.charAt(i) == '$';
+        if (dollar) {
+            i++;
+        }
+        if (i < limit && text.charAt(i) == '-') {
+            i++;
+        }
+        if (i + 1 < limit && text.charAt(i) == '0' && text.charAt(i + 1) == 'x') {
+            int digitsEnd = i + 2;
+            while (digitsEnd < limit && isHexDigit(text.charAt(digitsEnd))) {
+                digitsEnd++;
+            }
+            return (dollar && !hexDollar) || digitsEnd == i + 2 ? start : digitsEnd;
+        }
+        int digitsEnd = i;
+        while (digitsEnd < limit && isDigit(text.charAt(digitsEnd))) {
+            digitsEnd++;
+        }
+        return digitsEnd == i ? start : digitsEnd;
+    }
+
+    /**
+     * Scans a memory operand, i.e. "imm(base, index, scale)" where
+     * everything but the parentheses is optional (but they can't be empty)
+     * and there can be spaces in between. A "$" is allowed before decimal
+     * immediates and the scale so that they can be reported as errors.
+     *
+     * @return The index after the ")", or start if there isn't a memory
+     * operand.
+     */
+    private int memoryEnd(int start, int limit) {
+        int immEnd = numberEnd(start, limit, false);
+        if (immEnd > start) {
+            set(IMMEDIATE, start, immEnd);
+        }
+        int parenStart = skipSpaces(text, immEnd, limit);
+        if (parenStart >= limit || text.charAt(parenStart) != '(') {
+            return start;
+        }
+
+        int i = skipSpaces(text, parenStart + 1, limit);
+        if (i < limit && text.charAt(i) == ')') {
+            return start;
+        }
+
+        if (i < limit && text.charAt(i) == '%') {
+            int nameEnd = alnumEnd(i + 1, limit);
+            if (nameEnd > i + 1) {
+                set(BASE, i + 1, nameEnd);
+                i = skipSpaces(text, nameEnd, limit);
+            }
+        }
+
+        if (i < limit && text.charAt(i) == ',') {
+            i = skipSpaces(text, i + 1, limit);
+            if (i >= limit || text.charAt(i) != '%') {
+                return start;
+            }
+            int nameEnd = alnumEnd(i + 1, limit);
+            if (nameEnd == i + 1) {
+                return start;
+            }
+            set(INDEX, i + 1, nameEnd);
+            i = skipSpaces(text, nameEnd, limit);
+
+            if (i < limit && text.charAt(i) == ',') {
+                int scaleStart = skipSpaces(text, i + 1, limit);
+                i = scaleStart;
+                if (i < limit && text.charAt(i) == '$') {
+                    i++;
+                }
+                int digitsEnd = i;
+                while (digitsEnd < limit && isDigit(text.charAt(digitsEnd))) {
+                    digitsEnd++;
+                }
+                if (digitsEnd == i) {
+                    return start;
+                }
+                set(SCALE, scaleStart, digitsEnd);
+                i = skipSpaces(text, digitsEnd, limit);
+            }
+        }
+
+        if (i < limit && text.charAt(i) == ')') {
+            return i + 1;
+        }
+        return start;
+    }
+
+    private int alnumEnd(int start, int limit) {
+        int i = start;
+        while (i < limit && isAlnum(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return The index after the label name (e.g. ".L2") starting at the
+     * given index, or start if there isn't one.
+     */
+    private static int labelEnd(CharSequence s, int start, int limit) {
+        if (start >= limit || (s.charAt(start) != '.' && !isAlpha(s.charAt(start)))) {
+            return start;
+        }
+        int i = start + 1;
+        while (i < limit && (s.charAt(i) == '.' || s.charAt(i) == '_'
+                || isAlnum(s.charAt(i)))) {
+            i++;
+        }
+        return i;
+    }
+
+    private void set(int group, int start, int end) {
+        this.starts[group] = start;
+        this.ends[group] = end;
+    }
+
+    private void clearGroups(int from, int to) {
+        for (int g = from; g < to; g++) {
+            this.starts[g] = -1;
+            this.ends[g] = -1;
+        }
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int skipSpaces(CharSequence s, int from, int limit) {
+        int i = from;
+        while (i < limit && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /*
+     * Character classes, which (like the ones in regular expressions) are
+     * ASCII only.
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B
+                || c == '\f' || c == '\r';
+    }
+
+    static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlnum(char c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * @return True if there is a line terminator (which can't be part of a
+     * comment or the operands) between the given indices.
+     */
+    private static boolean containsLineTerminator(CharSequence s, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
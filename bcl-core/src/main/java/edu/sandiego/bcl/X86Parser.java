@@ -0,0 +1,1119 @@
+package edu.sandiego.bcl;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class for parsing X86-64 programs.
+ *
+ * Lines are split into their parts by a hand-written {@link X86Lexer}, which
+ * looks at each character about once. The names of instructions are decoded
+ * through a table built once when the class is loaded, as is the index of
+ * names to suggest in place of invalid ones (see {@link SuggestionIndex}).
+ *
+ * Parsing a line doesn't depend on the lines before it; only numbering it
+ * and binding labels does (see {@link #addParsedLine}). This lets
+ * {@link #parseLines} parse the lines of a file in parallel.
+ */
+public class X86Parser {
+
+    // The names of the instructions, by the kind of suffix they need.
+    private static final List<String> ONE_SUFFIX_INSTRUCTIONS = Arrays.asList(
+            "add", "sub", "imul",
+            "idiv", "xor", "or", "and", "shl", "sal", "shr", "sar",
+            "mov", "lea", "inc", "dec", "neg", "not", "push", "pop", "cmp", "test", "call", "ret", "clt");
+    private static final List<String> TWO_SUFFIX_INSTRUCTIONS = Arrays.asList("movz", "movs");
+    private static final List<String> CONDITIONAL_INSTRUCTIONS = Arrays.asList("set", "j", "cmov");
+    private static final List<String> QUAD_ONLY_INSTRUCTIONS = Arrays.asList(
+            "lea", "push", "pop", "call", "ret", "clt");
+
+    private static final String SIZE_SUFFIXES = "bwlq";
+    private static final List<String> TWO_SIZE_SUFFIXES = Arrays.asList(
+            "bw", "bl", "bq", "wl", "wq", "lq");
+    private static final List<String> CONDITION_SUFFIXES = Arrays.asList(
+            "e", "ne", "s", "ns", "g", "ge", "l", "le", "a", "ae", "b", "be");
+
+    /**
+     * The names that an invalid suffix may follow, in the order to look for
+     * them (e.g. "movz" before "mov").
+     */
+    private static final List<String> SUFFIXED_INSTRUCTIONS = new ArrayList<>();
+
+    // The names of the registers, by size, sans suffix for r8 to r15.
+    private static final List<String> QUAD_REGISTERS = Arrays.asList(
+            "rax", "rbx", "rcx", "rdx", "rsi", "rdi", "rbp", "rsp");
+    private static final List<String> LONG_REGISTERS = Arrays.asList(
+            "eax", "ebx", "ecx", "edx", "esi", "edi", "ebp", "esp");
+    private static final List<String> WORD_REGISTERS = Arrays.asList(
+            "ax", "bx", "cx", "dx", "si", "di", "bp", "sp");
+    private static final List<String> BYTE_REGISTERS = Arrays.asList(
+            "al", "ah", "bl", "bh", "cl", "ch", "dl", "dh", "sil", "dil", "bpl", "spl");
+
+    /**
+     * The names of all the registers, to suggest in place of invalid ones.
+     */
+    private static final SuggestionIndex REGISTER_SUGGESTIONS;
+
+    /**
+     * The names of all the instructions, to suggest in place of invalid ones.
+     * This includes names with sizes the instruction can't have (e.g. "pushl"
+     * and "movzlq").
+     */
+    private static final SuggestionIndex INSTRUCTION_SUGGESTIONS;
+
+    /**
+     * The type, size and operand requirements of every valid instruction, by
+     * name (e.g. "addq").
+     */
+    private static final Map<String, TypeAndOpRequirements> instructionFromName = new HashMap<>();
+
+    static {
+        SUFFIXED_INSTRUCTIONS.addAll(TWO_SUFFIX_INSTRUCTIONS);
+        SUFFIXED_INSTRUCTIONS.addAll(ONE_SUFFIX_INSTRUCTIONS);
+        SUFFIXED_INSTRUCTIONS.add("jmp");
+        SUFFIXED_INSTRUCTIONS.addAll(CONDITIONAL_INSTRUCTIONS);
+
+        List<String> registerNames = new ArrayList<>();
+        registerNames.addAll(QUAD_REGISTERS);
+        registerNames.addAll(LONG_REGISTERS);
+        registerNames.addAll(WORD_REGISTERS);
+        registerNames.addAll(BYTE_REGISTERS);
+        for (int i = 8; i <= 15; i++) {
+            for (String suffix : Arrays.asList("", "d", "w", "b")) {
+                registerNames.add("r" + i + suffix);
+            }
+        }
+        REGISTER_SUGGESTIONS = new SuggestionIndex(registerNames, 0.8);
+
+        List<String> instructionNames = new ArrayList<>();
+        instructionNames.add("jmp");
+        for (char suffix : SIZE_SUFFIXES.toCharArray()) {
+            for (String name : ONE_SUFFIX_INSTRUCTIONS) {
+                instructionNames.add(name + suffix);
+            }
+            for (char secondSuffix : SIZE_SUFFIXES.toCharArray()) {
+                for (String name : TWO_SUFFIX_INSTRUCTIONS) {
+                    instructionNames.add(name + suffix + secondSuffix);
+                }
+            }
+        }
+        for (String name : CONDITIONAL_INSTRUCTIONS) {
+            for (String condition : CONDITION_SUFFIXES) {
+                instructionNames.add(name + condition);
+            }
+        }
+        INSTRUCTION_SUGGESTIONS = new SuggestionIndex(instructionNames, 0.8);
+
+        try {
+            /*
+             * "sized" instructions are those that have an instruction name (e.g.
+             * "add") followed by a single character suffix to indicate the size
+             * (e.g. "q"). Some of them can only be quad sized.
+             */
+            for (String name : ONE_SUFFIX_INSTRUCTIONS) {
+                for (char suffix : SIZE_SUFFIXES.toCharArray()) {
+                    if (QUAD_ONLY_INSTRUCTIONS.contains(name) && suffix != 'q') {
+                        continue;
+                    }
+                    OpSize size = OpSize.getOpSizeFromAbbrev(String.valueOf(suffix));
+                    addInstruction(name + suffix, InstructionType.valueOf(name.toUpperCase()),
+                            size, Arrays.asList(size));
+                }
+            }
+
+            /*
+             * "two sizes" instructions are those that have an instruction name followed
+             * by two characters that indicate the size of two operands (e.g. "bl")
+             * movzlq doesn't exist because movl automatically zero extends
+             * to fill the full quad register.
+             */
+            for (String name : TWO_SUFFIX_INSTRUCTIONS) {
+                for (String suffices : TWO_SIZE_SUFFIXES) {
+                    if (name.equals("movz") && suffices.equals("lq")) {
+                        continue;
+                    }
+                    OpSize size1 = OpSize.getOpSizeFromAbbrev(suffices.substring(0, 1));
+                    OpSize size2 = OpSize.getOpSizeFromAbbrev(suffices.substring(1));
+                    addInstruction(name + suffices, InstructionType.valueOf(name.toUpperCase()),
+                            size2, Arrays.asList(size1, size2));
+                }
+            }
+        } catch (X86ParsingException e) {
+            throw new AssertionError(e);
+        }
+
+        /*
+         * "conditional" instructions are those whose operations are determined
+         * by the status flags (e.g. the overflow flag).
+         * Their suffix isn't a size, rather it is the condition to check for
+         * (e.g. "ge" for "greater than or equal")
+         * The "size" of these instructions is implicit (e.g. byte for SET).
+         * The CMOV instruction doesn't have an explicit size. It's size needs
+         * to be inferred from the size of the operands. The JUMP instructions
+         * don't really have a size so BYTE is arbitrarily chosen.
+         */
+        addInstruction("jmp", InstructionType.JMP, OpSize.BYTE, new ArrayList<>());
+        for (String name : CONDITIONAL_INSTRUCTIONS) {
+            for (String condition : CONDITION_SUFFIXES) {
+                OpSize size = name.equals("cmov") ? OpSize.INFERRED : OpSize.BYTE;
+                addInstruction(name + condition,
+                        InstructionType.valueOf((name + condition).toUpperCase()),
+                        size, new ArrayList<>());
+            }
+        }
+    }
+
+    private static void addInstruction(String name, InstructionType type,
+            OpSize size, List<OpSize> opSizes) {
+        instructionFromName.put(name,
+                new TypeAndOpRequirements(type, size, getOperandReqs(type, opSizes)));
+    }
+
+    /**
+     * The number of lines {@link #parseLines} gives each of its tasks.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The line number of a line that hasn't been added yet.
+     */
+    private static final int UNNUMBERED = 0;
+
+    /**
+     * A line parsed without looking at the lines before it. It doesn't have
+     * its line number yet and its label operand, if any, isn't bound to its
+     * label, so it could be anywhere in a program. Instead of a line, it may
+     * hold the error from parsing it.
+     */
+    static final class ParsedLine {
+        private final x86ProgramLine line;
+
+        /**
+         * Where the name of the label is, if the line is a label.
+         */
+        private final int labelStart;
+        private final int labelEnd;
+
+        /**
+         * The X86ParsingException or RuntimeException from parsing the line.
+         */
+        private final Exception error;
+
+        ParsedLine(x86ProgramLine line) {
+            this(line, -1, -1);
+        }
+
+        ParsedLine(x86ProgramLine line, int labelStart, int labelEnd) {
+            this.line = line;
+            this.labelStart = labelStart;
+            this.labelEnd = labelEnd;
+            this.error = null;
+        }
+
+        ParsedLine(Exception error) {
+            this.line = null;
+            this.labelStart = -1;
+            this.labelEnd = -1;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The line number that will be given to the next parsed line.
+     */
+    private int currLineNum;
+
+    /**
+     * Map for keeping track of all the labelFromName we have parsed so far.
+     */
+    private final Map<String, x86Label> labelFromName;
+
+    /**
+     * Map for tracking all the instructions that use a label with a specific name.
+     */
+    private final Map<String, List<x86Instruction>> labelUsersFromName;
+
+    /**
+     * Object to construct operands for instructions.
+     */
+    private OperandGetter operandGetter;
+
+    /**
+     * Lexer that finds the parts of the line being parsed.
+     */
+    private final X86Lexer lexer;
+
+    public X86Parser(){
+        this.currLineNum = 0;
+        this.labelFromName = new HashMap<>();
+        this.labelUsersFromName = new HashMap<>();
+        this.operandGetter = new x86OperandGetter();
+        this.lexer = new X86Lexer();
+    }
+
+    /**
+     * Class to represent information about the instruction being parsed,
+     * including it's type, size, and operand requirements.
+     */
+    private static class TypeAndOpRequirements {
+        public final InstructionType type;
+        public final OpSize instrSize;
+        public final List<OperandRequirements> operandReqs;
+
+        public TypeAndOpRequirements(InstructionType type, OpSize instrSize, List<OperandRequirements> opReqs) {
+            this.type = type;
+            this.instrSize = instrSize;
+            this.operandReqs = opReqs;
+        }
+    }
+
+    /**
+     * Checks that instruction is a valid, supported x86 instruction.
+     *
+     * @param instrName The name of the instruction (e.g. addl)
+     * @return Object containing the type and the operand requirements for this instruction.
+     * @throws X86ParsingException If it is not a valid instruction or if the
+     * size suffix is invalid.
+     */
+    private static Optional<TypeAndOpRequirements> parseTypeAndSize(String instrName) throws X86ParsingException {
+        TypeAndOpRequirements details = instructionFromName.get(instrName);
+        if (details != null) {
+            return Optional.of(details);
+        }
+
+        // Figure out what is wrong with the name.
+        int length = instrName.length();
+        if (length >= 2 && ONE_SUFFIX_INSTRUCTIONS.contains(instrName.substring(0, length - 1))
+                && SIZE_SUFFIXES.indexOf(instrName.charAt(length - 1)) >= 0) {
+            // only quad sized instructions with another size aren't valid
+            throw new X86ParsingException("Invalid suffix. Must be q.",
+                    length - 1,
+                    length);
+        } else if (length >= 3 && TWO_SUFFIX_INSTRUCTIONS.contains(instrName.substring(0, length - 2))
+                && TWO_SIZE_SUFFIXES.contains(instrName.substring(length - 2))) {
+            // only movzlq isn't valid
+            throw new X86ParsingException("MOVZ does not have an lq variant.",
+                    length - 2,
+                    length);
+        }
+
+        int suffixStart = -1;
+        for (String name : SUFFIXED_INSTRUCTIONS) {
+            if (length > name.length() && instrName.startsWith(name)) {
+                suffixStart = name.length();
+                break;
+            }
+        }
+
+        if (suffixStart >= 0) {
+            String suffix = instrName.substring(suffixStart);
+            String errorMessage = "Invalid suffix.";
+
+            if (startsWithAny(instrName, QUAD_ONLY_INSTRUCTIONS)) {
+                errorMessage += " Must be q.";
+            }
+            else if (ONE_SUFFIX_INSTRUCTIONS.contains(instrName.substring(0, suffixStart))) {
+                errorMessage += " Need one suffix: b, w, l, or q";
+            }
+            else if (startsWithAny(instrName, TWO_SUFFIX_INSTRUCTIONS)) {
+                // Identify scenario when individual suffices are correct but their
+                // ordering is invalid.
+                if (suffix.length() == 2 && SIZE_SUFFIXES.indexOf(suffix.charAt(0)) >= 0
+                        && SIZE_SUFFIXES.indexOf(suffix.charAt(1)) >= 0) {
+                    errorMessage += " First suffix size must be < second.";
+                }
+                else {
+                    errorMessage += " Need two suffices: b, w, l, or q";
+                }
+            }
+            else if (startsWithAny(instrName, CONDITIONAL_INSTRUCTIONS)) {
+                errorMessage += " Need one suffix: e, ne, s, ns, g, ge, l, le, a, ae, b, or be";
+            }
+            else if (instrName.startsWith("jmp")) {
+                errorMessage = " No suffix allowed here.";
+            }
+
+            throw new X86ParsingException(errorMessage,
+                            suffixStart,
+                            length);
+        } else {
+            Optional<String> intendedInstruction = getProbableInstruction(instrName);
+            if (intendedInstruction.isPresent()) {
+                throw new X86ParsingException(
+                        "Invalid instruction. Did you mean " + intendedInstruction.get() + "?",
+                        0,
+                        length);
+            }
+            else {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static boolean startsWithAny(String str, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (str.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Optional<String> getProbableRegister(String actualRegister) {
+        return REGISTER_SUGGESTIONS.getMostSimilar(actualRegister);
+    }
+
+    private static Optional<String> getProbableInstruction(String actualInstruction) {
+        return INSTRUCTION_SUGGESTIONS.getMostSimilar(actualInstruction);
+    }
+
+    /**
+     * Get the size of the register with the given name.
+     *
+     * @param name The register's name
+     * @return The size of the register.
+     * @throws X86ParsingException The string did not contain a valid register
+     * name.
+     */
+    public static OpSize getRegisterSize(String name) throws X86ParsingException {
+        SubRegister register = SubRegister.fromName(name);
+        if (register == null) {
+            String errorMessage = "Invalid register name.";
+            Optional<String> intendedRegister = getProbableRegister(name);
+            if (intendedRegister.isPresent()) {
+                errorMessage += " Did you mean " + intendedRegister.get() + "?";
+            }
+            throw new X86ParsingException(errorMessage, 0, name.length());
+        }
+
+        return register.getSize();
+    }
+
+    /**
+     * Construct an operand from the operand the lexer found last.
+     *
+     * @param opReqs The requirements for this operand.
+     * @return The parsed operand.
+     * @throws X86ParsingException There was an error parsing the operand.
+     */
+    private Operand parseOperand(OperandRequirements opReqs)
+            throws X86ParsingException {
+        Operand op = null;
+
+        X86Lexer.OperandKind kind = lexer.operandKind();
+        int opStart = lexer.start(X86Lexer.OPERAND);
+        int opEnd = lexer.end(X86Lexer.OPERAND);
+
+        if (kind == X86Lexer.OperandKind.CONSTANT) {
+            // Found a constant operand
+            if (lexer.start(X86Lexer.CONSTANT) == opStart)
+                throw new X86ParsingException("Missing $ before constant.",
+                                                opStart,
+                                                opEnd);
+
+            if (!opReqs.canBeConst())
+                throw new X86ParsingException("Operand cannot be a constant.",
+                                                opStart,
+                                                opEnd);
+
+            String constStr = lexer.group(X86Lexer.CONSTANT);
+            int base = 10;
+            if (constStr.contains("0x")) {
+                base = 16;
+                constStr = constStr.replace("0x", "");
+            }
+            assert(base == 10 || base == 16);
+
+            if (!ConstantOperand.fitsInSize(opReqs.getSize(), constStr, base)) {
+                throw new X86ParsingException("Constant is too large for specified size.",
+                                                opStart,
+                                                opEnd);
+            }
+
+            BigInteger val = new BigInteger(constStr, base);
+            op = new ConstantOperand(opReqs.getSize().getValue(val),
+                    opReqs.getSize(),
+                    base,
+                    lexer.group(X86Lexer.CONSTANT));
+        } else if (kind == X86Lexer.OperandKind.REGISTER) {
+            // Found a register operand
+            if (!opReqs.canBeReg())
+                throw new X86ParsingException("Operand cannot be a register.",
+                                                opStart,
+                                                opEnd);
+
+            String regName = lexer.group(X86Lexer.REGISTER);
+            int nameStart = lexer.start(X86Lexer.REGISTER);
+
+            OpSize opSize = null;
+            try {
+                opSize = getRegisterSize(regName);
+            } catch (X86ParsingException e) {
+                throw new X86ParsingException(e.getMessage(),
+                        nameStart + e.getStartIndex(),
+                        nameStart + e.getEndIndex());
+            }
+
+            // Make sure the size of this register doesn't conflict with the
+            // size the instruction uses/wants.
+            if (opReqs.getSize() != OpSize.INFERRED
+                    && opSize != opReqs.getSize()) {
+                String suggestedRegName =
+                        Register.getSubRegisterName(regName, opReqs.getSize().numBytes());
+
+                throw new X86ParsingException("Op size mismatch. Did you mean " + suggestedRegName + "?",
+                                                nameStart,
+                                                lexer.end(X86Lexer.REGISTER));
+            }
+
+            op = new RegOperand(regName, opSize);
+        } else if (kind == X86Lexer.OperandKind.MEMORY) {
+            // Found a memory operand
+            if (!opReqs.canBeMem())
+                throw new X86ParsingException("Operand cannot be a memory location.",
+                                                opStart,
+                                                opEnd);
+
+            // All components (e.g. offset or base reg) are optional, although
+            // at least one of them must be set.
+            // Note that the lexer doesn't allow a memory operand with no
+            // components present.
+            // Look for an offset, which can be any integral value
+            Integer offset = null;
+            String offsetStr = lexer.group(X86Lexer.IMMEDIATE);
+            if (offsetStr != null) {
+                if (offsetStr.startsWith("$")) {
+                    throw new X86ParsingException("Immediate should not start with \"$\".",
+                            lexer.start(X86Lexer.IMMEDIATE),
+                            lexer.end(X86Lexer.IMMEDIATE));
+                }
+                int base = 10;
+                if (offsetStr.contains("0x")) {
+                    base = 16;
+                    offsetStr = offsetStr.replace("0x", "");
+                }
+                offset = Integer.parseInt(offsetStr, base);
+                offsetStr = lexer.group(X86Lexer.IMMEDIATE); // back to orig string for display later
+            }
+            else {
+                offsetStr = "";
+            }
+
+            // Look for the base and index registers, which should both be
+            // quad sized registers.
+            String baseReg = getMemoryOperandRegister("base", X86Lexer.BASE);
+            String indexReg = getMemoryOperandRegister("index", X86Lexer.INDEX);
+
+            // Look for a scaling factor, which should be 1, 2, 4, or 8
+            Integer scale = null;
+            String scaleStr = lexer.group(X86Lexer.SCALE);
+            if (scaleStr != null) {
+                if (scaleStr.startsWith("$")) {
+                    throw new X86ParsingException("Scale factor should not start with \"$\".",
+                            lexer.start(X86Lexer.SCALE),
+                            lexer.end(X86Lexer.SCALE));
+                }
+                scale = Integer.parseInt(scaleStr);
+                if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+                    throw new X86ParsingException("Invalid scaling factor. Expecting 1, 2, 4, or 8",
+                            lexer.start(X86Lexer.SCALE),
+                            lexer.end(X86Lexer.SCALE));
+                }
+            }
+
+            op = new MemoryOperand(baseReg, indexReg, scale, offset, opReqs.getSize(), offsetStr);
+        } else if (kind == X86Lexer.OperandKind.LABEL) {
+            // Found a label operand
+            String labelName = lexer.group(X86Lexer.OPERAND);
+            if (SubRegister.fromName(labelName) != null)
+                throw new X86ParsingException("Possibly missing % before register name.",
+                                                opStart,
+                                                opEnd);
+
+            // Found a label operand
+             if (!opReqs.canBeLabel())
+                throw new X86ParsingException("Operand cannot be a label.",
+                                                opStart,
+                                                opEnd);
+
+            // Bound to its label by addParsedLine
+            op = new LabelOperand(labelName, null);
+        }
+        assert op != null;
+        return op;
+    }
+
+    /**
+     * Gets the register with the given role in the memory operand the lexer
+     * found last.
+     *
+     * @param role The role of the register to match (base or index)
+     * @param group The lexer's group for that role.
+     * @return Name of the register with the given role.
+     * @throws X86ParsingException if could not parse the register.
+     */
+    private String getMemoryOperandRegister(String role, int group)
+            throws X86ParsingException {
+        assert role.equals("base") || role.equals("index");
+        // Look for a base register, which should be a quad sized register
+        String baseReg = lexer.group(group);
+        if (baseReg != null) {
+            OpSize baseOpSize = null;
+            try {
+                baseOpSize = getRegisterSize(baseReg);
+            } catch (X86ParsingException e) {
+                throw new X86ParsingException(e.getMessage(),
+                        lexer.start(group) + e.getStartIndex(),
+                        lexer.start(group) + e.getEndIndex());
+            }
+            if (baseOpSize != OpSize.QUAD) {
+                throw new X86ParsingException(role + " register must be quad sized.",
+                        lexer.start(group),
+                        lexer.end(group));
+            }
+        }
+        return baseReg;
+    }
+
+    /**
+     * Parse all the operands of the line the lexer scanned last. These
+     * operands should be comma separated.
+     *
+     * @param opReqs List of requirements for each operand that is expected.
+     * @return The list of operands that were parsed.
+     * @throws X86ParsingException There was a problem parsing the operands.
+     */
+    private List<Operand> parseOperands(List<OperandRequirements> opReqs)
+            throws X86ParsingException {
+        List<Operand> operands = new ArrayList<>();
+        int operandsStart = lexer.start(X86Lexer.OPERANDS);
+        int operandsEnd = lexer.end(X86Lexer.OPERANDS);
+
+        if (!lexer.findFirstOperand(operandsStart)) {
+            return operands;
+        }
+
+        if (opReqs.isEmpty()) {
+            throw new X86ParsingException("Unexpected operand(s).",
+                    operandsStart, operandsEnd);
+        } else if (lexer.start(X86Lexer.OPERAND) != operandsStart) {
+            throw new X86ParsingException("Unexpected character(s) before first operand.",
+                    operandsStart, lexer.start(X86Lexer.OPERAND));
+        }
+
+        // Parse the first operand
+        operands.add(parseOperand(opReqs.get(0)));
+        int nextIndex = lexer.end(X86Lexer.OPERAND);
+
+        // Keep parsing operands until we don't find any more
+        while (lexer.findNextOperand(nextIndex)) {
+            if (operands.size() >= opReqs.size()) {
+                // These indices are the ones the regular expression based
+                // parser came up with, i.e. with the start of the operand
+                // (relative to the start of the operands) added twice.
+                int relativeStart = lexer.start(X86Lexer.OPERAND) - operandsStart;
+                throw new X86ParsingException("Too many operand(s).",
+                        nextIndex + 2 * relativeStart,
+                        operandsEnd + relativeStart);
+            }
+            operands.add(parseOperand(opReqs.get(operands.size())));
+            nextIndex = lexer.end(X86Lexer.OPERAND);
+        }
+
+        // Make sure there isn't any leftover cruft after the last parsed
+        // operand (i.e. anything that trim() wouldn't remove)
+        for (int i = nextIndex; i < operandsEnd; i++) {
+            if (lexer.charAt(i) > ' ') {
+                throw new X86ParsingException("Could not parse operand(s).",
+                        nextIndex, operandsEnd);
+            }
+        }
+
+        return operands;
+    }
+
+    /**
+     * Create an x86-64 instruction by parsing a given string.
+     *
+     * @param instr A string representation of the instruction.
+     * @return The parsed line.
+     * @throws X86ParsingException There was a problem parsing the line.
+     */
+    public x86ProgramLine parseLine(String instr) throws X86ParsingException {
+        return addParsedLine(parseLineAlone(instr));
+    }
+
+    /**
+     * Parses the given lines in parallel, as {@link #parseLineAlone} would
+     * one at a time. The lines are split into chunks, each of which is
+     * parsed by a parser of its own, in the fork/join pool of the calling
+     * thread (or the common pool).
+     *
+     * @param lines The lines to parse.
+     * @return The parsed lines, in the same order, up to and including the
+     * first one that couldn't be parsed.
+     */
+    static List<ParsedLine> parseLines(List<? extends CharSequence> lines) {
+        return new ParseTask(lines, 0, lines.size()).invoke();
+    }
+
+    /**
+     * Parses a range of lines, splitting it in two until it is small enough
+     * to parse in one go.
+     */
+    @SuppressWarnings("serial")
+    private static final class ParseTask extends RecursiveTask<List<ParsedLine>> {
+        private final List<? extends CharSequence> lines;
+        private final int start;
+        private final int end;
+
+        ParseTask(List<? extends CharSequence> lines, int start, int end) {
+            this.lines = lines;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<ParsedLine> compute() {
+            if (this.end - this.start <= CHUNK_SIZE) {
+                X86Parser parser = new X86Parser();
+                List<ParsedLine> parsedLines = new ArrayList<>(this.end - this.start);
+                for (int i = this.start; i < this.end; i++) {
+                    try {
+                        parsedLines.add(parser.parseLineAlone(this.lines.get(i)));
+                    } catch (X86ParsingException | RuntimeException e) {
+                        parsedLines.add(new ParsedLine(e));
+                        break;
+                    }
+                }
+                return parsedLines;
+            }
+
+            int middle = (this.start + this.end) >>> 1;
+            ParseTask first = new ParseTask(this.lines, this.start, middle);
+            ParseTask second = new ParseTask(this.lines, middle, this.end);
+            invokeAll(first, second);
+            List<ParsedLine> parsedLines = first.join();
+            if (parsedLines.size() == middle - this.start
+                    && parsedLines.get(parsedLines.size() - 1).error == null) {
+                parsedLines.addAll(second.join());
+            }
+            return parsedLines;
+        }
+    }
+
+    /**
+     * Adds a line parsed by {@link #parseLineAlone} (or {@link #parseLines})
+     * to the lines parsed so far: gives it the next line number, and binds
+     * labels and label operands with the same name to each other.
+     *
+     * @param parsed The parsed line.
+     * @return The line.
+     * @throws X86ParsingException The line couldn't be parsed, or it is a
+     * label with the same name as one before it.
+     */
+    x86ProgramLine addParsedLine(ParsedLine parsed) throws X86ParsingException {
+        if (parsed.error instanceof X86ParsingException) {
+            throw (X86ParsingException) parsed.error;
+        } else if (parsed.error != null) {
+            throw (RuntimeException) parsed.error;
+        }
+
+        x86ProgramLine line = parsed.line;
+        if (line instanceof x86Label) {
+            x86Label l = (x86Label) line;
+            String labelName = l.getName();
+
+            // Make sure this label doesn't already exist
+            if (labelFromName.containsKey(labelName)) {
+                System.out.println("Duplicate label: " + labelName);
+                throw new X86ParsingException("Duplicate label name",
+                        parsed.labelStart,
+                        parsed.labelEnd);
+            }
+
+            l.setLineNum(currLineNum++);
+            labelFromName.put(labelName, l);
+            if (labelUsersFromName.containsKey(labelName)) {
+                labelUsersFromName.get(labelName).forEach((inst) -> {
+                    inst.updateLabels(labelName, l);
+                });
+            }
+        } else {
+            line.setLineNum(currLineNum++);
+
+            if (line instanceof x86UnaryInstruction
+                    && ((x86UnaryInstruction) line).getDestination() instanceof LabelOperand) {
+                x86UnaryInstruction inst = (x86UnaryInstruction) line;
+                String loName = ((LabelOperand) inst.getDestination()).getName();
+                inst.updateLabels(loName, labelFromName.get(loName));
+                if (labelUsersFromName.containsKey(loName)) {
+                    labelUsersFromName.get(loName).add(inst);
+                } else {
+                    List<x86Instruction> l = new ArrayList<>();
+                    l.add(inst);
+                    labelUsersFromName.put(loName, l);
+                }
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Parses a line without looking at, or adding to, the lines parsed so
+     * far: the line has no line number yet, and label operands aren't bound
+     * to labels (see {@link #addParsedLine}).
+     *
+     * @param instr A string representation of the line.
+     * @return The parsed line.
+     * @throws X86ParsingException There was a problem parsing the line.
+     */
+    private ParsedLine parseLineAlone(CharSequence instr) throws X86ParsingException {
+        X86Lexer.LineKind lineKind = lexer.scanLine(instr);
+
+        x86Comment c = null;
+        if (lexer.start(X86Lexer.COMMENT) >= 0) {
+            // This line contains a comment
+            c = new x86Comment(lexer.group(X86Lexer.COMMENT));
+        }
+
+        // where the line ends, not counting the comment
+        int instrEnd = lexer.end(X86Lexer.CODE);
+
+        if (lineKind == X86Lexer.LineKind.BLANK) {
+            return new ParsedLine(new x86BlankLine(UNNUMBERED, c));
+        }
+
+        // The line should be either a label or an instruction
+        if (lineKind == X86Lexer.LineKind.INVALID) {
+            throw new X86ParsingException("Could not parse line: invalid syntax.", 0, instrEnd);
+        }
+
+        if (lineKind == X86Lexer.LineKind.INSTRUCTION) {
+            // This line contains an X86 instruction.
+
+            // Step 1: Get the name of the instruction and use that to determine
+            // the type (i.e. what operation it is performing) and size of the
+            // instruction.
+            String instrName = lexer.group(X86Lexer.INSTRUCTION);
+            int instStart = lexer.start(X86Lexer.INSTRUCTION);
+            int operandsStart = lexer.start(X86Lexer.OPERANDS);
+
+            Optional<TypeAndOpRequirements> instDetails = Optional.empty();
+            try {
+                instDetails = parseTypeAndSize(instrName);
+            } catch (X86ParsingException e) {
+                throw new X86ParsingException(e.getMessage(),
+                        instStart + e.getStartIndex(),
+                        instStart + e.getEndIndex());
+            }
+
+            // Check to see if the user might have meant a label here but forgot
+            // to add the ":" after it.
+            if (!instDetails.isPresent()) {
+                String errorMessage = "Invalid instruction.";
+                if (operandsStart < 0) {
+                    errorMessage += " Did you forget a \":\" after a label?";
+                }
+                throw new X86ParsingException(errorMessage,
+                            instStart,
+                            lexer.end(X86Lexer.INSTRUCTION));
+            }
+
+            InstructionType instrType = instDetails.get().type;
+            OpSize instrSize = instDetails.get().instrSize;
+            List<OperandRequirements> opReqs = instDetails.get().operandReqs;
+
+            // Step 2: Parse the operands (putting them into a list) then use
+            // those operands plus the instruction type to create a new
+            // X86Instruction.
+            if (operandsStart >= 0) {
+
+                List<Operand> operands = parseOperands(opReqs);
+
+                if (operands.size() != instrType.numOperands()) {
+                    throw new X86ParsingException(
+                            instrName + " should have " + instrType.numOperands() + " operand(s)",
+                            operandsStart,
+                            instrEnd);
+                } else if (instrType.numOperands() == 2) {
+                    // Don't allow both operands to be memory operands.
+                    if (operands.get(0) instanceof MemoryOperand
+                            && operands.get(1) instanceof MemoryOperand) {
+                        throw new X86ParsingException("Cannot have two memory operands.",
+                                operandsStart,
+                                instrEnd);
+                    }
+
+                    // Determine what size is inferred by the actual operands.
+                    if (instrSize == OpSize.INFERRED) {
+                        // Second operand has to be a register, which will always
+                        // be the explicit size.
+                        OpSize inferredSize = operands.get(1).getOpSize();
+                        instrSize = inferredSize;
+                        OpSize srcSize = operands.get(0).getOpSize();
+                        if (srcSize != OpSize.INFERRED) {
+                            // If not inferred, then src must match size
+                            if (inferredSize != srcSize) {
+                                throw new X86ParsingException("Mismatched operand sizes.",
+                                        operandsStart,
+                                        instrEnd);
+                            }
+                        }
+                        else {
+                            boolean ok = operands.get(0).makeSizeExplicit(inferredSize);
+                            assert ok;
+                        }
+                    }
+
+                    // According to the Intel IA32/64 manual, CMOV instructions
+                    // cannot be used to move byte sized values.
+                    if (instrType.toString().startsWith("CMOV")
+                            && instrSize == OpSize.BYTE) {
+                        throw new X86ParsingException("CMOV instructions may not be byte sized.",
+                                operandsStart,
+                                instrEnd);
+                    }
+
+                    return new ParsedLine(new x86BinaryInstruction(instrType,
+                            operands.get(0),
+                            operands.get(1),
+                            instrSize,
+                            UNNUMBERED,
+                            c));
+                } else if (instrType.numOperands() == 1) {
+                    return new ParsedLine(new x86UnaryInstruction(instrType,
+                            operands.get(0), instrSize, UNNUMBERED, c,
+                            this.operandGetter));
+                }
+                throw new X86ParsingException("I am confusion", operandsStart, instrName.length());
+            } else {
+                if (instrType.numOperands() != 0)
+                    throw new X86ParsingException(
+                                instrName + " should have " + instrType.numOperands() + " operand(s)",
+                                lexer.end(X86Lexer.INSTRUCTION),
+                                instrEnd);
+                // nullary skullduggery
+                return new ParsedLine(new x86NullaryInstruction(instrType, instrSize,
+                        UNNUMBERED, c, this.operandGetter));
+            }
+        } else {
+            // This line contains a label
+            String labelName = lexer.group(X86Lexer.LABEL);
+
+            if (SubRegister.fromName(labelName) != null)
+                throw new X86ParsingException("Label name should not be a register name",
+                                                lexer.start(X86Lexer.LABEL),
+                                                lexer.end(X86Lexer.LABEL));
+
+            return new ParsedLine(new x86Label(labelName, UNNUMBERED, c),
+                    lexer.start(X86Lexer.LABEL),
+                    lexer.end(X86Lexer.LABEL));
+        }
+        // TODO: allow lines that contain both a label and an instruction?
+    }
+
+    /**
+     * Resets the parser back to its starting state.
+     */
+    public void clear() {
+        labelFromName.clear();
+        labelUsersFromName.clear();
+        currLineNum = 0;
+    }
+    
+    /**
+     * Sets the line number of next parsed line.
+     * 
+     * @param l The next line number.
+     */
+    public void setCurrLineNum(int l) {
+        if (l >= 0) currLineNum = l;
+    }
+    
+    /**
+     * Removes the given label from our parser.
+     * 
+     * @param labelName The label to remove.
+     */
+    public void removeLabel(String labelName){
+        labelFromName.remove(labelName);
+    }
+    
+    public Optional<x86ProgramLine> getFirstLineOfMain(){
+        x86Label l = labelFromName.get("main");
+        if (l != null) {
+            return Optional.of(l);
+        } else {
+            return Optional.empty();
+        }
+    } 
+    
+    /**
+     * Returns a list of operand requirements for an instruction of the given type
+     * with the given operand sizes.
+     * 
+     * @param type The type of the instruction.
+     * @param sizes A List of sizes for the operands the instruction expects.
+     * 
+     * @return A List containing the requirements for each of the operands of the instruction.
+     */
+    private static List<OperandRequirements> getOperandReqs(InstructionType type, List<OpSize> sizes) {
+        List<OperandRequirements> opReqs = new ArrayList<>();
+        
+        // TODO: check that length of sizes is equal to number of operands 
+        //  for instruction type
+        
+        switch (type) {
+            case ADD:
+            case SUB:
+            case IMUL:
+            case CMP:
+            case OR:
+            case AND:
+            case TEST:
+            case XOR:
+            case MOV:
+                opReqs.add(new OperandRequirements(sizes.get(0), true, true, true, false));
+                opReqs.add(new OperandRequirements(sizes.get(0), false, true, true, false));
+                break;
+                
+            case MOVZ:
+            case MOVS:
+                opReqs.add(new OperandRequirements(sizes.get(0), false, true, true, false));
+                opReqs.add(new OperandRequirements(sizes.get(1), false, true, false, false));
+                break;
+                
+            case SHL:
+            case SAL:
+            case SHR:
+            case SAR:
+                opReqs.add(new OperandRequirements(OpSize.BYTE, true, false, false, false));
+                opReqs.add(new OperandRequirements(sizes.get(0), false, true, true, false));
+                break;
+                
+            case LEA:
+                opReqs.add(new OperandRequirements(OpSize.QUAD, false, false, true, false));
+                opReqs.add(new OperandRequirements(OpSize.QUAD, false, true, false, false));
+                break;
+                
+            case CMOVE:
+            case CMOVNE:
+            case CMOVS:
+            case CMOVNS:
+            case CMOVG:
+            case CMOVGE:
+            case CMOVL:
+            case CMOVLE:
+            case CMOVA:
+            case CMOVAE:
+            case CMOVB:
+            case CMOVBE:
+                opReqs.add(new OperandRequirements(OpSize.INFERRED, false, true, true, false));
+                opReqs.add(new OperandRequirements(OpSize.INFERRED, false, true, false, false));
+                break;
+                
+            case INC:
+            case DEC:
+            case NEG:
+            case NOT:
+            case IDIV:
+                opReqs.add(new OperandRequirements(sizes.get(0), false, true, true, false));
+                break;
+                
+            case PUSH:
+                opReqs.add(new OperandRequirements(OpSize.QUAD, true, true, true, false));
+                break;
+                
+            case POP:
+                opReqs.add(new OperandRequirements(OpSize.QUAD, false, true, true, false));
+                break;
+                
+            case SETE:
+            case SETNE:
+            case SETS:
+            case SETNS:
+            case SETG:
+            case SETGE:
+            case SETL:
+            case SETLE:
+            case SETA:
+            case SETAE:
+            case SETB:
+            case SETBE:
+                opReqs.add(new OperandRequirements(OpSize.BYTE, false, true, true, false));
+                break;
+                
+            case JE:
+            case JNE:
+            case JS:
+            case JNS:
+            case JG:
+            case JGE:
+            case JL:
+            case JLE:
+            case JA:
+            case JAE:
+            case JB:
+            case JBE:
+            case JMP:
+            case CALL:
+                opReqs.add(new OperandRequirements(OpSize.QUAD, false, false, false, true));
+                break;
+                
+            case RET:
+            case CLT:
+                // these are nullary instructions (i.e. no operands)
+                break;
+            default:
+        }
+        
+        return opReqs;
+    }
+}
+
+/**
+ * A class representing the requirements for an operand.
+ */
+class OperandRequirements {
+
+    private final OpSize size;
+    private final boolean canBeConst;
+    private final boolean canBeReg;
+    private final boolean canBeMem;
+    private final boolean canBeLabel;
+
+    public OperandRequirements(OpSize size, boolean con, boolean reg, boolean mem, boolean lab) {
+        this.size = size;
+        this.canBeConst = con;
+        this.canBeReg = reg;
+        this.canBeMem = mem;
+        this.canBeLabel = lab;
+    }
+
+    public OpSize getSize() {
+        return this.size;
+    }
+
+    public boolean canBeConst() {
+        return this.canBeConst;
+    }
+
+    public boolean canBeReg() {
+        return this.canBeReg;
+    }
+
+    public boolean canBeMem() {
+        return this.canBeMem;
+    }
+
+    public boolean canBeLabel() {
+        return this.canBeLabel;
+    }
+}
\ No newline at end of file
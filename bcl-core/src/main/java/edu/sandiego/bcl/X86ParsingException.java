@@ -1,5 +1,7 @@
 package edu.sandiego.bcl;
 
+import java.util.Optional;
+
 @SuppressWarnings("serial")
 
 /**
@@ -16,10 +18,23 @@ public class X86ParsingException extends Exception {
          */
 	private final int endIndex;
 
+        /**
+         * The line that couldn't be parsed, if known.
+         */
+	private final Optional<String> line;
+
 	public X86ParsingException(String message, int start, int end) {
 		super(message);
 		this.startIndex = start;
 		this.endIndex = end;
+		this.line = Optional.empty();
+	}
+
+	public X86ParsingException(String message, int start, int end, String line) {
+		super(message);
+		this.startIndex = start;
+		this.endIndex = end;
+		this.line = Optional.of(line);
 	}
 
 	@Override
@@ -35,5 +50,6 @@ public class X86ParsingException extends Exception {
 
 	public int getStartIndex() { return this.startIndex; }
 	public int getEndIndex() { return this.endIndex; }
+	public Optional<String> getLine() { return this.line; }
 }
 
@@ -1,11 +1,9 @@
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.function.IntPredicate;
 
 @FunctionalInterface
 interface BinaryX86Operation {
@@ -38,7 +36,7 @@ public class x86BinaryInstruction extends x86Instruction {
     /**
      * An optional predicate to be used with conditional instructions.
      */
-    private Optional<Predicate<MachineState>> conditionCheck = Optional.empty();
+    private Optional<IntPredicate> conditionCheck = Optional.empty();
 
     /**
      * @param instType The type of operation performed by the instruction.
@@ -124,95 +122,45 @@ public class x86BinaryInstruction extends x86Instruction {
     }
 
     /**
-     * Perform the operation dest += src.
+     * Performs an ALU operation on the values of dest and src, storing the
+     * result back in dest only when specified.
      *
      * @param state The state in which to work.
-     * @param src The operand specifying the value to add to {@code dest}.
-     * @param dest The operand that will be added to and then updated.
-     * @return A clone of {@code state}, but with an incremented rip and
-     * {@code dest} updated with the value of {@code (dest-src)}.
+     * @param op The ALU operation to perform.
+     * @param src The source operand (i.e. the second operand of the
+     * operation).
+     * @param dest The destination operand (i.e. the first operand of the
+     * operation).
+     * @param updateDest Whether to update the destination with the result.
+     * @return A clone of {@code state}, but with an incremented rip, status
+     * flags set according to the result and, if specified, the destination
+     * updated with the result.
      */
-    private MachineState add(MachineState state, Operand src, Operand dest) throws x86RuntimeException {
-        BigInteger src1 = dest.getValue(state);
-        BigInteger src2 = src.getValue(state);
-        BigInteger result = src1.add(src2);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-
-        result = truncate(result);
-
-        setSignAndZeroFlags(result, flags);
-
-        // If src1 and src2 are both negative, their msbs will both be 1, which
-        // will always generate a carry out.
-        if (src1.signum() == -1 && src2.signum() == -1) {
-            flags.put("cf", true);
-        } // If one src is negative and the other is non-negative, we can look
-        // at the sign of the result to determine whether there is a carry out
-        // or not.
-        else if ((src1.signum() == -1 || src2.signum() == -1)
-                && src1.signum() != src2.signum()
-                && result.signum() != -1) {
-            flags.put("cf", true);
-        } else {
-            flags.put("cf", false);
-        }
+    private MachineState compute(MachineState state, ALU.Operation op,
+            Operand src, Operand dest, boolean updateDest) throws x86RuntimeException {
+        long src1 = dest.getValue(state);
+        long src2 = src.getValue(state);
+        int flags = ALU.flags(op, src1, src2, this.opSize);
 
-        return dest.updateState(state, Optional.of(result), flags, true);
-    }
-
-    /**
-     * Calculates the value for the carry flag (CF) of the operation a - b.
-     *
-     * @param a Value being subtracted from.
-     * @param b The value to subtract.
-     *
-     * @return {@code true} if a-b causes CF to be set, {@code false} otherwise.
-     */
-    private boolean calculateCarryForSub(BigInteger a, BigInteger b) {
-        // cf set when both numbers have the same sign and a is less than
-        // b (i.e. subtracing larger value from smaller value)
-        if (((a.signum() >= 0 && b.signum() >= 0)
-                || (a.signum() == -1 && b.signum() == -1))
-                && a.compareTo(b) == -1) {
-            return true;
-        } // also possible to get a cf when b is negative (i.e. has msb of 1)
-        // while a is non-negative (i.e. msb is 0)
-        else if (a.signum() >= 0 && b.signum() == -1) {
-            return true;
+        if (updateDest) {
+            long result = ALU.result(op, src1, src2, this.opSize);
+            return dest.updateState(state, OptionalLong.of(result), flags, true);
         } else {
-            return false;
+            return dest.updateState(state, OptionalLong.empty(), flags, true);
         }
     }
 
     /**
-     * Perform dest - src, storing the result back in dest only when specified.
+     * Perform the operation dest += src.
      *
      * @param state The state in which to work.
-     * @param src The value being subtracted.
-     * @param dest The value being subtracted from.
-     * @param updateDest Whether to update the destination with the result.
-     * @return A clone of {@code state}, but with an incremented rip and, if
-     * specified, the destination updated with the value of {@code (dest-src)}.
+     * @param src The operand specifying the value to add to {@code dest}.
+     * @param dest The operand that will be added to and then updated.
+     * @return A clone of {@code state}, but with an incremented rip and
+     * {@code dest} updated with the value of {@code (dest+src)}.
      */
-    private MachineState subtract(MachineState state, Operand src, Operand dest,
-            boolean updateDest) throws x86RuntimeException{
-        BigInteger src1 = dest.getValue(state);
-        BigInteger src2 = src.getValue(state);
-        BigInteger result = src1.subtract(src2);
-        result = truncate(result);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-        flags.put("cf", calculateCarryForSub(src1, src2));
-        setSignAndZeroFlags(result, flags);
-
-        if (updateDest) {
-            return dest.updateState(state, Optional.of(result), flags, true);
-        } else {
-            return dest.updateState(state, Optional.empty(), flags, true);
-        }
+    private MachineState add(MachineState state, Operand src, Operand dest) throws x86RuntimeException {
+        return compute(state, ALU.Operation.ADD, src, dest, true);
     }
 
     /**
@@ -226,7 +174,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest-src)}.
      */
     private MachineState sub(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        return subtract(state, src, dest, true);
+        return compute(state, ALU.Operation.SUB, src, dest, true);
     }
 
     /**
@@ -240,7 +188,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * flags set accordingly.
      */
     private MachineState cmp(MachineState state, Operand src, Operand dest) throws x86RuntimeException {
-        return subtract(state, src, dest, false) ;
+        return compute(state, ALU.Operation.SUB, src, dest, false);
     }
 
     /**
@@ -253,35 +201,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest*src)}.
      */
     private MachineState imul(MachineState state, Operand src, Operand dest) throws x86RuntimeException {
-        BigInteger src1 = dest.getValue(state);
-        BigInteger src2 = src.getValue(state);
-        BigInteger result = src1.multiply(src2);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-        flags.put("cf", flags.get("of")); // CF is always the same as OF for imul
-
-        result = truncate(result);
-
-        setSignAndZeroFlags(result, flags);
-        return dest.updateState(state, Optional.of(result), flags, true);
-    }
-
-    /**
-     * Gets set of condition flags for a logical operation, based on the result
-     * being val.
-     *
-     * @param val The result used for setting zf and sf.
-     * @return Set of condition flags.
-     */
-    private Map<String, Boolean> getLogicalOpFlags(BigInteger val) {
-
-        Map<String, Boolean> flags = new HashMap<>();
-        setSignAndZeroFlags(val, flags);
-        flags.put("of", false);
-        flags.put("cf", false);
-
-        return flags;
+        return compute(state, ALU.Operation.IMUL, src, dest, true);
     }
 
     /**
@@ -294,9 +214,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest ^ src)}.
      */
     private MachineState xor(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        BigInteger result = dest.getValue(state).xor(src.getValue(state));
-        Map<String, Boolean> flags = getLogicalOpFlags(result);
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.XOR, src, dest, true);
     }
 
     /**
@@ -309,9 +227,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest | src)}.
      */
     private MachineState or(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        BigInteger result = dest.getValue(state).or(src.getValue(state));
-        Map<String, Boolean> flags = getLogicalOpFlags(result);
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.OR, src, dest, true);
     }
 
     /**
@@ -324,9 +240,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest & src)}.
      */
     private MachineState and(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        BigInteger result = dest.getValue(state).and(src.getValue(state));
-        Map<String, Boolean> flags = getLogicalOpFlags(result);
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.AND, src, dest, true);
     }
 
     /**
@@ -338,9 +252,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * @return A clone of {@code state}, but with an incremented rip.
      */
     private MachineState test(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        BigInteger result = dest.getValue(state).and(src.getValue(state));
-        Map<String, Boolean> flags = getLogicalOpFlags(result);
-        return dest.updateState(state, Optional.empty(), flags, true);
+        return compute(state, ALU.Operation.AND, src, dest, false);
     }
 
     /**
@@ -353,33 +265,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest << src)}.
      */
     private MachineState sal(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        // destination size determines the maximum shift amount
-        int shamt = src.getValue(state).intValue() % dest.getOpSize().numBits();
-        BigInteger orig = dest.getValue(state);
-        BigInteger result = orig.shiftLeft(shamt);
-
-        int msbIndex = this.opSize.numBits() - 1;
-
-        Map<String, Boolean> flags = new HashMap<>();
-        setSignAndZeroFlags(result, flags);
-
-        if (shamt > 0 && (msbIndex + 1) >= shamt) {
-            flags.put("cf", orig.testBit((msbIndex + 1) - shamt));
-        } else if ((msbIndex + 1) >= shamt) {
-            flags.put("cf", false); // TODO: not sure if this is handled correctly
-        }
-        // overflow is only defined when shifting by 1
-        if (shamt == 1) {
-            flags.put("of", orig.testBit(msbIndex) != orig.testBit(msbIndex - 1));
-        } else {
-            // This is an undefined case... false sounds great
-            // doesn't it?
-            flags.put("of", false);
-        }
-
-        result = truncate(result);
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.SAL, src, dest, true);
     }
 
     /**
@@ -392,33 +278,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest >> src)}.
      */
     private MachineState sar(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        // destination size determines the maximum shift amount
-        int shamt = src.getValue(state).intValue() % dest.getOpSize().numBits();
-        BigInteger orig = dest.getValue(state);
-        BigInteger result = orig.shiftRight(shamt);
-
-        // TODO: make this throw an x86RuntimeException
-        assert result.bitLength() + 1 > this.opSize.numBits();
-
-        Map<String, Boolean> flags = new HashMap<>();
-        setSignAndZeroFlags(result, flags);
-
-        // overflow is false if shifting by 1, otherwise
-        // undefined
-        if (shamt == 1) {
-            flags.put("of", false);
-        } else {
-            // This is an undefined case... false sounds great
-            // doesn't it?
-            flags.put("of", false);
-        }
-
-        // shift by zero means CF isn't changed
-        if (shamt > 0) {
-            flags.put("cf", orig.testBit(shamt - 1));
-        }
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.SAR, src, dest, true);
     }
 
     /**
@@ -431,58 +291,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest >> src)}.
      */
     private MachineState shr(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        // destination size determines the maximum shift amount
-        int shamt = src.getValue(state).intValue() % dest.getOpSize().numBits();
-        BigInteger orig = dest.getValue(state);
-
-        // BigInteger doesn't have logical right shift (>>>)
-        // so we do the ugly thing here and use the >>>
-        // operator by converting to the native types of the
-        // operators.
-        String s = null;
-        switch (this.opSize) {
-            case BYTE:
-                byte b = orig.byteValue();
-                b = (byte) (b >>> shamt);
-                s = "" + b;
-                break;
-            case WORD:
-                short w = orig.shortValue();
-                w = (short) (w >>> shamt);
-                s = "" + w;
-                break;
-            case LONG:
-                int l = orig.intValue();
-                l = l >>> shamt;
-                s = "" + l;
-                break;
-            case QUAD:
-                long q = orig.longValue();
-                q = q >>> shamt;
-                s = "" + q;
-                break;
-        }
-        BigInteger result = new BigInteger(s);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        setSignAndZeroFlags(result, flags);
-
-        // overflow is the most sig bit of original if shifting by 1, otherwise
-        // undefined
-        if (shamt == 1) {
-            flags.put("of", orig.testBit(this.opSize.numBytes() * 8 - 1));
-        } else {
-            // This is an undefined case... false sounds great
-            // doesn't it?
-            flags.put("of", false);
-        }
-
-        if (shamt > 0) {
-            // shift by zero means CF isn't changed
-            flags.put("cf", orig.testBit(shamt - 1));
-        }
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.SHR, src, dest, true);
     }
 
     /**
@@ -495,7 +304,7 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} assigned the value of {@code src}.
      */
     private MachineState mov(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        return dest.updateState(state, Optional.of(src.getValue(state)), new HashMap<>(), true);
+        return dest.updateState(state, OptionalLong.of(src.getValue(state)), StatusFlags.NONE, true);
     }
     
     /**
@@ -511,12 +320,12 @@ public class x86BinaryInstruction extends x86Instruction {
             throws x86RuntimeException{
         assert this.conditionCheck.isPresent();
         
-        Optional<BigInteger> newDestValue = Optional.empty();
-        if (this.conditionCheck.get().test(state)) {
-            newDestValue = Optional.of(src.getValue(state));
+        OptionalLong newDestValue = OptionalLong.empty();
+        if (this.conditionCheck.get().test(state.getStatusFlags())) {
+            newDestValue = OptionalLong.of(src.getValue(state));
         }
 
-        return dest.updateState(state, newDestValue, new HashMap<>(), true);
+        return dest.updateState(state, newDestValue, StatusFlags.NONE, true);
     }
 
     /**
@@ -530,13 +339,8 @@ public class x86BinaryInstruction extends x86Instruction {
      * {@code dest} assigned the value of {@code src}.
      */
     private MachineState movz(MachineState state, Operand src, Operand dest) throws x86RuntimeException{
-        BigInteger orig = src.getValue(state);
-        byte[] extendedOrig = MachineState.getExtendedByteArray(orig,
-                src.getOpSize().numBytes(),
-                dest.getOpSize().numBytes(),
-                true);
-        BigInteger extended = new BigInteger(extendedOrig);
-        return dest.updateState(state, Optional.of(extended), new HashMap<>(), true);
+        long extended = ALU.zeroExtend(src.getValue(state), src.getOpSize());
+        return dest.updateState(state, OptionalLong.of(extended), StatusFlags.NONE, true);
     }
 
     /**
@@ -553,7 +357,7 @@ public class x86BinaryInstruction extends x86Instruction {
     private MachineState lea(MachineState state, Operand src, Operand dest) 
             throws x86RuntimeException {
         MemoryOperand mo = (MemoryOperand) src;
-        return dest.updateState(state, Optional.of(BigInteger.valueOf(mo.calculateAddress(state))), new HashMap<>(), true);
+        return dest.updateState(state, OptionalLong.of(mo.calculateAddress(state)), StatusFlags.NONE, true);
     }
 
     @Override
@@ -561,6 +365,14 @@ public class x86BinaryInstruction extends x86Instruction {
         return operation.apply(state, this.source, this.destination);
     }
 
+    Operand getSource() {
+        return this.source;
+    }
+
+    Operand getDestination() {
+        return this.destination;
+    }
+
     @Override
     public Set<String> getUsedRegisters() {
         Set<String> sourceRegs = source.getUsedRegisters();
@@ -0,0 +1,90 @@
+package edu.sandiego.bcl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * An abstract class representing an x86-64 instruction.
+ *
+ * @author Dr. Sat
+ */
+public abstract class x86Instruction extends x86ProgramLine {
+    /**
+     * The type of instruction (e.g. add)
+     */
+    protected InstructionType type;
+
+    /**
+     * The number of bytes the operation works on.
+     */
+    protected OpSize opSize;
+
+    /**
+     * A Map from condition code (e.g. "g") to a function that determines
+     * whether that condition is true for a state's status flags (as given by
+     * {@link MachineState#getStatusFlags()}).
+     */
+    protected static final Map<String, IntPredicate> conditions;
+    
+    private static final int ZF = StatusFlags.ZF;
+    private static final int SF = StatusFlags.SF;
+    private static final int OF = StatusFlags.OF;
+    private static final int CF = StatusFlags.CF;
+
+    static {
+        conditions = new HashMap<>();
+        conditions.put("e", flags -> (flags & ZF) != 0);
+        conditions.put("jmp", flags -> true);
+        conditions.put("ne", flags -> (flags & ZF) == 0);
+        conditions.put("s", flags -> (flags & SF) != 0);
+        conditions.put("ns", flags -> (flags & SF) == 0);
+        conditions.put("g",
+                flags -> !signDiffersFromOverflow(flags) && (flags & ZF) == 0);
+        conditions.put("ge", flags -> !signDiffersFromOverflow(flags));
+        conditions.put("l", flags -> signDiffersFromOverflow(flags));
+        conditions.put("le",
+                flags -> signDiffersFromOverflow(flags) || (flags & ZF) != 0);
+        conditions.put("a", flags -> (flags & (CF | ZF)) == 0);
+        conditions.put("ae", flags -> (flags & CF) == 0);
+        conditions.put("b", flags -> (flags & CF) != 0);
+        conditions.put("be", flags -> (flags & (CF | ZF)) != 0);
+    }
+
+    /**
+     * @param flags The status flags to check.
+     * @return True if SF and OF have different values (i.e. SF ^ OF).
+     */
+    private static boolean signDiffersFromOverflow(int flags) {
+        return ((flags & SF) != 0) != ((flags & OF) != 0);
+    }
+
+    // Getters
+    public InstructionType getType() {
+        return this.type;
+    }
+
+    public OpSize getOpSize() {
+        return this.opSize;
+    }
+
+    public abstract void updateLabels(String labelName, x86Label label);
+
+    @Override
+    public abstract String toString();
+
+    /**
+     * @return A string that represents the instruction, including its size
+     * suffix (when appropriate).
+     */
+    public String getInstructionTypeString() {
+        String s = this.type.name().toLowerCase();
+        if (!this.type.name().startsWith("SET")
+                && !this.type.name().startsWith("J")
+                && !this.type.name().startsWith("CMOV")) {
+            s += this.opSize.getAbbreviation();
+        }
+
+        return s;
+    }
+}
@@ -5,11 +5,9 @@
  */
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 
 @FunctionalInterface
@@ -73,13 +71,12 @@ public class x86NullaryInstruction extends x86Instruction {
     private MachineState clt(MachineState state) throws x86RuntimeException {
         // Gets the value of eax, sign extends it then updates rax with that value
         RegOperand eaxReg = this.operandGetter.getRegisterOperand("eax");
-        BigInteger eaxVal = eaxReg.getValue(state);
-        byte[] raxByteArray = MachineState.getExtendedByteArray(eaxVal, 4, 8, false);
-        BigInteger raxVal = new BigInteger(raxByteArray);
+        // Operand values are already sign extended
+        long raxVal = eaxReg.getValue(state);
         RegOperand raxReg =  this.operandGetter.getRegisterOperand("rax");
         
         // TODO: make sure CLT doesn't update any status flags
-        return raxReg.updateState(state, Optional.of(raxVal), new HashMap<>(), true);
+        return raxReg.updateState(state, OptionalLong.of(raxVal), StatusFlags.NONE, true);
     }
     
     /**
@@ -93,23 +90,23 @@ public class x86NullaryInstruction extends x86Instruction {
      * the operation.
      */
     private MachineState ret(MachineState state) throws x86RuntimeException {
-        Map<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
         
         // step 1: store (%rsp) value in rip register 
         MemoryOperand src = this.operandGetter.getStackPointerOperand();
         MachineState tmp, mS;
         try {
-            tmp = state.cloneWithNewRIP(src.getValue(state).intValue());
+            tmp = state.cloneWithNewRIP((int) src.getValue(state));
             
             // step 2: add 8 to rsp
             RegOperand rsp = this.operandGetter.getRegisterOperand("rsp");
-            mS = rsp.updateState(tmp, Optional.of(rsp.getValue(tmp).add(BigInteger.valueOf(8))), flags, false);
+            mS = rsp.updateState(tmp, OptionalLong.of(rsp.getValue(tmp) + 8), flags, false);
         } catch (x86RuntimeException ex) {
             if(state.getCallStackSize() != 0){
                 throw ex;
             }
             // FIXME: Think about incrementing rip or not
-            mS = src.updateState(state, Optional.empty(), flags, false);
+            mS = src.updateState(state, OptionalLong.empty(), flags, false);
         }
         mS.popFromCallStack();
         return mS;
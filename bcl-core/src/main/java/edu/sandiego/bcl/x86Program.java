@@ -5,17 +5,13 @@
  */
 package edu.sandiego.bcl;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.scene.control.Alert;
 
 /**
  * Class that represents an X86-64 program.
@@ -26,7 +22,7 @@ public class x86Program {
     /**
      * The lines in the program.
      */
-    ObservableList<x86ProgramLine> programLines;
+    List<x86ProgramLine> programLines;
     
     /**
      * The parser used to add or modify this program.
@@ -59,7 +55,18 @@ public class x86Program {
      * Constructors a blank program.
      */
     public x86Program() {
-        this.programLines = FXCollections.observableArrayList();
+        this(new ArrayList<>());
+    }
+    
+    /**
+     * Constructs a blank program whose lines are kept in the given list.
+     * 
+     * @param programLines An empty list to keep the program's lines in (e.g.
+     * one that a user interface observes).
+     */
+    public x86Program(List<x86ProgramLine> programLines) {
+        assert programLines.isEmpty();
+        this.programLines = programLines;
         this.parser = new X86Parser();
         this.fileName = "untitled-" + nextUntitledNumber;
         nextUntitledNumber++;
@@ -79,7 +86,25 @@ public class x86Program {
     public x86Program(File assemblyFile) throws FileNotFoundException, 
                                                 IOException,
                                                 X86ParsingException {
-        this.programLines = FXCollections.observableArrayList();
+        this(assemblyFile, new ArrayList<>());
+    }
+    
+    /**
+     * Creates a new program based on the program stored in the given file,
+     * keeping its lines in the given list.
+     * 
+     * @param assemblyFile File containing assembly code to be parsed.
+     * @param programLines An empty list to keep the program's lines in (e.g.
+     * one that a user interface observes).
+     * @throws FileNotFoundException if the file to read from does not exist.
+     * @throws IOException if there was a problem reading from the file.
+     * @throws X86ParsingException if there was an error while parsing a line in
+     * the file.
+     */
+    public x86Program(File assemblyFile, List<x86ProgramLine> programLines)
+            throws FileNotFoundException, IOException, X86ParsingException {
+        assert programLines.isEmpty();
+        this.programLines = programLines;
         this.parser = new X86Parser();
         this.fileName = assemblyFile.getName();
         this.file = Optional.of(assemblyFile);
@@ -87,7 +112,7 @@ public class x86Program {
         this.isUnsaved = false;
     }
     
-    public ObservableList<x86ProgramLine> getProgramLines() {
+    public List<x86ProgramLine> getProgramLines() {
         return this.programLines;
     }
     
@@ -163,32 +188,24 @@ public class x86Program {
      * not exist.
      * @throws IOException if there was an error while reading from the file.
      * @throws X86ParsingException if there was an error while parsing one of the
-     * lines in the file.
+     * lines in the file (which includes the text of that line).
      */
     private void loadFromFile() 
             throws FileNotFoundException, IOException, X86ParsingException {
         assert this.programLines.isEmpty();
         
-        if (file.isPresent()) {            
-            ArrayList<String> fileLines = new ArrayList<>();
-            BufferedReader br = new BufferedReader(new FileReader(file.get()));
-            String l;
-            while ((l = br.readLine()) != null) {
-                fileLines.add(l.trim());
-            }
+        if (file.isPresent()) {
+            List<CharSequence> fileLines = FileLines.read(file.get());
 
-            for (String line : fileLines) {
+            // The lines are parsed in parallel, then numbered and have their
+            // labels bound in order.
+            List<X86Parser.ParsedLine> parsedLines = X86Parser.parseLines(fileLines);
+            for (int i = 0; i < parsedLines.size(); i++) {
                 try {
-                    this.parseThenAddLine(line);
-                } catch (X86ParsingException e) {                    
-                    Alert fileLoadingError = new Alert(Alert.AlertType.ERROR);
-                    fileLoadingError.setTitle("File Parsing Error");
-                    fileLoadingError.setHeaderText("Error Loading File");
-                    fileLoadingError.setContentText("Unable to parse the following line:"
-                            + "\n\n" + line
-                            + "\n\nReason: " + e.getMessage());
-                    fileLoadingError.showAndWait();
-                    throw e;
+                    this.programLines.add(this.parser.addParsedLine(parsedLines.get(i)));
+                } catch (X86ParsingException e) {
+                    throw new X86ParsingException(e.getMessage(),
+                            e.getStartIndex(), e.getEndIndex(), fileLines.get(i).toString());
                 }
             }
         }
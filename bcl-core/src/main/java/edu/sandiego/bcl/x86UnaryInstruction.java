@@ -1,11 +1,10 @@
 package edu.sandiego.bcl;
 
 import java.math.BigInteger;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.function.IntPredicate;
 
 @FunctionalInterface
 interface UnaryX86Operation {
@@ -33,7 +32,7 @@ public class x86UnaryInstruction extends x86Instruction {
     /**
      * An optional predicate to be used with conditional instructions.
      */
-    private Optional<Predicate<MachineState>> conditionCheck = Optional.empty();
+    private Optional<IntPredicate> conditionCheck = Optional.empty();
     
     /**
      * Object to construct operands for this instruction.
@@ -132,11 +131,16 @@ public class x86UnaryInstruction extends x86Instruction {
      */
     private MachineState idiv(MachineState state, Operand src) throws x86RuntimeException {
         BigInteger src1 = state.getCombinedRegisterValue(opSize);
-        BigInteger src2 = src.getValue(state);
+        long divisor = src.getValue(state);
+        if (divisor == 0) {
+            throw new x86RuntimeException("Division by zero");
+        }
+        BigInteger src2 = BigInteger.valueOf(divisor);
 
-        // quotient and remainder are both calculated
+        // quotient and remainder are both calculated (the quotient rounded
+        // toward zero, the remainder with the sign of the dividend)
         BigInteger divResult = src1.divide(src2);
-        BigInteger modResult = src1.mod(src2);
+        BigInteger modResult = src1.remainder(src2);
 
         RegOperand modDest = null;
         RegOperand divDest = null;
@@ -163,8 +167,27 @@ public class x86UnaryInstruction extends x86Instruction {
                 throw new RuntimeException("Unsupported op size");
         }
 
-        MachineState tmp = divDest.updateState(state, Optional.of(divResult), new HashMap<>(), false);
-        return modDest.updateState(tmp, Optional.of(modResult), new HashMap<>(), true);
+        MachineState tmp = divDest.updateState(state, OptionalLong.of(divResult.longValue()), StatusFlags.NONE, false);
+        return modDest.updateState(tmp, OptionalLong.of(modResult.longValue()), StatusFlags.NONE, true);
+    }
+
+    /**
+     * Performs a single operand ALU operation on dest, storing the result back
+     * in dest.
+     *
+     * @param state The state in which to work.
+     * @param op The ALU operation to perform.
+     * @param dest The operand that will be operated on and then updated.
+     * @return A clone of {@code state}, but with an incremented rip, status
+     * flags set according to the result, and {@code dest} updated with the
+     * result.
+     */
+    private MachineState compute(MachineState state, ALU.Operation op, 
+            Operand dest) throws x86RuntimeException {
+        long orig = dest.getValue(state);
+        long result = ALU.result(op, orig, 0, this.opSize);
+        int flags = ALU.flags(op, orig, 0, this.opSize);
+        return dest.updateState(state, OptionalLong.of(result), flags, true);
     }
 
     /**
@@ -176,15 +199,7 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest+1)}.
      */
     private MachineState inc(MachineState state, Operand dest) throws x86RuntimeException{
-        BigInteger result = dest.getValue(state).add(BigInteger.ONE);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-
-        result = truncate(result);
-        setSignAndZeroFlags(result, flags);
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.INC, dest);
     }
 
     /**
@@ -196,15 +211,7 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code (dest-1)}.
      */
     private MachineState dec(MachineState state, Operand dest) throws x86RuntimeException {
-        BigInteger result = dest.getValue(state).subtract(BigInteger.ONE);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-
-        result = truncate(result);
-        setSignAndZeroFlags(result, flags);
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.DEC, dest);
     }
 
     /**
@@ -216,21 +223,7 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code -dest}.
      */
     private MachineState neg(MachineState state, Operand dest) throws x86RuntimeException {
-        BigInteger orig = dest.getValue(state);
-
-        // The x64 manual states that neg does 0 - operand so we'll do the
-        // same even though BigInteger has a negate method
-        BigInteger result = BigInteger.ZERO.subtract(orig);
-
-        Map<String, Boolean> flags = new HashMap<>();
-        flags.put("of", (result.bitLength() + 1) > this.opSize.numBits());
-
-        result = truncate(result);
-
-        setSignAndZeroFlags(result, flags);
-        flags.put("cf", orig.compareTo(BigInteger.ZERO) != 0);
-
-        return dest.updateState(state, Optional.of(result), flags, true);
+        return compute(state, ALU.Operation.NEG, dest);
     }
 
     /**
@@ -242,9 +235,9 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code dest} updated with the value of {@code ~dest}.
      */
     private MachineState not(MachineState state, Operand dest) throws x86RuntimeException {
-        BigInteger result = dest.getValue(state).not();
-        Map<String, Boolean> flags = new HashMap<>();
-        return dest.updateState(state, Optional.of(result), flags, true);
+        long result = ~dest.getValue(state);
+        int flags = StatusFlags.NONE;
+        return dest.updateState(state, OptionalLong.of(result), flags, true);
     }
 
     /**
@@ -257,16 +250,16 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code %rsp}.
      */
     private MachineState push(MachineState state, Operand src) throws x86RuntimeException {
-        Map<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
 
         // step 1: subtract 8 from rsp
         RegOperand rsp = this.operandGetter.getRegisterOperand("rsp");
-        MachineState tmp = rsp.updateState(state, Optional.of(rsp.getValue(state).subtract(BigInteger.valueOf(8))), flags, false);
+        MachineState tmp = rsp.updateState(state, OptionalLong.of(rsp.getValue(state) - 8), flags, false);
 
         // step 2: store src operand value in (%rsp)
         MemoryOperand dest = this.operandGetter.getStackPointerOperand();
 
-        return dest.updateState(tmp, Optional.of(src.getValue(tmp)), flags, true);
+        return dest.updateState(tmp, OptionalLong.of(src.getValue(tmp)), flags, true);
     }
 
     /**
@@ -279,16 +272,16 @@ public class x86UnaryInstruction extends x86Instruction {
      * incremented by 8.
      */
     private MachineState pop(MachineState state, Operand dest) throws x86RuntimeException {
-        Map<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
 
         // step 1: store (%rsp) value in dest operand 
         MemoryOperand src = this.operandGetter.getStackPointerOperand();
-        MachineState tmp = dest.updateState(state, Optional.of(src.getValue(state)), flags, true);
+        MachineState tmp = dest.updateState(state, OptionalLong.of(src.getValue(state)), flags, true);
 
         // step 2: add 8 to rsp
         RegOperand rsp = this.operandGetter.getRegisterOperand("rsp");
 
-        return rsp.updateState(tmp, Optional.of(rsp.getValue(tmp).add(BigInteger.valueOf(8))), flags, false);
+        return rsp.updateState(tmp, OptionalLong.of(rsp.getValue(tmp) + 8), flags, false);
     }
 
     /**
@@ -302,8 +295,8 @@ public class x86UnaryInstruction extends x86Instruction {
     private MachineState set(MachineState state, Operand dest) 
             throws x86RuntimeException {
         assert this.conditionCheck.isPresent();
-        BigInteger result = this.conditionCheck.get().test(state) ? BigInteger.ONE : BigInteger.ZERO;
-        return dest.updateState(state, Optional.of(result), new HashMap<>(), true);
+        long result = this.conditionCheck.get().test(state.getStatusFlags()) ? 1 : 0;
+        return dest.updateState(state, OptionalLong.of(result), StatusFlags.NONE, true);
     }
 
     /**
@@ -317,11 +310,11 @@ public class x86UnaryInstruction extends x86Instruction {
      */
     private MachineState jump(MachineState state, Operand dest) throws x86RuntimeException {
         assert this.conditionCheck.isPresent();
-        Map<String, Boolean> flags = new HashMap<>();
-        if (this.conditionCheck.get().test(state)) {
-            return dest.updateState(state, Optional.of(dest.getValue(state)), flags, false);
+        int flags = StatusFlags.NONE;
+        if (this.conditionCheck.get().test(state.getStatusFlags())) {
+            return dest.updateState(state, OptionalLong.of(dest.getValue(state)), flags, false);
         } else {
-            return dest.updateState(state, Optional.empty(), flags, true);
+            return dest.updateState(state, OptionalLong.empty(), flags, true);
         }
     }
 
@@ -335,21 +328,20 @@ public class x86UnaryInstruction extends x86Instruction {
      * {@code dest} and the memory updated to contain rip+1 at the top of the stack.
      */
     private MachineState call(MachineState state, Operand dest) throws x86RuntimeException {
-        Map<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
 
         // step 1: subtract 8 from rsp
         RegOperand rsp = this.operandGetter.getRegisterOperand("rsp");
-        MachineState tmp = rsp.updateState(state, Optional.of(rsp.getValue(state).subtract(BigInteger.valueOf(8))), flags, false);
+        MachineState tmp = rsp.updateState(state, OptionalLong.of(rsp.getValue(state) - 8), flags, false);
 
-        int rA = tmp.getRipRegister() + 1;
-        BigInteger returnAddr = new BigInteger("" + rA);
+        long returnAddr = tmp.getRipRegister() + 1;
 
         // step 2: store return address in (%rsp)
         MemoryOperand rspMemOperand = this.operandGetter.getStackPointerOperand();
-        tmp = rspMemOperand.updateState(tmp, Optional.of(returnAddr), flags, false);
+        tmp = rspMemOperand.updateState(tmp, OptionalLong.of(returnAddr), flags, false);
 
         // return new state with rip set to beginning of callee
-        MachineState mS = dest.updateState(tmp, Optional.of(dest.getValue(state)), flags, false);
+        MachineState mS = dest.updateState(tmp, OptionalLong.of(dest.getValue(state)), flags, false);
         mS.pushToCallStack();
         return mS;
     }
@@ -359,6 +351,10 @@ public class x86UnaryInstruction extends x86Instruction {
         return operation.apply(state, this.destination);
     }
 
+    Operand getDestination() {
+        return this.destination;
+    }
+
     @Override
     public Set<String> getUsedRegisters() {
         Set<String> result = destination.getUsedRegisters();
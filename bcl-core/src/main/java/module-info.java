@@ -0,0 +1,5 @@
+module edu.sandiego.bcl {
+        requires java.string.similarity;
+
+	exports edu.sandiego.bcl;
+}
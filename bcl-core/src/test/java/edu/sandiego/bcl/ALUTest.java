@@ -0,0 +1,239 @@
+package edu.sandiego.bcl;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Differential test for the ALU: cross-checks its results and flags against
+ * a reference implementation that does exact BigInteger arithmetic and then
+ * derives the flags from their definitions.
+ *
+ * Operands are random, biased towards the edge cases (0, +/-1, and the
+ * minimum and maximum values of each size). The number of random operand
+ * pairs checked per operation and size can be raised with the
+ * bcl.alu.iterations system property, e.g.
+ * mvn test -Dtest=ALUTest -Dbcl.alu.iterations=10000000
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class ALUTest {
+
+    private static final int ITERATIONS = Integer.getInteger("bcl.alu.iterations", 20000);
+
+    private static final OpSize[] SIZES = {OpSize.BYTE, OpSize.WORD, OpSize.LONG, OpSize.QUAD};
+
+    private final Random random = new Random(0x5EED);
+
+    /**
+     * @return A random value of the given size, sign extended to a long.
+     */
+    private long randomValue(OpSize size) {
+        long val;
+        switch (random.nextInt(8)) {
+            case 0:
+                val = 0;
+                break;
+            case 1:
+                val = random.nextBoolean() ? 1 : -1;
+                break;
+            case 2:
+                val = ALU.minValue(size) + random.nextInt(2);
+                break;
+            case 3:
+                val = ~ALU.minValue(size) - random.nextInt(2);
+                break;
+            default:
+                val = random.nextLong();
+        }
+        return ALU.truncate(val, size);
+    }
+
+    @Test
+    public void testAgainstReference() {
+        System.out.println("ALU differential test (" + ITERATIONS + " iterations)");
+        for (ALU.Operation op : ALU.Operation.values()) {
+            for (OpSize size : SIZES) {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long a = randomValue(size);
+                    long b = isShift(op) ? random.nextInt(64) : randomValue(size);
+                    check(op, a, b, size);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        System.out.println("ALU edge cases");
+        for (ALU.Operation op : ALU.Operation.values()) {
+            for (OpSize size : SIZES) {
+                long[] edges = {0, 1, -1, 2, ALU.minValue(size), ~ALU.minValue(size)};
+                for (long a : edges) {
+                    if (isShift(op)) {
+                        for (int count = 0; count < 64; count++) {
+                            check(op, a, count, size);
+                        }
+                    } else {
+                        for (long b : edges) {
+                            check(op, a, b, size);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void check(ALU.Operation op, long a, long b, OpSize size) {
+        String desc = op + " " + size + " a=0x" + Long.toHexString(a)
+                + " b=0x" + Long.toHexString(b);
+        Reference expected = new Reference(op, a, b, size);
+        assertEquals(desc + " result", expected.result, ALU.result(op, a, b, size));
+        assertEquals(desc + " flags",
+                expected.flags, ALU.flags(op, a, b, size));
+    }
+
+    private static boolean isShift(ALU.Operation op) {
+        return op == ALU.Operation.SAL || op == ALU.Operation.SAR
+                || op == ALU.Operation.SHR;
+    }
+
+    /**
+     * Reference results computed with exact BigInteger arithmetic.
+     */
+    private static class Reference {
+
+        long result;
+        int flags = StatusFlags.NONE;
+
+        Reference(ALU.Operation op, long aLong, long bLong, OpSize size) {
+            int bits = size.numBits();
+            BigInteger a = BigInteger.valueOf(aLong);
+            BigInteger b = BigInteger.valueOf(bLong);
+            BigInteger unsignedA = unsigned(a, bits);
+            BigInteger unsignedB = unsigned(b, bits);
+
+            BigInteger exact;
+            switch (op) {
+                case ADD:
+                    exact = a.add(b);
+                    setOverflow(exact, bits);
+                    set(StatusFlags.CF, unsignedA.add(unsignedB).bitLength() > bits);
+                    break;
+                case SUB:
+                    exact = a.subtract(b);
+                    setOverflow(exact, bits);
+                    set(StatusFlags.CF, unsignedA.compareTo(unsignedB) < 0);
+                    break;
+                case IMUL:
+                    exact = a.multiply(b);
+                    setOverflow(exact, bits);
+                    set(StatusFlags.CF, !fits(exact, bits));
+                    break;
+                case AND:
+                    exact = a.and(b);
+                    set(StatusFlags.OF, false);
+                    set(StatusFlags.CF, false);
+                    break;
+                case OR:
+                    exact = a.or(b);
+                    set(StatusFlags.OF, false);
+                    set(StatusFlags.CF, false);
+                    break;
+                case XOR:
+                    exact = a.xor(b);
+                    set(StatusFlags.OF, false);
+                    set(StatusFlags.CF, false);
+                    break;
+                case INC:
+                    exact = a.add(BigInteger.ONE);
+                    setOverflow(exact, bits);
+                    break;
+                case DEC:
+                    exact = a.subtract(BigInteger.ONE);
+                    setOverflow(exact, bits);
+                    break;
+                case NEG:
+                    exact = a.negate();
+                    setOverflow(exact, bits);
+                    set(StatusFlags.CF, a.signum() != 0);
+                    break;
+                default:
+                    exact = shift(op, a, unsignedA, bLong, bits);
+            }
+
+            this.result = truncate(exact, bits);
+
+            // A shift by 0 doesn't touch any flags.
+            if (!isShift(op) || maskedCount(bLong, bits) != 0) {
+                set(StatusFlags.ZF, this.result == 0);
+                set(StatusFlags.SF, this.result < 0);
+            }
+        }
+
+        private BigInteger shift(ALU.Operation op, BigInteger a,
+                BigInteger unsignedA, long countVal, int bits) {
+            int count = maskedCount(countVal, bits);
+            BigInteger exact;
+            if (op == ALU.Operation.SAL) {
+                exact = a.shiftLeft(count);
+            } else if (op == ALU.Operation.SAR) {
+                exact = a.shiftRight(count);
+            } else {
+                exact = unsignedA.shiftRight(count);
+            }
+
+            if (count == 0) {
+                return exact;
+            }
+
+            boolean carry;
+            if (op == ALU.Operation.SAL) {
+                carry = count <= bits && unsignedA.testBit(bits - count);
+            } else if (op == ALU.Operation.SAR) {
+                carry = a.testBit(count - 1);
+            } else {
+                carry = unsignedA.testBit(count - 1);
+            }
+            set(StatusFlags.CF, carry);
+
+            boolean overflow = false;
+            if (count == 1 && op == ALU.Operation.SAL) {
+                overflow = exact.testBit(bits - 1) != carry;
+            } else if (count == 1 && op == ALU.Operation.SHR) {
+                overflow = a.signum() < 0;
+            }
+            set(StatusFlags.OF, overflow);
+            return exact;
+        }
+
+        private void set(int flag, boolean value) {
+            this.flags = StatusFlags.set(this.flags, flag, value);
+        }
+
+        private void setOverflow(BigInteger exact, int bits) {
+            set(StatusFlags.OF, !fits(exact, bits));
+        }
+
+        private static int maskedCount(long count, int bits) {
+            return (int) (count & (bits == 64 ? 0x3F : 0x1F));
+        }
+
+        private static boolean fits(BigInteger val, int bits) {
+            return val.bitLength() < bits;
+        }
+
+        private static BigInteger unsigned(BigInteger val, int bits) {
+            return val.and(BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE));
+        }
+
+        private static long truncate(BigInteger val, int bits) {
+            BigInteger low = unsigned(val, bits);
+            if (low.testBit(bits - 1)) {
+                low = low.subtract(BigInteger.ONE.shiftLeft(bits));
+            }
+            return low.longValue();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for Autograder and TestVector.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class AutograderTest {
+
+    /**
+     * long sum(long a, long b, long c, long d, long e, long f, long g, long h)
+     * where g and h are on the stack.
+     */
+    private static final String[] REFERENCE = {
+        "sum:",
+        "    movq %rdi, %rax",
+        "    addq %rsi, %rax",
+        "    addq 8(%rsp), %rax",
+        "    addq 16(%rsp), %rax",
+        "    retq"
+    };
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutDown() {
+        pool.shutdown();
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static x86Program programOf(String... lines) throws Exception {
+        x86Program program = new x86Program();
+        for (String line : lines) {
+            program.parseThenAddLine(line);
+        }
+        return program;
+    }
+
+    private File write(String name, String... lines) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), Arrays.asList(lines));
+        return file;
+    }
+
+    private static Map<String, Long> values(Object... namesAndValues) {
+        Map<String, Long> values = new TreeMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put((String) namesAndValues[i],
+                    ((Number) namesAndValues[i + 1]).longValue());
+        }
+        return values;
+    }
+
+    private static List<TestVector> vectors(int n) {
+        List<TestVector> vectors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            vectors.add(new TestVector("v" + i, values("rdi", i, "rsi", -2 * i),
+                    Arrays.asList(100L * i, 7L), Collections.emptyMap()));
+        }
+        return vectors;
+    }
+
+    @Test
+    public void testInitialState() throws Exception {
+        System.out.println("initialState");
+        TestVector vector = new TestVector("v", values("rdi", 3, "esi", -1),
+                Arrays.asList(5L, 6L), Collections.emptyMap());
+        MachineState state = vector.getInitialState();
+        assertEquals(3, state.getRegisterValue(SubRegister.fromName("rdi")));
+        assertEquals(0xFFFFFFFFL, state.getRegisterValue(SubRegister.fromName("rsi")));
+        long rsp = state.getRegisterValue(SubRegister.fromName("rsp"));
+        assertEquals(5, state.getMemoryValue(rsp + 8, 8));
+        assertEquals(6, state.getMemoryValue(rsp + 16, 8));
+        assertEquals(0, state.getMemory().countInitialized(rsp, 8));
+        assertEquals(0, state.getRipRegister());
+        assertSame(state, vector.getInitialState());
+
+        try {
+            new TestVector("v", values("esp", 8), Collections.emptyList(),
+                    Collections.emptyMap());
+            fail("set the stack pointer");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new TestVector("v", values("foo", 8), Collections.emptyList(),
+                    Collections.emptyMap());
+            fail("set a nonexistent register");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testWithReference() throws Exception {
+        System.out.println("withReference");
+        Autograder grader = Autograder.withReference(programOf(REFERENCE),
+                Arrays.asList("rax"), vectors(10), 1000, Long.MAX_VALUE, pool);
+        assertEquals(10, grader.getVectors().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(values("rax", 99 * i + 7),
+                    grader.getVectors().get(i).getExpected());
+        }
+
+        try {
+            Autograder.withReference(programOf("loop:", "jmp loop"),
+                    Arrays.asList("rax"), vectors(3), 1000, Long.MAX_VALUE, pool);
+            fail("reference doesn't finish");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testGrade() throws Exception {
+        System.out.println("grade");
+        Autograder grader = Autograder.withReference(programOf(REFERENCE),
+                Arrays.asList("eax"), vectors(20), 1000, Long.MAX_VALUE, pool);
+
+        File correct = write("correct.s",
+                "    leaq (%rdi,%rsi), %rax",
+                "    movq 8(%rsp), %rdx",
+                "    addl 16(%rsp), %edx",
+                "    addl %edx, %eax",
+                "    retq");
+        File wrongForEven = write("wrong.s",
+                "    movq %rdi, %rax",
+                "    addq %rsi, %rax",
+                "    addq 8(%rsp), %rax",
+                "    testq $1, %rdi",
+                "    je done",
+                "    addq 16(%rsp), %rax",
+                "done:",
+                "    retq");
+        File crashes = write("crashes.s", "movq (%rsp), %rax", "retq");
+        File loops = write("loops.s", "loop:", "jmp loop");
+        File unparsable = write("unparsable.s", "movq %rax");
+        File divides = write("divides.s", "movq $0, %rcx", "idivq %rcx", "retq");
+
+        List<Autograder.Report> reports = grader.grade(Arrays.asList(correct,
+                wrongForEven, crashes, loops, unparsable, divides));
+        assertEquals(6, reports.size());
+
+        assertEquals(correct.getPath(), reports.get(0).getSubmission());
+        assertEquals(20, reports.get(0).getScore());
+        assertEquals(correct.getPath() + ": 20/20", reports.get(0).toString());
+
+        Autograder.Report wrong = reports.get(1);
+        assertEquals(10, wrong.getScore());
+        for (int i = 0; i < 20; i++) {
+            Autograder.Outcome outcome = wrong.getOutcomes().get(i);
+            assertEquals("v" + i, outcome.getVector().getName());
+            assertEquals(i % 2 == 1, outcome.hasPassed());
+        }
+        assertEquals("eax is 198 (expected 205)",
+                wrong.getOutcomes().get(2).getDetail());
+
+        assertEquals(0, reports.get(2).getScore());
+        assertTrue(reports.get(2).getOutcomes().get(0).getDetail(),
+                reports.get(2).getOutcomes().get(0).getDetail()
+                        .startsWith("error on line 0: Read from uninitialized memory"));
+        assertEquals(0, reports.get(3).getScore());
+        assertEquals("didn't finish within 1000 instructions",
+                reports.get(3).getOutcomes().get(0).getDetail());
+
+        assertTrue(reports.get(4).getLoadError().isPresent());
+        assertTrue(reports.get(4).getOutcomes().isEmpty());
+        assertEquals(0, reports.get(4).getScore());
+
+        assertEquals(0, reports.get(5).getScore());
+        assertEquals("error on line 1: Division by zero",
+                reports.get(5).getOutcomes().get(0).getDetail());
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        System.out.println("sameAsSequential");
+        Autograder grader = Autograder.withReference(programOf(REFERENCE),
+                Arrays.asList("rax", "rdx"), vectors(50), 1000, Long.MAX_VALUE, pool);
+        String[] submission = {
+            "    movq %rdi, %rax",
+            "    imulq %rdi, %rax",
+            "    movq $0, %rdx",
+            "    movq $3, %rcx",
+            "    idivq %rcx",
+            "    addq 8(%rsp), %rax",
+            "    retq"
+        };
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            files.add(write("s" + i + ".s", submission));
+        }
+        Autograder.Report expected = grader.grade("s", programOf(submission));
+        for (Autograder.Report report : grader.grade(files)) {
+            assertEquals(expected.getScore(), report.getScore());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(expected.getOutcomes().get(i).getDetail(),
+                        report.getOutcomes().get(i).getDetail());
+            }
+        }
+    }
+}
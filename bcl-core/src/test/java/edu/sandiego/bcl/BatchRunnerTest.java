@@ -0,0 +1,123 @@
+package edu.sandiego.bcl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for BatchRunner.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String... lines) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), Arrays.asList(lines));
+        return file;
+    }
+
+    private static String runAll(BatchRunner runner, List<File> files,
+            boolean expectAllFinished) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        assertEquals(expectAllFinished, runner.runAll(files, out));
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testText() throws Exception {
+        System.out.println("text");
+        File file = write("sum.s",
+                "main:",
+                "    movq $5, %rdi",
+                "    pushq %rdi",
+                "    addq $-7, %rdi",
+                "    movq %rdi, %rax");
+        String out = runAll(new BatchRunner(1000, Long.MAX_VALUE, false, 1),
+                Arrays.asList(file), true);
+        assertTrue(out, out.startsWith("== " + file.getPath()
+                + ": FINISHED after 4 instructions"));
+        assertTrue(out, out.contains("rax: 0xFFFFFFFFFFFFFFFE (-2)"));
+        assertTrue(out, out.contains("rdi: 0xFFFFFFFFFFFFFFFE (-2)"));
+        assertTrue(out, out.contains("Flags: ZF=0 SF=1 OF=0 CF=0"));
+        assertTrue(out, out.contains(": 0x05 (line 2)"));
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        System.out.println("json");
+        File file = write("loop.s",
+                "loop:",
+                "    incq %rax",
+                "    jmp loop");
+        String out = runAll(new BatchRunner(10, Long.MAX_VALUE, true, 1),
+                Arrays.asList(file), false);
+        assertEquals("{\"file\":" + Json.quote(file.getPath())
+                + ",\"status\":\"BUDGET_EXHAUSTED\",\"instructions\":10,",
+                out.substring(0, out.indexOf("\"elapsedNanos\"")));
+        assertTrue(out, out.contains("\"rax\":\"0x0000000000000005\""));
+        assertTrue(out, out.contains("\"flags\":{\"ZF\":false,\"SF\":false,"
+                + "\"OF\":false,\"CF\":false},\"stack\":[]}"));
+        assertEquals(1, out.split("\n").length);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        System.out.println("errors");
+        File unparsable = write("bad.s", "movq %rax, %rbx", "movq $1");
+        File failing = write("fail.s", "movq $1, %rax", "movq (%rsp), %rax");
+        File divide = write("divide.s", "movq $9, %rax", "idivq %rcx");
+        String out = runAll(new BatchRunner(1000, Long.MAX_VALUE, true, 1),
+                Arrays.asList(unparsable, failing, divide), false);
+        String[] lines = out.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].contains("\"status\":\"LOAD_ERROR\""));
+        assertTrue(lines[0], lines[0].contains("movq $1\"}"));
+        assertTrue(lines[1], lines[1].contains("\"status\":\"ERROR\",\"instructions\":1,"));
+        assertTrue(lines[1], lines[1].contains("\"error\":\"Read from uninitialized memory"));
+        assertTrue(lines[2], lines[2].contains("\"status\":\"ERROR\""));
+        assertTrue(lines[2], lines[2].contains("\"error\":\"Division by zero\""));
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        System.out.println("directory");
+        for (int i = 0; i < 20; i++) {
+            write("prog" + i + ".s", "movq $" + i + ", %rbx", "imulq %rbx, %rbx");
+        }
+        write("notes.txt", "not a program");
+        List<File> files = BatchRunner.filesIn(folder.getRoot());
+        assertEquals(20, files.size());
+
+        String out = runAll(new BatchRunner(1000, Long.MAX_VALUE, true, 4),
+                files, true);
+        String[] lines = out.split("\n");
+        assertEquals(20, lines.length);
+        for (int i = 0; i < 20; i++) {
+            String expected = String.format("\"rbx\":\"0x%016X\"", i * i);
+            String name = Json.quote(new File(folder.getRoot(),
+                    "prog" + i + ".s").getPath());
+            assertEquals(name, 1, Arrays.stream(lines)
+                    .filter(l -> l.contains(name) && l.contains(expected))
+                    .count());
+        }
+    }
+
+    @Test
+    public void testQuote() {
+        System.out.println("quote");
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", Json.quote("a\"b\\c\n\u0001"));
+    }
+}
@@ -0,0 +1,195 @@
+package edu.sandiego.bcl;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for BlockCompiler: executing a compiled block should give exactly
+ * the same state as stepping through its lines.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class BlockCompilerTest {
+
+    private static final String[] PROGRAM = {
+        "main:",
+        "    movq $7, %rdi",
+        "    movq $-1, %rsi",
+        ".loop:",
+        "    movq %rdi, %rax",
+        "    imulq $-3, %rax",
+        "    movl %eax, %ebx",
+        "    addl $5, %ebx",
+        "    movb %dil, %ah",
+        "    subb $100, %ah",
+        "    movw %di, %cx",
+        "    xorw %ax, %cx",
+        "    leaq 8(%rax, %rdi, 4), %r8",
+        "    leaq (%r8), %r9",
+        "    movzbl %cl, %r10d",
+        "    movsbq %cl, %r11",
+        "    notq %r11",
+        "    negq %r11",
+        "    sarq $3, %r11",
+        "    shrl $1, %r10d",
+        "    salq $0, %r8",
+        "    shlq $2, %r9",
+        "    cmpq $3, %rdi",
+        "    setg %r12b",
+        "    testq %rax, %rbx",
+        "    cmovs %rbx, %r13",
+        "    cmovns %rdi, %r14",
+        "    cltq",
+        "    andq $255, %rsi",
+        "    orq %rdi, %rsi",
+        "    incq %r15",
+        "    seta %dl",
+        "    pushq %rsi",
+        "    popq %rdx",
+        "    jmp .mid",
+        "# decrements",
+        ".mid:",
+        "    decq %rdi",
+        "    setb %r8b",
+        "    jg .loop",
+        "    cmovle %rsi, %rcx",
+        "    movq $1, %rbx"
+    };
+
+    private static x86Program programOf(String... lines) throws Exception {
+        x86Program program = new x86Program();
+        for (String line : lines) {
+            program.parseThenAddLine(line);
+        }
+        return program;
+    }
+
+    private static void assertSameState(String msg, MachineState expected,
+            MachineState actual) {
+        assertEquals(msg, expected.toString(), actual.toString());
+        assertEquals(msg, expected.getStatusFlags(), actual.getStatusFlags());
+        assertTrue(msg, expected.hasSameFlagsAs(actual));
+        assertEquals(msg, expected.getRipRegister(), actual.getRipRegister());
+
+        List<Register> expectedRegs = expected.getRegisters();
+        List<Register> actualRegs = actual.getRegisters();
+        for (int i = 0; i < expectedRegs.size(); i++) {
+            assertEquals(msg, expectedRegs.get(i).getOrigin(),
+                    actualRegs.get(i).getOrigin());
+        }
+    }
+
+    /**
+     * Runs the program, executing every block as soon as it is compiled and
+     * checking that it gives the same state as stepping through it.
+     *
+     * @return The number of compiled blocks executed.
+     */
+    private static int runBothWays(x86Program program, boolean skip)
+            throws Exception {
+        DecodedProgram image = DecodedProgram.compile(program, skip);
+        BlockCompiler compiler = new BlockCompiler(image, 1);
+        MachineState state = new MachineState();
+        state.setRip(image.getEntryPoint());
+
+        int numBlocks = 0;
+        while (!image.isFinished(state)) {
+            CompiledBlock block = compiler.getHotBlock(state.getRipRegister());
+            if (block == null) {
+                state = image.step(state);
+                continue;
+            }
+
+            MachineState expected = state;
+            for (int i = 0; i < block.getNumInstructions(); i++) {
+                assertEquals(block.getLine(i), expected.getRipRegister());
+                expected = image.step(expected);
+            }
+            MachineState actual = block.execute(state);
+            assertSameState("block at line " + state.getRipRegister(),
+                    expected, actual);
+            state = actual;
+            numBlocks++;
+        }
+        return numBlocks;
+    }
+
+    @Test
+    public void testSameStates() throws Exception {
+        System.out.println("sameStates");
+        assertTrue(runBothWays(programOf(PROGRAM), false) > 10);
+        assertTrue(runBothWays(programOf(PROGRAM), true) > 10);
+    }
+
+    @Test
+    public void testHotThreshold() throws Exception {
+        System.out.println("hotThreshold");
+        x86Program program = programOf("loop:", "incq %rax", "incq %rbx",
+                "jmp loop");
+        BlockCompiler compiler = new BlockCompiler(DecodedProgram.compile(program), 3);
+        assertNull(compiler.getHotBlock(1));
+        assertNull(compiler.getHotBlock(0));
+        assertNull(compiler.getHotBlock(0));
+        CompiledBlock block = compiler.getHotBlock(0);
+        assertNotNull(block);
+        assertEquals(4, block.getNumInstructions());
+        assertSame(block, compiler.getHotBlock(0));
+    }
+
+    @Test
+    public void testUncompilable() throws Exception {
+        System.out.println("uncompilable");
+        x86Program program = programOf("movq (%rsp), %rax", "incq %rax",
+                "movq %rax, %rsp", "jmp nowhere");
+        DecodedProgram image = DecodedProgram.compile(program);
+        BlockCompiler compiler = new BlockCompiler(image, 1);
+        assertNull(compiler.getHotBlock(0));
+
+        // stops before writing %rsp or jumping to a nonexistent label
+        program = programOf("incq %rax", "incq %rbx", "movq %rax, %rsp",
+                "jmp nowhere");
+        compiler = new BlockCompiler(DecodedProgram.compile(program), 1);
+        CompiledBlock block = compiler.getHotBlock(0);
+        assertEquals(2, block.getNumInstructions());
+        assertEquals(2, block.execute(new MachineState()).getRipRegister());
+    }
+
+    @Test
+    public void testRunWithCompiledBlocks() throws Exception {
+        System.out.println("runWithCompiledBlocks");
+        // enough iterations for the blocks to be compiled
+        String[] lines = PROGRAM.clone();
+        lines[1] = "    movq $500, %rdi";
+        for (long budget : new long[]{1, 137, 1000, Long.MAX_VALUE}) {
+            Simulation expected = new Simulation();
+            Simulation actual = new Simulation();
+            for (String line : lines) {
+                expected.appendToProgram(line);
+                actual.appendToProgram(line);
+            }
+            expected.restart();
+            actual.useNoHistory();
+            actual.setCompileHotBlocks(true);
+
+            RunResult expectedResult = expected.run(budget, Long.MAX_VALUE,
+                    new CancellationToken());
+            RunResult actualResult = actual.run(budget, Long.MAX_VALUE,
+                    new CancellationToken());
+            assertEquals(expectedResult.getStatus(), actualResult.getStatus());
+            assertEquals(expectedResult.getInstructionsExecuted(),
+                    actualResult.getInstructionsExecuted());
+            assertEquals(expected.getRegisters().size(), actual.getRegisters().size());
+            for (int i = 0; i < expected.getRegisters().size(); i++) {
+                Register e = expected.getRegisters().get(i);
+                Register a = actual.getRegisters().get(i);
+                assertEquals(e.getSubValue(8, 0, false), a.getSubValue(8, 0, false));
+                assertEquals(e.getOrigin(), a.getOrigin());
+                assertEquals(e.getProminence(), a.getProminence());
+            }
+            assertEquals(expected.hasZeroFlagSet(), actual.hasZeroFlagSet());
+            assertEquals(expected.hasCarryFlagSet(), actual.hasCarryFlagSet());
+            assertEquals(expected.isFinished(), actual.isFinished());
+        }
+    }
+}
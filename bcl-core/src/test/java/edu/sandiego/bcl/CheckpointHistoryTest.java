@@ -0,0 +1,152 @@
+package edu.sandiego.bcl;
+
+import java.util.OptionalLong;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for CheckpointHistory.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class CheckpointHistoryTest {
+
+    private static final SubRegister RAX = SubRegister.fromName("rax");
+    private static final SubRegister RSP = SubRegister.fromName("rsp");
+
+    private MachineState initialState;
+
+    /**
+     * Increments rax and writes it to one of 512 stack slots, so that steps
+     * touch a variety of memory pages.
+     */
+    private static MachineState step(MachineState state) throws x86RuntimeException {
+        long count = state.getRegisterValue(RAX) + 1;
+        long address = state.getRegisterValue(RSP) + 8 * (count % 512);
+        state = state.cloneWithUpdatedRegister(RAX, OptionalLong.of(count),
+                StatusFlags.NONE, false);
+        return state.cloneWithUpdatedMemory(OptionalLong.of(count), address, 8,
+                StatusFlags.NONE, true);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MachineState state = new MachineState();
+        initialState = state.cloneWithUpdatedRegister(RSP,
+                OptionalLong.of(state.getRegisterValue(RSP) - 4096),
+                StatusFlags.NONE, false);
+    }
+
+    private MachineState runForward(SimulationHistory history, MachineState state,
+            int steps) throws x86RuntimeException {
+        for (int i = 0; i < steps; i++) {
+            MachineState next = step(state);
+            history.record(state, next);
+            state = next;
+        }
+        return state;
+    }
+
+    private static void assertAtStep(long step, MachineState state)
+            throws x86RuntimeException {
+        assertEquals(step, state.getRegisterValue(RAX));
+        assertEquals(step, state.getRipRegister());
+        if (step > 0) {
+            long address = state.getRegisterValue(RSP) + 8 * (step % 512);
+            assertEquals(step, state.getMemoryValue(address, 8));
+        }
+    }
+
+    @Test
+    public void testStepBackToBeginning() throws Exception {
+        System.out.println("stepBackToBeginning");
+        CheckpointHistory history = new CheckpointHistory(
+                CheckpointHistoryTest::step, Long.MAX_VALUE, 5_000_000);
+        MachineState state = runForward(history, initialState, 5000);
+
+        for (long step = 4999; step >= 0; step--) {
+            state = history.stepBack(state);
+            assertAtStep(step, state);
+        }
+        assertTrue(history.isEmpty());
+    }
+
+    @Test
+    public void testForwardAfterStepBack() throws Exception {
+        System.out.println("forwardAfterStepBack");
+        CheckpointHistory history = new CheckpointHistory(
+                CheckpointHistoryTest::step, Long.MAX_VALUE, 5_000_000);
+        MachineState state = runForward(history, initialState, 3000);
+        for (int i = 0; i < 1500; i++) {
+            state = history.stepBack(state);
+        }
+        state = runForward(history, state, 2);
+        state = history.stepBack(state);
+        assertAtStep(1501, state);
+
+        state = runForward(history, state, 4000);
+        for (long step = 5500; step >= 5000; step--) {
+            state = history.stepBack(state);
+            assertAtStep(step, state);
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        System.out.println("memoryBudget");
+        long budget = 64 * 1024;
+        CheckpointHistory history = new CheckpointHistory(
+                CheckpointHistoryTest::step, budget, 5_000_000);
+        MachineState state = runForward(history, initialState, 10_000);
+        assertTrue(history.getEstimatedSize() <= budget);
+
+        // We can still get back to every step.
+        for (long step = 9_999; step >= 0; step -= 7) {
+            state = history.stepBack(state);
+            assertAtStep(step, state);
+            assertTrue(history.getEstimatedSize() <= budget);
+            for (int i = 0; i < 6 && step - i - 1 >= 0; i++) {
+                state = history.stepBack(state);
+            }
+        }
+    }
+
+    @Test
+    public void testReplayedStatesInBudget() throws Exception {
+        System.out.println("replayedStatesInBudget");
+        // Stepping back may take as long as it likes, so the interval grows
+        // far past the number of states that fit in the budget.
+        long budget = 64 * 1024;
+        CheckpointHistory history = new CheckpointHistory(
+                CheckpointHistoryTest::step, budget, Long.MAX_VALUE);
+        MachineState state = runForward(history, initialState, 2000);
+        state = history.stepBack(state);
+        state = runForward(history, state, 100_000);
+        assertTrue(history.getInterval() > 100_000);
+
+        for (long step = 101_998; step >= 101_800; step--) {
+            state = history.stepBack(state);
+            assertAtStep(step, state);
+            assertTrue(history.getEstimatedSize() <= budget);
+        }
+    }
+
+    @Test
+    public void testProgramChanged() throws Exception {
+        System.out.println("programChanged");
+        CheckpointHistory history = new CheckpointHistory(
+                CheckpointHistoryTest::step, Long.MAX_VALUE, 5_000_000);
+        MachineState state = runForward(history, initialState, 3000);
+        history.programChanged();
+        assertTrue(history.isEmpty());
+
+        // Stepping back only goes as far as the change.
+        state = runForward(history, state, 20);
+        for (long step = 3019; step >= 3000; step--) {
+            state = history.stepBack(state);
+            assertAtStep(step, state);
+        }
+        assertTrue(history.isEmpty());
+    }
+}
@@ -0,0 +1,251 @@
+package edu.sandiego.bcl;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for DecodedProgram: executing the decoded image should give
+ * exactly the same states as evaluating the program's lines.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class DecodedProgramTest {
+
+    private static final String[] PROGRAM = {
+        "# sums and divides in a loop",
+        "sum:",
+        "    movq $0, %rax",
+        "    movq $0, %rcx",
+        ".loop:",
+        "    addq %rcx, %rax",
+        "    incq %rcx",
+        "    cmpq %rdi, %rcx",
+        "    jle .loop",
+        "    retq",
+        "",
+        "main:",
+        "    movq $10, %rdi",
+        "    callq sum",
+        "    movq %rax, %rbx",
+        "    pushq %rbx",
+        "    movl $-3, 4(%rsp)",
+        "    movzbl 4(%rsp), %esi",
+        "    movswq 4(%rsp), %r8",
+        "    leaq 8(%rsp, %rdi, 2), %r9",
+        "    popq %r10",
+        "    cltq",
+        "    movq $0, %rdx",
+        "    movq $7, %r11",
+        "    idivq %r11",
+        "    testq %rdx, %rdx",
+        "    sete %r12b",
+        "    cmovne %rdx, %r13",
+        "    shlq $3, %r13",
+        "    sarq $1, %r13",
+        "    shrq $1, %r13",
+        "    notq %r13",
+        "    negq %r13",
+        "    xorq %rax, %r13",
+        "    imulq %r13, %rax",
+        "    subq %rax, %r14",
+        "    decq %r14",
+        "    andq $255, %r14",
+        "    orq $256, %r14",
+        "    jmp .done",
+        "    movq $1, %r15",
+        ".done:",
+        "    retq"
+    };
+
+    private static x86Program programOf(String... lines) throws Exception {
+        x86Program program = new x86Program();
+        for (String line : lines) {
+            program.parseThenAddLine(line);
+        }
+        return program;
+    }
+
+    private static void assertSameState(String msg, MachineState expected,
+            MachineState actual) {
+        assertEquals(msg, expected.toString(), actual.toString());
+        assertEquals(msg, expected.getStatusFlags(), actual.getStatusFlags());
+        assertEquals(msg, expected.getRipRegister(), actual.getRipRegister());
+        assertEquals(msg, expected.getCallStackSize(), actual.getCallStackSize());
+        assertEquals(msg, expected.getStackEntries().size(),
+                actual.getStackEntries().size());
+    }
+
+    /**
+     * Runs the given program both ways, checking that the states match after
+     * every step.
+     *
+     * @return The number of steps executed.
+     */
+    private static int runBothWays(x86Program program) throws Exception {
+        DecodedProgram image = DecodedProgram.compile(program);
+        MachineState expected = new MachineState();
+        expected.setRip(program.getBeginningOfProgram().getLineNum());
+        MachineState actual = new MachineState();
+        actual.setRip(image.getEntryPoint());
+
+        int steps = 0;
+        while (!image.isFinished(actual)) {
+            String msg = "step " + steps + ": "
+                    + program.getLine(actual.getRipRegister());
+            expected = program.getLine(expected.getRipRegister()).eval(expected);
+            actual = image.step(actual);
+            assertSameState(msg, expected, actual);
+            steps++;
+        }
+        return steps;
+    }
+
+    @Test
+    public void testSameStates() throws Exception {
+        System.out.println("sameStates");
+        assertTrue(runBothWays(programOf(PROGRAM)) > 50);
+    }
+
+    @Test
+    public void testLineNumbersAfterRemove() throws Exception {
+        System.out.println("lineNumbersAfterRemove");
+        x86Program program = programOf("jmp .end", "movq $1, %rax",
+                "movq $2, %rbx", ".end:", "movq $3, %rcx");
+        program.removeLine(program.getLine(1));
+        DecodedProgram image = DecodedProgram.compile(program);
+
+        MachineState state = image.step(new MachineState());
+        assertEquals(2, state.getRipRegister());
+        assertEquals(3, runBothWays(program));
+    }
+
+    @Test
+    public void testSkipNonInstructions() throws Exception {
+        System.out.println("skipNonInstructions");
+        x86Program program = programOf(PROGRAM);
+        DecodedProgram everyLine = DecodedProgram.compile(program);
+        DecodedProgram skipping = DecodedProgram.compile(program, true);
+
+        MachineState expected = new MachineState();
+        expected.setRip(everyLine.getEntryPoint());
+        int expectedSteps = 0;
+        while (!everyLine.isFinished(expected)) {
+            expected = everyLine.step(expected);
+            expectedSteps++;
+        }
+
+        MachineState actual = new MachineState();
+        actual.setRip(skipping.getEntryPoint());
+        int actualSteps = 0;
+        while (!skipping.isFinished(actual)) {
+            assertTrue("executing " + program.getLine(actual.getRipRegister()),
+                    program.getLine(actual.getRipRegister()) instanceof x86Instruction);
+            actual = skipping.step(actual);
+            actualSteps++;
+        }
+
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getStatusFlags(), actual.getStatusFlags());
+        assertTrue(actualSteps < expectedSteps);
+    }
+
+    @Test
+    public void testLazyFlags() throws Exception {
+        System.out.println("lazyFlags");
+        x86Program program = programOf("movq $-1, %rax", "addq $1, %rax",
+                "incq %rbx", "setb %cl", "movq $0, %rdx",
+                "shlq $0, %rbx", "setb %dl", "sete %sil");
+        runBothWays(program);
+
+        DecodedProgram image = DecodedProgram.compile(program);
+        MachineState state = new MachineState();
+        while (!image.isFinished(state)) {
+            state = image.step(state);
+        }
+        // inc and shifting by zero leave the carry from the add alone
+        assertEquals(1, state.getRegisterValue(SubRegister.fromName("rcx")));
+        assertEquals(1, state.getRegisterValue(SubRegister.fromName("rdx")));
+        assertEquals(0, state.getRegisterValue(SubRegister.fromName("rsi")));
+        assertTrue(state.getCarryFlag());
+    }
+
+    /**
+     * Compares, sets, moves and arithmetic that can all be fused into pairs,
+     * along with some that can't.
+     */
+    private static final String[] FUSABLE_PROGRAM = {
+        "main:",
+        "    movq $5, %rdi",
+        ".loop:",
+        "    movq %rdi, %rax",
+        "    imulq $3, %rax",
+        "    movl %edi, %ebx",
+        "    addl %eax, %ebx",
+        "    movb %dil, %ah",
+        "    subb $100, %ah",
+        "    movq %rdi, %rcx",
+        "    addq %rcx, %rcx",
+        "    cmpq $3, %rdi",
+        "    setg %r8b",
+        "    testq %rax, %rbx",
+        "    cmovs %rbx, %r9",
+        "    cmpl %edi, %eax",
+        "    cmovle %rdi, %r10",
+        "    decq %rdi",
+        "    cmpq $0, %rdi",
+        "",
+        "    jg .loop",
+        "    cmpq $1, %rdi",
+        "    je nowhere"
+    };
+
+    @Test
+    public void testFusedPairs() throws Exception {
+        System.out.println("fusedPairs");
+        for (boolean skip : new boolean[]{false, true}) {
+            x86Program program = programOf(FUSABLE_PROGRAM);
+            DecodedProgram image = DecodedProgram.compile(program, skip);
+            MachineState expected = new MachineState();
+            expected.setRip(image.getEntryPoint());
+            MachineState actual = expected;
+
+            int numFused = 0;
+            while (!image.isFinished(expected)) {
+                String msg = "line " + actual.getRipRegister();
+                assertEquals(msg, expected.getRipRegister(), actual.getRipRegister());
+                if (image.startsFusedPair(actual.getRipRegister())) {
+                    expected = image.step(image.step(expected));
+                    numFused++;
+                } else {
+                    expected = image.step(expected);
+                }
+                actual = image.stepFused(actual);
+                assertSameState(msg, expected, actual);
+
+                List<Register> expectedRegs = expected.getRegisters();
+                List<Register> actualRegs = actual.getRegisters();
+                for (int i = 0; i < expectedRegs.size(); i++) {
+                    assertEquals(msg, expectedRegs.get(i).getOrigin(),
+                            actualRegs.get(i).getOrigin());
+                }
+            }
+            assertTrue(numFused > 20);
+            // jumps to nonexistent labels can fail so they aren't fused
+            assertFalse(image.startsFusedPair(21));
+        }
+    }
+
+    @Test
+    public void testNonexistentLabel() throws Exception {
+        System.out.println("nonexistentLabel");
+        DecodedProgram image = DecodedProgram.compile(
+                programOf("jmp nowhere"));
+        try {
+            image.step(new MachineState());
+            fail("Expected an x86RuntimeException");
+        } catch (x86RuntimeException e) {
+            assertEquals("Nonexistent label: nowhere", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package edu.sandiego.bcl;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for FileLines: it should give the same lines as reading the
+ * file with a BufferedReader and trimming each line.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class FileLinesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return The lines of the given text, as BufferedReader gives them,
+     * trimmed.
+     */
+    private static List<String> readLines(byte[] text) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(text), StandardCharsets.UTF_8))) {
+            String l;
+            while ((l = br.readLine()) != null) {
+                lines.add(l.trim());
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> toStrings(List<CharSequence> lines) {
+        List<String> strings = new ArrayList<>();
+        for (CharSequence line : lines) {
+            assertEquals(line.length(), line.toString().length());
+            strings.add(line.toString());
+        }
+        return strings;
+    }
+
+    private void checkText(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals(text, readLines(bytes), toStrings(new FileLines(ByteBuffer.wrap(bytes))));
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        assertEquals(text, readLines(bytes), toStrings(FileLines.read(file)));
+
+        // As it would be for a large file
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            ByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+            assertEquals(text, readLines(bytes), toStrings(new FileLines(mapped)));
+        }
+    }
+
+    @Test
+    public void testLineEndings() throws IOException {
+        checkText("");
+        checkText("\n");
+        checkText("\r\n\r\n");
+        checkText("movq %rax, %rbx");
+        checkText("main:\n  movq %rax, %rbx\n\tretq\n");
+        checkText("main:\r\n  movq %rax, %rbx\r\n\r\nretq");
+        checkText("a\rb\r\rc\n\rd\r");
+    }
+
+    @Test
+    public void testNonAscii() throws IOException {
+        checkText("movq %rax, %rbx # d\u00e9j\u00e0 vu \u2192 \ud83d\ude00\n  retq  \n");
+        checkText("\ufeffmain:\n retq \n");
+    }
+
+    @Test
+    public void testRandomText() throws IOException {
+        String alphabet = "\n\r\t\u000b\u0000 q%,\u00e9\u2028";
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            checkText(text.toString());
+        }
+    }
+
+    @Test
+    public void testSubSequence() {
+        List<CharSequence> lines = new FileLines(ByteBuffer.wrap(
+                "  addq $1, %rax  # one\n".getBytes(StandardCharsets.US_ASCII)));
+        CharSequence line = lines.get(0);
+        assertEquals("addq $1, %rax  # one", line.toString());
+        assertEquals('$', line.charAt(5));
+        assertEquals("%rax", line.subSequence(9, 13).toString());
+        assertEquals("ax", line.subSequence(9, 13).subSequence(2, 4).toString());
+    }
+}
@@ -0,0 +1,274 @@
+package edu.sandiego.bcl;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for MutableMachineState and the in-place interpreter: executing
+ * in place should give exactly the same states as executing with immutable
+ * states, without allocating anything per instruction.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class MutableMachineStateTest {
+
+    private static final String[] PROGRAM = {
+        "main:",
+        "    movq $6, %rbx",
+        "    subq $512, %rsp",
+        ".loop:",
+        "    movq %rbx, (%rsp)",
+        "    movl %ebx, 8(%rsp)",
+        "    movw %bx, 2(%rsp)",
+        "    movb %bl, 255(%rsp)",
+        "    movq %rbx, 256(%rsp)",
+        "    addl $4, 8(%rsp)",
+        "    pushq %rbx",
+        "    pushq 8(%rsp)",
+        "    popq %rdx",
+        "    addq $8, %rsp",
+        "    movq %rbx, %rdi",
+        "    callq .func",
+        "    movq $-1000, %rax",
+        "    movq $-1, %rdx",
+        "    movq $7, %rsi",
+        "    idivq %rsi",
+        "    movq $5, %rax",
+        "    movq $3, %rdx",
+        "    idivl 8(%rsp)",
+        "    movl $-5000, %eax",
+        "    movl $-1, %edx",
+        "    idivl %esi",
+        "    movw $300, %ax",
+        "    movw $0, %dx",
+        "    idivw %si",
+        "    cmpq $3, %rbx",
+        "    setg %cl",
+        "    cmovl %rdx, %r8",
+        "    decq %rbx",
+        "    jg .loop",
+        "    addq $512, %rsp",
+        "    subq $20000, %rsp",
+        "    movq %rax, (%rsp)",
+        "    movq %rax, 10000(%rsp)",
+        "    addq $20000, %rsp",
+        "    movq $0, %rax",
+        "    retq",
+        "",
+        ".func:",
+        "    pushq %rbp",
+        "    movq %rsp, %rbp",
+        "    subq $16, %rsp",
+        "    movq %rdi, -8(%rbp)",
+        "    movl $3, -12(%rbp)",
+        "    movq -8(%rbp), %rax",
+        "    addq %rax, %rdi",
+        "    movq %rbp, %rsp",
+        "    popq %rbp",
+        "    retq"
+    };
+
+    private static x86Program programOf(String... lines) throws Exception {
+        x86Program program = new x86Program();
+        for (String line : lines) {
+            program.parseThenAddLine(line);
+        }
+        return program;
+    }
+
+    private static void assertSameState(String msg, MachineState expected,
+            MachineState actual) {
+        assertEquals(msg, expected.toString(), actual.toString());
+        assertEquals(msg, expected.getStatusFlags(), actual.getStatusFlags());
+        assertTrue(msg, expected.hasSameFlagsAs(actual));
+        assertEquals(msg, expected.getRipRegister(), actual.getRipRegister());
+        assertEquals(msg, expected.getCallStackSize(), actual.getCallStackSize());
+
+        List<Register> expectedRegs = expected.getRegisters();
+        List<Register> actualRegs = actual.getRegisters();
+        for (int i = 0; i < expectedRegs.size(); i++) {
+            assertEquals(msg, expectedRegs.get(i).getOrigin(),
+                    actualRegs.get(i).getOrigin());
+        }
+
+        // every byte's value, origin and entry start
+        assertNull(msg, PagedMemory.changedBytes(expected.getMemory(),
+                actual.getMemory()));
+        assertNull(msg, PagedMemory.changedBytes(actual.getMemory(),
+                expected.getMemory()));
+    }
+
+    /**
+     * Steps through the program with immutable states and in place, checking
+     * that the states are the same after every step and that both fail in
+     * the same way.
+     *
+     * @return The number of steps taken.
+     */
+    private static int stepBothWays(x86Program program, boolean skip)
+            throws Exception {
+        DecodedProgram image = DecodedProgram.compile(program, skip);
+        MachineState expected = new MachineState();
+        expected.setRip(image.getEntryPoint());
+        MutableMachineState actual = new MutableMachineState(expected);
+
+        int numSteps = 0;
+        while (!image.isFinished(expected)) {
+            Exception expectedError = null;
+            Exception actualError = null;
+            try {
+                expected = image.step(expected);
+            } catch (x86RuntimeException e) {
+                expectedError = e;
+            }
+            try {
+                image.step(actual);
+            } catch (x86RuntimeException e) {
+                actualError = e;
+            }
+
+            String msg = "step " + numSteps;
+            if (expectedError == null) {
+                assertNull(msg, actualError);
+            } else {
+                assertNotNull(msg, actualError);
+                assertEquals(msg, expectedError.getClass(), actualError.getClass());
+                assertEquals(msg, expectedError.getMessage(), actualError.getMessage());
+            }
+            assertSameState(msg, expected, actual.toMachineState());
+            if (expectedError != null) {
+                return numSteps;
+            }
+            numSteps++;
+        }
+        assertTrue(image.isFinished(actual));
+        return numSteps;
+    }
+
+    @Test
+    public void testSameStates() throws Exception {
+        System.out.println("sameStates");
+        assertTrue(stepBothWays(programOf(PROGRAM), false) > 200);
+        assertTrue(stepBothWays(programOf(PROGRAM), true) > 200);
+    }
+
+    @Test
+    public void testSameErrors() throws Exception {
+        System.out.println("sameErrors");
+        String[][] programs = {
+            {"movq $1, %rax", "pushq (%rsp)"},
+            {"movq $1, %rax", "callq nowhere"},
+            {"movq $1, %rax", "jmp nowhere"},
+            {"movq (%rsp), %rax"},
+            {"movq $1, 8(%rsp)"},
+            {"movq $1, %rax", "movq $0, -4(%rsp)"},
+            {"movq $3, %rsp"},
+            {"movl $3, %esp", "pushq %rax"},
+            {"movq $0, %rsp", "movq $5, %rax", "callq f", "f:", "retq"},
+            {"movq $9, %rax", "movq $0, %rcx", "idivq %rcx"},
+            {"movq $9, %rax", "movq $-2, %rcx", "idivq %rcx"},
+            {"movq $1, %rdx", "movq $9, %rax", "movq $4, %rcx", "idivq %rcx"},
+            {"pushq %rax", "popq %rbx", "retq", "movq $1, %rax"}
+        };
+        for (String[] lines : programs) {
+            stepBothWays(programOf(lines), false);
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        x86Program program = programOf(PROGRAM);
+        DecodedProgram image = DecodedProgram.compile(program, true);
+        MachineState expected = new MachineState();
+        expected.setRip(image.getEntryPoint());
+        MutableMachineState actual = new MutableMachineState(expected);
+
+        long numSteps = 0;
+        while (!image.isFinished(expected)) {
+            expected = image.step(expected);
+            numSteps++;
+        }
+
+        RunResult result = image.run(actual, 100, Long.MAX_VALUE,
+                new CancellationToken());
+        assertEquals(RunResult.Status.BUDGET_EXHAUSTED, result.getStatus());
+        assertEquals(100, result.getInstructionsExecuted());
+
+        result = image.run(actual, Long.MAX_VALUE, Long.MAX_VALUE,
+                new CancellationToken());
+        assertEquals(RunResult.Status.FINISHED, result.getStatus());
+        assertEquals(numSteps - 100, result.getInstructionsExecuted());
+        assertSameState("final state", expected, actual.toMachineState());
+
+        image = DecodedProgram.compile(programOf("incq %rax", "movq (%rsp), %rax"));
+        actual = new MutableMachineState(new MachineState());
+        result = image.run(actual, Long.MAX_VALUE, Long.MAX_VALUE,
+                new CancellationToken());
+        assertEquals(RunResult.Status.ERROR, result.getStatus());
+        assertEquals(1, result.getInstructionsExecuted());
+        assertEquals(1, actual.getRipRegister());
+    }
+
+    /**
+     * The JVM's thread bean and its getThreadAllocatedBytes method, looked up
+     * reflectively since they aren't part of the standard API (or null if
+     * they aren't available).
+     */
+    private static Object threads;
+    private static Method getAllocatedBytes;
+
+    static {
+        try {
+            threads = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            getAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            getAllocatedBytes = null;
+        }
+    }
+
+    /**
+     * @return The number of bytes allocated by the current thread so far.
+     */
+    private static long allocatedBytes() throws ReflectiveOperationException {
+        return (Long) getAllocatedBytes.invoke(threads, Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testNoAllocations() throws Exception {
+        System.out.println("noAllocations");
+        Assume.assumeNotNull(getAllocatedBytes);
+
+        String[] lines = PROGRAM.clone();
+        lines[1] = "    movq $1000000, %rbx";
+        DecodedProgram image = DecodedProgram.compile(programOf(lines), true);
+        MachineState initial = new MachineState();
+        initial.setRip(image.getEntryPoint());
+        MutableMachineState state = new MutableMachineState(initial);
+        CancellationToken cancellation = new CancellationToken();
+
+        // touch every page the loop uses
+        image.run(state, 100_000, Long.MAX_VALUE, cancellation);
+
+        // The first time compiled code takes a new path, the JVM may load a
+        // class in this thread (which allocates), so take the best of a few
+        // runs: anything allocated per instruction would show up in all of
+        // them.
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long before = allocatedBytes();
+            RunResult result = image.run(state, 1_000_000, Long.MAX_VALUE,
+                    cancellation);
+            allocated = Math.min(allocated, allocatedBytes() - before);
+            assertEquals(RunResult.Status.BUDGET_EXHAUSTED, result.getStatus());
+        }
+        // only the result of the run itself (and of asking how much was
+        // allocated), nothing per instruction
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,152 @@
+package edu.sandiego.bcl;
+
+import java.util.List;
+import java.util.OptionalLong;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for PagedMemory and the memory operations of MachineState that
+ * use it.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class PagedMemoryTest {
+
+    private static final SubRegister RSP = SubRegister.fromName("rsp");
+
+    private MachineState state;
+    private long top;
+
+    @Before
+    public void setUp() throws Exception {
+        state = new MachineState();
+        top = state.getRegisterValue(RSP);
+        // make room for 64 bytes on the stack
+        state = state.cloneWithUpdatedRegister(RSP, OptionalLong.of(top - 64),
+                StatusFlags.NONE, false);
+    }
+
+    private void write(long address, int size, long val, int line) throws Exception {
+        state.setRip(line);
+        state = state.cloneWithUpdatedMemory(OptionalLong.of(val), address,
+                size, StatusFlags.NONE, false);
+    }
+
+    private static void assertEntry(StackEntry e, long start, long end, int origin) {
+        assertEquals(start, e.getStartAddress());
+        assertEquals(end, e.getEndAddress());
+        assertEquals(origin, e.getOrigin());
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        System.out.println("readWrite");
+        write(top - 8, 8, 0x1122334455667788L, 1);
+        write(top - 16, 4, -2, 2);
+        assertEquals(0x1122334455667788L, state.getMemoryValue(top - 8, 8));
+        assertEquals(0x55667788L, state.getMemoryValue(top - 8, 4));
+        assertEquals(0x1122, state.getMemoryValue(top - 2, 2));
+        assertEquals(-2, state.getMemoryValue(top - 16, 4));
+        assertEquals(-1, state.getMemoryValue(top - 14, 2));
+    }
+
+    @Test
+    public void testOldStateUnchanged() throws Exception {
+        System.out.println("oldStateUnchanged");
+        write(top - 8, 8, 1, 1);
+        MachineState before = state;
+        write(top - 8, 8, 2, 2);
+        assertEquals(1, before.getMemoryValue(top - 8, 8));
+        assertEquals(2, state.getMemoryValue(top - 8, 8));
+        assertEquals(1, before.getStackEntries().get(0).getOrigin());
+    }
+
+    @Test
+    public void testUninitializedRead() throws Exception {
+        System.out.println("uninitializedRead");
+        write(top - 8, 4, 1, 1);
+        try {
+            state.getMemoryValue(top - 8, 8);
+            fail("read of uninitialized memory should fail");
+        } catch (x86RuntimeException e) {
+            assertEquals("Read from uninitialized memory: 0x7F..F4", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSplitEntry() throws Exception {
+        System.out.println("splitEntry");
+        write(top - 8, 8, -1, 1);
+        write(top - 6, 2, 0, 2);
+
+        List<StackEntry> entries = state.getStackEntries();
+        assertEquals(3, entries.size());
+        assertEntry(entries.get(0), top - 8, top - 7, 1);
+        assertEntry(entries.get(1), top - 6, top - 5, 2);
+        assertEntry(entries.get(2), top - 4, top - 1, 1);
+        assertEquals(0xFFFFFFFF0000FFFFL, state.getMemoryValue(top - 8, 8));
+    }
+
+    @Test
+    public void testShrinkEntries() throws Exception {
+        System.out.println("shrinkEntries");
+        write(top - 16, 8, 1, 1);
+        write(top - 8, 8, 2, 2);
+        write(top - 12, 4, 3, 3);
+        write(top - 8, 2, 4, 4);
+
+        List<StackEntry> entries = state.getStackEntries();
+        assertEquals(4, entries.size());
+        assertEntry(entries.get(0), top - 16, top - 13, 1);
+        assertEntry(entries.get(1), top - 12, top - 9, 3);
+        assertEntry(entries.get(2), top - 8, top - 7, 4);
+        assertEntry(entries.get(3), top - 6, top - 1, 2);
+    }
+
+    @Test
+    public void testStackShrinkRemovesEntries() throws Exception {
+        System.out.println("stackShrinkRemovesEntries");
+        write(top - 64, 8, 1, 1);
+        write(top - 56, 8, 2, 2);
+        write(top - 48, 8, 3, 3);
+        write(top - 40, 4, 4, 4);
+        write(top - 36, 4, 5, 5);
+
+        state = state.cloneWithUpdatedRegister(RSP, OptionalLong.of(top - 40),
+                StatusFlags.NONE, false);
+        List<StackEntry> entries = state.getStackEntries();
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(0), top - 40, top - 37, 4);
+        assertEntry(entries.get(1), top - 36, top - 33, 5);
+
+        state = state.cloneWithUpdatedRegister(RSP, OptionalLong.of(top),
+                StatusFlags.NONE, false);
+        assertTrue(state.getStackEntries().isEmpty());
+    }
+
+    @Test
+    public void testPageBoundary() {
+        System.out.println("pageBoundary");
+        PagedMemory mem = PagedMemory.empty()
+                .write(0x1F8, 8, 0x0102030405060708L, 1)
+                .write(0x200, 8, -1, 2)
+                .write(0x10000, 2, 7, 3);
+        assertEquals(16, mem.countInitialized(0x1F8, 16));
+        assertEquals(0x05060708, mem.read(0x1F8, 4));
+        assertEquals(0, mem.countInitialized(0x10002, 2));
+
+        // overwriting the end of a page leaves the entry on the next page
+        // intact
+        mem = mem.write(0x1F8, 8, 0, 4);
+        assertEquals(3, mem.getStackEntries().size());
+
+        // an entry straddling the end of the removed range is removed
+        // completely
+        mem = mem.withEntriesRemoved(0x1F8, 0x204);
+        List<StackEntry> entries = mem.getStackEntries();
+        assertEquals(1, entries.size());
+        assertEntry(entries.get(0), 0x10000, 0x10001, 3);
+    }
+}
@@ -3,6 +3,7 @@ package edu.sandiego.bcl;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -12,9 +13,11 @@ import com.mifmif.common.regex.*;
 import info.debatty.java.stringsimilarity.*;
 
 /**
- * Class for parsing X86-64 programs.
+ * The regular expression based parser that X86Parser used to be, kept so
+ * that tests can check that X86Parser (and its hand-written X86Lexer) still
+ * gives the same results, errors included.
  */
-public class X86Parser {
+public class RegexX86Parser {
 
     // Regular expressions used for parsing registers
     private static final String QUAD_REG_REGEX = "r(ax|bx|cx|dx|si|di|bp|sp|8|9|1[0-5])";
@@ -64,6 +67,71 @@ public class X86Parser {
                 + "|mov|lea|inc|dec|neg|not|push|pop|cmp|test|call|ret|clt";
     private static final String TWO_SUFFIX_INSTRUCTIONS_REGEX = "movz|movs";
     private static final String CONDITIONAL_INSTRUCTIONS_REGEX = "set|j|cmov";
+    private static final String QUAD_ONLY_INSTRUCTIONS_REGEX = "lea|push|pop|call|ret|clt";
+
+    /*
+     * The patterns are compiled once, here, rather than for every line that
+     * is parsed: compiling them took most of the time it took to parse a line.
+     */
+    private static final Pattern QUAD_REG_PATTERN = Pattern.compile(QUAD_REG_REGEX);
+    private static final Pattern LONG_REG_PATTERN = Pattern.compile(LONG_REG_REGEX);
+    private static final Pattern WORD_REG_PATTERN = Pattern.compile(WORD_REG_REGEX);
+    private static final Pattern BYTE_REG_PATTERN = Pattern.compile(BYTE_REG_REGEX);
+    private static final Pattern ALL_REG_PATTERN = Pattern.compile(ALL_REG_REGEX);
+
+    private static final Pattern CONST_OPERAND_PATTERN = Pattern.compile(CONST_OPERAND_REGEX);
+    private static final Pattern REGISTER_OPERAND_PATTERN = Pattern.compile(REGISTER_OPERAND_REGEX);
+    private static final Pattern MEM_OPERAND_PATTERN = Pattern.compile(MEM_OPERAND_REGEX);
+    private static final Pattern LABEL_OPERAND_PATTERN = Pattern.compile(LABEL_OPERAND_REGEX);
+    private static final Pattern FIRST_OPERAND_PATTERN = Pattern.compile(OPERAND_REGEX);
+    private static final Pattern NEXT_OPERAND_PATTERN = Pattern.compile("," + OPERAND_REGEX);
+
+    /*
+     * "sized" instructions are those that have an instruction name (e.g.
+     * "add") followed by a single character suffix to indicate the size
+     * (e.g. "q").
+     */
+    private static final Pattern SIZED_INSTRUCTION_PATTERN = Pattern.compile("(?<name>"
+            + ONE_SUFFIX_INSTRUCTIONS_REGEX
+            + ")(?<size>b|w|l|q)");
+
+    /*
+     * "two sizes" instructions are those that have an instruction name followed
+     * by two characters that indicate the size of two operands (e.g. "bl")
+     */
+    private static final Pattern TWO_SIZED_INSTRUCTION_PATTERN = Pattern.compile("(?<name>"
+            + TWO_SUFFIX_INSTRUCTIONS_REGEX
+            + ")(?<suffices>b[wlq]|w[lq]|lq)");
+
+    /*
+     * "conditional" instructions are those whose operations are determined
+     * by the status flags (e.g. the overflow flag).
+     * Their suffix isn't a size, rather it is the condition to check for
+     * (e.g. "ge" for "greater than or equal")
+     * The "size" of these instructions is implicit (e.g. byte for SET).
+     */
+    private static final Pattern CONDITIONAL_INSTRUCTION_PATTERN = Pattern.compile("(jmp|(?<name>"
+            + CONDITIONAL_INSTRUCTIONS_REGEX
+            + ")(?<op>e|ne|s|ns|g|ge|l|le|a|ae|b|be))");
+
+    private static final Pattern INVALID_SUFFIX_PATTERN = Pattern.compile("(?<name>"
+            + TWO_SUFFIX_INSTRUCTIONS_REGEX // this must come before sizedInstructions
+            + "|" + ONE_SUFFIX_INSTRUCTIONS_REGEX
+            + "|" + "jmp" // this must come before conditionalInstructions
+            + "|" + CONDITIONAL_INSTRUCTIONS_REGEX
+            + ")"
+            + "(?<suffix>\\p{Alpha}+)");
+
+    private static final Pattern QUAD_ONLY_INSTRUCTION_PATTERN = Pattern.compile(QUAD_ONLY_INSTRUCTIONS_REGEX);
+    private static final Pattern ONE_SUFFIX_INSTRUCTION_PATTERN = Pattern.compile(ONE_SUFFIX_INSTRUCTIONS_REGEX);
+    private static final Pattern TWO_SUFFIX_INSTRUCTION_PATTERN = Pattern.compile(TWO_SUFFIX_INSTRUCTIONS_REGEX);
+    private static final Pattern CONDITIONAL_INSTRUCTION_PREFIX_PATTERN = Pattern.compile(CONDITIONAL_INSTRUCTIONS_REGEX);
+    private static final Pattern TWO_SIZES_PATTERN = Pattern.compile("[bwlq][bwlq]");
+
+    private static final Pattern COMMENT_LINE_PATTERN = Pattern.compile("(?<other>[^#]*)(?<comment>#.*)");
+    private static final Pattern BLANK_LINE_PATTERN = Pattern.compile("\\s*");
+    private static final Pattern INSTRUCTION_LINE_PATTERN = Pattern.compile("\\s*(?<inst>\\p{Alpha}+)(\\s+(?<operands>.*))?");
+    private static final Pattern LABEL_LINE_PATTERN = Pattern.compile("\\s*" + LABEL_OPERAND_REGEX + ":\\s*");
 
     /**
      * The line number that will be given to the next parsed line.
@@ -85,7 +153,30 @@ public class X86Parser {
      */
     private OperandGetter operandGetter;
 
-    public X86Parser(){
+    /*
+     * Matchers for the patterns above, which are reset with each string they
+     * are used on (so parsing doesn't create new ones). Methods that call
+     * each other use different matchers, so that a method can't clobber a
+     * match its caller is still using.
+     */
+    private final Matcher sizedInstrMatcher = SIZED_INSTRUCTION_PATTERN.matcher("");
+    private final Matcher twoSizedInstrMatcher = TWO_SIZED_INSTRUCTION_PATTERN.matcher("");
+    private final Matcher condInstrMatcher = CONDITIONAL_INSTRUCTION_PATTERN.matcher("");
+    private final Matcher invalidSuffixMatcher = INVALID_SUFFIX_PATTERN.matcher("");
+    private final Matcher instrPrefixMatcher = QUAD_ONLY_INSTRUCTION_PATTERN.matcher("");
+    private final Matcher constOperandMatcher = CONST_OPERAND_PATTERN.matcher("");
+    private final Matcher regOperandMatcher = REGISTER_OPERAND_PATTERN.matcher("");
+    private final Matcher memOperandMatcher = MEM_OPERAND_PATTERN.matcher("");
+    private final Matcher labelOperandMatcher = LABEL_OPERAND_PATTERN.matcher("");
+    private final Matcher regNameMatcher = ALL_REG_PATTERN.matcher("");
+    private final Matcher firstOperandMatcher = FIRST_OPERAND_PATTERN.matcher("");
+    private final Matcher nextOperandMatcher = NEXT_OPERAND_PATTERN.matcher("");
+    private final Matcher commentLineMatcher = COMMENT_LINE_PATTERN.matcher("");
+    private final Matcher blankLineMatcher = BLANK_LINE_PATTERN.matcher("");
+    private final Matcher instLineMatcher = INSTRUCTION_LINE_PATTERN.matcher("");
+    private final Matcher labelLineMatcher = LABEL_LINE_PATTERN.matcher("");
+
+    public RegexX86Parser(){
         this.currLineNum = 0;
         this.labelFromName = new HashMap<>();
         this.labelUsersFromName = new HashMap<>();
@@ -120,53 +211,18 @@ public class X86Parser {
         InstructionType type;
         OpSize size;
         List<OpSize> opSizes = new ArrayList<>();
-        
-        /* 
-         * "sized" instructions are those that have an instruction name (e.g.
-         * "add") followed by a single character suffix to indicate the size
-         * (e.g. "q").
-         */
-        String validSizedInstrNames = "(?<name>" 
-                + ONE_SUFFIX_INSTRUCTIONS_REGEX 
-                + ")(?<size>b|w|l|q)";
-        Matcher sizedInstrMatcher = Pattern.compile(validSizedInstrNames).matcher(instrName);
-        
-        /*
-         * "two sizes" instructions are those that have an instruction name followed
-         * by two characters that indicate the size of two operands (e.g. "bl")
-         */
-        String validTwoSizedInstrNames = "(?<name>" 
-                + TWO_SUFFIX_INSTRUCTIONS_REGEX
-                + ")(?<suffices>b[wlq]|w[lq]|lq)";
-        Matcher twoSizedInstrMatcher = Pattern.compile(validTwoSizedInstrNames).matcher(instrName);
-
-        /*
-         * "conditional" instructions are those whose operations are determined
-         * by the status flags (e.g. the overflow flag).
-         * Their suffix isn't a size, rather it is the condition to check for
-         * (e.g. "ge" for "greater than or equal")
-         * The "size" of these instructions is implicit (e.g. byte for SET).
-         */
-        String validConditionalInstrName = "(jmp|(?<name>" 
-                + CONDITIONAL_INSTRUCTIONS_REGEX 
-                + ")(?<op>e|ne|s|ns|g|ge|l|le|a|ae|b|be))";
-        Matcher condInstrMatcher = Pattern.compile(validConditionalInstrName).matcher(instrName);
-        
-        String invalidSuffix = "(?<name>"
-                + TWO_SUFFIX_INSTRUCTIONS_REGEX // this must come before sizedInstructions
-                + "|" + ONE_SUFFIX_INSTRUCTIONS_REGEX
-                + "|" + "jmp" // this must come before conditionalInstructions
-                + "|" + CONDITIONAL_INSTRUCTIONS_REGEX
-                + ")"
-                + "(?<suffix>\\p{Alpha}+)";
-        Matcher invalidSuffixMatcher = Pattern.compile(invalidSuffix).matcher(instrName);
-
-        String quadOnlyInstructions = "lea|push|pop|call|ret|clt";
+
+        sizedInstrMatcher.reset(instrName);
+        twoSizedInstrMatcher.reset(instrName);
+        condInstrMatcher.reset(instrName);
+        invalidSuffixMatcher.reset(instrName);
+
         if (sizedInstrMatcher.matches()) {
             type = InstructionType.valueOf(sizedInstrMatcher.group("name").toUpperCase());
 
             // some instructions can only be quad sized so check for that first
-            if (sizedInstrMatcher.group("name").matches("(" + quadOnlyInstructions + ")")
+            if (matchesRegion(QUAD_ONLY_INSTRUCTION_PATTERN, instrName,
+                    sizedInstrMatcher.start("name"), sizedInstrMatcher.end("name"))
                     && !sizedInstrMatcher.group("size").equals("q")) {
                 throw new X86ParsingException("Invalid suffix. Must be q.",
                         sizedInstrMatcher.start("size"),
@@ -212,24 +268,26 @@ public class X86Parser {
         } else if (invalidSuffixMatcher.matches()) {
             String errorMessage = "Invalid suffix.";
             
-            if (instrName.matches("^(" + quadOnlyInstructions + ").*")) {
+            int suffixStart = invalidSuffixMatcher.start("suffix");
+            if (startsWith(QUAD_ONLY_INSTRUCTION_PATTERN, instrName)) {
                 errorMessage += " Must be q.";
             }
-            else if (instrName.matches("^(" + ONE_SUFFIX_INSTRUCTIONS_REGEX + ")"
-                    + invalidSuffixMatcher.group("suffix"))) {
+            else if (matchesRegion(ONE_SUFFIX_INSTRUCTION_PATTERN, instrName, 0, suffixStart)) {
+                // i.e. the name is a one suffix instruction followed by the
+                // invalid suffix
                 errorMessage += " Need one suffix: b, w, l, or q";
             }
-            else if (instrName.matches("^(" + TWO_SUFFIX_INSTRUCTIONS_REGEX + ").*")) {     
+            else if (startsWith(TWO_SUFFIX_INSTRUCTION_PATTERN, instrName)) {
                 // Identify scenario when individual suffices are correct but their
                 // ordering is invalid.
-                if (invalidSuffixMatcher.group("suffix").matches("[bwlq][bwlq]")) {
+                if (matchesRegion(TWO_SIZES_PATTERN, instrName, suffixStart, instrName.length())) {
                     errorMessage += " First suffix size must be < second.";
                 }
                 else {
                     errorMessage += " Need two suffices: b, w, l, or q";
                 }
             }
-            else if (instrName.matches("^(" + CONDITIONAL_INSTRUCTIONS_REGEX + ").*")) {
+            else if (startsWith(CONDITIONAL_INSTRUCTION_PREFIX_PATTERN, instrName)) {
                 errorMessage += " Need one suffix: e, ne, s, ns, g, ge, l, le, a, ae, b, or be";
             }
             else if (instrName.startsWith("jmp")) {
@@ -237,7 +295,7 @@ public class X86Parser {
             }
             
             throw new X86ParsingException(errorMessage,
-                            invalidSuffixMatcher.start("suffix"),
+                            suffixStart,
                             instrName.length());
         } else {
             Optional<String> intendedInstruction = getProbableInstruction(instrName);
@@ -256,6 +314,23 @@ public class X86Parser {
         List<OperandRequirements> opReqs = getOperandReqs(type, opSizes);
         return Optional.of(new TypeAndOpRequirements(type, size, opReqs));
     }
+
+    /**
+     * @return True if the part of str from start to end matches the given
+     * pattern (which is matched using the parser's instrPrefixMatcher).
+     */
+    private boolean matchesRegion(Pattern pattern, String str, int start, int end) {
+        return instrPrefixMatcher.usePattern(pattern).reset(str)
+                .region(start, end).matches();
+    }
+
+    /**
+     * @return True if str starts with a match of the given pattern (which is
+     * matched using the parser's instrPrefixMatcher).
+     */
+    private boolean startsWith(Pattern pattern, String str) {
+        return instrPrefixMatcher.usePattern(pattern).reset(str).lookingAt();
+    }
     
     private static Optional<String> getProbableRegister(String actualRegister) {
         return getMostSimilarString(ALL_REG_REGEX, actualRegister, 0.8);
@@ -279,6 +354,11 @@ public class X86Parser {
                                                             double minAcceptableSimilarity) {
         Generex g = new Generex(validStrings);
         List<String> matchedStrs = g.getAllMatchedStrings();
+
+        // Generex lists the strings in no fixed order, so sort them to
+        // suggest the first of the most similar ones in alphabetical order,
+        // as X86Parser does.
+        Collections.sort(matchedStrs);
         
         JaroWinkler jw = new JaroWinkler();
         double maxSimilarity = 0.0;
@@ -305,13 +385,13 @@ public class X86Parser {
      */
     public static OpSize getRegisterSize(String name) throws X86ParsingException {
         OpSize opSize = OpSize.BYTE;
-        if (name.matches(LONG_REG_REGEX)) {
+        if (LONG_REG_PATTERN.matcher(name).matches()) {
             opSize = OpSize.LONG;
-        } else if (name.matches(QUAD_REG_REGEX)) {
+        } else if (QUAD_REG_PATTERN.matcher(name).matches()) {
             opSize = OpSize.QUAD;
-        } else if (name.matches(WORD_REG_REGEX)) {
+        } else if (WORD_REG_PATTERN.matcher(name).matches()) {
             opSize = OpSize.WORD;
-        } else if (name.matches(BYTE_REG_REGEX)) {
+        } else if (BYTE_REG_PATTERN.matcher(name).matches()) {
             opSize = OpSize.BYTE;
         } else {
             String errorMessage = "Invalid register name.";
@@ -337,10 +417,10 @@ public class X86Parser {
             throws X86ParsingException {
         Operand op = null;
 
-        Matcher constMatcher = Pattern.compile(CONST_OPERAND_REGEX).matcher(str);
-        Matcher regMatcher = Pattern.compile(REGISTER_OPERAND_REGEX).matcher(str);
-        Matcher memMatcher = Pattern.compile(MEM_OPERAND_REGEX).matcher(str);
-        Matcher labelMatcher = Pattern.compile(LABEL_OPERAND_REGEX).matcher(str);
+        Matcher constMatcher = constOperandMatcher.reset(str);
+        Matcher regMatcher = regOperandMatcher.reset(str);
+        Matcher memMatcher = memOperandMatcher.reset(str);
+        Matcher labelMatcher = labelOperandMatcher.reset(str);
 
         if (constMatcher.matches()) {
             // Found a constant operand
@@ -462,7 +542,7 @@ public class X86Parser {
         } else if (labelMatcher.matches()) {
             // Found a label operand
             String labelName = labelMatcher.group("label");
-            if (labelName.matches(ALL_REG_REGEX))
+            if (regNameMatcher.reset(labelName).matches())
                 throw new X86ParsingException("Possibly missing % before register name.",
                                                 labelMatcher.start(), 
                                                 labelMatcher.end());
@@ -523,7 +603,7 @@ public class X86Parser {
             List<OperandRequirements> opReqs) throws X86ParsingException {
         List<Operand> operands = new ArrayList<>();
 
-        Matcher m = Pattern.compile(OPERAND_REGEX).matcher(operandsStr);
+        Matcher m = firstOperandMatcher.reset(operandsStr);
         if (!m.find()) {
             return operands;
         }
@@ -549,7 +629,7 @@ public class X86Parser {
 
             // Update pattern to include the comma separator for the following
             // operands
-            m = Pattern.compile("," + OPERAND_REGEX).matcher(operandsStr);
+            m = nextOperandMatcher.reset(operandsStr);
 
             // Keep parsing operands until we don't find any more
             while (m.find(nextIndex)) {
@@ -589,7 +669,7 @@ public class X86Parser {
      * @throws X86ParsingException There was a problem parsing the line.
      */
     public x86ProgramLine parseLine(String instr) throws X86ParsingException {
-        Matcher commentMatcher = Pattern.compile("(?<other>[^#]*)(?<comment>#.*)").matcher(instr);
+        Matcher commentMatcher = commentLineMatcher.reset(instr);
         
         x86Comment c = null;
         if (commentMatcher.matches()){
@@ -599,12 +679,12 @@ public class X86Parser {
             instr = commentMatcher.group("other");
         }
         
-        if(instr.matches("\\s*")){
+        if(blankLineMatcher.reset(instr).matches()){
             return new x86BlankLine(currLineNum++, c);
         }
         
-        Matcher instMatcher = Pattern.compile("\\s*(?<inst>\\p{Alpha}+)(\\s+(?<operands>.*))?").matcher(instr);
-        Matcher labelMatcher = Pattern.compile("\\s*" + LABEL_OPERAND_REGEX + ":\\s*").matcher(instr);
+        Matcher instMatcher = instLineMatcher.reset(instr);
+        Matcher labelMatcher = labelLineMatcher.reset(instr);
         
         // The line should be either a label or an instruction
         if (!instMatcher.matches() && !labelMatcher.matches()) {
@@ -743,7 +823,7 @@ public class X86Parser {
             // This line contains a label
             String labelName = labelMatcher.group("label");
             
-            if (labelName.matches(ALL_REG_REGEX))
+            if (regNameMatcher.reset(labelName).matches())
                 throw new X86ParsingException("Label name should not be a register name", 
                                                 labelMatcher.start("label"), 
                                                 labelMatcher.end("label"));
@@ -926,43 +1006,3 @@ public class X86Parser {
         return opReqs;
     }
 }
-
-/**
- * A class representing the requirements for an operand.
- */
-class OperandRequirements {
-
-    private final OpSize size;
-    private final boolean canBeConst;
-    private final boolean canBeReg;
-    private final boolean canBeMem;
-    private final boolean canBeLabel;
-
-    public OperandRequirements(OpSize size, boolean con, boolean reg, boolean mem, boolean lab) {
-        this.size = size;
-        this.canBeConst = con;
-        this.canBeReg = reg;
-        this.canBeMem = mem;
-        this.canBeLabel = lab;
-    }
-
-    public OpSize getSize() {
-        return this.size;
-    }
-
-    public boolean canBeConst() {
-        return this.canBeConst;
-    }
-
-    public boolean canBeReg() {
-        return this.canBeReg;
-    }
-
-    public boolean canBeMem() {
-        return this.canBeMem;
-    }
-
-    public boolean canBeLabel() {
-        return this.canBeLabel;
-    }
-}
\ No newline at end of file
@@ -0,0 +1,295 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for running a Simulation.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class SimulationTest {
+
+    private static Simulation simulationOf(String... lines) throws Exception {
+        Simulation sim = new Simulation();
+        for (String line : lines) {
+            sim.appendToProgram(line);
+        }
+        sim.restart();
+        return sim;
+    }
+
+    /**
+     * @return The value and origin of each of the simulation's registers.
+     */
+    private static String registersOf(Simulation sim) {
+        StringBuilder sb = new StringBuilder();
+        for (Register reg : sim.getRegisters()) {
+            sb.append(reg.getName()).append('=').append(reg.getSubValue(8, 1, false))
+                    .append('@').append(reg.getOrigin()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The names of the registers that have been used, most recently
+     * used first.
+     */
+    private static String usedRegistersOf(Simulation sim) {
+        List<Register> regs = new ArrayList<>(sim.getRegisters());
+        regs.sort(Register.comparator);
+        StringBuilder sb = new StringBuilder();
+        for (Register reg : regs) {
+            if (reg.getProminence() >= 0) {
+                sb.append(reg.getName()).append('/')
+                        .append(reg.getProminence()).append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRunFinished() throws Exception {
+        System.out.println("runFinished");
+        Simulation sim = simulationOf("movq $1, %rax", "addq %rax, %rax",
+                "pushq %rax");
+        RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.FINISHED, result.getStatus());
+        assertEquals(3, result.getInstructionsExecuted());
+        assertTrue(sim.isFinished());
+    }
+
+    @Test
+    public void testRunInstructionBudget() throws Exception {
+        System.out.println("runInstructionBudget");
+        Simulation sim = simulationOf("loop:", "incq %rax", "jmp loop");
+        RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.BUDGET_EXHAUSTED, result.getStatus());
+        assertEquals(1000, result.getInstructionsExecuted());
+    }
+
+    @Test
+    public void testRunTimeBudget() throws Exception {
+        System.out.println("runTimeBudget");
+        Simulation sim = simulationOf("loop:", "incq %rax", "jmp loop");
+        RunResult result = sim.run(Long.MAX_VALUE, 10000000, new CancellationToken());
+        assertEquals(RunResult.Status.BUDGET_EXHAUSTED, result.getStatus());
+        assertTrue(result.getInstructionsExecuted() > 0);
+    }
+
+    @Test
+    public void testRunCancelled() throws Exception {
+        System.out.println("runCancelled");
+        Simulation sim = simulationOf("loop:", "incq %rax", "jmp loop");
+        CancellationToken token = new CancellationToken();
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+            }
+            token.cancel();
+        });
+        canceller.start();
+        RunResult result = sim.run(Long.MAX_VALUE, Long.MAX_VALUE, token);
+        canceller.join();
+        assertEquals(RunResult.Status.CANCELLED, result.getStatus());
+        assertFalse(sim.isFinished());
+    }
+
+    @Test
+    public void testRunBreakpoint() throws Exception {
+        System.out.println("runBreakpoint");
+        Simulation sim = simulationOf("movq $1, %rax", "movq $2, %rax",
+                "movq $3, %rax");
+        sim.getProgramLines().get(1).toggleBreakpoint();
+        RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.BREAKPOINT, result.getStatus());
+        assertEquals(1, result.getInstructionsExecuted());
+
+        // A run that starts on the breakpoint goes past it.
+        result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.FINISHED, result.getStatus());
+        assertEquals(2, result.getInstructionsExecuted());
+    }
+
+    @Test
+    public void testSkipNonInstructions() throws Exception {
+        System.out.println("skipNonInstructions");
+        Simulation sim = simulationOf("# counts to 3", "main:", "loop:",
+                "incq %rax", "", "cmpq $3, %rax", "jl loop");
+        sim.setSkipNonInstructions(true);
+        assertEquals(3, sim.getCurrentLine().getLineNum());
+
+        sim.getProgramLines().get(2).toggleBreakpoint();
+        RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.BREAKPOINT, result.getStatus());
+        assertEquals(3, result.getInstructionsExecuted());
+        assertEquals(3, sim.getCurrentLine().getLineNum());
+
+        sim.getProgramLines().get(2).toggleBreakpoint();
+        result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.FINISHED, result.getStatus());
+        assertEquals(6, result.getInstructionsExecuted());
+
+        for (int i = 0; i < 9; i++) {
+            sim.stepBackward();
+        }
+        assertTrue(sim.isAtBeginning());
+        assertEquals(3, sim.getCurrentLine().getLineNum());
+    }
+
+    @Test
+    public void testRunWithoutHistory() throws Exception {
+        System.out.println("runWithoutHistory");
+        String[] lines = {"loop:", "movq %rax, %rbx", "addq $2, %rbx",
+            "incq %rax", "cmpq $1000, %rax", "jl loop", "movq $1, %rcx"};
+        Simulation expected = simulationOf(lines);
+        Simulation sim = simulationOf(lines);
+        sim.useNoHistory();
+        assertTrue(sim.isAtBeginning());
+
+        // the budget runs out in the middle of a fused pair
+        RunResult result = sim.run(301, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.BUDGET_EXHAUSTED, result.getStatus());
+        assertEquals(301, result.getInstructionsExecuted());
+        expected.run(301, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(registersOf(expected), registersOf(sim));
+
+        // breakpoints stop in the middle of a fused pair
+        sim.getProgramLines().get(5).toggleBreakpoint();
+        result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.BREAKPOINT, result.getStatus());
+        assertEquals(5, sim.getCurrentLine().getLineNum());
+        sim.getProgramLines().get(5).toggleBreakpoint();
+
+        result = sim.run(Long.MAX_VALUE, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.FINISHED, result.getStatus());
+        assertFalse(sim.isAtBeginning());
+        assertTrue(registersOf(sim).contains("rax=1000@3"));
+        assertTrue(registersOf(sim).contains("rbx=1001@2"));
+
+        // there is nothing to step back to
+        sim.stepBackward();
+        assertTrue(sim.isFinished());
+        assertTrue(registersOf(sim).contains("rax=1000@3"));
+    }
+
+    @Test
+    public void testRunError() throws Exception {
+        System.out.println("runError");
+        Simulation sim = simulationOf("movq $1, %rax", "movq (%rsp), %rax");
+        RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+        assertEquals(RunResult.Status.ERROR, result.getStatus());
+        assertEquals(1, result.getInstructionsExecuted());
+        assertTrue(result.getError().isPresent());
+        assertTrue(sim.getStuckOnError());
+    }
+
+    @Test
+    public void testChangeProgramWithCheckpointHistory() throws Exception {
+        System.out.println("changeProgramWithCheckpointHistory");
+        Simulation sim = simulationOf("movq $1, %rax", "addq $2, %rax",
+                "addq $3, %rax", "addq $4, %rax");
+        sim.useCheckpointHistory(1 << 20, 1000000);
+        sim.stepForward();
+        sim.stepForward();
+        sim.replaceInProgram(sim.getProgramLines().get(0), "movq $100, %rax");
+
+        // Stepping back can't re-execute the old program, so it stops at the
+        // change rather than going back to states the new program never had.
+        assertTrue(sim.isAtBeginning());
+        sim.stepForward();
+        assertTrue(registersOf(sim).contains("rax=6@"));
+        sim.stepBackward();
+        assertTrue(registersOf(sim), registersOf(sim).contains("rax=3@"));
+        assertTrue(sim.isAtBeginning());
+        assertEquals(2, sim.getCurrentLine().getLineNum());
+    }
+
+    @Test
+    public void testRunDivideByZero() throws Exception {
+        System.out.println("runDivideByZero");
+        String[] program = {"movq $9, %rax", "movq $0, %rcx", "idivq %rcx"};
+        for (int history = 0; history < 3; history++) {
+            Simulation sim = simulationOf(program);
+            if (history == 1) {
+                sim.useNoHistory();
+            } else if (history == 2) {
+                sim.useCheckpointHistory(1 << 20, 1000000);
+            }
+            RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+            assertEquals(RunResult.Status.ERROR, result.getStatus());
+            assertEquals(2, result.getInstructionsExecuted());
+            assertEquals("Division by zero", result.getError().get().getMessage());
+            assertTrue(sim.getStuckOnError());
+        }
+    }
+
+    @Test
+    public void testRunDivideNegative() throws Exception {
+        System.out.println("runDivideNegative");
+        // -7 / 2 and -7 / -2: the quotient is rounded toward zero and the
+        // remainder has the sign of the dividend
+        for (String divisor : new String[] {"2", "-2"}) {
+            Simulation sim = simulationOf("movq $-7, %rax", "movq $-1, %rdx",
+                    "movq $" + divisor + ", %rcx", "idivq %rcx");
+            RunResult result = sim.run(1000, Long.MAX_VALUE, new CancellationToken());
+            assertEquals(RunResult.Status.FINISHED, result.getStatus());
+            long quotient = divisor.equals("2") ? -3 : 3;
+            assertTrue(registersOf(sim), registersOf(sim).contains(
+                    "rax=" + Long.toUnsignedString(quotient) + "@"));
+            assertTrue(registersOf(sim), registersOf(sim).contains(
+                    "rdx=" + Long.toUnsignedString(-1) + "@"));
+        }
+    }
+
+    @Test
+    public void testUsedRegisters() throws Exception {
+        System.out.println("usedRegisters");
+        String[] lines = {"movq $3, %rcx", "loop:", "movq %rcx, %rdx",
+            "addq %rdx, %rax", "decq %rcx", "cmpq $0, %rcx", "jg loop",
+            "movq %rax, %rbx"};
+        Simulation sim = simulationOf(lines);
+        assertEquals("rcx/0 ", usedRegistersOf(sim));
+        sim.stepForward();
+        sim.stepForward();
+        assertEquals("rcx/0 rdx/0 ", usedRegistersOf(sim));
+        sim.stepForward();
+        assertEquals("rax/1 rdx/1 rcx/0 ", usedRegistersOf(sim));
+
+        for (int history = 0; history < 2; history++) {
+            sim = simulationOf(lines);
+            if (history == 1) {
+                sim.useCheckpointHistory(1 << 20, 1000000);
+            }
+            List<String> used = new ArrayList<>();
+            while (!sim.isFinished()) {
+                used.add(usedRegistersOf(sim));
+                sim.stepForward();
+            }
+            assertEquals("rax/2 rbx/2 rcx/1 rdx/0 ", usedRegistersOf(sim));
+
+            // Stepping back goes back to exactly the registers used then.
+            for (int i = used.size() - 1; i >= 0; i--) {
+                sim.stepBackward();
+                assertEquals("step " + i, used.get(i), usedRegistersOf(sim));
+            }
+            assertTrue(sim.isAtBeginning());
+        }
+
+        // Running in batches (fused pairs and compiled blocks) uses the same
+        // registers as stepping through each instruction.
+        lines[0] = "movq $300, %rcx";
+        Simulation stepped = simulationOf(lines);
+        Simulation batched = simulationOf(lines);
+        batched.useNoHistory();
+        batched.setCompileHotBlocks(true);
+        for (int n = 1; !stepped.isFinished(); n += 7) {
+            stepped.run(n, Long.MAX_VALUE, new CancellationToken());
+            batched.run(n, Long.MAX_VALUE, new CancellationToken());
+            assertEquals(usedRegistersOf(stepped), usedRegistersOf(batched));
+        }
+    }
+}
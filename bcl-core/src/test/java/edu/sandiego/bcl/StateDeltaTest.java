@@ -0,0 +1,119 @@
+package edu.sandiego.bcl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for StateDelta: undoing the changes of each instruction should
+ * give back exactly the state from before it was executed.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class StateDeltaTest {
+
+    private static final String[] PROGRAM = {
+        "movq $-1, %rax",
+        "pushq %rax",
+        "pushq %rax",
+        "movb $0, 9(%rsp)",
+        "movw %ax, 2(%rsp)",
+        "subq $32, %rsp",
+        "movl $7, 4(%rsp)",
+        "movq %rsp, %rbx",
+        "addq $40, %rsp",
+        "incl %eax",
+        "popq %rcx",
+        "cmpq %rcx, %rbx",
+        "addq $-16, %rsp",
+        "movq $5, (%rsp)"
+    };
+
+    /**
+     * Asserts that two states are indistinguishable.
+     */
+    private static void assertSameState(String msg, MachineState expected,
+            MachineState actual) {
+        assertEquals(msg, expected.toString(), actual.toString());
+        assertEquals(msg, expected.getStatusFlags(), actual.getStatusFlags());
+        assertEquals(msg, expected.getRipRegister(), actual.getRipRegister());
+        assertEquals(msg, expected.getCallStackSize(), actual.getCallStackSize());
+
+        List<Register> expectedRegs = expected.getRegisters();
+        List<Register> actualRegs = actual.getRegisters();
+        for (int i = 0; i < expectedRegs.size(); i++) {
+            assertEquals(msg, expectedRegs.get(i).getOrigin(),
+                    actualRegs.get(i).getOrigin());
+        }
+
+        List<StackEntry> expectedEntries = expected.getStackEntries();
+        List<StackEntry> actualEntries = actual.getStackEntries();
+        assertEquals(msg, expectedEntries.size(), actualEntries.size());
+        for (int i = 0; i < expectedEntries.size(); i++) {
+            assertEquals(msg, expectedEntries.get(i).getStartAddress(),
+                    actualEntries.get(i).getStartAddress());
+            assertEquals(msg, expectedEntries.get(i).getEndAddress(),
+                    actualEntries.get(i).getEndAddress());
+            assertEquals(msg, expectedEntries.get(i).getOrigin(),
+                    actualEntries.get(i).getOrigin());
+        }
+    }
+
+    @Test
+    public void testUndo() throws Exception {
+        System.out.println("undo");
+        X86Parser parser = new X86Parser();
+        List<MachineState> states = new ArrayList<>();
+        List<StateDelta> deltas = new ArrayList<>();
+
+        MachineState state = new MachineState();
+        states.add(state);
+        for (String line : PROGRAM) {
+            MachineState next = parser.parseLine(line).eval(state);
+            deltas.add(StateDelta.between(state, next));
+            states.add(next);
+            state = next;
+        }
+
+        for (int i = deltas.size() - 1; i >= 0; i--) {
+            state = deltas.get(i).undo(state);
+            assertSameState("undo of " + PROGRAM[i], states.get(i), state);
+        }
+    }
+
+    @Test
+    public void testUndoDecoded() throws Exception {
+        System.out.println("undoDecoded");
+        x86Program program = new x86Program();
+        for (String line : PROGRAM) {
+            program.parseThenAddLine(line);
+        }
+        DecodedProgram image = DecodedProgram.compile(program);
+        List<MachineState> states = new ArrayList<>();
+        List<StateDelta> deltas = new ArrayList<>();
+
+        MachineState state = new MachineState();
+        states.add(state);
+        while (!image.isFinished(state)) {
+            MachineState next = image.step(state);
+            deltas.add(StateDelta.between(state, next));
+            states.add(next);
+            state = next;
+        }
+
+        for (int i = deltas.size() - 1; i >= 0; i--) {
+            state = deltas.get(i).undo(state);
+            assertSameState("undo of " + PROGRAM[i], states.get(i), state);
+        }
+    }
+
+    @Test
+    public void testNoChanges() throws Exception {
+        System.out.println("noChanges");
+        MachineState state = new MachineState();
+        MachineState next = state.cloneWithIncrementedRIP();
+        assertSameState("undo of rip increment", state,
+                StateDelta.between(state, next).undo(next));
+    }
+}
@@ -0,0 +1,92 @@
+package edu.sandiego.bcl;
+
+import info.debatty.java.stringsimilarity.JaroWinkler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for SuggestionIndex: skipping names by their length should
+ * never change which name is suggested.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class SuggestionIndexTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "rax", "eax", "ax", "al", "ah", "rsp", "esp", "sp", "spl",
+            "r8", "r8d", "r8w", "r8b", "r15", "r15d", "r15w", "r15b",
+            "addq", "addl", "subq", "movq", "movzbw", "movzbl", "movsbq",
+            "jmp", "je", "jne", "jge", "cmovge", "setae", "pushq", "popq");
+
+    /**
+     * @return The most similar name, looking at every one, in alphabetical
+     * order.
+     */
+    private static Optional<String> getMostSimilar(String name, double minSimilarity) {
+        List<String> sortedNames = new ArrayList<>(NAMES);
+        Collections.sort(sortedNames);
+
+        JaroWinkler jw = new JaroWinkler();
+        double maxSimilarity = 0.0;
+        Optional<String> mostSimilar = Optional.empty();
+        for (String s : sortedNames) {
+            double similarity = jw.similarity(s, name);
+            if (similarity > minSimilarity && similarity > maxSimilarity) {
+                mostSimilar = Optional.of(s);
+                maxSimilarity = similarity;
+            }
+        }
+        return mostSimilar;
+    }
+
+    @Test
+    public void testGetMostSimilar() {
+        SuggestionIndex index = new SuggestionIndex(NAMES, 0.8);
+        assertEquals(Optional.of("rax"), index.getMostSimilar("raxx"));
+        assertEquals(Optional.of("movzbl"), index.getMostSimilar("movzbll"));
+        assertEquals(Optional.of("jge"), index.getMostSimilar("jge"));
+        assertEquals(Optional.empty(), index.getMostSimilar("xyz"));
+        assertEquals(Optional.empty(), index.getMostSimilar(""));
+    }
+
+    @Test
+    public void testGetMostSimilarMatchesLookingAtAll() {
+        String alphabet = "abdeglmopqrsvwxz18";
+        Random random = new Random(42);
+        for (double minSimilarity : new double[] {0.0, 0.5, 0.8}) {
+            SuggestionIndex index = new SuggestionIndex(NAMES, minSimilarity);
+            for (int i = 0; i < 5000; i++) {
+                StringBuilder name = new StringBuilder();
+                int length = 1 + random.nextInt(8);
+                for (int j = 0; j < length; j++) {
+                    name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                assertEquals(name.toString(),
+                        getMostSimilar(name.toString(), minSimilarity),
+                        index.getMostSimilar(name.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void testGetMaxSimilarity() {
+        JaroWinkler jw = new JaroWinkler();
+        for (String name1 : NAMES) {
+            for (String name2 : NAMES) {
+                for (String other : Arrays.asList(name2, name1 + name2, name1.substring(1))) {
+                    if (other.isEmpty() || other.equals(name1)) {
+                        continue;
+                    }
+                    assertTrue(name1 + " " + other, jw.similarity(name1, other)
+                            <= SuggestionIndex.getMaxSimilarity(name1.length(), other.length()) + 1e-6);
+                }
+            }
+        }
+    }
+}
@@ -6,7 +6,12 @@
 package edu.sandiego.bcl;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Scanner;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -137,5 +142,75 @@ public class X86ParserTest {
         System.out.println(result.get().toString());
         assertEquals("1: main:", result.get().toString());
     }
-    
+
+    /**
+     * Checks that parseLine gives the same results (lines or errors, with
+     * the same indices) as the regular expression based parser it replaced,
+     * on the test programs and on variations of their lines with characters
+     * removed, added or changed.
+     */
+    @Test
+    public void testParseLineMatchesRegexParser() throws Exception {
+        System.out.println("parseLine (vs. regex parser)");
+        List<String> lines = new ArrayList<>();
+        for (String file : new String[] {"all-instructions.s", "labels.s",
+                "comments.s", "invalid-instructions.s"}) {
+            lines.addAll(Files.readAllLines(Paths.get("src/test/resources", file)));
+        }
+
+        X86Parser instance = new X86Parser();
+        RegexX86Parser reference = new RegexX86Parser();
+        for (String line : lines) {
+            assertEquals(line, describeResult(line, reference::parseLine),
+                    describeResult(line, instance::parseLine));
+        }
+
+        // Variations of lines, using characters that mean something to the
+        // parser. Each is parsed by new parsers, so that labels can't clash.
+        String alphabet = " \t,()%$#:.-_0x9aqLr";
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder line = new StringBuilder(lines.get(random.nextInt(lines.size())));
+            int numChanges = 1 + random.nextInt(3);
+            for (int j = 0; j < numChanges; j++) {
+                int at = random.nextInt(line.length() + 1);
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        line.insert(at, c);
+                        break;
+                    case 1:
+                        if (at < line.length()) {
+                            line.deleteCharAt(at);
+                        }
+                        break;
+                    default:
+                        if (at < line.length()) {
+                            line.setCharAt(at, c);
+                        }
+                }
+            }
+            String mutant = line.toString();
+            assertEquals(mutant, describeResult(mutant, new RegexX86Parser()::parseLine),
+                    describeResult(mutant, new X86Parser()::parseLine));
+        }
+    }
+
+    private interface LineParser {
+        x86ProgramLine parseLine(String line) throws X86ParsingException;
+    }
+
+    /**
+     * @return The parsed line, or the error (with its indices), from parsing
+     * the given line with the given parser.
+     */
+    private static String describeResult(String line, LineParser parser) {
+        try {
+            return parser.parseLine(line).toString();
+        } catch (X86ParsingException e) {
+            return e.toString();
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
 }
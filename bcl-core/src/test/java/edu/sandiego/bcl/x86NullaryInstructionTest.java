@@ -5,10 +5,8 @@
  */
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -67,15 +65,15 @@ public class x86NullaryInstructionTest {
     public void testEvalCLTNeg() throws Exception {
         System.out.println("evalCLTNeg");
         
-        HashMap<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
         RegOperand mockEAX = mock(RegOperand.class);
         when(
                 mockEAX.getValue(initialState)
-        ).thenReturn(new BigInteger("-1"));
+        ).thenReturn(-1L);
         
         RegOperand mockRAX = mock(RegOperand.class);
         when(
-                mockRAX.updateState(initialState, Optional.of(new BigInteger("-1")), flags, true)
+                mockRAX.updateState(initialState, OptionalLong.of(-1), flags, true)
         ).thenReturn(finalState);
         
         when(
@@ -96,15 +94,15 @@ public class x86NullaryInstructionTest {
     public void testEvalCLTNonNeg() throws Exception {
         System.out.println("evalCLTNonNeg");
         
-        HashMap<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
         RegOperand mockEAX = mock(RegOperand.class);
         when(
                 mockEAX.getValue(initialState)
-        ).thenReturn(BigInteger.ONE);
+        ).thenReturn(1L);
         
         RegOperand mockRAX = mock(RegOperand.class);
         when(
-                mockRAX.updateState(initialState, Optional.of(BigInteger.ONE), flags, true)
+                mockRAX.updateState(initialState, OptionalLong.of(1), flags, true)
         ).thenReturn(finalState);
         
         when(
@@ -127,7 +125,7 @@ public class x86NullaryInstructionTest {
         
         // mock of top of stack returns 8 when asked for it's initial state value
         MemoryOperand mockSP = mock(MemoryOperand.class);
-        when(mockSP.getValue(initialState)).thenReturn(new BigInteger("8"));
+        when(mockSP.getValue(initialState)).thenReturn(8L);
         when(this.operandGetter.getStackPointerOperand()).thenReturn(mockSP);
         
         // intermediate state will represent state with RIP set to popped value
@@ -137,13 +135,13 @@ public class x86NullaryInstructionTest {
         
         // mock of RSP register, returns 8 when asked for its value
         RegOperand mockRSP = mock(RegOperand.class);
-        when(mockRSP.getValue(intermediateState)).thenReturn(new BigInteger("8"));
+        when(mockRSP.getValue(intermediateState)).thenReturn(8L);
         when(this.operandGetter.getRegisterOperand("rsp")).thenReturn(mockRSP);
         
         // RET should increment RSP by 8, making it 16
-        HashMap<String, Boolean> flags = new HashMap<>();
+        int flags = StatusFlags.NONE;
         when(
-                mockRSP.updateState(intermediateState, Optional.of(new BigInteger("16")), flags, false)
+                mockRSP.updateState(intermediateState, OptionalLong.of(16), flags, false)
         ).thenReturn(finalState);
         
         instruction = new x86NullaryInstruction(InstructionType.RET, OpSize.QUAD, 0, null, this.operandGetter);
@@ -0,0 +1,129 @@
+package edu.sandiego.bcl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for x86Program: loading a file, whose lines are parsed in
+ * parallel, should give the same program as parsing its lines one at a time.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class x86ProgramTest {
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutDown() {
+        pool.shutdown();
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return A program of many chunks' worth of lines, with jumps to labels
+     * before and after them (often in other chunks) and to a label that
+     * doesn't exist.
+     */
+    private static List<String> bigProgram() throws Exception {
+        List<String> instructions = Files.readAllLines(
+                Paths.get("src/test/resources/all-instructions.s"));
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lines.add("block" + i + ":  # block " + i);
+            lines.add("    jmp block" + (i + 1));
+            lines.add("    jne block" + (i / 2));
+            lines.add("");
+            for (int j = 0; j < 150; j++) {
+                lines.add("    " + instructions.get((i * 150 + j) % instructions.size()));
+            }
+            lines.add("    callq nowhere");
+        }
+        lines.add("block40:");
+        lines.add("    retq");
+        return lines;
+    }
+
+    private File write(String name, List<String> lines) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    @Test
+    public void testLoadMatchesParsingInOrder() throws Exception {
+        List<String> lines = bigProgram();
+        File file = write("big.s", lines);
+        x86Program program = pool.submit(() -> new x86Program(file)).get();
+
+        X86Parser parser = new X86Parser();
+        assertEquals(lines.size(), program.getNumLines());
+        Map<String, x86Label> labels = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            x86ProgramLine line = program.getLine(i);
+            assertEquals(parser.parseLine(lines.get(i).trim()).toString(), line.toString());
+            assertEquals(i, line.getLineNum());
+            if (line instanceof x86Label) {
+                labels.put(((x86Label) line).getName(), (x86Label) line);
+            }
+        }
+
+        // Every label operand is bound to the label in the program with its
+        // name, if there is one.
+        int numBound = 0;
+        for (x86ProgramLine line : program.getProgramLines()) {
+            if (line instanceof x86UnaryInstruction
+                    && ((x86UnaryInstruction) line).getDestination() instanceof LabelOperand) {
+                LabelOperand op = (LabelOperand) ((x86UnaryInstruction) line).getDestination();
+                if (labels.containsKey(op.getName())) {
+                    assertSame(labels.get(op.getName()), op.getLabel().get());
+                    numBound++;
+                } else {
+                    assertFalse(op.getLabel().isPresent());
+                }
+            }
+        }
+        assertEquals(2 * 40, numBound);
+
+        assertSame(program.getLine(0), program.getBeginningOfProgram());
+        program.parseThenAddLine("main:");
+        assertEquals(lines.size(), program.getBeginningOfProgram().getLineNum());
+    }
+
+    @Test
+    public void testLoadReportsFirstError() throws Exception {
+        List<String> lines = bigProgram();
+        lines.set(1000, "block3:");
+        lines.set(5000, "    movq %rax");
+        try {
+            new x86Program(write("duplicate-first.s", lines));
+            fail("X86ParsingException not thrown");
+        } catch (X86ParsingException e) {
+            assertEquals("Duplicate label name", e.getMessage());
+            assertEquals("block3:", e.getLine().get());
+        }
+
+        lines = bigProgram();
+        lines.set(1000, "    movq %rax");
+        lines.set(5000, "block3:");
+        try {
+            new x86Program(write("syntax-first.s", lines));
+            fail("X86ParsingException not thrown");
+        } catch (X86ParsingException e) {
+            assertEquals("movq should have 2 operand(s)", e.getMessage());
+            assertEquals("movq %rax", e.getLine().get());
+        }
+    }
+}
@@ -5,9 +5,8 @@
  */
 package edu.sandiego.bcl;
 
-import java.math.BigInteger;
-import java.util.HashMap;
 import java.util.Optional;
+import java.util.OptionalLong;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -33,13 +32,13 @@ public class x86UnaryInstructionTest {
     public x86UnaryInstructionTest() {
     }
     
-    private static HashMap<String, Boolean> makeFlagsMap(Optional<Boolean> zf,
+    private static int makeFlags(Optional<Boolean> zf,
             Optional<Boolean> sf, Optional<Boolean> of, Optional<Boolean> cf) {
-        HashMap<String, Boolean> flags = new HashMap<>();
-        zf.ifPresent(b -> flags.put("zf", b));
-        sf.ifPresent(b -> flags.put("sf", b));
-        of.ifPresent(b -> flags.put("of", b));
-        cf.ifPresent(b -> flags.put("cf", b));
+        int flags = StatusFlags.NONE;
+        if (zf.isPresent()) flags = StatusFlags.set(flags, StatusFlags.ZF, zf.get());
+        if (sf.isPresent()) flags = StatusFlags.set(flags, StatusFlags.SF, sf.get());
+        if (of.isPresent()) flags = StatusFlags.set(flags, StatusFlags.OF, of.get());
+        if (cf.isPresent()) flags = StatusFlags.set(flags, StatusFlags.CF, cf.get());
         return flags;
     }
     
@@ -48,34 +47,27 @@ public class x86UnaryInstructionTest {
         zeroOperand = mock(Operand.class);
         when(
                 zeroOperand.getValue(any(MachineState.class))
-        ).thenReturn(BigInteger.ZERO);
+        ).thenReturn(0L);
         
         oneOperand = mock(Operand.class);
         when(
                 oneOperand.getValue(any(MachineState.class))
-        ).thenReturn(BigInteger.ONE);
+        ).thenReturn(1L);
         
         negOneOperand = mock(Operand.class);
         when(
                 negOneOperand.getValue(any(MachineState.class))
-        ).thenReturn(new BigInteger("-1"));
-        
-        byte[] maxQuadByteArray = {(byte)0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF, 
-            (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF};
-        BigInteger maxQuadBI = new BigInteger(maxQuadByteArray);
+        ).thenReturn(-1L);
         
         maxQuadOperand = mock(Operand.class);
         when(
                 maxQuadOperand.getValue(any(MachineState.class))
-        ).thenReturn(maxQuadBI);
-        
-        byte[] minQuadByteArray = {(byte)0x80, 0, 0, 0, 0, 0, 0, 0};
-        BigInteger minQuadBI = new BigInteger(minQuadByteArray);
+        ).thenReturn(Long.MAX_VALUE);
         
         minQuadOperand = mock(Operand.class);
         when(
                 minQuadOperand.getValue(any(MachineState.class))
-        ).thenReturn(minQuadBI);
+        ).thenReturn(Long.MIN_VALUE);
         
         initialState = mock(MachineState.class);
         finalState = new MachineState();
@@ -86,10 +78,10 @@ public class x86UnaryInstructionTest {
     public void testEvalINC1() throws Exception {
         System.out.println("evalINC");
 
-        HashMap<String, Boolean> flags = makeFlagsMap(Optional.of(false), 
+        int flags = makeFlags(Optional.of(false), 
                 Optional.of(false), Optional.of(false), Optional.empty());
         when(
-                zeroOperand.updateState(initialState, Optional.of(BigInteger.ONE), flags, true)
+                zeroOperand.updateState(initialState, OptionalLong.of(1), flags, true)
         ).thenReturn(finalState);
         instruction = new x86UnaryInstruction(InstructionType.INC, zeroOperand, 
                 OpSize.QUAD, 0, null, this.operandGetter);
@@ -100,11 +92,11 @@ public class x86UnaryInstructionTest {
     public void testEvalINC2() throws Exception {
         System.out.println("evalINC2");
 
-        HashMap<String, Boolean> flags = makeFlagsMap(Optional.of(false), 
+        int flags = makeFlags(Optional.of(false), 
                 Optional.of(true), Optional.of(true), Optional.empty());
         when(
                 maxQuadOperand.updateState(initialState, 
-                        Optional.of(new BigInteger("-8000000000000000", 16)), 
+                        OptionalLong.of(Long.MIN_VALUE), 
                         flags, 
                         true)
         ).thenReturn(finalState);
@@ -118,10 +110,10 @@ public class x86UnaryInstructionTest {
     public void testEvalDEC1() throws Exception {
         System.out.println("evalDEC1");
 
-        HashMap<String, Boolean> flags = makeFlagsMap(Optional.of(true), 
+        int flags = makeFlags(Optional.of(true), 
                 Optional.of(false), Optional.of(false), Optional.empty());
         when(
-                oneOperand.updateState(initialState, Optional.of(BigInteger.ZERO), flags, true)
+                oneOperand.updateState(initialState, OptionalLong.of(0), flags, true)
         ).thenReturn(finalState);
         
         instruction = new x86UnaryInstruction(InstructionType.DEC, oneOperand,
@@ -133,11 +125,11 @@ public class x86UnaryInstructionTest {
     public void testEvalDEC2() throws Exception {
         System.out.println("evalDEC2");
 
-        HashMap<String, Boolean> flags = makeFlagsMap(Optional.of(false), 
+        int flags = makeFlags(Optional.of(false), 
                 Optional.of(false), Optional.of(true), Optional.empty());
         when(
                 minQuadOperand.updateState(initialState, 
-                        Optional.of(new BigInteger("7FFFFFFFFFFFFFFF", 16)), 
+                        OptionalLong.of(Long.MAX_VALUE), 
                         flags, 
                         true)
         ).thenReturn(finalState);
@@ -1,4 +1,4 @@
-package edu.sandiego.bcl;
+package edu.sandiego.bcl.fx;
 
 import java.io.File;
 import javafx.scene.image.Image;
@@ -8,8 +8,12 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.scene.control.Label;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.net.*;
+import edu.sandiego.bcl.*;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -19,7 +23,6 @@ import javafx.geometry.Point2D;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.TableColumn.CellDataFeatures;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.ImageView;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
@@ -36,6 +39,35 @@ import javafx.stage.Stage;
  */
 public class FXMLDocumentController implements Initializable {
 
+    /**
+     * How often (at most) a running simulation reports its progress.
+     */
+    private static final long RUN_PROGRESS_INTERVAL_NANOS = 100000000;
+
+    /**
+     * Memory budget and target step back time for the history of each
+     * simulation. Keeping history bounded allows for long runs.
+     */
+    private static final long HISTORY_MEMORY_BUDGET = 64 * 1024 * 1024;
+    private static final long HISTORY_STEP_BACK_NANOS = 5000000;
+
+    /**
+     * Executor used to run simulations in the background so the UI stays
+     * responsive.
+     */
+    private final ExecutorService simulationExecutor
+            = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "simulation");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Token used to stop the simulation that is running in the background,
+     * or null if nothing is running.
+     */
+    private CancellationToken activeRun;
+
     // Fields for the menu bar
     @FXML
     private MenuBar menuOptionsBar;
@@ -64,6 +96,8 @@ public class FXMLDocumentController implements Initializable {
     @FXML
     private MenuItem runMenuItem;
     @FXML
+    private MenuItem stopMenuItem;
+    @FXML
     private MenuItem restartMenuItem;
     @FXML
     private MenuItem helpMenuItem;
@@ -108,6 +142,8 @@ public class FXMLDocumentController implements Initializable {
     @FXML
     private Button runAllButton;
     @FXML
+    private Button stopButton;
+    @FXML
     private Button stepBackwardButton;
     @FXML
     private Button restartButton;
@@ -182,9 +218,8 @@ public class FXMLDocumentController implements Initializable {
 
         // Initialize the simulation state and create our first (blank) tab.
         simStateFromTab = new HashMap<>();
-        activeSimulation = new Simulation();
         programTabs.getTabs().remove(firstTab);
-        createTab(activeSimulation);
+        createBlankTab();
 
         Platform.runLater(() -> {
         });
@@ -214,7 +249,7 @@ public class FXMLDocumentController implements Initializable {
         saveAsMenuItem.setOnAction(this::saveFileAs);
 
         newMenuItem.setOnAction((event) -> {
-            createTab(new Simulation());
+            createBlankTab();
         });
 
         saveMenuItem.setOnAction(event -> {
@@ -306,6 +341,12 @@ public class FXMLDocumentController implements Initializable {
         runAllButton.setTooltip(new Tooltip("Run"));
         runMenuItem.setOnAction(this::runForward);
 
+        stopButton.setOnAction(this::stopRun);
+        stopButton.setDisable(true);
+        stopButton.setTooltip(new Tooltip("Stop"));
+        stopMenuItem.setOnAction(this::stopRun);
+        stopMenuItem.setDisable(true);
+
         /**
          * Event handler for "scroll back to current instruction" button.
          */
@@ -338,8 +379,10 @@ public class FXMLDocumentController implements Initializable {
 
     private void initializeRegisterTable() {
         // Initialize the register table
-        registerNameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
-        registerOriginColumn.setCellValueFactory(new PropertyValueFactory<>("origin"));
+        registerNameColumn.setCellValueFactory((CellDataFeatures<Register, String> r)
+                -> new SimpleStringProperty(r.getValue().getName()));
+        registerOriginColumn.setCellValueFactory((CellDataFeatures<Register, Integer> r)
+                -> new ReadOnlyObjectWrapper<>(r.getValue().getOrigin()));
         
         registerValueColumn.setCellValueFactory((CellDataFeatures<Register, String> r)
                 -> new SimpleStringProperty(r.getValue().getSubValue(8, registerDisplayFormat, true)));
@@ -429,8 +472,10 @@ public class FXMLDocumentController implements Initializable {
                         Long.toHexString(p.getValue().getEndAddress())
                                 .toUpperCase().replaceFirst("F{4,}", "F..F")));
 
-        valueColumn.setCellValueFactory(new PropertyValueFactory<>("value"));
-        originColumn.setCellValueFactory(new PropertyValueFactory<>("origin"));
+        valueColumn.setCellValueFactory((CellDataFeatures<StackEntry, String> p)
+                -> new SimpleStringProperty(p.getValue().getValue()));
+        originColumn.setCellValueFactory((CellDataFeatures<StackEntry, Integer> p)
+                -> new ReadOnlyObjectWrapper<>(p.getValue().getOrigin()));
 
         stackTableEntries = FXCollections.observableArrayList();
         stackTable.setItems(stackTableEntries.sorted(StackEntry.comparator));
@@ -451,33 +496,140 @@ public class FXMLDocumentController implements Initializable {
     }
 
     /**
-     * Executes instructions until it reaches the end of the program.
+     * Starts executing instructions in the background until the end of the
+     * program or a breakpoint is reached (or the run is stopped), reporting
+     * progress as it goes.
      *
      * @param event The event that triggered this action.
      */
     private void runForward(Event event) {
+        if (activeRun != null) {
+            return;
+        }
+
+        Simulation sim = activeSimulation;
+        CancellationToken token = new CancellationToken();
+        activeRun = token;
+        setRunning(true);
+        simulationExecutor.execute(() -> runInBackground(sim, token));
+    }
+
+    /**
+     * Runs the given simulation, in chunks of at most
+     * RUN_PROGRESS_INTERVAL_NANOS, publishing progress to the UI after each
+     * chunk. This is executed on the simulation executor so it must only
+     * touch the UI through Platform.runLater.
+     *
+     * @param sim The simulation to run.
+     * @param token Token used to stop the run.
+     */
+    private void runInBackground(Simulation sim, CancellationToken token) {
+        long startTime = System.nanoTime();
+        long totalExecuted = 0;
+        RunResult result = null;
+
         try {
-            while (!activeSimulation.finish()) {
-                Alert longRunningConfirmation = new Alert(AlertType.CONFIRMATION);
-                longRunningConfirmation.setTitle("Long Running Computation");
-                longRunningConfirmation.setHeaderText("Infinite Loop?");
-                longRunningConfirmation.setContentText("Your program has executed many instructions. "
-                        + "It is possible it may be stuck in an infinite loop. "
-                        + "\n\nClick OK to continue simulation, or Cancel to stop.");
-                
-                Optional<ButtonType> result = longRunningConfirmation.showAndWait();
-                if (result.isPresent() && result.get() == ButtonType.CANCEL) {
+            while (true) {
+                result = sim.run(Long.MAX_VALUE, RUN_PROGRESS_INTERVAL_NANOS, token);
+                totalExecuted += result.getInstructionsExecuted();
+                if (result.getStatus() != RunResult.Status.BUDGET_EXHAUSTED) {
                     break;
                 }
+
+                long executed = totalExecuted;
+                double perSecond = executed / ((System.nanoTime() - startTime) / 1e9);
+                int lineNum = sim.getCurrentLine().getLineNum();
+                Platform.runLater(() -> showRunProgress(executed, perSecond, lineNum));
             }
-        } catch (x86RuntimeException ex) {
-            showRuntimeErrorDialogue(ex);
+        } finally {
+            // Always give the UI back. If the run failed with an exception
+            // (i.e. a bug in the simulator rather than the program), it goes
+            // on to the thread's uncaught exception handler.
+            RunResult finalResult = (result != null
+                    && result.getStatus() != RunResult.Status.BUDGET_EXHAUSTED)
+                    ? result : null;
+            long executed = totalExecuted;
+            Platform.runLater(() -> finishRun(sim, finalResult, executed));
+        }
+    }
+
+    /**
+     * Shows the progress of the simulation running in the background.
+     */
+    private void showRunProgress(long executed, double perSecond, int lineNum) {
+        if (activeRun == null) {
+            return;
+        }
+        simStateLabel.setGraphic(null);
+        simStateLabel.setText(String.format(
+                "Running: %,d instructions (%,.0f/sec), line %d",
+                executed, perSecond, lineNum));
+    }
+
+    /**
+     * Updates the UI once a background run has stopped.
+     *
+     * @param sim The simulation that was run.
+     * @param result The result of the last part of the run, or null if the
+     * run failed with an exception.
+     * @param executed The total number of instructions executed by the run.
+     */
+    private void finishRun(Simulation sim, RunResult result, long executed) {
+        activeRun = null;
+        setRunning(false);
+        if (sim != activeSimulation) {
+            return;
+        }
+
+        if (result != null && result.getError().isPresent()) {
+            showRuntimeErrorDialogue(result.getError().get());
         }
         updateSimulatorUIElements();
+        if (result == null) {
+            simStateLabel.setText(String.format(
+                    "Stopped by an internal error after %,d instructions",
+                    executed));
+        } else if (result.getStatus() == RunResult.Status.CANCELLED) {
+            simStateLabel.setText(String.format(
+                    "Stopped after %,d instructions", executed));
+        }
+    }
+
+    /**
+     * Stops the simulation that is running in the background.
+     *
+     * @param event The event that triggered this action.
+     */
+    private void stopRun(Event event) {
+        if (activeRun != null) {
+            activeRun.cancel();
+        }
+    }
+
+    /**
+     * Enables or disables the parts of the UI that can't be used while a
+     * simulation is running in the background (i.e. anything that reads or
+     * changes a simulation).
+     *
+     * @param running Whether a simulation is running.
+     */
+    private void setRunning(boolean running) {
+        stopButton.setDisable(!running);
+        stopMenuItem.setDisable(!running);
+        programTabs.setDisable(running);
+        newLineEntry.setDisable(running);
+        newMenuItem.setDisable(running);
+        loadMenuItem.setDisable(running);
+        closeTabMenuItem.setDisable(running);
+        forwardMenuItem.setDisable(running);
+        backwardMenuItem.setDisable(running);
+        runMenuItem.setDisable(running);
+        restartMenuItem.setDisable(running);
+        updateSimulationControls();
     }
 
     private void showRuntimeErrorDialogue(x86RuntimeException e){
-        simStateLabel.setText("Line " + activeSimulation.getCurrentLine().lineNum + ": " + e.getMessage());
+        simStateLabel.setText("Line " + activeSimulation.getCurrentLine().getLineNum() + ": " + e.getMessage());
             ImageView completePic = new ImageView(
                     new Image(this.getClass().getResourceAsStream("/images/error.png")));
             completePic.setFitHeight(16);
@@ -519,6 +671,14 @@ public class FXMLDocumentController implements Initializable {
      * 
      */
     private void updateSimulationControls() {
+        if (activeRun != null) {
+            stepForwardButton.setDisable(true);
+            runAllButton.setDisable(true);
+            jumpToCurrentButton.setDisable(true);
+            stepBackwardButton.setDisable(true);
+            restartButton.setDisable(true);
+            return;
+        }
         stepForwardButton.setDisable(activeSimulation.isFinished());
         runAllButton.setDisable(activeSimulation.isFinished());
         jumpToCurrentButton.setDisable(activeSimulation.getProgramLines().isEmpty() || activeSimulation.isFinished());
@@ -659,10 +819,17 @@ public class FXMLDocumentController implements Initializable {
                 programTabs.getSelectionModel().select(openTab.get());
             } else {
                 try {
-                    Simulation newSim = new Simulation(fileToLoad);
-                    createTab(newSim);
+                    ObservableList<x86ProgramLine> lines = FXCollections.observableArrayList();
+                    Simulation newSim = new Simulation(fileToLoad, lines);
+                    createTab(newSim, lines);
                 } catch (X86ParsingException e) {
-                    // Info about this is already given to them so just ignore it here.
+                    Alert fileLoadingError = new Alert(AlertType.ERROR);
+                    fileLoadingError.setTitle("File Parsing Error");
+                    fileLoadingError.setHeaderText("Error Loading File");
+                    fileLoadingError.setContentText("Unable to parse the following line:"
+                            + "\n\n" + e.getLine().orElse("")
+                            + "\n\nReason: " + e.getMessage());
+                    fileLoadingError.showAndWait();
                 } catch (Exception e) {
                     // TODO: make this visual
                     System.out.println(e);
@@ -714,12 +881,26 @@ public class FXMLDocumentController implements Initializable {
         cfLabel.setText("CF: " + (activeSimulation.hasCarryFlagSet() ? "1" : "0"));
     }
 
+    /**
+     * Creates a new tab with a blank program.
+     */
+    private void createBlankTab() {
+        ObservableList<x86ProgramLine> lines = FXCollections.observableArrayList();
+        createTab(new Simulation(lines), lines);
+    }
+
     /**
      * Creates new tab and adds addNewTab to the end of the current list of tabs
+     *
+     * @param sim The simulation shown in the tab.
+     * @param programLines The (observable) list that the simulation keeps its
+     * program's lines in.
      */
-    private void createTab(Simulation sim) {
+    private void createTab(Simulation sim, ObservableList<x86ProgramLine> programLines) {
+        sim.useCheckpointHistory(HISTORY_MEMORY_BUDGET, HISTORY_STEP_BACK_NANOS);
+        sim.setSkipNonInstructions(true);
         Tab t = new Tab(sim.getProgramFileName());
-        ListView<x86ProgramLine> newProgramView = new ListView<>(sim.getProgramLines());
+        ListView<x86ProgramLine> newProgramView = new ListView<>(programLines);
         newProgramView.setCellFactory(this::instructionListCellFactory);
         t.setContent(newProgramView);
 
@@ -754,7 +935,7 @@ public class FXMLDocumentController implements Initializable {
 
         t.setOnClosed((event) -> {
             if (programTabs.getTabs().isEmpty()) {
-                createTab(new Simulation());
+                createBlankTab();
             }
             simStateFromTab.remove(t);
         });
@@ -3,8 +3,10 @@
  * To change this template file, choose Tools | Templates
  * and open the template in the editor.
  */
-package edu.sandiego.bcl;
+package edu.sandiego.bcl.fx;
 
+import edu.sandiego.bcl.Simulation;
+import edu.sandiego.bcl.x86ProgramLine;
 import javafx.scene.control.ListView;
 
 /**
@@ -0,0 +1,9 @@
+module edu.sandiego.bcl.fx {
+	requires edu.sandiego.bcl;
+	requires javafx.controls;
+	requires javafx.fxml;
+	requires javafx.web;
+
+	opens edu.sandiego.bcl.fx to javafx.fxml;
+	exports edu.sandiego.bcl.fx;
+}
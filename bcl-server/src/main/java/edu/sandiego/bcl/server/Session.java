@@ -0,0 +1,69 @@
+package edu.sandiego.bcl.server;
+
+import edu.sandiego.bcl.Simulation;
+
+/**
+ * A simulation that a client steps through over several requests, along with
+ * how much of its instruction quota it has used.
+ *
+ * Requests for the same session may arrive concurrently, so anything that
+ * uses the simulation synchronizes on the session.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class Session {
+
+    private final String id;
+    private final Simulation simulation;
+
+    /**
+     * The maximum number of instructions the session may execute in total
+     * (which also bounds the memory its history uses).
+     */
+    private final long quota;
+
+    private long instructionsUsed;
+
+    /**
+     * When the session was last used, as given by System.nanoTime.
+     */
+    private volatile long lastAccessNanos;
+
+    Session(String id, Simulation simulation, long quota, long nowNanos) {
+        this.id = id;
+        this.simulation = simulation;
+        this.quota = quota;
+        this.lastAccessNanos = nowNanos;
+    }
+
+    String getId() {
+        return this.id;
+    }
+
+    Simulation getSimulation() {
+        return this.simulation;
+    }
+
+    long getInstructionsUsed() {
+        return this.instructionsUsed;
+    }
+
+    /**
+     * @return The number of instructions the session may still execute.
+     */
+    long getRemainingQuota() {
+        return this.quota - this.instructionsUsed;
+    }
+
+    void useInstructions(long count) {
+        this.instructionsUsed += count;
+    }
+
+    long getLastAccessNanos() {
+        return this.lastAccessNanos;
+    }
+
+    void touch(long nowNanos) {
+        this.lastAccessNanos = nowNanos;
+    }
+}
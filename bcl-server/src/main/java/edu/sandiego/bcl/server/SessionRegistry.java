@@ -0,0 +1,89 @@
+package edu.sandiego.bcl.server;
+
+import edu.sandiego.bcl.Simulation;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The open sessions of a {@link SimulationServer}, by ID. Sessions that
+ * haven't been used for a while are evicted (see {@link #evictIdle}), and
+ * there is a limit on how many can be open at once.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+final class SessionRegistry {
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+
+    /**
+     * @param maxSessions The maximum number of sessions open at once.
+     * @param idleTimeoutNanos How long a session may go unused before it is
+     * evicted.
+     */
+    SessionRegistry(int maxSessions, long idleTimeoutNanos) {
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    /**
+     * Opens a new session for the given simulation.
+     *
+     * @param quota The maximum number of instructions the session may
+     * execute.
+     * @return The new session, or empty if too many sessions are open.
+     */
+    Optional<Session> open(Simulation simulation, long quota, long nowNanos) {
+        // Checking first means a burst of concurrent opens can go slightly
+        // over the limit, which is fine for a limit on memory use.
+        if (this.sessions.size() >= this.maxSessions) {
+            return Optional.empty();
+        }
+        Session session = new Session(UUID.randomUUID().toString(), simulation,
+                quota, nowNanos);
+        this.sessions.put(session.getId(), session);
+        return Optional.of(session);
+    }
+
+    /**
+     * @return The session with the given ID, marked as used now, or empty if
+     * there is no such session (or it has been evicted).
+     */
+    Optional<Session> get(String id, long nowNanos) {
+        Session session = this.sessions.get(id);
+        if (session != null) {
+            session.touch(nowNanos);
+        }
+        return Optional.ofNullable(session);
+    }
+
+    /**
+     * @return True if there was a session with the given ID.
+     */
+    boolean close(String id) {
+        return this.sessions.remove(id) != null;
+    }
+
+    /**
+     * Closes every session that hasn't been used within the idle timeout.
+     *
+     * @return The number of sessions closed.
+     */
+    int evictIdle(long nowNanos) {
+        int evicted = 0;
+        for (Session session : this.sessions.values()) {
+            if (nowNanos - session.getLastAccessNanos() > this.idleTimeoutNanos
+                    && this.sessions.remove(session.getId(), session)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    int size() {
+        return this.sessions.size();
+    }
+}
@@ -0,0 +1,541 @@
+package edu.sandiego.bcl.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.sandiego.bcl.CancellationToken;
+import edu.sandiego.bcl.Json;
+import edu.sandiego.bcl.Register;
+import edu.sandiego.bcl.RunResult;
+import edu.sandiego.bcl.Simulation;
+import edu.sandiego.bcl.X86ParsingException;
+import edu.sandiego.bcl.x86ProgramLine;
+import edu.sandiego.bcl.x86RuntimeException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An embedded HTTP service for running programs, e.g. from a web IDE. All
+ * requests and responses are JSON except for programs, which are sent as
+ * plain text (one line of assembly per line).
+ *
+ * <ul>
+ * <li>{@code POST /run[?trace=true]}: runs the program in the body to the
+ * end (or until it fails or uses up the instruction quota) and returns its
+ * final state, and with trace=true the line of every instruction it
+ * executed.</li>
+ * <li>{@code POST /sessions}: opens a session for the program in the body and
+ * returns its ID and initial state.</li>
+ * <li>{@code GET /sessions/ID}: returns the session's current state.</li>
+ * <li>{@code POST /sessions/ID/forward[?count=N]}: executes the next N
+ * instructions (default 1).</li>
+ * <li>{@code POST /sessions/ID/back[?count=N]}: undoes the last N
+ * instructions (default 1), or as many as it can in the time limit of a
+ * request, and returns how many it undid.</li>
+ * <li>{@code POST /sessions/ID/restart}: goes back to the beginning.</li>
+ * <li>{@code DELETE /sessions/ID}: closes the session.</li>
+ * </ul>
+ *
+ * Each run and each session may execute a limited number of instructions in
+ * total (restarting doesn't give any back), and sessions that go unused for a
+ * while are closed. Each request runs on its own virtual thread when the JVM
+ * supports them (Java 21 and up), and on a thread from a cached pool
+ * otherwise.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public final class SimulationServer {
+
+    static final int DEFAULT_PORT = 8080;
+    static final long DEFAULT_QUOTA = 1_000_000;
+    static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 600;
+    static final int DEFAULT_MAX_SESSIONS = 10_000;
+
+    /**
+     * The most time a single request may spend executing instructions.
+     */
+    private static final long REQUEST_TIME_LIMIT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The (approximate) most memory the history of each session may use, and
+     * how long stepping a session back should take.
+     */
+    private static final long SESSION_HISTORY_BYTES = 256 * 1024;
+    private static final long SESSION_STEP_BACK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final String USAGE = "usage: SimulationServer [--port N]"
+            + " [--quota INSTRUCTIONS] [--idle-timeout SECONDS] [--max-sessions N]";
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ScheduledExecutorService evictor;
+    private final SessionRegistry sessions;
+    private final long quota;
+    private final long idleTimeoutNanos;
+
+    /**
+     * Creates a server that isn't started yet.
+     *
+     * @param address The address to listen on (with port 0 for any free
+     * port).
+     * @param quota The maximum number of instructions each run or session may
+     * execute.
+     * @param idleTimeoutNanos How long a session may go unused before it is
+     * closed.
+     * @param maxSessions The maximum number of sessions open at once.
+     * @throws IOException if the address can't be bound.
+     */
+    public SimulationServer(InetSocketAddress address, long quota,
+            long idleTimeoutNanos, int maxSessions) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.requestExecutor = newRequestExecutor();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sessions = new SessionRegistry(maxSessions, idleTimeoutNanos);
+        this.quota = quota;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+
+        this.server.setExecutor(this.requestExecutor);
+        this.server.createContext("/run", withInternalErrors(this::handleRun));
+        this.server.createContext("/sessions",
+                withInternalErrors(this::handleSessions));
+    }
+
+    /**
+     * @return An executor that runs each task on a new virtual thread if the
+     * JVM supports them, or on a (daemon) thread from a cached pool otherwise.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() {
+        this.server.start();
+        long period = Math.max(this.idleTimeoutNanos / 2,
+                TimeUnit.MILLISECONDS.toNanos(100));
+        this.evictor.scheduleAtFixedRate(
+                () -> this.sessions.evictIdle(System.nanoTime()),
+                period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the server, waiting up to a second for requests in progress to
+     * finish.
+     */
+    public void stop() {
+        this.server.stop(1);
+        this.evictor.shutdownNow();
+        this.requestExecutor.shutdownNow();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of open sessions.
+     */
+    int getNumSessions() {
+        return this.sessions.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        long quota = DEFAULT_QUOTA;
+        long idleTimeout = DEFAULT_IDLE_TIMEOUT_SECONDS;
+        int maxSessions = DEFAULT_MAX_SESSIONS;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(args[i] + " needs a value");
+                }
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--quota":
+                        quota = Long.parseLong(args[i + 1]);
+                        break;
+                    case "--idle-timeout":
+                        idleTimeout = Long.parseLong(args[i + 1]);
+                        break;
+                    case "--max-sessions":
+                        maxSessions = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        SimulationServer server = new SimulationServer(new InetSocketAddress(port),
+                quota, TimeUnit.SECONDS.toNanos(idleTimeout), maxSessions);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+
+    /**
+     * An error to send back to the client instead of a normal response.
+     */
+    @SuppressWarnings("serial")
+    private static final class RequestException extends Exception {
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * @return A handler that sends a 500 response if the given handler fails
+     * with an unexpected exception (i.e. a bug in the simulator), rather than
+     * just closing the connection.
+     */
+    private static HttpHandler withInternalErrors(HttpHandler handler) {
+        return exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (RuntimeException e) {
+                System.err.println("Internal error handling "
+                        + exchange.getRequestURI() + ": " + e);
+                send(exchange, 500, "{\"error\":\"Internal error\"}");
+            }
+        };
+    }
+
+    private void handleRun(HttpExchange exchange) throws IOException {
+        try {
+            requireMethod(exchange, "POST");
+            Simulation sim = parseProgram(exchange);
+            boolean trace = "true".equals(queryParameters(exchange.getRequestURI())
+                    .get("trace"));
+
+            // runs never step back
+            sim.useNoHistory();
+
+            StringBuilder json = new StringBuilder("{");
+            if (trace) {
+                // one instruction at a time, so we know which lines ran
+                StringBuilder lines = new StringBuilder();
+                RunResult result = run(sim, this.quota, line -> {
+                    if (lines.length() > 0) {
+                        lines.append(',');
+                    }
+                    lines.append(line);
+                });
+                appendRunResult(json, result);
+                json.append(",\"trace\":[").append(lines).append("],");
+            } else {
+                appendRunResult(json, run(sim, this.quota, null));
+                json.append(',');
+            }
+            appendState(json, sim);
+            send(exchange, 200, json.append('}').toString());
+        } catch (RequestException e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void handleSessions(HttpExchange exchange) throws IOException {
+        try {
+            // /sessions, /sessions/ID or /sessions/ID/ACTION
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            if (path.length == 2) {
+                requireMethod(exchange, "POST");
+                openSession(exchange);
+                return;
+            }
+            if (path.length > 4) {
+                throw new RequestException(404, "Unknown path");
+            }
+
+            long now = System.nanoTime();
+            Session session = this.sessions.get(path[2], now).orElseThrow(
+                    () -> new RequestException(404, "No session with ID " + path[2]));
+            if (path.length == 3) {
+                if (exchange.getRequestMethod().equals("DELETE")) {
+                    this.sessions.close(session.getId());
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                    return;
+                }
+                requireMethod(exchange, "GET");
+                synchronized (session) {
+                    send(exchange, 200, sessionJson(session, null));
+                }
+                return;
+            }
+
+            requireMethod(exchange, "POST");
+            int count = parseCount(queryParameters(exchange.getRequestURI()));
+            String response;
+            synchronized (session) {
+                Simulation sim = session.getSimulation();
+                switch (path[3]) {
+                    case "forward":
+                        if (session.getRemainingQuota() <= 0) {
+                            throw new RequestException(429, "Instruction quota used up");
+                        }
+                        RunResult result = run(sim,
+                                Math.min(count, session.getRemainingQuota()), null);
+                        session.useInstructions(result.getInstructionsExecuted());
+                        response = sessionJson(session, result);
+                        break;
+                    case "back":
+                        response = sessionJson(session, null,
+                                stepBack(sim, count));
+                        break;
+                    case "restart":
+                        sim.restart();
+                        response = sessionJson(session, null);
+                        break;
+                    default:
+                        throw new RequestException(404, "Unknown action " + path[3]);
+                }
+            }
+            send(exchange, 200, response);
+        } catch (RequestException e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void openSession(HttpExchange exchange)
+            throws IOException, RequestException {
+        Simulation sim = parseProgram(exchange);
+        sim.useCheckpointHistory(SESSION_HISTORY_BYTES, SESSION_STEP_BACK_NANOS);
+        Session session = this.sessions.open(sim, this.quota, System.nanoTime())
+                .orElseThrow(() -> new RequestException(503, "Too many open sessions"));
+        synchronized (session) {
+            send(exchange, 201, sessionJson(session, null));
+        }
+    }
+
+    private static String sessionJson(Session session, RunResult result) {
+        return sessionJson(session, result, -1);
+    }
+
+    /**
+     * @param undone The number of instructions that were undone, or -1 to
+     * leave it out.
+     */
+    private static String sessionJson(Session session, RunResult result,
+            long undone) {
+        StringBuilder json = new StringBuilder("{\"id\":")
+                .append(Json.quote(session.getId()));
+        if (result != null) {
+            json.append(',');
+            appendRunResult(json, result);
+        }
+        if (undone >= 0) {
+            json.append(",\"undone\":").append(undone);
+        }
+        json.append(",\"instructionsUsed\":").append(session.getInstructionsUsed())
+                .append(",\"quotaRemaining\":").append(session.getRemainingQuota())
+                .append(',');
+        appendState(json, session.getSimulation());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Something that wants to know the line of each instruction executed.
+     */
+    private interface LineListener {
+        void executing(int line);
+    }
+
+    /**
+     * Runs the simulation for up to the given number of instructions (or the
+     * time limit of a request). Errors in the program end the run rather than
+     * being thrown.
+     *
+     * @param listener Told about every instruction executed, or null.
+     */
+    private static RunResult run(Simulation sim, long maxInstructions,
+            LineListener listener) {
+        long startTime = System.nanoTime();
+        if (listener == null) {
+            return sim.run(maxInstructions, REQUEST_TIME_LIMIT_NANOS,
+                    new CancellationToken());
+        }
+
+        long numExecuted = 0;
+        while (!sim.isFinished()) {
+            if (numExecuted >= maxInstructions
+                    || System.nanoTime() - startTime >= REQUEST_TIME_LIMIT_NANOS) {
+                return new RunResult(RunResult.Status.BUDGET_EXHAUSTED, numExecuted,
+                        System.nanoTime() - startTime, Optional.empty());
+            }
+            int line = sim.getCurrentLine().getLineNum();
+            try {
+                sim.stepForward();
+            } catch (x86RuntimeException e) {
+                return new RunResult(RunResult.Status.ERROR, numExecuted,
+                        System.nanoTime() - startTime, Optional.of(e));
+            }
+            listener.executing(line);
+            numExecuted++;
+        }
+        return new RunResult(RunResult.Status.FINISHED, numExecuted,
+                System.nanoTime() - startTime, Optional.empty());
+    }
+
+    /**
+     * Steps the simulation back up to the given number of instructions,
+     * stopping early at its beginning or when the time limit of a request
+     * runs out.
+     *
+     * @return The number of instructions undone.
+     */
+    private static long stepBack(Simulation sim, long count) {
+        long startTime = System.nanoTime();
+        long undone = 0;
+        while (undone < count && !sim.isAtBeginning()
+                && System.nanoTime() - startTime < REQUEST_TIME_LIMIT_NANOS) {
+            sim.stepBackward();
+            undone++;
+        }
+        return undone;
+    }
+
+    private static void appendRunResult(StringBuilder json, RunResult result) {
+        json.append("\"status\":").append(Json.quote(result.getStatus().name()))
+                .append(",\"instructions\":").append(result.getInstructionsExecuted());
+        if (result.getError().isPresent()) {
+            json.append(",\"error\":")
+                    .append(Json.quote(result.getError().get().getMessage()));
+        }
+    }
+
+    /**
+     * Appends the current line, registers, flags and stack of the given
+     * simulation (without any surrounding braces).
+     */
+    private static void appendState(StringBuilder json, Simulation sim) {
+        x86ProgramLine current = sim.getCurrentLine();
+        json.append("\"finished\":").append(sim.isFinished())
+                .append(",\"line\":")
+                .append(current == null ? "null" : Integer.toString(current.getLineNum()))
+                .append(",\"registers\":{");
+        boolean first = true;
+        for (Register reg : sim.getRegisters()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(Json.quote(reg.getName())).append(':')
+                    .append(Json.quote(reg.getSubValue(8, 0, false)));
+        }
+        json.append("},\"flags\":").append(Json.flags(sim.hasZeroFlagSet(),
+                sim.hasSignFlagSet(), sim.hasOverflowFlagSet(), sim.hasCarryFlagSet()))
+                .append(",\"stack\":").append(Json.stack(sim.getStackEntries()));
+    }
+
+    /**
+     * Parses the program in the body of the request into a new simulation.
+     *
+     * @throws RequestException if a line of the program can't be parsed.
+     */
+    private static Simulation parseProgram(HttpExchange exchange)
+            throws IOException, RequestException {
+        String body = new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8);
+        Simulation sim = new Simulation();
+        sim.setSkipNonInstructions(true);
+        String[] lines = body.split("\r?\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            // a final newline doesn't start another line
+            if (i == lines.length - 1 && lines[i].isEmpty() && i > 0) {
+                break;
+            }
+            try {
+                sim.appendToProgram(lines[i].trim());
+            } catch (X86ParsingException e) {
+                throw new RequestException(400, "Line " + (i + 1) + ": "
+                        + e.getMessage());
+            }
+        }
+        sim.restart();
+        return sim;
+    }
+
+    private static int parseCount(Map<String, String> parameters)
+            throws RequestException {
+        String count = parameters.getOrDefault("count", "1");
+        try {
+            int n = Integer.parseInt(count);
+            if (n < 0) {
+                throw new NumberFormatException();
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid count: " + count);
+        }
+    }
+
+    private static Map<String, String> queryParameters(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(parameter.substring(0, equals),
+                            parameter.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method)
+            throws RequestException {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new RequestException(405, "Expected " + method);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, RequestException e)
+            throws IOException {
+        send(exchange, e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+    }
+
+    private static void send(HttpExchange exchange, int status, String json)
+            throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
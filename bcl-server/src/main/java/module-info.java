@@ -0,0 +1,6 @@
+module edu.sandiego.bcl.server {
+	requires edu.sandiego.bcl;
+	requires jdk.httpserver;
+
+	exports edu.sandiego.bcl.server;
+}
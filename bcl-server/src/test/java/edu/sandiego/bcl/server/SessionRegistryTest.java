@@ -0,0 +1,62 @@
+package edu.sandiego.bcl.server;
+
+import edu.sandiego.bcl.Simulation;
+import java.util.Optional;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for SessionRegistry.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class SessionRegistryTest {
+
+    @Test
+    public void testOpenAndClose() {
+        System.out.println("openAndClose");
+        SessionRegistry registry = new SessionRegistry(2, 100);
+        Session a = registry.open(new Simulation(), 50, 0).get();
+        Session b = registry.open(new Simulation(), 50, 0).get();
+        assertNotEquals(a.getId(), b.getId());
+        assertEquals(2, registry.size());
+        assertFalse("opened more than the maximum",
+                registry.open(new Simulation(), 50, 0).isPresent());
+
+        assertSame(a, registry.get(a.getId(), 10).get());
+        assertTrue(registry.close(a.getId()));
+        assertFalse(registry.close(a.getId()));
+        assertFalse(registry.get(a.getId(), 10).isPresent());
+        assertTrue(registry.open(new Simulation(), 50, 0).isPresent());
+    }
+
+    @Test
+    public void testEvictIdle() {
+        System.out.println("evictIdle");
+        SessionRegistry registry = new SessionRegistry(10, 100);
+        Session a = registry.open(new Simulation(), 50, 0).get();
+        Session b = registry.open(new Simulation(), 50, 0).get();
+        registry.get(b.getId(), 80);
+
+        assertEquals(0, registry.evictIdle(100));
+        assertEquals(1, registry.evictIdle(150));
+        assertFalse(registry.get(a.getId(), 150).isPresent());
+        Optional<Session> stillOpen = registry.get(b.getId(), 150);
+        assertTrue(stillOpen.isPresent());
+        assertEquals(0, registry.evictIdle(200));
+        assertEquals(1, registry.evictIdle(251));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testQuota() {
+        System.out.println("quota");
+        Session session = new Session("s", new Simulation(), 50, 0);
+        assertEquals(50, session.getRemainingQuota());
+        session.useInstructions(30);
+        assertEquals(20, session.getRemainingQuota());
+        session.useInstructions(20);
+        assertEquals(50, session.getInstructionsUsed());
+        assertEquals(0, session.getRemainingQuota());
+    }
+}
@@ -0,0 +1,179 @@
+package edu.sandiego.bcl.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for SimulationServer.
+ *
+ * @author Sat Garcia (sat@sandiego.edu)
+ */
+public class SimulationServerTest {
+
+    private static final String PROGRAM = String.join("\n",
+            "    movq $5, %rax",
+            "    addq $-7, %rax",
+            "    pushq %rax",
+            "    popq %rbx",
+            "");
+
+    private SimulationServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new SimulationServer(new InetSocketAddress("localhost", 0),
+                10, TimeUnit.SECONDS.toNanos(60), 3);
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop();
+    }
+
+    /**
+     * A response's status and body.
+     */
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private Response request(String method, String path, String body)
+            throws IOException {
+        URL url = new URL("http://localhost:" + this.server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        String text = in == null ? ""
+                : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        connection.disconnect();
+        return new Response(status, text);
+    }
+
+    private static String field(String json, String name) {
+        Matcher m = Pattern.compile("\"" + name + "\":(\"[^\"]*\"|[^,}]*)")
+                .matcher(json);
+        assertTrue(name + " missing from " + json, m.find());
+        return m.group(1);
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        System.out.println("run");
+        Response response = request("POST", "/run", PROGRAM);
+        assertEquals(response.body, 200, response.status);
+        assertEquals("\"FINISHED\"", field(response.body, "status"));
+        assertEquals("4", field(response.body, "instructions"));
+        assertEquals("true", field(response.body, "finished"));
+        assertEquals("\"0xFFFFFFFFFFFFFFFE\"", field(response.body, "rbx"));
+        assertEquals("true", field(response.body, "SF"));
+
+        response = request("POST", "/run?trace=true", PROGRAM);
+        assertEquals(200, response.status);
+        assertTrue(response.body, response.body.contains("\"trace\":[0,1,2,3]"));
+
+        response = request("POST", "/run", "loop:\njmp loop\n");
+        assertEquals("\"BUDGET_EXHAUSTED\"", field(response.body, "status"));
+        assertEquals("10", field(response.body, "instructions"));
+
+        response = request("POST", "/run", "movq $1, %rax\nmovq (%rsp), %rax\n");
+        assertEquals("\"ERROR\"", field(response.body, "status"));
+        assertEquals("1", field(response.body, "instructions"));
+
+        for (String path : new String[] {"/run", "/run?trace=true"}) {
+            response = request("POST", path, "movq $0, %rcx\nidivq %rcx\n");
+            assertEquals(response.body, 200, response.status);
+            assertEquals("\"ERROR\"", field(response.body, "status"));
+            assertEquals("\"Division by zero\"", field(response.body, "error"));
+        }
+
+        response = request("POST", "/run", "movq $1, %rax\nmovq %rax\n");
+        assertEquals(400, response.status);
+        assertTrue(response.body, field(response.body, "error").startsWith("\"Line 2:"));
+
+        assertEquals(405, request("GET", "/run", null).status);
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        System.out.println("session");
+        Response response = request("POST", "/sessions", PROGRAM);
+        assertEquals(response.body, 201, response.status);
+        String id = field(response.body, "id").replace("\"", "");
+        assertEquals("0", field(response.body, "line"));
+        assertEquals(1, this.server.getNumSessions());
+
+        String path = "/sessions/" + id;
+        response = request("POST", path + "/forward?count=3", null);
+        assertEquals(200, response.status);
+        assertEquals("3", field(response.body, "line"));
+        assertEquals("3", field(response.body, "instructionsUsed"));
+        assertTrue(response.body, response.body.contains("\"value\":\"0xF..FE\""));
+
+        response = request("POST", path + "/back?count=2", null);
+        assertEquals("1", field(response.body, "line"));
+        assertEquals("\"0x0000000000000005\"", field(response.body, "rax"));
+        assertEquals("2", field(response.body, "undone"));
+
+        response = request("GET", path, null);
+        assertEquals("1", field(response.body, "line"));
+
+        // only as far as the beginning
+        response = request("POST", path + "/back?count=5", null);
+        assertEquals("0", field(response.body, "line"));
+        assertEquals("1", field(response.body, "undone"));
+
+        response = request("POST", path + "/restart", null);
+        assertEquals("0", field(response.body, "line"));
+        assertEquals("3", field(response.body, "instructionsUsed"));
+
+        assertEquals(400, request("POST", path + "/forward?count=x", null).status);
+        assertEquals(404, request("POST", path + "/sideways", null).status);
+        assertEquals(204, request("DELETE", path, null).status);
+        assertEquals(404, request("GET", path, null).status);
+        assertEquals(0, this.server.getNumSessions());
+    }
+
+    @Test
+    public void testQuotaAndLimit() throws IOException {
+        System.out.println("quotaAndLimit");
+        String id = field(request("POST", "/sessions", "loop:\njmp loop\n").body, "id")
+                .replace("\"", "");
+        Response response = request("POST", "/sessions/" + id + "/forward?count=7", null);
+        assertEquals("7", field(response.body, "instructionsUsed"));
+        response = request("POST", "/sessions/" + id + "/forward?count=7", null);
+        assertEquals("10", field(response.body, "instructionsUsed"));
+        assertEquals("0", field(response.body, "quotaRemaining"));
+        assertEquals(429, request("POST", "/sessions/" + id + "/forward", null).status);
+
+        assertEquals(201, request("POST", "/sessions", PROGRAM).status);
+        assertEquals(201, request("POST", "/sessions", PROGRAM).status);
+        assertEquals(503, request("POST", "/sessions", PROGRAM).status);
+    }
+}